@@ -1,37 +1,107 @@
 package org.gradle.profiler;
 
+import org.gradle.profiler.history.HistoryGenerator;
 import org.gradle.profiler.report.AbstractGenerator;
+import org.gradle.profiler.report.BaselineComparison;
 import org.gradle.profiler.report.BenchmarkResult;
+import org.gradle.profiler.report.BenchmarkResultLog;
 import org.gradle.profiler.report.BuildScenarioResult;
 import org.gradle.profiler.result.BuildInvocationResult;
+import org.gradle.profiler.result.RecordedBuildInvocationResult;
 import org.gradle.profiler.result.SampleProvider;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.function.Consumer;
 
+/**
+ * Collects the results of all scenarios and writes the reports.
+ *
+ * <p>This class is thread-safe: scenarios can be run at the same time. Results are added and reports are written while holding the lock
+ * of the collector, so that each report sees a consistent snapshot of the results.</p>
+ *
+ * <p>When a {@link BenchmarkResultLog} is given, each result is also appended to it as soon as it is collected.</p>
+ */
 public class BenchmarkResultCollector {
     private final List<BuildScenarioResultImpl<?>> allBuilds = new ArrayList<>();
     private final List<AbstractGenerator> generators;
+    private final BenchmarkResultLog resultLog;
+    private List<? extends ScenarioDefinition> expectedScenarios = new ArrayList<>();
 
     public BenchmarkResultCollector(AbstractGenerator... generators) {
+        this(null, generators);
+    }
+
+    public BenchmarkResultCollector(@Nullable BenchmarkResultLog resultLog, AbstractGenerator... generators) {
+        this.resultLog = resultLog;
         this.generators = Arrays.asList(generators);
     }
 
+    /**
+     * Reports the results of the given scenarios in the given order, regardless of the order in which the scenarios are run.
+     * Other scenarios are reported afterwards, in the order in which they are run.
+     */
+    public synchronized void expectScenarios(List<? extends ScenarioDefinition> scenarios) {
+        this.expectedScenarios = new ArrayList<>(scenarios);
+        allBuilds.sort(reportOrder());
+    }
+
     public <S extends ScenarioDefinition, T extends BuildInvocationResult> Consumer<T> scenario(S scenario, SampleProvider<T> sampleProvider) {
         BuildScenarioResultImpl<T> buildScenario = new BuildScenarioResultImpl<>(scenario, sampleProvider);
-        allBuilds.add(buildScenario);
-        return buildScenario;
+        synchronized (this) {
+            allBuilds.add(buildScenario);
+            allBuilds.sort(reportOrder());
+        }
+        return result -> {
+            synchronized (this) {
+                buildScenario.accept(result);
+                if (resultLog != null) {
+                    resultLog.append(scenario, sampleProvider.get(Collections.singletonList(result)), result);
+                }
+            }
+        };
+    }
+
+    /**
+     * Adds the results of a scenario that were recorded by an earlier invocation. These results are not added to the result log again.
+     */
+    public void restore(ScenarioDefinition scenario, List<RecordedBuildInvocationResult> results) {
+        BuildScenarioResultImpl<RecordedBuildInvocationResult> buildScenario = new BuildScenarioResultImpl<>(scenario, RecordedBuildInvocationResult.samples());
+        results.forEach(buildScenario::accept);
+        synchronized (this) {
+            allBuilds.add(buildScenario);
+            allBuilds.sort(reportOrder());
+        }
     }
 
-    public void write(InvocationSettings settings) throws IOException {
+    public synchronized void write(InvocationSettings settings) throws IOException {
         for (AbstractGenerator generator : generators) {
             generator.write(settings, new BenchmarkResultImpl());
         }
     }
 
+    /**
+     * Appends the results of all scenarios to the history of benchmark results.
+     */
+    public synchronized void appendTo(HistoryGenerator history, InvocationSettings settings) throws IOException {
+        history.write(settings, new BenchmarkResultImpl());
+    }
+
+    /**
+     * Describes each sample that is significantly greater than in the baseline scenario, by more than the given fraction of the baseline median.
+     *
+     * @param baseline the display name or name of the baseline scenario, or {@code null} to use the first scenario
+     */
+    public synchronized List<String> findRegressions(@Nullable String baseline, double threshold) {
+        BaselineComparison comparison = BaselineComparison.select(allBuilds, baseline);
+        return comparison == null ? Collections.emptyList() : comparison.findRegressions(allBuilds, threshold);
+    }
+
     /**
      * Summarize the results for the user.
      */
@@ -39,6 +109,17 @@ public void summarizeResults(Consumer<String> consumer) {
         for (AbstractGenerator generator : generators) {
             generator.summarizeResults(consumer);
         }
+        if (resultLog != null) {
+            consumer.accept(resultLog.getLogFile().getAbsolutePath());
+        }
+    }
+
+    private Comparator<BuildScenarioResultImpl<?>> reportOrder() {
+        // The sort is stable, so unexpected scenarios keep the order in which they were added
+        return Comparator.comparingInt(result -> {
+            int index = expectedScenarios.indexOf(result.getScenarioDefinition());
+            return index < 0 ? Integer.MAX_VALUE : index;
+        });
     }
 
     private class BenchmarkResultImpl implements BenchmarkResult {
@@ -2,11 +2,15 @@
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import org.gradle.profiler.process.ProcessTreeSampler;
+import org.gradle.profiler.process.ProcessTreeUsage;
 import org.gradle.profiler.result.BuildActionResult;
 import org.gradle.profiler.result.BuildInvocationResult;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
@@ -33,13 +37,16 @@ protected void doRun(
 
         BuildMutator mutator = CompositeBuildMutator.from(scenario.getBuildMutators());
         mutator.beforeScenario(scenarioContext);
+        StoppingRule stoppingRule = StoppingRule.from(settings);
         try {
-            for (int iteration = 1; iteration <= scenario.getWarmUpCount(); iteration++) {
+            List<Duration> warmUpTimes = new ArrayList<>();
+            for (int iteration = 1; iteration <= scenario.getWarmUpCount() && !stoppingRule.isSteadyState(warmUpTimes); iteration++) {
                 BuildContext buildContext = scenarioContext.withBuild(WARM_UP, iteration);
-                BuildStepAction<R> action = measureCommandLineExecution(commandLine, envVars, settings.getProjectDir(), settings.getBuildLog());
-                runMeasured(buildContext, mutator, action, resultConsumer);
+                BuildStepAction<R> action = measureCommandLineExecution(commandLine, envVars, settings.getProjectDir(), settings.getBuildLog(), settings.getProcessTreeSamplingInterval());
+                warmUpTimes.add(runInTurn(buildContext, () -> runMeasured(buildContext, mutator, action, resultConsumer)).getExecutionTime());
             }
-            for (int iteration = 1; iteration <= scenario.getBuildCount(); iteration++) {
+            List<Duration> buildTimes = new ArrayList<>();
+            for (int iteration = 1; iteration <= scenario.getBuildCount() && !stoppingRule.isConverged(buildTimes); iteration++) {
                 BuildContext buildContext = scenarioContext.withBuild(MEASURE, iteration);
                 List<String> commandLineCombined = ImmutableList.<String>builder()
                     .addAll(commandLine)
@@ -49,8 +56,8 @@ protected void doRun(
                     .putAll(envVars)
                     .putAll(profileEnvVars)
                     .build();
-                BuildStepAction<R> action = measureCommandLineExecution(commandLineCombined, envVarsCombined, settings.getProjectDir(), settings.getBuildLog());
-                runMeasured(buildContext, mutator, action, resultConsumer);
+                BuildStepAction<R> action = measureCommandLineExecution(commandLineCombined, envVarsCombined, settings.getProjectDir(), settings.getBuildLog(), settings.getProcessTreeSamplingInterval());
+                buildTimes.add(runInTurn(buildContext, () -> runMeasured(buildContext, mutator, action, resultConsumer)).getExecutionTime());
             }
         } finally {
             mutator.afterScenario(scenarioContext);
@@ -59,8 +66,16 @@ protected void doRun(
 
     /**
      * Returns a {@link Supplier} that returns the result of the given command.
+     * When a sampling interval is given, the resources used by the command and its child processes are measured as well.
+     * Servers that detach from the command, such as the Bazel server, are not children of the command and so are not measured.
      */
-    private BuildStepAction<R> measureCommandLineExecution(List<String> commandLine, Map<String, String> envVars, File workingDir, File buildLog) {
+    private BuildStepAction<R> measureCommandLineExecution(
+        List<String> commandLine,
+        Map<String, String> envVars,
+        File workingDir,
+        File buildLog,
+        @Nullable Duration processTreeSamplingInterval
+    ) {
         return new BuildStepAction<R>() {
             @Override
             public boolean isDoesSomething() {
@@ -75,13 +90,23 @@ public R run(BuildContext buildContext, BuildStep buildStep) {
                     .inDir(workingDir)
                     .environmentVariables(envVars);
                 Timer timer = new Timer();
-                if (buildLog == null) {
-                    commandExec.run(commandLine);
-                } else {
-                    commandExec.runAndCollectOutput(buildLog, commandLine);
+                CommandExec.RunHandle runHandle = buildLog == null
+                    ? commandExec.start(commandLine)
+                    : commandExec.startAndCollectOutput(buildLog, commandLine);
+                ProcessTreeSampler processTreeSampler = processTreeSamplingInterval == null
+                    ? null
+                    : ProcessTreeSampler.startForNewProcess(processTreeSamplingInterval, runHandle.getPid());
+                Duration executionTime;
+                try {
+                    runHandle.waitForSuccess();
+                    executionTime = timer.elapsed();
+                } finally {
+                    if (processTreeSampler != null) {
+                        processTreeSampler.stop();
+                    }
                 }
-                Duration executionTime = timer.elapsed();
-                return (R) new BuildInvocationResult(buildContext, new BuildActionResult(executionTime));
+                ProcessTreeUsage processTreeUsage = processTreeSampler == null ? ProcessTreeUsage.NONE : processTreeSampler.usageOf(runHandle.getPid());
+                return (R) new BuildInvocationResult(buildContext, new BuildActionResult(executionTime), processTreeUsage);
             }
         };
     }
@@ -0,0 +1,38 @@
+package org.gradle.profiler;
+
+/**
+ * Coordinates the builds of a scenario with the builds of other scenarios, so that only one build runs at a time.
+ */
+public interface BuildTurns {
+    /**
+     * Runs every build as soon as it is requested.
+     */
+    BuildTurns NONE = new BuildTurns() {
+        @Override
+        public void await(BuildContext buildContext) {
+        }
+
+        @Override
+        public void release() {
+        }
+
+        @Override
+        public void finish() {
+        }
+    };
+
+    /**
+     * Blocks until the given build, including its cleanup, may run.
+     */
+    void await(BuildContext buildContext);
+
+    /**
+     * Signals that the build that was allowed to run has completed.
+     */
+    void release();
+
+    /**
+     * Signals that the scenario will not run any more builds.
+     */
+    void finish();
+}
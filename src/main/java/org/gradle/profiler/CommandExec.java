@@ -78,8 +78,16 @@ public void runAndCollectOutput(File outputFile, Collection<String> commandLine)
     }
 
     public void runAndCollectOutput(File outputFile, String... commandLine) {
+        startAndCollectOutput(outputFile, commandLine).waitForSuccess();
+    }
+
+    public RunHandle startAndCollectOutput(File outputFile, Collection<String> commandLine) {
+        return startAndCollectOutput(outputFile, commandLine.toArray(new String[0]));
+    }
+
+    public RunHandle startAndCollectOutput(File outputFile, String... commandLine) {
         OutputStream outputStream = createFileOutputStream(outputFile);
-        start(new ProcessBuilder(commandLine), outputStream, () -> "See build log " + outputFile + " for details", null).waitForSuccess();
+        return start(new ProcessBuilder(commandLine), outputStream, () -> "See build log " + outputFile + " for details", null);
     }
 
     private OutputStream createFileOutputStream(File outputFile) {
@@ -206,6 +214,10 @@ public class RunHandle {
             this.executor = executor;
         }
 
+        public long getPid() {
+            return process.pid();
+        }
+
         public void waitForSuccess() {
             int result = 0;
             Exception failure = null;
@@ -16,6 +16,7 @@
 import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -81,15 +82,38 @@ public InvocationSettings parseSettings(String[] args) throws IOException, Setti
         ArgumentAcceptingOptionSpec<File> outputDirOption = parser.accepts("output-dir", "Directory to write results to (default: new directory with 'profile-out' prefix)")
             .withRequiredArg()
             .ofType(File.class);
+        ArgumentAcceptingOptionSpec<File> resumeOption = parser.accepts("resume", "Resume an interrupted benchmark that wrote its results to the given output directory, skipping the scenarios that have completed")
+            .withRequiredArg()
+            .ofType(File.class);
         ArgumentAcceptingOptionSpec<Integer> warmupsOption = parser.accepts("warmups", "Number of warm-up build to run for each scenario").withRequiredArg().ofType(Integer.class);
         ArgumentAcceptingOptionSpec<Integer> iterationsOption = parser.accepts("iterations", "Number of builds to run for each scenario").withRequiredArg().ofType(Integer.class);
+        ArgumentAcceptingOptionSpec<Double> targetErrorOption = parser.accepts("target-error", "Run warm-up builds until the build time is stable, then measured builds until the 95% confidence interval of the median build time is within the given percentage of the median. --warmups and --iterations are the maximum number of builds")
+            .withRequiredArg()
+            .ofType(Double.class);
         ArgumentAcceptingOptionSpec<String> profilerOption = parser.accepts("profile",
                 "Collect profiling information using profiler (" + String.join(", ", ProfilerFactory.getAvailableProfilers()) + ")")
             .withRequiredArg()
             .defaultsTo("jfr");
         ProfilerFactory.configureParser(parser);
         OptionSpecBuilder noDifferentialFlamegraphOption = parser.accepts("no-diffs", "Do not generate differential flame graphs");
+        ArgumentAcceptingOptionSpec<String> diffBaselineOption = parser.accepts("diff-baseline", "Scenario or Gradle version to compare all others with in differential flame graphs when profiling (default: compare each with each other). For benchmarks, see --baseline")
+            .withRequiredArg()
+            .ofType(String.class);
         OptionSpecBuilder benchmarkOption = parser.accepts("benchmark", "Collect benchmark metrics");
+        ArgumentAcceptingOptionSpec<String> baselineOption = parser.accepts("baseline", "Scenario to compare all others with in the benchmark report (default: the first scenario). For differential flame graphs, see --diff-baseline")
+            .withRequiredArg()
+            .ofType(String.class);
+        ArgumentAcceptingOptionSpec<Double> failOnRegressionOption = parser.accepts("fail-on-regression", "Fail when the median of a duration sample of a scenario is statistically significantly greater than the one of the baseline, by more than the given percentage")
+            .withRequiredArg()
+            .ofType(Double.class);
+        ArgumentAcceptingOptionSpec<File> historyDirOption = parser.accepts("history-dir", "Directory of the history of benchmark results. Each benchmark appends its results to the history, see --trends")
+            .withRequiredArg()
+            .ofType(File.class);
+        OptionSpecBuilder trendsOption = parser.accepts("trends", "Render the trend of each scenario over the runs recorded in --history-dir and report the runs where the results changed, without running");
+        ArgumentAcceptingOptionSpec<Integer> trendRunsOption = parser.accepts("trend-runs", "Number of most recent runs of each scenario to include in the trends")
+            .withRequiredArg()
+            .ofType(Integer.class)
+            .defaultsTo(30);
         OptionSpecBuilder singleShotOption = parser.accepts("single-shot", "Run a single measured build with zero warm-ups (implies --cold-daemon, can be combined with --no-daemon)");
         ArgumentAcceptingOptionSpec<BuildOperationMeasurement> measuredBuildOps = parser.accepts(
             "measure-build-op",
@@ -104,6 +128,12 @@ public InvocationSettings parseSettings(String[] args) throws IOException, Setti
         OptionSpecBuilder measureGarbageCollectionOption = parser.accepts("measure-gc", "Measure the GC time during each invocation");
         OptionSpecBuilder measureLocalBuildCacheOption = parser.accepts("measure-local-build-cache", "Measure the size of the local build cache");
         OptionSpecBuilder measureConfigTimeOption = parser.accepts("measure-config-time", "Include a breakdown of configuration time in benchmark results");
+        OptionSpecBuilder measureResourcesOption = parser.accepts("measure-resources", "Measure the CPU time, memory, threads and I/O of the daemon during each invocation");
+        OptionSpecBuilder measureProcessTreeOption = parser.accepts("measure-process-tree", "Measure the CPU time, memory, context switches and block I/O of all processes of each invocation (Linux only)");
+        ArgumentAcceptingOptionSpec<Integer> resourceSamplingIntervalOption = parser.accepts("resource-sampling-interval", "Interval in milliseconds at which --measure-resources and --measure-process-tree sample")
+            .withRequiredArg()
+            .ofType(Integer.class)
+            .defaultsTo(100);
         OptionSpecBuilder buildOpsTraceOption = parser.accepts("build-ops-trace", "Enable Gradle build operations trace");
         OptionSpecBuilder dryRunOption = parser.accepts("dry-run", "Verify configuration");
         OptionSpecBuilder dumpScenariosOption = parser.accepts("dump-scenarios", "Dump resolved config for scenario(s) without running");
@@ -120,6 +150,13 @@ public InvocationSettings parseSettings(String[] args) throws IOException, Setti
         ArgumentAcceptingOptionSpec<String> groupOption = parser.accepts("group", "Run scenarios from a group")
             .withRequiredArg()
             .ofType(String.class);
+        ArgumentAcceptingOptionSpec<String> interleaveOption = parser.accepts("interleave",
+                "Run the builds of all scenarios in turns, each scenario with its own copy of the project and Gradle user home, in the given order (" + Stream.of(InterleavedBuilds.Order.values()).map(InterleavedBuilds.Order::toString).collect(Collectors.joining(", ")) + ")")
+            .withRequiredArg();
+        ArgumentAcceptingOptionSpec<Integer> parallelScenariosOption = parser.accepts("parallel-scenarios", "Maximum number of scenarios to run at the same time, each with its own copy of the project and Gradle user home")
+            .withRequiredArg()
+            .ofType(Integer.class)
+            .defaultsTo(1);
 
         OptionSet parsedOptions;
         try {
@@ -147,13 +184,81 @@ public InvocationSettings parseSettings(String[] args) throws IOException, Setti
         }
         Profiler profiler = profilerFactory.createFromOptions(parsedOptions);
         boolean generateDiffs = !parsedOptions.has(noDifferentialFlamegraphOption) && hasProfiler && profiler.isCreatesStacksFiles();
+        String diffBaseline = parsedOptions.valueOf(diffBaselineOption);
+        if (diffBaseline != null && parsedOptions.has(noDifferentialFlamegraphOption)) {
+            return fail(parser, "Cannot use both --no-diffs and --diff-baseline.");
+        }
         boolean singleShot = parsedOptions.has(singleShotOption);
         boolean benchmark = parsedOptions.has(benchmarkOption);
         boolean dumpScenarios = parsedOptions.has(dumpScenariosOption);
-        if (!benchmark && !hasProfiler && !dumpScenarios) {
+        boolean trends = parsedOptions.has(trendsOption);
+        if (!benchmark && !hasProfiler && !dumpScenarios && !trends) {
             return fail(parser, "Neither --profile or --benchmark specified.");
         }
 
+        int parallelScenarios = parsedOptions.valueOf(parallelScenariosOption);
+        if (parallelScenarios < 1) {
+            return fail(parser, "--parallel-scenarios must be at least 1.");
+        }
+        if (parallelScenarios > 1 && hasProfiler) {
+            return fail(parser, "Cannot use both --parallel-scenarios and --profile.");
+        }
+
+        InterleavedBuilds.Order interleave = null;
+        if (parsedOptions.has(interleaveOption)) {
+            try {
+                interleave = InterleavedBuilds.Order.parse(parsedOptions.valueOf(interleaveOption));
+            } catch (IllegalArgumentException e) {
+                return fail(parser, e.getMessage() + ".");
+            }
+            if (!benchmark || hasProfiler) {
+                return fail(parser, "Can only use --interleave with --benchmark and without --profile.");
+            }
+            if (parallelScenarios > 1) {
+                return fail(parser, "Cannot use both --interleave and --parallel-scenarios.");
+            }
+        }
+
+        Double targetError = null;
+        if (parsedOptions.has(targetErrorOption)) {
+            double targetErrorPercentage = parsedOptions.valueOf(targetErrorOption);
+            if (targetErrorPercentage <= 0) {
+                return fail(parser, "--target-error must be greater than 0.");
+            }
+            if (!benchmark || hasProfiler) {
+                return fail(parser, "Can only use --target-error with --benchmark and without --profile.");
+            }
+            if (singleShot) {
+                return fail(parser, "Cannot use both --single-shot and --target-error.");
+            }
+            targetError = targetErrorPercentage / 100;
+        }
+
+        String baseline = parsedOptions.valueOf(baselineOption);
+        Double failOnRegression = null;
+        if (parsedOptions.has(failOnRegressionOption)) {
+            double failOnRegressionPercentage = parsedOptions.valueOf(failOnRegressionOption);
+            if (failOnRegressionPercentage < 0) {
+                return fail(parser, "--fail-on-regression must not be negative.");
+            }
+            failOnRegression = failOnRegressionPercentage / 100;
+        }
+        if ((baseline != null || failOnRegression != null) && !benchmark) {
+            return fail(parser, "Can only use --baseline and --fail-on-regression with --benchmark.");
+        }
+
+        File historyDir = toAbsoluteFileOrNull(parsedOptions.valueOf(historyDirOption));
+        if (historyDir != null && !benchmark && !trends) {
+            return fail(parser, "Can only use --history-dir with --benchmark or --trends.");
+        }
+        if (trends && historyDir == null) {
+            return fail(parser, "--trends requires a history directory (--history-dir).");
+        }
+        int trendRuns = parsedOptions.valueOf(trendRunsOption);
+        if (trendRuns < 2) {
+            return fail(parser, "--trend-runs must be at least 2.");
+        }
+
         if (singleShot) {
             if (parsedOptions.has(warmupsOption)) {
                 return fail(parser, "Cannot use both --single-shot and --warmups.");
@@ -163,13 +268,38 @@ public InvocationSettings parseSettings(String[] args) throws IOException, Setti
             }
         }
 
-        File outputDir = toAbsoluteFileOrElse(parsedOptions.valueOf(outputDirOption), this::findOutputDir);
+        boolean resume = parsedOptions.has(resumeOption);
+        File outputDir;
+        if (resume) {
+            outputDir = toAbsoluteFileOrNull(parsedOptions.valueOf(resumeOption));
+            if (parsedOptions.has(outputDirOption) && !outputDir.equals(toAbsoluteFileOrNull(parsedOptions.valueOf(outputDirOption)))) {
+                return fail(parser, "Cannot use --resume with a different --output-dir.");
+            }
+            if (!benchmark) {
+                return fail(parser, "Can only use --resume with --benchmark.");
+            }
+            if (!outputDir.isDirectory()) {
+                return fail(parser, "Cannot resume from " + outputDir + " as it is not a directory.");
+            }
+        } else {
+            outputDir = toAbsoluteFileOrElse(parsedOptions.valueOf(outputDirOption), this::findOutputDir);
+        }
         File gradleUserHome = toAbsoluteFileOrNull(parsedOptions.valueOf(gradleUserHomeOption));
         Integer warmups = singleShot ? 0 : parsedOptions.valueOf(warmupsOption);
         Integer iterations = singleShot ? 1 : parsedOptions.valueOf(iterationsOption);
         boolean measureGarbageCollection = parsedOptions.has(measureGarbageCollectionOption);
         boolean measureLocalBuildCache = parsedOptions.has(measureLocalBuildCacheOption);
         boolean measureConfig = parsedOptions.has(measureConfigTimeOption);
+        boolean measureResources = parsedOptions.has(measureResourcesOption);
+        boolean measureProcessTree = parsedOptions.has(measureProcessTreeOption);
+        int resourceSamplingIntervalMillis = parsedOptions.valueOf(resourceSamplingIntervalOption);
+        if (resourceSamplingIntervalMillis < 10) {
+            return fail(parser, "--resource-sampling-interval must be at least 10.");
+        }
+        if (parsedOptions.has(resourceSamplingIntervalOption) && !measureResources && !measureProcessTree) {
+            return fail(parser, "Can only use --resource-sampling-interval with --measure-resources or --measure-process-tree.");
+        }
+        Duration resourceSamplingInterval = Duration.ofMillis(resourceSamplingIntervalMillis);
         boolean buildOperationsTrace = parsedOptions.has(buildOpsTraceOption);
 
         List<BuildOperationMeasurement> buildOperationMeasurements = parsedOptions.valuesOf(measuredBuildOps);
@@ -234,6 +364,7 @@ public InvocationSettings parseSettings(String[] args) throws IOException, Setti
             .setProjectDir(projectDir)
             .setProfiler(profiler)
             .setGenerateDiffs(generateDiffs)
+            .setDiffBaseline(diffBaseline)
             .setBenchmark(benchmark)
             .setSingleShot(singleShot)
             .setOutputDir(outputDir)
@@ -252,11 +383,22 @@ public InvocationSettings parseSettings(String[] args) throws IOException, Setti
             .setMeasureGarbageCollection(measureGarbageCollection)
             .setMeasureLocalBuildCache(measureLocalBuildCache)
             .setMeasureConfigTime(measureConfig)
+            .setResourceSamplingInterval(measureResources ? resourceSamplingInterval : null)
+            .setProcessTreeSamplingInterval(measureProcessTree ? resourceSamplingInterval : null)
             .setBuildOperationMeasurements(buildOperationMeasurements)
             .setBuildOperationsTrace(buildOperationsTrace)
             .setCsvFormat(csvFormat)
             .setBenchmarkTitle(benchmarkTitle)
             .setScenarioGroup(scenarioGroup)
+            .setParallelScenarios(parallelScenarios)
+            .setInterleave(interleave)
+            .setResume(resume)
+            .setTargetError(targetError)
+            .setBaseline(baseline)
+            .setFailOnRegression(failOnRegression)
+            .setHistoryDir(historyDir)
+            .setTrends(trends)
+            .setTrendRuns(trendRuns)
             .build();
     }
 
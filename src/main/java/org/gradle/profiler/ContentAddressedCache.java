@@ -0,0 +1,67 @@
+package org.gradle.profiler;
+
+import com.google.common.hash.Hashing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Stores files under a name derived from their content, so that the same content always ends up at the same path, across scenarios and runs.
+ * This keeps the init scripts and the classpath injected into the build identical, so that Gradle can reuse its compiled scripts and class loaders.
+ */
+public class ContentAddressedCache {
+    private static final ContentAddressedCache DEFAULT = new ContentAddressedCache(Paths.get(System.getProperty("user.home"), ".gradle-profiler-dist", "cache"));
+
+    private final Path directory;
+
+    public ContentAddressedCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * The cache in {@code ~/.gradle-profiler-dist/cache}, which is shared by all invocations of the profiler.
+     */
+    public static ContentAddressedCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns a file with the given content, named {@code <prefix>-<hash of content><suffix>}. A file stored earlier with the same content is reused.
+     */
+    public File store(String prefix, String suffix, byte[] content) {
+        String hash = Hashing.sha256().hashBytes(content).toString().substring(0, 32);
+        Path file = directory.resolve(prefix + "-" + hash + suffix);
+        if (Files.isRegularFile(file)) {
+            return file.toFile();
+        }
+        try {
+            Files.createDirectories(directory);
+            // Other invocations of the profiler can store the same file at the same time, so only complete files are moved into place
+            Path tempFile = Files.createTempFile(directory, prefix, suffix + ".tmp");
+            try {
+                Files.write(tempFile, content);
+                try {
+                    Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException e) {
+                    // Some file systems do not replace a file that another invocation has just stored
+                    if (!Files.isRegularFile(file)) {
+                        throw e;
+                    }
+                }
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not store " + file, e);
+        }
+        return file.toFile();
+    }
+}
@@ -16,36 +16,37 @@
 package org.gradle.profiler;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
+/**
+ * An init script that is generated on first use. It is stored in the {@link ContentAddressedCache}, so that the same contents always
+ * end up at the same path and Gradle can reuse the compiled script. The contents must therefore not depend on the run, values that do are
+ * passed to the build as system properties instead.
+ */
 public abstract class GeneratedInitScript implements GradleArgsCalculator {
-    private final File initScript;
-    private boolean generated;
-
-    public GeneratedInitScript() {
-        try {
-            initScript = File.createTempFile("gradleProfiler" + getClass().getSimpleName(), ".gradle").getCanonicalFile();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        initScript.deleteOnExit();
-    }
+    private File initScript;
 
     protected abstract void writeContents(PrintWriter writer);
 
     private void maybeGenerateInitScript() {
-        if (generated) {
+        if (initScript != null) {
             return;
         }
-        try (PrintWriter writer = new PrintWriter(new FileWriter(initScript))) {
+        StringWriter contents = new StringWriter();
+        try (PrintWriter writer = new PrintWriter(contents)) {
             writeContents(writer);
+        }
+        try {
+            initScript = ContentAddressedCache.getDefault()
+                .store("gradleProfiler" + getClass().getSimpleName(), ".gradle", contents.toString().getBytes(StandardCharsets.UTF_8))
+                .getCanonicalFile();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        generated = true;
     }
 
     @Override
@@ -0,0 +1,168 @@
+package org.gradle.profiler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Lets several scenarios take turns running their builds, so that slow changes of the machine during a benchmark,
+ * such as thermal throttling, the state of the page cache or background load, affect all scenarios alike.
+ *
+ * <p>Each scenario runs in its own thread, with its own daemons, and only one build runs at a time. The builds run in rounds,
+ * where each scenario that has not finished runs one build. All scenarios complete their warm-up builds before the first measured build runs.
+ * The scenarios run in the same order in every round, or in a new random order for each round. The random orders use a fixed seed,
+ * so an invocation with the same scenarios runs the builds in the same order.</p>
+ *
+ * <p>The next build is chosen once every scenario waits for its next build or has finished, so the preparation of a scenario
+ * never runs at the same time as a build of another scenario.</p>
+ */
+public class InterleavedBuilds {
+    private static final long SEED = 0x5EED;
+
+    public enum Order {
+        ROUND_ROBIN, RANDOM;
+
+        public static Order parse(String name) {
+            for (Order order : values()) {
+                if (order.toString().equals(name)) {
+                    return order;
+                }
+            }
+            throw new IllegalArgumentException("Unknown interleaving order: " + name);
+        }
+
+        @Override
+        public String toString() {
+            return name().toLowerCase().replace('_', '-');
+        }
+    }
+
+    private final Order order;
+    private final Random random = new Random(SEED);
+    private final List<Participant> participants = new ArrayList<>();
+    private final List<Participant> roundOrder = new ArrayList<>();
+    private final Set<Participant> servedInRound = new HashSet<>();
+    private Phase roundPhase;
+    private Participant current;
+
+    public InterleavedBuilds(Order order) {
+        this.order = order;
+    }
+
+    /**
+     * Adds a scenario to the rotation. All scenarios must join before any of them requests a build.
+     *
+     * @param description the description of the scenario printed before each of its builds
+     */
+    public synchronized BuildTurns join(String description) {
+        Participant participant = new Participant(description);
+        participants.add(participant);
+        return participant;
+    }
+
+    private void schedule() {
+        if (current != null) {
+            return;
+        }
+        Phase phase = null;
+        for (Participant participant : participants) {
+            if (participant.finished) {
+                continue;
+            }
+            if (participant.requested == null) {
+                // Still preparing or cleaning up
+                return;
+            }
+            if (phase == null || participant.requested == Phase.WARM_UP) {
+                phase = participant.requested;
+            }
+        }
+        if (phase == null) {
+            return;
+        }
+        if (phase != roundPhase) {
+            startRound(phase);
+        }
+        Participant next = nextInRound(phase);
+        if (next == null) {
+            startRound(phase);
+            next = nextInRound(phase);
+        }
+        servedInRound.add(next);
+        current = next;
+        notifyAll();
+    }
+
+    private void startRound(Phase phase) {
+        roundPhase = phase;
+        servedInRound.clear();
+        roundOrder.clear();
+        roundOrder.addAll(participants);
+        if (order == Order.RANDOM) {
+            Collections.shuffle(roundOrder, random);
+        }
+    }
+
+    private Participant nextInRound(Phase phase) {
+        for (Participant participant : roundOrder) {
+            if (!participant.finished && participant.requested == phase && !servedInRound.contains(participant)) {
+                return participant;
+            }
+        }
+        return null;
+    }
+
+    private class Participant implements BuildTurns {
+        private final String description;
+        private Phase requested;
+        private boolean finished;
+
+        Participant(String description) {
+            this.description = description;
+        }
+
+        @Override
+        public void await(BuildContext buildContext) {
+            synchronized (InterleavedBuilds.this) {
+                requested = buildContext.getPhase();
+                schedule();
+                try {
+                    while (current != this) {
+                        InterleavedBuilds.this.wait();
+                    }
+                } catch (InterruptedException e) {
+                    requested = null;
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+                requested = null;
+            }
+            Logging.startOperation("Running scenario " + description);
+        }
+
+        @Override
+        public void release() {
+            synchronized (InterleavedBuilds.this) {
+                if (current == this) {
+                    current = null;
+                }
+                schedule();
+            }
+        }
+
+        @Override
+        public void finish() {
+            synchronized (InterleavedBuilds.this) {
+                finished = true;
+                requested = null;
+                if (current == this) {
+                    current = null;
+                }
+                schedule();
+            }
+        }
+    }
+}
@@ -8,6 +8,7 @@
 import javax.annotation.Nullable;
 import java.io.File;
 import java.io.PrintStream;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -16,6 +17,7 @@ public class InvocationSettings {
     private final File projectDir;
     private final Profiler profiler;
     private final boolean generateDiffs;
+    private final String diffBaseline;
     private final boolean benchmark;
     private final boolean singleShot;
     private final boolean dryRun;
@@ -34,11 +36,22 @@ public class InvocationSettings {
     private final boolean measureGarbageCollection;
     private final boolean measureLocalBuildCache;
     private final boolean measureConfigTime;
+    private final Duration resourceSamplingInterval;
+    private final Duration processTreeSamplingInterval;
     private final List<BuildOperationMeasurement> buildOperationMeasurements;
     private final boolean buildOperationsTrace;
     private final Format csvFormat;
     private final String benchmarkTitle;
     private final String scenarioGroup;
+    private final int parallelScenarios;
+    private final InterleavedBuilds.Order interleave;
+    private final boolean resume;
+    private final Double targetError;
+    private final String baseline;
+    private final Double failOnRegression;
+    private final File historyDir;
+    private final boolean trends;
+    private final int trendRuns;
     /**
      * The log file which the build should write stdout and stderr to.
      * If {@code null}, the stdout and stderr are stored in memory.
@@ -51,6 +64,7 @@ private InvocationSettings(
         File projectDir,
         Profiler profiler,
         boolean generateDiffs,
+        String diffBaseline,
         boolean benchmark,
         boolean singleShot,
         File outputDir,
@@ -69,11 +83,22 @@ private InvocationSettings(
         boolean measureGarbageCollection,
         boolean measureLocalBuildCache,
         boolean measureConfigTime,
+        @Nullable Duration resourceSamplingInterval,
+        @Nullable Duration processTreeSamplingInterval,
         List<BuildOperationMeasurement> buildOperationMeasurements,
         boolean buildOperationsTrace,
         Format csvFormat,
         String benchmarkTitle,
         String scenarioGroup,
+        int parallelScenarios,
+        InterleavedBuilds.Order interleave,
+        boolean resume,
+        Double targetError,
+        String baseline,
+        Double failOnRegression,
+        File historyDir,
+        boolean trends,
+        int trendRuns,
         File buildLog
     ) {
         this.benchmark = benchmark;
@@ -81,6 +106,7 @@ private InvocationSettings(
         this.projectDir = projectDir;
         this.profiler = profiler;
         this.generateDiffs = generateDiffs;
+        this.diffBaseline = diffBaseline;
         this.outputDir = outputDir;
         this.invoker = invoker;
         this.dryRun = dryRun;
@@ -97,11 +123,22 @@ private InvocationSettings(
         this.measureGarbageCollection = measureGarbageCollection;
         this.measureLocalBuildCache = measureLocalBuildCache;
         this.measureConfigTime = measureConfigTime;
+        this.resourceSamplingInterval = resourceSamplingInterval;
+        this.processTreeSamplingInterval = processTreeSamplingInterval;
         this.buildOperationMeasurements = buildOperationMeasurements;
         this.buildOperationsTrace = buildOperationsTrace;
         this.csvFormat = csvFormat;
         this.benchmarkTitle = benchmarkTitle;
         this.scenarioGroup = scenarioGroup;
+        this.parallelScenarios = parallelScenarios;
+        this.interleave = interleave;
+        this.resume = resume;
+        this.targetError = targetError;
+        this.baseline = baseline;
+        this.failOnRegression = failOnRegression;
+        this.historyDir = historyDir;
+        this.trends = trends;
+        this.trendRuns = trendRuns;
         this.buildLog = buildLog;
     }
 
@@ -158,6 +195,15 @@ public boolean isGenerateDiffs() {
         return generateDiffs;
     }
 
+    /**
+     * The scenario or version to compare all others with when generating differential flame graphs, if specified via --diff-baseline.
+     * When not set, each scenario is compared with each other scenario.
+     */
+    @Nullable
+    public String getDiffBaseline() {
+        return diffBaseline;
+    }
+
     public File getScenarioFile() {
         return scenarioFile;
     }
@@ -209,6 +255,30 @@ public boolean isMeasureConfigTime() {
         return measureConfigTime;
     }
 
+    public boolean isMeasureResources() {
+        return resourceSamplingInterval != null;
+    }
+
+    /**
+     * The interval at which the resources used by the daemon are sampled, as specified via --measure-resources, or {@code null} when they are not measured.
+     */
+    @Nullable
+    public Duration getResourceSamplingInterval() {
+        return resourceSamplingInterval;
+    }
+
+    public boolean isMeasureProcessTree() {
+        return processTreeSamplingInterval != null;
+    }
+
+    /**
+     * The interval at which the processes of each build are sampled, as specified via --measure-process-tree, or {@code null} when they are not measured.
+     */
+    @Nullable
+    public Duration getProcessTreeSamplingInterval() {
+        return processTreeSamplingInterval;
+    }
+
     public List<BuildOperationMeasurement> getBuildOperationMeasurements() {
         return buildOperationMeasurements;
     }
@@ -239,6 +309,77 @@ public String getScenarioGroup() {
         return scenarioGroup;
     }
 
+    /**
+     * The maximum number of scenarios to run at the same time, as specified via --parallel-scenarios.
+     */
+    public int getParallelScenarios() {
+        return parallelScenarios;
+    }
+
+    /**
+     * The order in which the builds of the scenarios take turns, as specified via --interleave, or {@code null} when the scenarios run one after another.
+     */
+    @Nullable
+    public InterleavedBuilds.Order getInterleave() {
+        return interleave;
+    }
+
+    /**
+     * Whether to resume an earlier invocation that wrote to the same output directory, as specified via --resume.
+     */
+    public boolean isResume() {
+        return resume;
+    }
+
+    /**
+     * The relative error of the median build time to measure each scenario with, as specified via --target-error.
+     * When {@code null}, each scenario runs a fixed number of warm-up and measured builds.
+     */
+    @Nullable
+    public Double getTargetError() {
+        return targetError;
+    }
+
+    /**
+     * The display name or name of the scenario to compare the other scenarios with, as specified via --baseline.
+     * When {@code null}, the first scenario is the baseline.
+     */
+    @Nullable
+    public String getBaseline() {
+        return baseline;
+    }
+
+    /**
+     * The relative slowdown of the median compared to the baseline above which a statistically significant difference fails the invocation,
+     * as specified via --fail-on-regression. When {@code null}, regressions do not fail the invocation.
+     */
+    @Nullable
+    public Double getFailOnRegression() {
+        return failOnRegression;
+    }
+
+    /**
+     * The directory of the history of benchmark results, as specified via --history-dir, or {@code null} when the results are not recorded.
+     */
+    @Nullable
+    public File getHistoryDir() {
+        return historyDir;
+    }
+
+    /**
+     * Whether to render the trends of the results recorded in the history directory, instead of running scenarios.
+     */
+    public boolean isTrends() {
+        return trends;
+    }
+
+    /**
+     * The number of most recent runs of each scenario to include in the trends.
+     */
+    public int getTrendRuns() {
+        return trendRuns;
+    }
+
     public UUID getInvocationId() {
         return invocationId;
     }
@@ -248,6 +389,7 @@ public InvocationSettingsBuilder newBuilder() {
             .setProjectDir(projectDir)
             .setProfiler(profiler)
             .setGenerateDiffs(generateDiffs)
+            .setDiffBaseline(diffBaseline)
             .setBenchmark(benchmark)
             .setSingleShot(singleShot)
             .setDryRun(dryRun)
@@ -264,12 +406,24 @@ public InvocationSettingsBuilder newBuilder() {
             .setWarmupCount(warmupCount)
             .setIterations(iterations)
             .setMeasureGarbageCollection(measureGarbageCollection)
+            .setMeasureLocalBuildCache(measureLocalBuildCache)
             .setMeasureConfigTime(measureConfigTime)
+            .setResourceSamplingInterval(resourceSamplingInterval)
+            .setProcessTreeSamplingInterval(processTreeSamplingInterval)
             .setBuildOperationMeasurements(buildOperationMeasurements)
             .setBuildOperationsTrace(buildOperationsTrace)
             .setCsvFormat(csvFormat)
             .setBenchmarkTitle(benchmarkTitle)
             .setScenarioGroup(scenarioGroup)
+            .setParallelScenarios(parallelScenarios)
+            .setInterleave(interleave)
+            .setResume(resume)
+            .setTargetError(targetError)
+            .setBaseline(baseline)
+            .setFailOnRegression(failOnRegression)
+            .setHistoryDir(historyDir)
+            .setTrends(trends)
+            .setTrendRuns(trendRuns)
             .setBuildLog(buildLog);
     }
 
@@ -279,6 +433,9 @@ public void printTo(PrintStream out) {
         }
         out.println("Project dir: " + getProjectDir());
         out.println("Output dir: " + getOutputDir());
+        if (resume) {
+            out.println("Resuming: true");
+        }
         out.println("Profiler: " + getProfiler());
         out.println("Benchmark: " + isBenchmark());
         out.println("Versions: " + getVersions());
@@ -296,6 +453,30 @@ public void printTo(PrintStream out) {
         if (iterations != null) {
             out.println("Builds: " + iterations);
         }
+        if (resourceSamplingInterval != null) {
+            out.println("Resource sampling interval: " + resourceSamplingInterval.toMillis() + " ms");
+        }
+        if (processTreeSamplingInterval != null) {
+            out.println("Process tree sampling interval: " + processTreeSamplingInterval.toMillis() + " ms");
+        }
+        if (targetError != null) {
+            out.println("Target error: " + targetError * 100 + "%");
+        }
+        if (baseline != null) {
+            out.println("Baseline: " + baseline);
+        }
+        if (failOnRegression != null) {
+            out.println("Fail on regression: " + failOnRegression * 100 + "%");
+        }
+        if (historyDir != null) {
+            out.println("History dir: " + historyDir);
+        }
+        if (parallelScenarios > 1) {
+            out.println("Parallel scenarios: " + parallelScenarios);
+        }
+        if (interleave != null) {
+            out.println("Interleave: " + interleave);
+        }
         if (!getSystemProperties().isEmpty()) {
             out.println("System properties:");
             for (Map.Entry<String, String> entry : getSystemProperties().entrySet()) {
@@ -308,6 +489,7 @@ public static final class InvocationSettingsBuilder {
         private File projectDir;
         private Profiler profiler;
         private boolean generateDiffs;
+        private String diffBaseline;
         private boolean benchmark;
         private boolean singleShot;
         private boolean dryRun;
@@ -326,11 +508,22 @@ public static final class InvocationSettingsBuilder {
         private boolean measureGarbageCollection;
         private boolean measureLocalBuildCache;
         private boolean measureConfigTime;
+        private Duration resourceSamplingInterval;
+        private Duration processTreeSamplingInterval;
         private List<BuildOperationMeasurement> buildOperationMeasurements;
         private boolean buildOperationsTrace;
         private Format csvFormat;
         private String benchmarkTitle;
         private String scenarioGroup;
+        private int parallelScenarios = 1;
+        private InterleavedBuilds.Order interleave;
+        private boolean resume;
+        private Double targetError;
+        private String baseline;
+        private Double failOnRegression;
+        private File historyDir;
+        private boolean trends;
+        private int trendRuns = 30;
         private File buildLog;
 
         public InvocationSettingsBuilder setProjectDir(File projectDir) {
@@ -348,6 +541,11 @@ public InvocationSettingsBuilder setGenerateDiffs(boolean generateDiffs) {
             return this;
         }
 
+        public InvocationSettingsBuilder setDiffBaseline(@Nullable String diffBaseline) {
+            this.diffBaseline = diffBaseline;
+            return this;
+        }
+
         public InvocationSettingsBuilder setBenchmark(boolean benchmark) {
             this.benchmark = benchmark;
             return this;
@@ -438,6 +636,16 @@ public InvocationSettingsBuilder setMeasureConfigTime(boolean measureConfigTime)
             return this;
         }
 
+        public InvocationSettingsBuilder setResourceSamplingInterval(@Nullable Duration resourceSamplingInterval) {
+            this.resourceSamplingInterval = resourceSamplingInterval;
+            return this;
+        }
+
+        public InvocationSettingsBuilder setProcessTreeSamplingInterval(@Nullable Duration processTreeSamplingInterval) {
+            this.processTreeSamplingInterval = processTreeSamplingInterval;
+            return this;
+        }
+
         public InvocationSettingsBuilder setBuildOperationMeasurements(List<BuildOperationMeasurement> buildOperationMeasurements) {
             this.buildOperationMeasurements = buildOperationMeasurements;
             return this;
@@ -473,6 +681,63 @@ public InvocationSettingsBuilder setScenarioGroup(@Nullable String scenarioGroup
             return this;
         }
 
+        /**
+         * Sets the maximum number of scenarios to run at the same time. Defaults to 1.
+         */
+        public InvocationSettingsBuilder setParallelScenarios(int parallelScenarios) {
+            this.parallelScenarios = parallelScenarios;
+            return this;
+        }
+
+        /**
+         * Sets the order in which the builds of the scenarios take turns, or {@code null} to run the scenarios one after another.
+         */
+        public InvocationSettingsBuilder setInterleave(@Nullable InterleavedBuilds.Order interleave) {
+            this.interleave = interleave;
+            return this;
+        }
+
+        public InvocationSettingsBuilder setResume(boolean resume) {
+            this.resume = resume;
+            return this;
+        }
+
+        /**
+         * Sets the relative error of the median build time to measure each scenario with, or {@code null} to run a fixed number of builds.
+         */
+        public InvocationSettingsBuilder setTargetError(@Nullable Double targetError) {
+            this.targetError = targetError;
+            return this;
+        }
+
+        public InvocationSettingsBuilder setBaseline(@Nullable String baseline) {
+            this.baseline = baseline;
+            return this;
+        }
+
+        /**
+         * Sets the relative slowdown of the median above which a statistically significant regression fails the invocation, or {@code null} to never fail.
+         */
+        public InvocationSettingsBuilder setFailOnRegression(@Nullable Double failOnRegression) {
+            this.failOnRegression = failOnRegression;
+            return this;
+        }
+
+        public InvocationSettingsBuilder setHistoryDir(@Nullable File historyDir) {
+            this.historyDir = historyDir;
+            return this;
+        }
+
+        public InvocationSettingsBuilder setTrends(boolean trends) {
+            this.trends = trends;
+            return this;
+        }
+
+        public InvocationSettingsBuilder setTrendRuns(int trendRuns) {
+            this.trendRuns = trendRuns;
+            return this;
+        }
+
         public InvocationSettingsBuilder setBuildLog(File buildLog) {
             this.buildLog = buildLog;
             return this;
@@ -483,6 +748,7 @@ public InvocationSettings build() {
                 projectDir,
                 profiler,
                 generateDiffs,
+                diffBaseline,
                 benchmark,
                 singleShot,
                 outputDir,
@@ -501,11 +767,22 @@ public InvocationSettings build() {
                 measureGarbageCollection,
                 measureLocalBuildCache,
                 measureConfigTime,
+                resourceSamplingInterval,
+                processTreeSamplingInterval,
                 buildOperationMeasurements,
                 buildOperationsTrace,
                 csvFormat,
                 benchmarkTitle,
                 scenarioGroup,
+                parallelScenarios,
+                interleave,
+                resume,
+                targetError,
+                baseline,
+                failOnRegression,
+                historyDir,
+                trends,
+                trendRuns,
                 buildLog
             );
         }
@@ -32,9 +32,18 @@ public static void resetLogging() throws IOException {
      * @param outputDir
      */
     public static void setupLogging(File outputDir) throws IOException {
+        setupLogging(outputDir, false);
+    }
+
+    /**
+     * Routes System.out to log file.
+     * @param outputDir
+     * @param append whether to append to an existing log file, e.g. when resuming an invocation
+     */
+    public static void setupLogging(File outputDir, boolean append) throws IOException {
         outputDir.mkdirs();
         File logFile = new File(outputDir, "profile.log");
-        log = new BufferedOutputStream(new FileOutputStream(logFile));
+        log = new BufferedOutputStream(new FileOutputStream(logFile, append));
         detail = new PrintStream(log, true);
         PrintStream output = new PrintStream(new TeeOutputStream(System.out, detail));
         System.setOut(output);
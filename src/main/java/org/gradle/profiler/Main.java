@@ -1,34 +1,34 @@
 package org.gradle.profiler;
 
-import org.gradle.profiler.bazel.BazelScenarioDefinition;
-import org.gradle.profiler.bazel.BazelScenarioInvoker;
-import org.gradle.profiler.buck.BuckScenarioDefinition;
-import org.gradle.profiler.buck.BuckScenarioInvoker;
 import org.gradle.profiler.flamegraph.DifferentialStacksGenerator;
 import org.gradle.profiler.flamegraph.FlameGraphGenerator;
 import org.gradle.profiler.flamegraph.Stacks;
 import org.gradle.profiler.gradle.DaemonControl;
 import org.gradle.profiler.gradle.DefaultGradleBuildConfigurationReader;
-import org.gradle.profiler.gradle.GradleScenarioDefinition;
-import org.gradle.profiler.gradle.GradleScenarioInvoker;
-import org.gradle.profiler.instrument.PidInstrumentation;
-import org.gradle.profiler.maven.MavenScenarioDefinition;
-import org.gradle.profiler.maven.MavenScenarioInvoker;
+import org.gradle.profiler.history.HistoryGenerator;
+import org.gradle.profiler.history.HistoryStore;
+import org.gradle.profiler.history.TrendReport;
+import org.gradle.profiler.report.BaselineComparison;
+import org.gradle.profiler.report.BenchmarkResultLog;
 import org.gradle.profiler.report.CsvGenerator;
 import org.gradle.profiler.report.HtmlGenerator;
 import org.gradle.profiler.report.JsonGenerator;
-import org.gradle.profiler.result.BuildInvocationResult;
-import org.gradle.profiler.result.SampleProvider;
+import org.gradle.profiler.result.RecordedBuildInvocationResult;
 import org.gradle.profiler.ide.invoker.IdeGradleScenarioDefinition;
-import org.gradle.profiler.ide.invoker.IdeGradleScenarioInvoker;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.function.Consumer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 public class Main {
@@ -56,11 +56,15 @@ public void run(String[] args) throws Exception {
                 printScenariosConfigDump(settings);
                 return;
             }
+            if (settings.isTrends()) {
+                printTrends(settings);
+                return;
+            }
 
             System.out.println();
             System.out.println("* Writing results to " + settings.getOutputDir().getAbsolutePath());
 
-            Logging.setupLogging(settings.getOutputDir());
+            Logging.setupLogging(settings.getOutputDir(), settings.isResume());
 
             Logging.detailed().println();
             Logging.detailed().println("* Started at " + started);
@@ -73,62 +77,85 @@ public void run(String[] args) throws Exception {
             ScenarioLoader scenarioLoader = new ScenarioLoader(gradleBuildConfigurationReader);
             List<ScenarioDefinition> scenarios = scenarioLoader.loadScenarios(settings);
             int totalScenarios = scenarios.size();
+            if (settings.getBaseline() != null && scenarios.stream().noneMatch(scenario -> BaselineComparison.matches(scenario, settings.getBaseline()))) {
+                throw new IllegalArgumentException("Could not find baseline scenario '" + settings.getBaseline() + "'.");
+            }
+            if (settings.getDiffBaseline() != null && scenarios.stream().noneMatch(scenario -> DifferentialStacksGenerator.isExperiment(settings.getOutputDir(), scenario.getOutputDir(), ScenarioDefinition.safeFileName(settings.getDiffBaseline())))) {
+                throw new IllegalArgumentException("Could not find scenario or Gradle version '" + settings.getDiffBaseline() + "' to use as differential flame graph baseline.");
+            }
 
             logScenarios(scenarios);
 
             File cvsFile = new File(settings.getOutputDir(), "benchmark.csv");
             File htmlFile = new File(settings.getOutputDir(), "benchmark.html");
             File jsonFile = new File(settings.getOutputDir(), "benchmark.json");
-            BenchmarkResultCollector benchmarkResults = new BenchmarkResultCollector(new CsvGenerator(cvsFile, settings.getCsvFormat()), new HtmlGenerator(htmlFile), new JsonGenerator(jsonFile));
-            PidInstrumentation pidInstrumentation = new PidInstrumentation();
-
-
-            GradleScenarioInvoker gradleScenarioInvoker = new GradleScenarioInvoker(daemonControl, pidInstrumentation);
-            IdeGradleScenarioInvoker ideGradleScenarioInvoker = new IdeGradleScenarioInvoker(gradleScenarioInvoker);
-            BazelScenarioInvoker bazelScenarioInvoker = new BazelScenarioInvoker();
-            BuckScenarioInvoker buckScenarioInvoker = new BuckScenarioInvoker();
-            MavenScenarioInvoker mavenScenarioInvoker = new MavenScenarioInvoker();
-
-            List<Throwable> failures = new ArrayList<>();
-            int scenarioCount = 0;
-
-            for (ScenarioDefinition scenario : scenarios) {
-                scenarioCount++;
-                Logging.startOperation("Running scenario " + scenario.getDisplayName() + " (scenario " + scenarioCount + "/" + totalScenarios + ")");
-                if (scenario instanceof BazelScenarioDefinition) {
-                    invoke(bazelScenarioInvoker, (BazelScenarioDefinition) scenario, settings, benchmarkResults, failures);
-                } else if (scenario instanceof BuckScenarioDefinition) {
-                    invoke(buckScenarioInvoker, (BuckScenarioDefinition) scenario, settings, benchmarkResults, failures);
-                } else if (scenario instanceof MavenScenarioDefinition) {
-                    invoke(mavenScenarioInvoker, (MavenScenarioDefinition) scenario, settings, benchmarkResults, failures);
-                } else if (scenario instanceof IdeGradleScenarioDefinition) {
-                    invoke(ideGradleScenarioInvoker, (IdeGradleScenarioDefinition) scenario, settings, benchmarkResults, failures);
-                } else if (scenario instanceof GradleScenarioDefinition) {
-                    invoke(gradleScenarioInvoker, (GradleScenarioDefinition) scenario, settings, benchmarkResults, failures);
+            // Every result is appended to the log as soon as it is available, the reports are only rendered at the end
+            BenchmarkResultLog resultLog = settings.isBenchmark() ? new BenchmarkResultLog(new File(settings.getOutputDir(), "benchmark-results.jsonl"), settings.isResume()) : null;
+            BenchmarkResultCollector benchmarkResults = new BenchmarkResultCollector(resultLog, new CsvGenerator(cvsFile, settings.getCsvFormat()), new HtmlGenerator(htmlFile), new JsonGenerator(jsonFile));
+            HistoryGenerator historyGenerator = settings.isBenchmark() && settings.getHistoryDir() != null ? new HistoryGenerator(settings.getHistoryDir()) : null;
+            benchmarkResults.expectScenarios(scenarios);
+
+            List<Integer> pendingScenarios = new ArrayList<>();
+            for (int index = 0; index < totalScenarios; index++) {
+                ScenarioDefinition scenario = scenarios.get(index);
+                List<RecordedBuildInvocationResult> recordedResults = settings.isResume() ? resultLog.restore(scenario, StoppingRule.from(settings)) : Collections.emptyList();
+                if (recordedResults.isEmpty()) {
+                    pendingScenarios.add(index);
                 } else {
-                    throw new IllegalArgumentException("Don't know how to run scenario.");
+                    System.out.println("Skipping scenario " + scenario.getDisplayName() + " (scenario " + (index + 1) + "/" + totalScenarios + "), using the results recorded by an earlier invocation");
+                    benchmarkResults.restore(scenario, recordedResults);
+                }
+            }
+
+            List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+            int parallelScenarios = Math.min(settings.getParallelScenarios(), pendingScenarios.size());
+            InterleavedBuilds.Order interleave = pendingScenarios.size() > 1 ? settings.getInterleave() : null;
+            if ((parallelScenarios > 1 || interleave != null) && scenarios.stream().anyMatch(IdeGradleScenarioDefinition.class::isInstance)) {
+                System.out.println("IDE sync scenarios share the IDE sandbox, running scenarios one after another.");
+                parallelScenarios = 1;
+                interleave = null;
+            }
+
+            if (interleave != null) {
+                runInterleaved(interleave, scenarios, pendingScenarios, scenarioLoader, settings, benchmarkResults, failures);
+            } else if (parallelScenarios > 1) {
+                runInParallel(parallelScenarios, scenarios, pendingScenarios, scenarioLoader, settings, benchmarkResults, failures);
+            } else {
+                ScenarioWorker worker = new ScenarioWorker(settings, scenarios);
+                for (int index : pendingScenarios) {
+                    ScenarioDefinition scenario = scenarios.get(index);
+                    Logging.startOperation("Running scenario " + scenario.getDisplayName() + " (scenario " + (index + 1) + "/" + totalScenarios + ")");
+                    worker.run(index, scenario, benchmarkResults, failures);
                 }
             }
 
             if (settings.isBenchmark()) {
                 // Write the final results and generate the reports
                 // This overwrites the existing reports, so may leave them in a corrupted state if this process crashes during the generation.
+                // The result log still contains every result in that case.
                 benchmarkResults.write(settings);
+                if (historyGenerator != null) {
+                    benchmarkResults.appendTo(historyGenerator, settings);
+                }
             }
             if (settings.isGenerateDiffs() && scenarios.size() > 1) {
-                List<Stacks> stacks = new DifferentialStacksGenerator().generateDifferentialStacks(settings.getOutputDir());
+                String diffBaseline = settings.getDiffBaseline() == null ? null : ScenarioDefinition.safeFileName(settings.getDiffBaseline());
+                List<Stacks> stacks = new DifferentialStacksGenerator().generateDifferentialStacks(settings.getOutputDir(), diffBaseline);
                 new FlameGraphGenerator().generateDifferentialGraphs(stacks);
             }
 
             System.out.println();
             System.out.println("* Results written to " + settings.getOutputDir().getAbsolutePath());
             printResultFileSummaries(settings.getOutputDir(), settings.getProfiler());
-            printReportSummary(settings, benchmarkResults);
+            printReportSummary(settings, benchmarkResults, historyGenerator);
 
             if (!failures.isEmpty()) {
                 throw new ScenarioFailedException(failures.get(0));
             }
-        } catch (CommandLineParser.SettingsNotAvailableException | ScenarioFailedException e) {
+            if (settings.isBenchmark() && settings.getFailOnRegression() != null) {
+                checkForRegressions(settings, benchmarkResults);
+            }
+        } catch (CommandLineParser.SettingsNotAvailableException | ScenarioFailedException | RegressionDetectedException e) {
             // Reported already
             throw e;
         } catch (Exception e) {
@@ -149,28 +176,101 @@ private static void printScenariosConfigDump(InvocationSettings settings) {
         System.out.print(output);
     }
 
-    private <S extends ScenarioDefinition, R extends BuildInvocationResult> void invoke(ScenarioInvoker<S, R> invoker, S scenario, InvocationSettings settings, BenchmarkResultCollector benchmarkResults, List<Throwable> failures) throws IOException {
+    private static void printTrends(InvocationSettings settings) throws IOException {
+        HistoryStore store = new HistoryStore(settings.getHistoryDir());
+        TrendReport report = TrendReport.from(store.read(), settings.getTrendRuns());
+        System.out.println("* Trends of the last " + settings.getTrendRuns() + " runs recorded in " + store.getHistoryFile().getAbsolutePath());
+        report.printTo(System.out);
+        File trendsFile = new File(settings.getHistoryDir(), TrendReport.TRENDS_FILE_NAME);
+        report.writeHtml(trendsFile);
+        System.out.println();
+        System.out.println("* Trends written to " + trendsFile.getAbsolutePath());
+    }
+
+    private static void runInterleaved(InterleavedBuilds.Order order, List<ScenarioDefinition> scenarios, List<Integer> pendingScenarios, ScenarioLoader scenarioLoader, InvocationSettings settings, BenchmarkResultCollector benchmarkResults, List<Throwable> failures) throws Exception {
+        Logging.startOperation("Preparing " + pendingScenarios.size() + " workers to run the builds of the scenarios in turns (" + order + ")");
+        // Each scenario gets its own worker, so that its daemons stay warm and its mutators do not change the files of the other scenarios
+        InterleavedBuilds interleavedBuilds = new InterleavedBuilds(order);
+        List<ScenarioWorker> workers = new ArrayList<>();
+        for (int worker = 1; worker <= pendingScenarios.size(); worker++) {
+            int scenarioIndex = pendingScenarios.get(worker - 1);
+            InvocationSettings workerSettings = ScenarioWorker.isolatedSettings(settings, worker);
+            List<ScenarioDefinition> workerScenarios = workerSettings == settings ? scenarios : scenarioLoader.loadScenarios(workerSettings);
+            BuildTurns buildTurns = interleavedBuilds.join(scenarios.get(scenarioIndex).getDisplayName() + " (scenario " + (scenarioIndex + 1) + "/" + scenarios.size() + ")");
+            workers.add(new ScenarioWorker(workerSettings, workerScenarios, buildTurns));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(workers.size());
         try {
-            SampleProvider<R> sampleProvider = invoker.samplesFor(settings, scenario);
-            Consumer<R> resultConsumer = benchmarkResults.scenario(scenario, sampleProvider);
-            invoker.run(scenario, settings, resultConsumer);
-        } catch (Throwable t) {
-            t.printStackTrace();
-            failures.add(t);
+            List<Future<?>> runs = new ArrayList<>();
+            for (int worker = 0; worker < workers.size(); worker++) {
+                int scenarioIndex = pendingScenarios.get(worker);
+                ScenarioWorker scenarioWorker = workers.get(worker);
+                runs.add(executor.submit(() -> {
+                    scenarioWorker.run(scenarioIndex, scenarios.get(scenarioIndex), benchmarkResults, failures);
+                    return null;
+                }));
+            }
+            for (Future<?> run : runs) {
+                run.get();
+            }
         } finally {
-            // Write the current results and generate the reports, so that if this process crashes the results (which may have taken quite some time to collect) are not lost.
-            // This overwrites the existing reports, so may leave them in a corrupted state if this process crashes during the generation.
-            // This is just intended to be a simple best effort solution
-            if (settings.isBenchmark()) {
-                benchmarkResults.write(settings);
+            executor.shutdown();
+        }
+    }
+
+    private static void runInParallel(int parallelScenarios, List<ScenarioDefinition> scenarios, List<Integer> pendingScenarios, ScenarioLoader scenarioLoader, InvocationSettings settings, BenchmarkResultCollector benchmarkResults, List<Throwable> failures) throws Exception {
+        Logging.startOperation("Preparing " + parallelScenarios + " workers to run scenarios in parallel");
+        // Each worker loads the scenarios with its own settings, so that mutators operate on the files of the worker
+        BlockingQueue<ScenarioWorker> idleWorkers = new ArrayBlockingQueue<>(parallelScenarios);
+        for (int worker = 1; worker <= parallelScenarios; worker++) {
+            InvocationSettings workerSettings = ScenarioWorker.isolatedSettings(settings, worker);
+            List<ScenarioDefinition> workerScenarios = workerSettings == settings ? scenarios : scenarioLoader.loadScenarios(workerSettings);
+            idleWorkers.add(new ScenarioWorker(workerSettings, workerScenarios));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(parallelScenarios);
+        try {
+            List<Future<?>> runs = new ArrayList<>();
+            for (int scenarioIndex : pendingScenarios) {
+                runs.add(executor.submit(() -> {
+                    ScenarioDefinition scenario = scenarios.get(scenarioIndex);
+                    ScenarioWorker worker = idleWorkers.take();
+                    try {
+                        Logging.startOperation("Running scenario " + scenario.getDisplayName() + " (scenario " + (scenarioIndex + 1) + "/" + scenarios.size() + ")");
+                        worker.run(scenarioIndex, scenario, benchmarkResults, failures);
+                    } finally {
+                        idleWorkers.add(worker);
+                    }
+                    return null;
+                }));
             }
+            for (Future<?> run : runs) {
+                run.get();
+            }
+        } finally {
+            executor.shutdown();
         }
     }
 
-    private void printReportSummary(InvocationSettings settings, BenchmarkResultCollector benchmarkResults) {
+    private void printReportSummary(InvocationSettings settings, BenchmarkResultCollector benchmarkResults, @Nullable HistoryGenerator historyGenerator) {
         if (settings.isBenchmark()) {
             benchmarkResults.summarizeResults(line -> System.out.println("  " + line));
         }
+        if (historyGenerator != null) {
+            System.out.println("  " + historyGenerator.getHistoryFile().getAbsolutePath());
+        }
+    }
+
+    private static void checkForRegressions(InvocationSettings settings, BenchmarkResultCollector benchmarkResults) {
+        List<String> regressions = benchmarkResults.findRegressions(settings.getBaseline(), settings.getFailOnRegression());
+        if (regressions.isEmpty()) {
+            return;
+        }
+        System.out.println();
+        System.out.println("* Performance regressions detected:");
+        for (String regression : regressions) {
+            System.out.println("  " + regression);
+        }
+        throw new RegressionDetectedException();
     }
 
     private void logScenarios(List<ScenarioDefinition> scenarios) {
@@ -204,4 +304,7 @@ public ScenarioFailedException(Throwable cause) {
             super(cause);
         }
     }
+
+    static class RegressionDetectedException extends RuntimeException {
+    }
 }
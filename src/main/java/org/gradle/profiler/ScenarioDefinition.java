@@ -1,6 +1,7 @@
 package org.gradle.profiler;
 
 import org.apache.commons.io.FileUtils;
+import org.gradle.profiler.process.ProcessTreeSampler;
 
 import javax.annotation.Nullable;
 import java.io.File;
@@ -108,6 +109,9 @@ public void printTo(PrintStream out) {
 
     public void visitProblems(InvocationSettings settings, Consumer<String> reporter) {
         settings.getProfiler().validate(new ScenarioSettings(settings, this), reporter);
+        if (settings.isMeasureProcessTree() && !ProcessTreeSampler.isSupported()) {
+            reporter.accept("Measuring the process tree is only supported on Linux");
+        }
     }
 
     protected void printDetail(PrintStream out) {
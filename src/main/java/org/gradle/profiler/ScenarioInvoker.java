@@ -2,12 +2,22 @@
 
 import com.google.common.collect.ImmutableList;
 import org.gradle.profiler.result.BuildInvocationResult;
+import org.gradle.profiler.result.Sample;
 import org.gradle.profiler.result.SampleProvider;
 
 import java.io.IOException;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public abstract class ScenarioInvoker<T extends ScenarioDefinition, R extends BuildInvocationResult> {
+    private BuildTurns buildTurns = BuildTurns.NONE;
+
+    /**
+     * Sets how the builds of this invoker take turns with the builds of other scenarios.
+     */
+    public void setBuildTurns(BuildTurns buildTurns) {
+        this.buildTurns = buildTurns;
+    }
 
     /**
      * Runs a scenario and collects the results.
@@ -18,7 +28,26 @@
      * Which samples will this invoker generate for the given settings?
      */
     public SampleProvider<R> samplesFor(InvocationSettings settings, T scenario) {
-        return results -> ImmutableList.of(BuildInvocationResult.EXECUTION_TIME);
+        return results -> {
+            ImmutableList.Builder<Sample<? super R>> builder = ImmutableList.builder();
+            builder.add(BuildInvocationResult.EXECUTION_TIME);
+            if (settings.isMeasureProcessTree()) {
+                builder.addAll(BuildInvocationResult.PROCESS_TREE_SAMPLES);
+            }
+            return builder.build();
+        };
+    }
+
+    /**
+     * Runs the given build, with its cleanup, once it is the turn of this scenario.
+     */
+    protected <B> B runInTurn(BuildContext buildContext, Supplier<B> build) {
+        buildTurns.await(buildContext);
+        try {
+            return build.get();
+        } finally {
+            buildTurns.release();
+        }
     }
 
     /**
@@ -169,6 +169,11 @@ class ScenarioLoader {
     private static final List<String> BUCK_KEYS = Arrays.asList(TARGETS, TYPE, TOOL_HOME);
     private static final List<String> MAVEN_KEYS = Arrays.asList(TARGETS, TOOL_HOME);
 
+    /**
+     * By how much the default number of builds is raised when they are only the maximum number of builds, see {@link InvocationSettings#getTargetError()}.
+     */
+    private static final int ADAPTIVE_MAX_BUILDS_FACTOR = 5;
+
     private final GradleBuildConfigurationReader gradleBuildConfigurationReader;
 
     public ScenarioLoader(GradleBuildConfigurationReader gradleBuildConfigurationReader) {
@@ -510,7 +515,8 @@ private static int getBuildCount(InvocationSettings settings, Integer providedVa
             return providedValue;
         }
         if (settings.isBenchmark()) {
-            return 10;
+            // With a target error, this is the maximum number of builds, so leave room for noisy scenarios
+            return settings.getTargetError() != null ? 10 * ADAPTIVE_MAX_BUILDS_FACTOR : 10;
         } else {
             return 1;
         }
@@ -540,7 +546,9 @@ private static int getWarmUpCount(InvocationSettings settings, BuildInvoker invo
             return providedValue;
         }
         if (settings.isBenchmark()) {
-            return invoker.benchmarkWarmUps();
+            int warmUps = invoker.benchmarkWarmUps();
+            // Invokers that do not warm up a daemon do not reach a steady state during warm-ups either
+            return settings.getTargetError() != null && warmUps > 1 ? warmUps * ADAPTIVE_MAX_BUILDS_FACTOR : warmUps;
         } else {
             return invoker.profileWarmUps();
         }
@@ -0,0 +1,143 @@
+package org.gradle.profiler;
+
+import com.google.common.collect.ImmutableSet;
+import org.apache.commons.io.FileUtils;
+import org.gradle.profiler.bazel.BazelScenarioDefinition;
+import org.gradle.profiler.bazel.BazelScenarioInvoker;
+import org.gradle.profiler.buck.BuckScenarioDefinition;
+import org.gradle.profiler.buck.BuckScenarioInvoker;
+import org.gradle.profiler.gradle.DaemonControl;
+import org.gradle.profiler.gradle.GradleScenarioDefinition;
+import org.gradle.profiler.gradle.GradleScenarioInvoker;
+import org.gradle.profiler.ide.invoker.IdeGradleScenarioDefinition;
+import org.gradle.profiler.ide.invoker.IdeGradleScenarioInvoker;
+import org.gradle.profiler.instrument.PidInstrumentation;
+import org.gradle.profiler.maven.MavenScenarioDefinition;
+import org.gradle.profiler.maven.MavenScenarioInvoker;
+import org.gradle.profiler.result.BuildInvocationResult;
+import org.gradle.profiler.result.SampleProvider;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Runs scenarios using its own Gradle user home, daemons and invokers, so that several workers can run scenarios at the same time.
+ */
+class ScenarioWorker {
+    private final InvocationSettings settings;
+    private final List<ScenarioDefinition> scenarios;
+    private final GradleScenarioInvoker gradleScenarioInvoker;
+    private final IdeGradleScenarioInvoker ideGradleScenarioInvoker;
+    private final BazelScenarioInvoker bazelScenarioInvoker = new BazelScenarioInvoker();
+    private final BuckScenarioInvoker buckScenarioInvoker = new BuckScenarioInvoker();
+    private final MavenScenarioInvoker mavenScenarioInvoker = new MavenScenarioInvoker();
+    private final BuildTurns buildTurns;
+
+    /**
+     * @param scenarios the scenarios loaded with the given settings
+     */
+    ScenarioWorker(InvocationSettings settings, List<ScenarioDefinition> scenarios) throws IOException {
+        this(settings, scenarios, BuildTurns.NONE);
+    }
+
+    /**
+     * @param scenarios the scenarios loaded with the given settings
+     * @param buildTurns how the builds of this worker take turns with the builds of other workers
+     */
+    ScenarioWorker(InvocationSettings settings, List<ScenarioDefinition> scenarios, BuildTurns buildTurns) throws IOException {
+        this.settings = settings;
+        this.scenarios = scenarios;
+        this.buildTurns = buildTurns;
+        this.gradleScenarioInvoker = new GradleScenarioInvoker(new DaemonControl(settings.getGradleUserHome()), new PidInstrumentation());
+        this.ideGradleScenarioInvoker = new IdeGradleScenarioInvoker(gradleScenarioInvoker);
+        gradleScenarioInvoker.setBuildTurns(buildTurns);
+        bazelScenarioInvoker.setBuildTurns(buildTurns);
+        buckScenarioInvoker.setBuildTurns(buildTurns);
+        mavenScenarioInvoker.setBuildTurns(buildTurns);
+    }
+
+    /**
+     * Creates the settings for a worker of a parallel invocation.
+     *
+     * <p>The first worker uses the given settings. Every other worker gets its own copy of the project directory and of the Gradle user home,
+     * next to the output directory, so that its builds and daemons do not interfere with the builds of other workers.
+     * The results are still written to the output directory of each scenario.</p>
+     */
+    static InvocationSettings isolatedSettings(InvocationSettings settings, int worker) throws IOException {
+        if (worker == 1) {
+            return settings;
+        }
+        File outputDir = settings.getOutputDir().getAbsoluteFile();
+        File workersDir = new File(outputDir.getParentFile(), outputDir.getName() + "-workers");
+        File workerDir = new File(workersDir, "worker-" + worker);
+        File projectDir = new File(workerDir, "project");
+        File gradleUserHome = new File(workerDir, "gradle-user-home");
+        FileUtils.deleteDirectory(workerDir);
+
+        Logging.detailed().println("Copying project directory and Gradle user home for worker " + worker + " to " + workerDir);
+        File sourceGradleUserHome = settings.getGradleUserHome().getAbsoluteFile();
+        // The project directory and the other directories can be given as relative paths or contain '..', so compare normalized absolute paths
+        Set<Path> excludedFromProject = ImmutableSet.of(normalized(sourceGradleUserHome), normalized(outputDir), normalized(workersDir));
+        FileFilter projectFilter = file -> !excludedFromProject.contains(normalized(file));
+        FileUtils.copyDirectory(settings.getProjectDir(), projectDir, projectFilter);
+        if (sourceGradleUserHome.isDirectory()) {
+            // Daemon registries and logs belong to the daemons of the original Gradle user home
+            Path daemonDir = normalized(new File(sourceGradleUserHome, "daemon"));
+            FileUtils.copyDirectory(sourceGradleUserHome, gradleUserHome, file -> !normalized(file).equals(daemonDir));
+        }
+
+        return settings.newBuilder()
+            .setProjectDir(projectDir)
+            .setGradleUserHome(gradleUserHome)
+            .build();
+    }
+
+    private static Path normalized(File file) {
+        return file.toPath().toAbsolutePath().normalize();
+    }
+
+    /**
+     * Runs the scenario with the given index.
+     *
+     * @param reportedScenario the scenario to report the results for
+     */
+    void run(int index, ScenarioDefinition reportedScenario, BenchmarkResultCollector benchmarkResults, List<Throwable> failures) {
+        try {
+            runScenario(scenarios.get(index), reportedScenario, benchmarkResults, failures);
+        } finally {
+            buildTurns.finish();
+        }
+    }
+
+    private void runScenario(ScenarioDefinition scenario, ScenarioDefinition reportedScenario, BenchmarkResultCollector benchmarkResults, List<Throwable> failures) {
+        if (scenario instanceof BazelScenarioDefinition) {
+            invoke(bazelScenarioInvoker, (BazelScenarioDefinition) scenario, reportedScenario, benchmarkResults, failures);
+        } else if (scenario instanceof BuckScenarioDefinition) {
+            invoke(buckScenarioInvoker, (BuckScenarioDefinition) scenario, reportedScenario, benchmarkResults, failures);
+        } else if (scenario instanceof MavenScenarioDefinition) {
+            invoke(mavenScenarioInvoker, (MavenScenarioDefinition) scenario, reportedScenario, benchmarkResults, failures);
+        } else if (scenario instanceof IdeGradleScenarioDefinition) {
+            invoke(ideGradleScenarioInvoker, (IdeGradleScenarioDefinition) scenario, reportedScenario, benchmarkResults, failures);
+        } else if (scenario instanceof GradleScenarioDefinition) {
+            invoke(gradleScenarioInvoker, (GradleScenarioDefinition) scenario, reportedScenario, benchmarkResults, failures);
+        } else {
+            throw new IllegalArgumentException("Don't know how to run scenario.");
+        }
+    }
+
+    private <S extends ScenarioDefinition, R extends BuildInvocationResult> void invoke(ScenarioInvoker<S, R> invoker, S scenario, ScenarioDefinition reportedScenario, BenchmarkResultCollector benchmarkResults, List<Throwable> failures) {
+        try {
+            SampleProvider<R> sampleProvider = invoker.samplesFor(settings, scenario);
+            Consumer<R> resultConsumer = benchmarkResults.scenario(reportedScenario, sampleProvider);
+            invoker.run(scenario, settings, resultConsumer);
+        } catch (Throwable t) {
+            t.printStackTrace();
+            failures.add(t);
+        }
+    }
+}
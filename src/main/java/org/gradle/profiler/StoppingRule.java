@@ -0,0 +1,100 @@
+package org.gradle.profiler;
+
+import org.gradle.profiler.report.SampleStatistics;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Decides when to stop running the warm-up builds and the measured builds of a scenario.
+ *
+ * <p>Without a target error, each scenario runs the configured number of builds. With a target error, the configured numbers
+ * are the maximum number of builds:</p>
+ *
+ * <ul>
+ *     <li>Warm-up builds stop once the build time has reached a steady state, that is when the coefficient of variation over a sliding
+ *     window of the last {@value #WINDOW} builds has changed by no more than the target error over the last {@value #WINDOW} windows.</li>
+ *     <li>Measured builds stop once the half-width of the 95% confidence interval of the median build time is within the target error of the median.</li>
+ * </ul>
+ *
+ * <p>The decisions only depend on the build times collected so far, so they can be reproduced from the results of a scenario.</p>
+ */
+public class StoppingRule {
+    public static final StoppingRule FIXED = new StoppingRule(null);
+
+    static final int WINDOW = 5;
+
+    private final Double targetError;
+
+    private StoppingRule(@Nullable Double targetError) {
+        this.targetError = targetError;
+    }
+
+    public static StoppingRule from(InvocationSettings settings) {
+        return adaptive(settings.getTargetError());
+    }
+
+    public static StoppingRule adaptive(@Nullable Double targetError) {
+        return targetError == null ? FIXED : new StoppingRule(targetError);
+    }
+
+    public boolean isAdaptive() {
+        return targetError != null;
+    }
+
+    @Nullable
+    public Double getTargetError() {
+        return targetError;
+    }
+
+    /**
+     * Whether the given warm-up build times have reached a steady state, so no more warm-up builds are required.
+     */
+    public boolean isSteadyState(List<Duration> warmUpTimes) {
+        if (targetError == null || warmUpTimes.size() < 2 * WINDOW - 1) {
+            return false;
+        }
+        double minVariation = Double.MAX_VALUE;
+        double maxVariation = 0;
+        for (int end = warmUpTimes.size() - WINDOW + 1; end <= warmUpTimes.size(); end++) {
+            SampleStatistics window = SampleStatistics.from(toMillis(warmUpTimes.subList(end - WINDOW, end)));
+            double variation = window.getMean() == 0 ? 0 : window.getStddev() / window.getMean();
+            minVariation = Math.min(minVariation, variation);
+            maxVariation = Math.max(maxVariation, variation);
+        }
+        return maxVariation - minVariation <= targetError;
+    }
+
+    /**
+     * Whether the median of the given build times is known precisely enough, so no more measured builds are required.
+     */
+    public boolean isConverged(List<Duration> buildTimes) {
+        if (targetError == null) {
+            return false;
+        }
+        Double relativeError = relativeError(buildTimes);
+        return relativeError != null && relativeError <= targetError;
+    }
+
+    /**
+     * Returns the half-width of the 95% confidence interval of the median, relative to the median.
+     *
+     * @return the relative error, or {@code null} when there are too few build times to compute it.
+     */
+    @Nullable
+    public static Double relativeError(List<Duration> buildTimes) {
+        double[] values = toMillis(buildTimes);
+        double[] interval = SampleStatistics.medianConfidenceInterval(values);
+        if (interval == null) {
+            return null;
+        }
+        double median = SampleStatistics.from(values).getMedian();
+        double halfWidth = (interval[1] - interval[0]) / 2;
+        return median == 0 ? 0 : halfWidth / median;
+    }
+
+    private static double[] toMillis(List<Duration> durations) {
+        return durations.stream().mapToDouble(duration -> duration.toNanos() / 1_000_000d).toArray();
+    }
+}
@@ -16,13 +16,10 @@
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
 
-import static org.gradle.profiler.flamegraph.FlameGraphSanitizer.SanitizeFunction;
-
 public class AsyncProfilerController implements InstrumentingProfiler.SnapshotCapturingProfilerController {
     private final AsyncProfilerConfig profilerConfig;
     private final ScenarioSettings scenarioSettings;
@@ -38,7 +35,7 @@ public AsyncProfilerController(AsyncProfilerConfig profilerConfig, ScenarioSetti
         FlameGraphSanitizer rawFlamegraphSanitizer = FlameGraphSanitizer.raw();
         FlameGraphSanitizer simplifiedFlamegraphSanitizer = profilerConfig.isIncludeSystemThreads()
             ? FlameGraphSanitizer.simplified()
-            : FlameGraphSanitizer.simplified(new RemoveSystemThreads());
+            : FlameGraphSanitizer.simplified(FlameGraphSanitizer.removeStacksContaining("GCTaskThread", "JavaThread"));
         this.flameGraphSanitizers = ImmutableMap.of(
             DetailLevel.RAW, rawFlamegraphSanitizer,
             DetailLevel.SIMPLIFIED, simplifiedFlamegraphSanitizer
@@ -192,17 +189,4 @@ private void failOnEmptyStacks() {
             "# sysctl kernel.kptr_restrict=0");
     }
 
-    private static final class RemoveSystemThreads implements SanitizeFunction {
-
-        @Override
-        public List<String> map(List<String> stack) {
-            for (String frame : stack) {
-                if (frame.contains("GCTaskThread") || frame.contains("JavaThread")) {
-                    return Collections.emptyList();
-                }
-            }
-            return stack;
-        }
-    }
-
 }
@@ -1,93 +1,114 @@
 package org.gradle.profiler.buildops;
 
 import org.gradle.profiler.buildops.internal.InternalBuildOpMeasurementRequest;
+import org.gradle.profiler.client.protocol.Server;
+import org.gradle.profiler.client.protocol.ServerConnection;
+import org.gradle.profiler.client.protocol.messages.BuildMeasurements;
 import org.gradle.profiler.instrument.GradleInstrumentation;
 
+import javax.annotation.Nullable;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.UncheckedIOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
-public class BuildOperationInstrumentation extends GradleInstrumentation {
-    private final boolean measureGarbageCollection;
-    private final File totalGarbageCollectionTimeDataFile;
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.GARBAGE_COLLECTION_TIME;
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.LOCAL_BUILD_CACHE_SIZE;
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.RESOURCES_PREFIX;
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.TIME_TO_TASK_EXECUTION;
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.buildOperationMeasurementName;
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.histogramStatisticName;
 
-    private final boolean measureLocalBuildCache;
-    private final File localBuildCacheDataFile;
+/**
+ * Measures builds with an init script that sends all measurements of a build in a single message to the profiler, once the build has finished.
+ */
+public class BuildOperationInstrumentation extends GradleInstrumentation implements Closeable {
+    /**
+     * How long to wait for the measurements after the build has finished. They are sent when the build services of the build are closed,
+     * which happens right before the build finishes, so they are already waiting unless the build did not send any.
+     */
+    private static final Duration MEASUREMENTS_GRACE_PERIOD = Duration.ofSeconds(2);
+    /**
+     * How long to wait for the message of a build that has already connected.
+     */
+    private static final Duration MEASUREMENTS_TIMEOUT = Duration.ofSeconds(30);
+    private static final String MEASUREMENTS_PORT_PROPERTY = "org.gradle.profiler.measurements.port";
+    private static final String RESOURCE_TIME_SERIES_DIRECTORY_PROPERTY = "org.gradle.profiler.resources.dir";
+    private static final String RESOURCE_TIME_SERIES_BASE_NAME_PROPERTY = "org.gradle.profiler.resources.name";
 
+    private final boolean measureGarbageCollection;
+    private final boolean measureLocalBuildCache;
     private final boolean measureConfigTime;
-    private final File configurationTimeDataFile;
-
     private final List<InternalBuildOpMeasurementRequest> buildOpMeasurementRequests;
+    private final Duration resourceSamplingInterval;
+    private final File resourceTimeSeriesDirectory;
+    private final String resourceTimeSeriesBaseName;
+    private Server server;
 
     public BuildOperationInstrumentation(
         boolean measureGarbageCollection,
         boolean measureLocalBuildCache,
         boolean measureConfigTime,
-        List<BuildOperationMeasurement> buildOperationMeasurements
-    ) throws IOException {
+        List<BuildOperationMeasurement> buildOperationMeasurements,
+        @Nullable Duration resourceSamplingInterval,
+        File resourceTimeSeriesDirectory,
+        String resourceTimeSeriesBaseName
+    ) {
         this.measureGarbageCollection = measureGarbageCollection;
-        this.totalGarbageCollectionTimeDataFile = File.createTempFile("gradle-profiler", "gc-time");
         this.measureLocalBuildCache = measureLocalBuildCache;
-        this.localBuildCacheDataFile = File.createTempFile("gradle-profiler", "local-build-cache");
         this.measureConfigTime = measureConfigTime;
-        this.configurationTimeDataFile = File.createTempFile("gradle-profiler", "build-ops-config-time");
-        this.configurationTimeDataFile.deleteOnExit();
         this.buildOpMeasurementRequests = buildOperationMeasurements.stream()
-            .map(e -> {
-                Path outputFile = createBuildOperationTempFile(e);
-                return new InternalBuildOpMeasurementRequest(outputFile, e.getBuildOperationType(), e.getMeasurementKind());
-            })
+            .map(e -> new InternalBuildOpMeasurementRequest(
+                buildOperationMeasurementName(e.getBuildOperationType(), e.getMeasurementKind().name()),
+                e.getBuildOperationType(),
+                e.getMeasurementKind()
+            ))
             .toList();
+        this.resourceSamplingInterval = resourceSamplingInterval;
+        this.resourceTimeSeriesDirectory = resourceTimeSeriesDirectory;
+        this.resourceTimeSeriesBaseName = resourceTimeSeriesBaseName;
+        if (resourceSamplingInterval != null) {
+            resourceTimeSeriesDirectory.mkdirs();
+        }
     }
 
     public boolean requiresInitScript() {
-        return measureGarbageCollection || measureLocalBuildCache || measureConfigTime || !buildOpMeasurementRequests.isEmpty();
-    }
-
-    private static Path createBuildOperationTempFile(BuildOperationMeasurement op) {
-        try {
-            Path tempFile = Files.createTempFile(
-                "gradle-profiler",
-                "build-ops-" + op.getBuildOperationType() + "_" + op.getMeasurementKind().name()
-            );
-            tempFile.toFile().deleteOnExit();
-            return tempFile;
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
-        }
+        return measureGarbageCollection || measureLocalBuildCache || measureConfigTime || resourceSamplingInterval != null || !buildOpMeasurementRequests.isEmpty();
     }
 
     @Override
     protected void generateInitScriptBody(PrintWriter writer) {
         writer.print("new org.gradle.trace.buildops.BuildOperationTrace(gradle)");
         if (measureGarbageCollection) {
-            writer.print(".measureGarbageCollection(" + fileExpression(totalGarbageCollectionTimeDataFile) + ")");
+            writer.print(".measureGarbageCollection()");
         }
         if (measureLocalBuildCache) {
-            writer.print(".measureLocalBuildCache(" + fileExpression(localBuildCacheDataFile) + ")");
+            writer.print(".measureLocalBuildCache()");
         }
         if (measureConfigTime) {
-            writer.print(".measureConfigurationTime(" + fileExpression(configurationTimeDataFile) + ")");
+            writer.print(".measureConfigurationTime()");
+        }
+        if (resourceSamplingInterval != null) {
+            writer.print(".measureResources(" + resourceSamplingInterval.toMillis() + ", new File(System.getProperty('" + RESOURCE_TIME_SERIES_DIRECTORY_PROPERTY + "')), System.getProperty('" + RESOURCE_TIME_SERIES_BASE_NAME_PROPERTY + "'))");
         }
         if (!buildOpMeasurementRequests.isEmpty()) {
             writer.print(".measureBuildOperations([");
             buildOpMeasurementRequests.forEach(request -> {
+                String measurementNameExpr = "'" + request.getMeasurementName() + "'";
                 String buildOpTypeExpr = "'" + request.getBuildOperationType() + "'";
                 String measurementKindExpr = BuildOperationMeasurementKind.class.getName() + "." +
                     request.getMeasurementKind().name();
                 writer.print(
                     "new " + InternalBuildOpMeasurementRequest.class.getName() + "(\n" +
-                        pathExpression(request.getOutputFile()) + ",\n" +
+                        measurementNameExpr + ",\n" +
                         buildOpTypeExpr + ",\n" +
                         measurementKindExpr + ",\n" +
                         "),\n"
@@ -95,88 +116,147 @@ protected void generateInitScriptBody(PrintWriter writer) {
             });
             writer.print("])");
         }
+        writer.println(".sendMeasurementsTo(Integer.getInteger('" + MEASUREMENTS_PORT_PROPERTY + "'))");
     }
 
-    private static String fileExpression(File dataFile) {
-        return pathExpression(dataFile.toPath()) + ".toFile()";
+    @Override
+    protected void calculateSystemProperties(Map<String, String> systemProperties) {
+        if (resourceSamplingInterval != null) {
+            systemProperties.put(RESOURCE_TIME_SERIES_DIRECTORY_PROPERTY, resourceTimeSeriesDirectory.getAbsolutePath());
+            systemProperties.put(RESOURCE_TIME_SERIES_BASE_NAME_PROPERTY, resourceTimeSeriesBaseName);
+        }
+        systemProperties.put(MEASUREMENTS_PORT_PROPERTY, String.valueOf(getServer().getPort()));
     }
 
-    private static String pathExpression(Path file) {
-        return Paths.class.getName() + ".get(new URI('" + file.toUri().toASCIIString() + "'))";
+    private Server getServer() {
+        if (server == null) {
+            server = new Server("build operations instrumentation");
+        }
+        return server;
     }
 
     /**
-     * This is the cumulative total GC time since the process started, not the GC time of the current invocation.
+     * Receives the measurements of the build with the given id, which is passed to the build with the
+     * {@value org.gradle.profiler.buildops.internal.InternalBuildMeasurements#BUILD_ID_PROPERTY} system property.
+     *
+     * <p>Measurements of other builds that are still pending, for example of an earlier build that timed out, are discarded.
+     * When the build sends more than one message, for example when an IDE sync runs several Gradle builds, the last one is used.
+     * When the build sends no measurements, a warning is printed and no measurements are recorded for it.</p>
      */
-    public Optional<Duration> getTotalGarbageCollectionTime() {
-        if (totalGarbageCollectionTimeDataFile.length() == 0) {
-            return Optional.empty();
+    public Measurements receiveMeasurements(String buildId) {
+        if (server == null) {
+            return Measurements.NONE;
         }
-
-        return readExecutionDataFromFile(totalGarbageCollectionTimeDataFile.toPath())
-            .map(BuildOperationExecutionData::getValue)
-            .map(Duration::ofMillis);
+        BuildMeasurements received = null;
+        Duration timeout = MEASUREMENTS_GRACE_PERIOD;
+        while (true) {
+            Optional<ServerConnection> connection = server.maybeWaitForIncoming(timeout);
+            if (!connection.isPresent()) {
+                break;
+            }
+            BuildMeasurements measurements = receive(connection.get());
+            if (measurements.getBuildId().equals(buildId)) {
+                received = measurements;
+                // Only pick up what has already been sent by the same build
+                timeout = Duration.ZERO;
+            }
+        }
+        if (received == null) {
+            System.err.println("WARNING: Did not receive the build measurements of build " + buildId + ". The build may have failed before it finished, or it did not run the profiler's init script.");
+            return Measurements.NONE;
+        }
+        return new Measurements(received, buildOpMeasurementRequests);
     }
 
-    public Optional<Long> getLocalBuildCacheSize() {
-        if (localBuildCacheDataFile.length() == 0) {
-            return Optional.empty();
+    private BuildMeasurements receive(ServerConnection connection) {
+        try {
+            return connection.receiveBuildMeasurements(MEASUREMENTS_TIMEOUT);
+        } finally {
+            try {
+                server.close(connection);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
         }
-
-        return readExecutionDataFromFile(localBuildCacheDataFile.toPath())
-            .map(BuildOperationExecutionData::getValue);
     }
 
-    public Optional<Duration> getTimeToTaskExecution() {
-        // Should have two implementations instead
-        if (configurationTimeDataFile.length() == 0) {
-            return Optional.empty();
+    @Override
+    public void close() throws IOException {
+        if (server != null) {
+            server.close();
         }
-
-        return readExecutionDataFromFile(configurationTimeDataFile.toPath())
-            .map(BuildOperationExecutionData::getValue)
-            .map(Duration::ofMillis);
     }
 
-    public Map<BuildOperationMeasurement, BuildOperationExecutionData> getTotalBuildOperationExecutionData() {
-        return buildOpMeasurementRequests.stream()
-            .filter(request -> {
-                try {
-                    return Files.size(request.getOutputFile()) > 0;
-                } catch (IOException e) {
-                    return false;
+    /**
+     * The measurements of a single build.
+     */
+    public static class Measurements {
+        static final Measurements NONE = new Measurements(new BuildMeasurements("", List.of()), List.of());
+
+        private final Map<String, BuildOperationExecutionData> values = new HashMap<>();
+        private final Map<BuildOperationMeasurement, BuildOperationExecutionData> buildOperationExecutionData = new LinkedHashMap<>();
+
+        private Measurements(BuildMeasurements measurements, List<InternalBuildOpMeasurementRequest> requests) {
+            for (BuildMeasurements.Measurement measurement : measurements.getMeasurements()) {
+                values.put(measurement.getName(), new BuildOperationExecutionData(measurement.getValue(), measurement.getCount()));
+            }
+            for (InternalBuildOpMeasurementRequest request : requests) {
+                BuildOperationExecutionData data = request.getMeasurementKind() == BuildOperationMeasurementKind.HISTOGRAM
+                    ? histogram(request.getMeasurementName())
+                    : values.get(request.getMeasurementName());
+                if (data != null) {
+                    buildOperationExecutionData.put(request.toPublicBuildOperationMeasurement(), data);
                 }
-            })
-            .collect(Collectors.toMap(
-                InternalBuildOpMeasurementRequest::toPublicBuildOperationMeasurement,
-                request -> readExecutionDataFromFile(request.getOutputFile()).orElse(BuildOperationExecutionData.ZERO))
-            );
-    }
+            }
+        }
 
-    private static Optional<BuildOperationExecutionData> readExecutionDataFromFile(Path dataFile) {
-        List<String> lines;
-        try {
-            lines = Files.readAllLines(dataFile, StandardCharsets.UTF_8);
-        } catch (IOException e) {
-            throw new UncheckedIOException("Could not read result from file.", e);
+        @Nullable
+        private BuildOperationExecutionData histogram(String measurementName) {
+            Map<HistogramStatistic, Long> histogram = new EnumMap<>(HistogramStatistic.class);
+            int count = 0;
+            for (HistogramStatistic statistic : HistogramStatistic.values()) {
+                BuildOperationExecutionData data = values.get(histogramStatisticName(measurementName, statistic));
+                if (data == null) {
+                    return null;
+                }
+                histogram.put(statistic, data.getValue());
+                count = data.getTotalCount();
+            }
+            return new BuildOperationExecutionData(histogram.get(HistogramStatistic.P50), count, histogram);
         }
-        if (lines.isEmpty()) {
-            return Optional.empty();
+
+        /**
+         * This is the cumulative total GC time since the process started, not the GC time of the current invocation.
+         */
+        public Optional<Duration> getTotalGarbageCollectionTime() {
+            return Optional.ofNullable(values.get(GARBAGE_COLLECTION_TIME))
+                .map(BuildOperationExecutionData::getValue)
+                .map(Duration::ofMillis);
+        }
+
+        public Optional<Long> getLocalBuildCacheSize() {
+            return Optional.ofNullable(values.get(LOCAL_BUILD_CACHE_SIZE))
+                .map(BuildOperationExecutionData::getValue);
         }
-        // Expecting the file to contain at most one line
-        // See `org.gradle.trace.buildops.BuildOperationTrace`
-        String lastLine = lines.get(lines.size() - 1);
-        return Optional.of(parseExecutionDataLine(lastLine));
-    }
 
-    private static BuildOperationExecutionData parseExecutionDataLine(String line) {
-        int separatorIndex = line.indexOf(",");
-        if (separatorIndex == -1) {
-            throw new IllegalStateException("Unexpected line format: " + line);
+        public Optional<Duration> getTimeToTaskExecution() {
+            return Optional.ofNullable(values.get(TIME_TO_TASK_EXECUTION))
+                .map(BuildOperationExecutionData::getValue)
+                .map(Duration::ofMillis);
         }
 
-        long durationMillis = Long.parseLong(line.substring(0, separatorIndex));
-        int count = Integer.parseInt(line.substring(separatorIndex + 1));
-        return new BuildOperationExecutionData(durationMillis, count);
+        public ResourceUsage getResourceUsage() {
+            Map<String, Long> resourceUsage = new HashMap<>();
+            values.forEach((name, data) -> {
+                if (name.startsWith(RESOURCES_PREFIX)) {
+                    resourceUsage.put(name, data.getValue());
+                }
+            });
+            return new ResourceUsage(resourceUsage);
+        }
+
+        public Map<BuildOperationMeasurement, BuildOperationExecutionData> getTotalBuildOperationExecutionData() {
+            return buildOperationExecutionData;
+        }
     }
 }
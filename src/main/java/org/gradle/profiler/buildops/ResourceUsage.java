@@ -0,0 +1,106 @@
+package org.gradle.profiler.buildops;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.ALLOCATED_BYTES;
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.HEAP_AFTER_GC;
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.IO_READ_BYTES;
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.IO_WRITE_BYTES;
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.PEAK_ALLOCATION_RATE;
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.PEAK_HEAP;
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.PEAK_THREAD_COUNT;
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.PROCESS_CPU_TIME;
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.memoryPoolMeasurementName;
+
+/**
+ * The resources used by the daemon during a build, sampled while the build runs.
+ * Values that were not measured, for example the I/O on an OS without {@code /proc/self/io}, are absent.
+ */
+public class ResourceUsage {
+    public static final ResourceUsage NONE = new ResourceUsage(Map.of());
+
+    private final Map<String, Long> values;
+
+    public ResourceUsage(Map<String, Long> values) {
+        this.values = Map.copyOf(values);
+    }
+
+    public Optional<Duration> getProcessCpuTime() {
+        return get(PROCESS_CPU_TIME).map(Duration::ofMillis);
+    }
+
+    public Optional<Long> getAllocatedBytes() {
+        return get(ALLOCATED_BYTES);
+    }
+
+    /**
+     * The highest allocation rate between two samples, in bytes per second.
+     */
+    public Optional<Long> getPeakAllocationRate() {
+        return get(PEAK_ALLOCATION_RATE);
+    }
+
+    public Optional<Long> getPeakHeapBytes() {
+        return get(PEAK_HEAP);
+    }
+
+    public Optional<Long> getPeakHeapBytes(String pool) {
+        return get(memoryPoolMeasurementName(PEAK_HEAP, pool));
+    }
+
+    /**
+     * The highest heap usage right after a garbage collection, which is absent when there was no garbage collection during the build.
+     */
+    public Optional<Long> getHeapAfterGcBytes() {
+        return get(HEAP_AFTER_GC);
+    }
+
+    public Optional<Long> getHeapAfterGcBytes(String pool) {
+        return get(memoryPoolMeasurementName(HEAP_AFTER_GC, pool));
+    }
+
+    public Optional<Long> getPeakThreadCount() {
+        return get(PEAK_THREAD_COUNT);
+    }
+
+    public Optional<Long> getIoReadBytes() {
+        return get(IO_READ_BYTES);
+    }
+
+    public Optional<Long> getIoWriteBytes() {
+        return get(IO_WRITE_BYTES);
+    }
+
+    /**
+     * The names of the heap memory pools with a measured peak usage, such as {@code G1 Eden Space}.
+     */
+    public Set<String> getPeakHeapPools() {
+        return pools(PEAK_HEAP);
+    }
+
+    /**
+     * The names of the heap memory pools with a measured usage after garbage collection.
+     */
+    public Set<String> getHeapAfterGcPools() {
+        return pools(HEAP_AFTER_GC);
+    }
+
+    private Set<String> pools(String measurementName) {
+        String prefix = memoryPoolMeasurementName(measurementName, "");
+        Set<String> pools = new TreeSet<>();
+        for (String name : values.keySet()) {
+            if (name.startsWith(prefix)) {
+                pools.add(name.substring(prefix.length()));
+            }
+        }
+        return pools;
+    }
+
+    private Optional<Long> get(String name) {
+        return Optional.ofNullable(values.get(name));
+    }
+}
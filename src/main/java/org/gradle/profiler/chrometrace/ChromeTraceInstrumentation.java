@@ -20,8 +20,12 @@
 
 import java.io.File;
 import java.io.PrintWriter;
+import java.util.Map;
 
 public class ChromeTraceInstrumentation extends GradleInstrumentation {
+    private static final String TRACE_FOLDER_PROPERTY = "org.gradle.profiler.trace.folder";
+    private static final String TRACE_FILE_BASE_NAME_PROPERTY = "org.gradle.profiler.trace.name";
+
     private final File traceFolder;
     private final String traceFileBaseName;
 
@@ -33,6 +37,12 @@ public ChromeTraceInstrumentation(ScenarioSettings scenarioSettings) {
 
     @Override
     protected void generateInitScriptBody(PrintWriter writer) {
-        writer.println("org.gradle.trace.GradleTracingPlugin.start(gradle, new File(new URI(\"" + traceFolder.toURI() + "\")), \"" + traceFileBaseName + "\")");
+        writer.println("org.gradle.trace.GradleTracingPlugin.start(gradle, new File(System.getProperty('" + TRACE_FOLDER_PROPERTY + "')), System.getProperty('" + TRACE_FILE_BASE_NAME_PROPERTY + "'))");
+    }
+
+    @Override
+    protected void calculateSystemProperties(Map<String, String> systemProperties) {
+        systemProperties.put(TRACE_FOLDER_PROPERTY, traceFolder.getAbsolutePath());
+        systemProperties.put(TRACE_FILE_BASE_NAME_PROPERTY, traceFileBaseName);
     }
 }
@@ -1,32 +1,29 @@
 package org.gradle.profiler.flamegraph;
 
-import java.util.Arrays;
-import java.util.List;
-
 public enum DetailLevel {
     RAW(
         true,
         true,
-        Arrays.asList("--minwidth", "0.5"),
-        Arrays.asList("--minwidth", "1")
+        0.5,
+        1
     ),
     SIMPLIFIED(
         false,
         false,
-        Arrays.asList("--minwidth", "1"),
-        Arrays.asList("--minwidth", "2")
+        1,
+        2
     );
 
     private final boolean showArguments;
     private final boolean showLineNumbers;
-    private final List<String> flameGraphOptions;
-    private final List<String> icicleGraphOptions;
+    private final double flameGraphMinWidth;
+    private final double icicleGraphMinWidth;
 
-    DetailLevel(boolean showArguments, boolean showLineNumbers, List<String> flameGraphOptions, List<String> icicleGraphOptions) {
+    DetailLevel(boolean showArguments, boolean showLineNumbers, double flameGraphMinWidth, double icicleGraphMinWidth) {
         this.showArguments = showArguments;
         this.showLineNumbers = showLineNumbers;
-        this.flameGraphOptions = flameGraphOptions;
-        this.icicleGraphOptions = icicleGraphOptions;
+        this.flameGraphMinWidth = flameGraphMinWidth;
+        this.icicleGraphMinWidth = icicleGraphMinWidth;
     }
 
     public boolean isShowArguments() {
@@ -37,11 +34,11 @@ public boolean isShowLineNumbers() {
         return showLineNumbers;
     }
 
-    public List<String> getFlameGraphOptions() {
-        return flameGraphOptions;
+    public double getFlameGraphMinWidth() {
+        return flameGraphMinWidth;
     }
 
-    public List<String> getIcicleGraphOptions() {
-        return icicleGraphOptions;
+    public double getIcicleGraphMinWidth() {
+        return icicleGraphMinWidth;
     }
 }
@@ -1,13 +1,11 @@
 package org.gradle.profiler.flamegraph;
 
 import com.google.common.base.Joiner;
+import org.gradle.profiler.Logging;
 
 import javax.annotation.Nullable;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.io.UncheckedIOException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayDeque;
@@ -15,119 +13,147 @@
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Deque;
-import java.util.HashSet;
-import java.util.LinkedHashMap;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.function.Consumer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static java.util.Objects.requireNonNull;
+
 /**
  * Generates differential stacks.
+ *
+ * <p>The stacks of each experiment are loaded only once, in parallel, into a shared index per {@link EventType}: a {@link StackTrie}
+ * with one column per experiment. All differential stacks are then written in parallel from that index.</p>
  */
 public class DifferentialStacksGenerator {
+    // Only create diffs for simplified stacks, diffs for raw stacks don't make much sense
+    private static final DetailLevel LEVEL = DetailLevel.SIMPLIFIED;
+
+    /**
+     * Whether the output of the given scenario goes into the experiment with the given name, which is one of the directories directly in the base output directory.
+     */
+    public static boolean isExperiment(File baseOutputDir, File scenarioOutputDir, String experiment) {
+        return scenarioOutputDir.toPath().normalize().startsWith(baseOutputDir.toPath().resolve(experiment).normalize());
+    }
 
+    /**
+     * Compares each experiment with each other experiment.
+     */
     public List<Stacks> generateDifferentialStacks(File baseOutputDir) throws IOException {
-        List<Stacks> stacks = new ArrayList<>();
+        return generateDifferentialStacks(baseOutputDir, null);
+    }
+
+    /**
+     * Compares each experiment with the given baseline experiment, or with each other experiment when no baseline is given.
+     *
+     * @param baseline the name of the output directory of the baseline experiment
+     */
+    public List<Stacks> generateDifferentialStacks(File baseOutputDir, @Nullable String baseline) throws IOException {
+        List<File> experiments;
         try (Stream<Path> list = Files.list(baseOutputDir.toPath())) {
-            List<Path> experiments = list
+            experiments = list
                 .filter(Files::isDirectory)
+                .sorted()
+                .map(Path::toFile)
                 .collect(Collectors.toList());
+        }
+        int baselineIndex = -1;
+        if (baseline != null) {
+            baselineIndex = experiments.indexOf(new File(baseOutputDir, baseline));
+            if (baselineIndex < 0) {
+                Logging.detailed().printf("Could not find baseline '%s' in %s, no differential stacks are generated.%n", baseline, baseOutputDir);
+                return Collections.emptyList();
+            }
+        }
 
-            experiments.forEach(experiment -> experiments.stream()
-                .filter(it -> !experiment.equals(it))
-                .forEach(baseline -> {
-                    for (EventType type : EventType.values()) {
-                        // Only create diffs for simplified stacks, diffs for raw stacks don't make much sense
-                        DetailLevel level = DetailLevel.SIMPLIFIED;
-                        Stacks backwardDiff = generateDiff(experiment.toFile(), baseline.toFile(), type, level, false);
-                        if (backwardDiff != null) {
-                            stacks.add(backwardDiff);
-                        }
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            Map<EventType, List<ForkJoinTask<StackTrie>>> loadedStacks = new EnumMap<>(EventType.class);
+            for (EventType type : EventType.values()) {
+                List<ForkJoinTask<StackTrie>> experimentStacks = new ArrayList<>();
+                for (File experiment : experiments) {
+                    File stacksFile = stacksFileName(experiment, type, LEVEL);
+                    experimentStacks.add(stacksFile == null ? null : pool.submit(() -> StackTrie.read(stacksFile)));
+                }
+                loadedStacks.put(type, experimentStacks);
+            }
 
-                        Stacks forwardDiff = generateDiff(experiment.toFile(), baseline.toFile(), type, level, true);
-                        if (forwardDiff != null) {
-                            stacks.add(forwardDiff);
+            List<ForkJoinTask<Stacks>> diffs = new ArrayList<>();
+            for (EventType type : EventType.values()) {
+                StackTrie index = new StackTrie(experiments.size());
+                List<ForkJoinTask<StackTrie>> experimentStacks = loadedStacks.get(type);
+                for (int experiment = 0; experiment < experiments.size(); experiment++) {
+                    if (experimentStacks.get(experiment) != null) {
+                        index.merge(experimentStacks.get(experiment).join(), 0, experiment);
+                    }
+                }
+                for (int underTest = 0; underTest < experiments.size(); underTest++) {
+                    for (int other = 0; other < experiments.size(); other++) {
+                        if (other == underTest || (baselineIndex >= 0 && other != baselineIndex)) {
+                            continue;
+                        }
+                        if (experimentStacks.get(underTest) != null && experimentStacks.get(other) != null) {
+                            int underTestColumn = underTest;
+                            int baselineColumn = other;
+                            diffs.add(pool.submit(() -> generateDiff(index, experiments.get(underTestColumn), underTestColumn, experiments.get(baselineColumn), baselineColumn, type, false)));
+                            diffs.add(pool.submit(() -> generateDiff(index, experiments.get(underTestColumn), underTestColumn, experiments.get(baselineColumn), baselineColumn, type, true)));
                         }
                     }
-                }));
+                }
+            }
+
+            List<Stacks> stacks = new ArrayList<>();
+            for (ForkJoinTask<Stacks> diff : diffs) {
+                Stacks result = diff.join();
+                if (result != null) {
+                    stacks.add(result);
+                }
+            }
+            return stacks;
+        } finally {
+            pool.shutdown();
         }
-        return stacks;
     }
 
-    private Stacks generateDiff(File versionUnderTest, File baseline, final EventType type, final DetailLevel level, final boolean negate) {
-        File underTestStacks = stacksFileName(versionUnderTest, type, level);
-        File baselineStacks = stacksFileName(baseline, type, level);
-        if (underTestStacks != null && baselineStacks != null) {
-            final String underTestBasename = stacksBasename(underTestStacks, type, level);
-            final String baselineTestBasename = stacksBasename(baselineStacks, type, level);
-            String differentNamePart = computeDifferenceOfBaselineToCurrentName(underTestBasename, baselineTestBasename);
-            final String diffBaseName = underTestBasename + "-vs-" + differentNamePart + Stacks.postFixFor(type, level) + "-" + (negate ? "forward-" : "backward-") + "diff";
-            File diff = new File(underTestStacks.getParentFile(), "diffs/" + diffBaseName + Stacks.STACKS_FILE_SUFFIX);
-            diff.getParentFile().mkdirs();
+    @Nullable
+    private Stacks generateDiff(StackTrie index, File versionUnderTest, int underTestColumn, File baseline, int baselineColumn, final EventType type, final boolean negate) {
+        File underTestStacks = requireNonNull(stacksFileName(versionUnderTest, type, LEVEL));
+        File baselineStacks = requireNonNull(stacksFileName(baseline, type, LEVEL));
+        final String underTestBasename = stacksBasename(underTestStacks, type, LEVEL);
+        final String baselineTestBasename = stacksBasename(baselineStacks, type, LEVEL);
+        String differentNamePart = computeDifferenceOfBaselineToCurrentName(underTestBasename, baselineTestBasename);
+        final String diffBaseName = underTestBasename + "-vs-" + differentNamePart + Stacks.postFixFor(type, LEVEL) + "-" + (negate ? "forward-" : "backward-") + "diff";
+        File diff = new File(underTestStacks.getParentFile(), "diffs/" + diffBaseName + Stacks.STACKS_FILE_SUFFIX);
+        try {
+            // Each line of the diff has the count of the first stacks, then the count of the second stacks
             if (negate) {
-                generateDiff(underTestStacks, baselineStacks, diff);
+                index.write(diff, underTestColumn, baselineColumn);
             } else {
-                generateDiff(baselineStacks, underTestStacks, diff);
+                index.write(diff, baselineColumn, underTestColumn);
             }
-
-            return new Stacks(diff, type, level, diffBaseName, negate);
+        } catch (Exception e) {
+            System.err.printf("Problem while creating differential stack file %s: %s%n", diff, e.getMessage());
+            return null;
         }
-
-        return null;
+        return new Stacks(diff, type, LEVEL, diffBaseName, negate);
     }
 
     public void generateDiff(File versionUnderTest, File baseline, File diff) {
         try {
-            Map<String, Long> parsedUnderTestStacks = readStacks(versionUnderTest);
-            Map<String, Long> parsedBaselineStacks = readStacks(baseline);
-            try (BufferedWriter writer = Files.newBufferedWriter(diff.toPath(), StandardCharsets.UTF_8)) {
-                generateDiff(parsedUnderTestStacks, parsedBaselineStacks, stackLine -> {
-                    try {
-                        writer.write(stackLine);
-                        writer.newLine();
-                    } catch (IOException e) {
-                        throw new UncheckedIOException(e);
-                    }
-                });
-            }
+            // Each line of the diff has the count of the version under test first, then the count of the baseline
+            StackTrie stacks = new StackTrie(2);
+            stacks.read(versionUnderTest, 0);
+            stacks.read(baseline, 1);
+            stacks.write(diff);
         } catch (Exception e) {
             System.err.printf("Problem while creating differential stack file %s: %s%n", diff, e.getMessage());
         }
     }
 
-    private Map<String, Long> readStacks(File file) throws IOException {
-        try (Stream<String> lines = Files.lines(file.toPath(), StandardCharsets.UTF_8)) {
-            Map<String, Long> result = new LinkedHashMap<>();
-            lines.forEach(line -> {
-                if (line.isEmpty()) {
-                    return;
-                }
-                int lastSpace = line.lastIndexOf(" ");
-                if (lastSpace == -1) {
-                    return;
-                }
-                String stack = line.substring(0, lastSpace).trim();
-                long count = Long.parseLong(line.substring(lastSpace + 1));
-                result.compute(stack, (s, c) -> c == null ? count : c + count);
-            });
-            return result;
-        }
-    }
-
-    private void generateDiff(Map<String, Long> from, Map<String, Long> to, Consumer<String> stackConsumer) {
-        Set<String> allStacks = new HashSet<>();
-        allStacks.addAll(from.keySet());
-        allStacks.addAll(to.keySet());
-        for (String stack : allStacks) {
-            long countFrom = from.getOrDefault(stack, 0L);
-            long countTo = to.getOrDefault(stack, 0L);
-            stackConsumer.accept(stack + " " + countFrom + " " + countTo);
-        }
-    }
-
     private String computeDifferenceOfBaselineToCurrentName(String underTestBasename, String baselineTestBasename) {
         List<String> underTestParts = Arrays.asList(underTestBasename.split("-"));
         Deque<String> remainderOfBaseline = new ArrayDeque<>(Arrays.asList(baselineTestBasename.split("-")));
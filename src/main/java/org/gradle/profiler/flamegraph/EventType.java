@@ -13,6 +13,7 @@
 import org.openjdk.jmc.flightrecorder.jdk.JdkAttributes;
 
 import java.util.Set;
+import java.util.function.ToLongFunction;
 
 public enum EventType {
     CPU("cpu", "CPU", "samples", ValueField.COUNT, "Method Profiling Sample", "Method Profiling Sample Native"),
@@ -38,13 +39,24 @@ public enum EventType {
     }
 
     public boolean matches(IItem event) {
-        return eventNames.contains(event.getType().getName());
+        return matches(event.getType());
+    }
+
+    public boolean matches(IType<?> eventType) {
+        return eventNames.contains(eventType.getName());
     }
 
     public long getValue(IItem event) {
         return valueField.getValue(event);
     }
 
+    /**
+     * Returns a function computing the value of events of the given type, resolving the attribute accessors only once.
+     */
+    public ToLongFunction<IItem> valueAccessor(IType<IItem> eventType) {
+        return valueField.accessor(eventType);
+    }
+
     public String getId() {
         return id;
     }
@@ -60,37 +72,40 @@ public String getUnitOfMeasure() {
     private enum ValueField {
         COUNT {
             @Override
-            public long getValue(IItem event) {
-                return 1;
+            public ToLongFunction<IItem> accessor(IType<IItem> itemType) {
+                return event -> 1;
             }
         },
         DURATION {
             @Override
-            public long getValue(IItem event) {
-                IType<IItem> itemType = ItemToolkit.getItemType(event);
+            public ToLongFunction<IItem> accessor(IType<IItem> itemType) {
                 IMemberAccessor<IQuantity, IItem> duration = itemType.getAccessor(JfrAttributes.DURATION.getKey());
                 if (duration == null) {
                     IMemberAccessor<IQuantity, IItem> startTime = itemType.getAccessor(JfrAttributes.START_TIME.getKey());
                     IMemberAccessor<IQuantity, IItem> endTime = itemType.getAccessor(JfrAttributes.END_TIME.getKey());
                     duration = MemberAccessorToolkit.difference(endTime, startTime);
                 }
-                return duration.getMember(event).in(UnitLookup.NANOSECOND).longValue();
+                IMemberAccessor<IQuantity, IItem> accessor = duration;
+                return event -> accessor.getMember(event).in(UnitLookup.NANOSECOND).longValue();
             }
         },
         ALLOCATION_SIZE {
             @Override
-            public long getValue(IItem event) {
-                IType<IItem> itemType = ItemToolkit.getItemType(event);
-                IMemberAccessor<IQuantity, IItem> accessor = itemType.getAccessor(JdkAttributes.TLAB_SIZE.getKey());
-                if (accessor == null) {
-                    accessor = itemType.getAccessor(JdkAttributes.ALLOCATION_SIZE.getKey());
-                }
-                return accessor.getMember(event)
+            public ToLongFunction<IItem> accessor(IType<IItem> itemType) {
+                IMemberAccessor<IQuantity, IItem> tlabSize = itemType.getAccessor(JdkAttributes.TLAB_SIZE.getKey());
+                IMemberAccessor<IQuantity, IItem> accessor = tlabSize != null
+                    ? tlabSize
+                    : itemType.getAccessor(JdkAttributes.ALLOCATION_SIZE.getKey());
+                return event -> accessor.getMember(event)
                     .in(UnitLookup.MEMORY.getUnit(BinaryPrefix.KIBI))
                     .longValue();
             }
         };
 
-        public abstract long getValue(IItem event);
+        public long getValue(IItem event) {
+            return accessor(ItemToolkit.getItemType(event)).applyAsLong(event);
+        }
+
+        public abstract ToLongFunction<IItem> accessor(IType<IItem> itemType);
     }
 }
@@ -1,100 +1,111 @@
 package org.gradle.profiler.flamegraph;
 
-import com.google.common.collect.ImmutableList;
-
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Generates flame graphs based on JFR recordings.
+ *
+ * <p>Each stacks file is loaded once and rendered as a flame graph and as an icicle graph.
+ * Graphs of different stacks files are rendered in parallel.</p>
  */
 public class FlameGraphGenerator {
     public static final String FLAME_FILE_SUFFIX = "-flames.svg";
     public static final String ICICLE_FILE_SUFFIX = "-icicles.svg";
 
-    private final FlameGraphTool flameGraphTool = new FlameGraphTool();
+    private final FlameGraphRenderer renderer = new FlameGraphRenderer();
 
     public void generateGraphs(File flameGraphDirectory, List<Stacks> stackFiles) {
-        if (!flameGraphTool.checkInstallation()) {
-            return;
-        }
-        for (Stacks stacks : stackFiles) {
-            generateFlameGraph(flameGraphDirectory, stacks);
-            generateIcicleGraph(flameGraphDirectory, stacks);
-        }
+        renderAll(stackFiles, stacks -> {
+            StackTrie stackTrie = StackTrie.read(stacks.getFile());
+            generateFlameGraph(flameGraphDirectory, stacks, stackTrie);
+            generateIcicleGraph(flameGraphDirectory, stacks, stackTrie);
+        });
     }
 
     public void generateDifferentialGraphs(List<Stacks> stackFiles) {
-        if (!flameGraphTool.checkInstallation()) {
-            return;
-        }
-        for (Stacks stacks : stackFiles) {
-            generateDifferentialFlameGraph(stacks);
-            generateDifferentialIcicleGraph(stacks);
-        }
+        renderAll(stackFiles, stacks -> {
+            StackTrie stackTrie = StackTrie.readColumns(stacks.getFile(), 2);
+            generateDifferentialFlameGraph(stacks, stackTrie);
+            generateDifferentialIcicleGraph(stacks, stackTrie);
+        });
     }
 
-    private void generateFlameGraph(File flameGraphDirectory, Stacks stacks) {
-        if (stacks.isEmpty()) {
-            return;
+    private static void renderAll(List<Stacks> stackFiles, StacksRenderer stacksRenderer) {
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            List<ForkJoinTask<?>> renderings = new ArrayList<>();
+            for (Stacks stacks : stackFiles) {
+                if (!stacks.isEmpty()) {
+                    renderings.add(pool.submit(() -> stacksRenderer.render(stacks)));
+                }
+            }
+            for (ForkJoinTask<?> rendering : renderings) {
+                rendering.join();
+            }
+        } finally {
+            pool.shutdown();
         }
+    }
+
+    private void generateFlameGraph(File flameGraphDirectory, Stacks stacks, StackTrie stackTrie) {
         DetailLevel level = stacks.getLevel();
         EventType type = stacks.getType();
-        List<String> options = new ArrayList<>();
-        options.addAll(level.getFlameGraphOptions());
-        options.addAll(Arrays.asList("--title", type.getDisplayName() + " Flame Graph", "--countname", type.getUnitOfMeasure(), "--colors", "java"));
-        flameGraphTool.generateFlameGraph(stacks.getFile(), new File(flameGraphDirectory, stacks.getFileBaseName() + FLAME_FILE_SUFFIX), options);
+        FlameGraphRenderer.Options options = new FlameGraphRenderer.Options()
+            .setTitle(type.getDisplayName() + " Flame Graph")
+            .setCountName(type.getUnitOfMeasure())
+            .setPalette(FlameGraphRenderer.Palette.JAVA)
+            .setMinWidth(level.getFlameGraphMinWidth());
+        renderer.render(stackTrie, new File(flameGraphDirectory, stacks.getFileBaseName() + FLAME_FILE_SUFFIX), options);
     }
 
-    private void generateIcicleGraph(File flameGraphDirectory, Stacks stacks) {
-        if (stacks.isEmpty()) {
-            return;
-        }
+    private void generateIcicleGraph(File flameGraphDirectory, Stacks stacks, StackTrie stackTrie) {
         DetailLevel level = stacks.getLevel();
         EventType type = stacks.getType();
-        List<String> options = new ArrayList<>();
-        options.addAll(level.getIcicleGraphOptions());
-        options.addAll(Arrays.asList("--title", type.getDisplayName() + " Icicle Graph", "--countname", type.getUnitOfMeasure(), "--reverse", "--invert", "--colors", "java"));
-        flameGraphTool.generateFlameGraph(stacks.getFile(), new File(flameGraphDirectory, stacks.getFileBaseName() + ICICLE_FILE_SUFFIX), options);
+        FlameGraphRenderer.Options options = new FlameGraphRenderer.Options()
+            .setTitle(type.getDisplayName() + " Icicle Graph")
+            .setCountName(type.getUnitOfMeasure())
+            .setPalette(FlameGraphRenderer.Palette.JAVA)
+            .setMinWidth(level.getIcicleGraphMinWidth())
+            .setReverse(true)
+            .setInverted(true);
+        renderer.render(stackTrie, new File(flameGraphDirectory, stacks.getFileBaseName() + ICICLE_FILE_SUFFIX), options);
     }
 
-    private void generateDifferentialFlameGraph(Stacks stacks) {
+    private void generateDifferentialFlameGraph(Stacks stacks, StackTrie stackTrie) {
         File stacksFile = stacks.getFile();
         EventType type = stacks.getType();
         DetailLevel level = stacks.getLevel();
         boolean negate = stacks.isNegate();
         File flames = new File(stacksFile.getParentFile(), stacks.getFileBaseName() + FlameGraphGenerator.FLAME_FILE_SUFFIX);
-        ImmutableList.Builder<String> options = ImmutableList.builder();
-        options
-            .add("--title", type.getDisplayName() + (negate ? " Forward " : " Backward " + "Differential Flame Graph"))
-            .add("--countname", type.getUnitOfMeasure())
-            .addAll(level.getFlameGraphOptions());
-        if (negate) {
-            options.add("--negate");
-        }
-
-        flameGraphTool.generateFlameGraph(stacksFile, flames, options.build());
+        FlameGraphRenderer.Options options = new FlameGraphRenderer.Options()
+            .setTitle(type.getDisplayName() + (negate ? " Forward" : " Backward") + " Differential Flame Graph")
+            .setCountName(type.getUnitOfMeasure())
+            .setMinWidth(level.getFlameGraphMinWidth())
+            .setNegate(negate);
+        renderer.render(stackTrie, flames, options);
     }
 
-    private void generateDifferentialIcicleGraph(Stacks stacks) {
+    private void generateDifferentialIcicleGraph(Stacks stacks, StackTrie stackTrie) {
         File stacksFile = stacks.getFile();
         EventType type = stacks.getType();
         DetailLevel level = stacks.getLevel();
         boolean negate = stacks.isNegate();
         File icicles = new File(stacksFile.getParentFile(), stacks.getFileBaseName() + FlameGraphGenerator.ICICLE_FILE_SUFFIX);
-        ImmutableList.Builder<String> options = ImmutableList.builder();
-        options
-            .add("--title", type.getDisplayName() + (negate ? " Forward " : " Backward " + "Differential Icicle Graph"))
-            .add("--countname", type.getUnitOfMeasure())
-            .add("--reverse")
-            .add("--invert")
-            .addAll(level.getIcicleGraphOptions());
-        if (negate) {
-            options.add("--negate");
-        }
+        FlameGraphRenderer.Options options = new FlameGraphRenderer.Options()
+            .setTitle(type.getDisplayName() + (negate ? " Forward" : " Backward") + " Differential Icicle Graph")
+            .setCountName(type.getUnitOfMeasure())
+            .setMinWidth(level.getIcicleGraphMinWidth())
+            .setReverse(true)
+            .setInverted(true)
+            .setNegate(negate);
+        renderer.render(stackTrie, icicles, options);
+    }
 
-        flameGraphTool.generateFlameGraph(stacksFile, icicles, options.build());
+    private interface StacksRenderer {
+        void render(Stacks stacks);
     }
 }
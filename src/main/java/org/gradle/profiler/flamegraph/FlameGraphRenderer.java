@@ -0,0 +1,489 @@
+package org.gradle.profiler.flamegraph;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Renders flame graphs and icicle graphs of folded stacks as interactive SVG files, in-process.
+ *
+ * <p>The layout, colors and the embedded viewer script follow {@code flamegraph.pl} from
+ * <a href="https://github.com/brendangregg/FlameGraph">FlameGraph</a>. The viewer script is taken from the bundled copy of
+ * {@code flamegraph.pl}, so search and zoom behave the same as in the graphs rendered by the script itself.
+ * Unlike the script, frames are colored by a hash of their name instead of randomly, so the same frame has the same color in all graphs.</p>
+ *
+ * <p>Stacks with two columns are rendered as differential graphs: the frames are sized by the second column
+ * and colored by the difference between the second and the first column.</p>
+ */
+public class FlameGraphRenderer {
+    private static final String VIEWER_SOURCE = "flamegraph.pl";
+    private static final Pattern PERL_INTERPOLATION = Pattern.compile("\\\\(.)|\\$\\{(\\w+)}|\\$(\\w+)");
+    private static final Pattern ANNOTATION = Pattern.compile("_\\[[kwij]]$");
+    private static final Pattern JAVA_PACKAGE = Pattern.compile("^L?(java|javax|jdk|net|org|com|io|sun)/");
+
+    private static final int IMAGE_WIDTH = 1200;
+    private static final int FRAME_HEIGHT = 16;
+    private static final int FONT_SIZE = 12;
+    private static final double FONT_WIDTH = 0.59;
+    private static final int TITLE_SIZE = FONT_SIZE + 5;
+    private static final int XPAD = 10;
+    private static final int YPAD1 = FONT_SIZE * 3;
+    private static final int YPAD2 = FONT_SIZE * 2 + 10;
+    private static final int FRAME_PAD = 1;
+    private static final String FONT_TYPE = "Verdana";
+    private static final String SEARCH_COLOR = "rgb(230,0,230)";
+    private static final String BLACK = "rgb(0,0,0)";
+    private static final String VERY_DARK_GREY = "rgb(160,160,160)";
+    private static final String DARK_GREY = "rgb(200,200,200)";
+
+    private final String viewerTemplate;
+
+    public FlameGraphRenderer() {
+        this.viewerTemplate = loadViewerTemplate();
+    }
+
+    /**
+     * Renders the stacks of a collapsed stacks file with one count column, or two count columns for differential graphs.
+     */
+    public void render(File stacksFile, int columns, File svgFile, Options options) {
+        render(StackTrie.readColumns(stacksFile, columns), svgFile, options);
+    }
+
+    public void render(StackTrie stacks, File svgFile, Options options) {
+        svgFile.getParentFile().mkdirs();
+        try (BufferedWriter writer = Files.newBufferedWriter(svgFile.toPath(), StandardCharsets.UTF_8)) {
+            render(stacks, writer, options);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void render(StackTrie stacks, Writer writer, Options options) throws IOException {
+        StackTrie tree = options.isReverse() ? reverse(stacks) : stacks;
+        Layout layout = new Layout(tree, options);
+        if (layout.timeMax == 0) {
+            throw new IllegalArgumentException("No stack counts found");
+        }
+
+        int imageHeight = (layout.depthMax + 1) * FRAME_HEIGHT + YPAD1 + YPAD2;
+        writer.write("<?xml version=\"1.0\" standalone=\"no\"?>\n");
+        writer.write("<!DOCTYPE svg PUBLIC \"-//W3C//DTD SVG 1.1//EN\" \"http://www.w3.org/Graphics/SVG/1.1/DTD/svg11.dtd\">\n");
+        writer.write("<svg version=\"1.1\" width=\"" + IMAGE_WIDTH + "\" height=\"" + imageHeight + "\" onload=\"init(evt)\" viewBox=\"0 0 " + IMAGE_WIDTH + " " + imageHeight + "\" xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\">\n");
+        writer.write("<!-- Flame graph stack visualization. See https://github.com/brendangregg/FlameGraph for latest version, and http://www.brendangregg.com/flamegraphs.html for examples. -->\n");
+        writer.write("<!-- NOTES:  -->\n");
+        writer.write(viewer(options));
+        writer.write(rectangle(0, 0, IMAGE_WIDTH, imageHeight, "url(#background)", ""));
+        writer.write(text("title", IMAGE_WIDTH / 2, FONT_SIZE * 2, escape(options.getTitle()), ""));
+        writer.write(text("details", XPAD, imageHeight - (YPAD2 / 2.0), " ", ""));
+        writer.write(text("unzoom", XPAD, FONT_SIZE * 2, "Reset Zoom", "class=\"hide\""));
+        writer.write(text("search", IMAGE_WIDTH - XPAD - 100, FONT_SIZE * 2, "Search", ""));
+        writer.write(text("ignorecase", IMAGE_WIDTH - XPAD - 16, FONT_SIZE * 2, "ic", ""));
+        writer.write(text("matched", IMAGE_WIDTH - XPAD - 100, imageHeight - (YPAD2 / 2.0), " ", ""));
+
+        writer.write("<g id=\"frames\">\n");
+        for (Frame frame : layout.frames) {
+            writeFrame(writer, tree, layout, frame, imageHeight, options);
+        }
+        writer.write("</g>\n");
+        writer.write("</svg>\n");
+    }
+
+    private void writeFrame(Writer writer, StackTrie tree, Layout layout, Frame frame, int imageHeight, Options options) throws IOException {
+        String function = frame.node == StackTrie.ROOT ? "" : tree.getFrameName(tree.getFrame(frame.node));
+        double x1 = XPAD + frame.start * layout.widthPerTime;
+        double x2 = XPAD + (frame.start + frame.width) * layout.widthPerTime;
+        double y1;
+        double y2;
+        if (options.isInverted()) {
+            y1 = YPAD1 + frame.depth * FRAME_HEIGHT;
+            y2 = YPAD1 + (frame.depth + 1) * FRAME_HEIGHT - FRAME_PAD;
+        } else {
+            y1 = imageHeight - YPAD2 - (frame.depth + 1) * FRAME_HEIGHT + FRAME_PAD;
+            y2 = imageHeight - YPAD2 - frame.depth * FRAME_HEIGHT;
+        }
+
+        String samples = String.format(Locale.ROOT, "%,d", frame.width);
+        String info;
+        if (frame.node == StackTrie.ROOT) {
+            info = "all (" + samples + " " + options.getCountName() + ", 100%)";
+        } else {
+            String pct = String.format(Locale.ROOT, "%.2f", 100.0 * frame.width / layout.timeMax);
+            String escapedFunction = ANNOTATION.matcher(escapeAttribute(function)).replaceFirst("");
+            if (!layout.differential) {
+                info = escapedFunction + " (" + samples + " " + options.getCountName() + ", " + pct + "%)";
+            } else {
+                long delta = options.isNegate() ? -frame.delta : frame.delta;
+                String deltaPct = String.format(Locale.ROOT, "%.2f", 100.0 * delta / layout.timeMax);
+                info = escapedFunction + " (" + samples + " " + options.getCountName() + ", " + pct + "%; " + (delta > 0 ? "+" : "") + deltaPct + "%)";
+            }
+        }
+
+        String color;
+        if (function.equals("--")) {
+            color = VERY_DARK_GREY;
+        } else if (function.equals("-")) {
+            color = DARK_GREY;
+        } else if (layout.differential) {
+            color = colorScale(frame.delta, layout.maxDelta, options.isNegate());
+        } else {
+            color = options.getPalette().color(function);
+        }
+
+        writer.write("<g>\n<title>" + info + "</title>");
+        writer.write(rectangle(x1, y1, x2, y2, color, "rx=\"2\" ry=\"2\""));
+        int chars = (int) ((x2 - x1) / (FONT_SIZE * FONT_WIDTH));
+        String label = "";
+        if (chars >= 3) {
+            String name = ANNOTATION.matcher(function).replaceFirst("");
+            label = name.length() > chars ? name.substring(0, chars - 2) + ".." : name;
+            label = escape(label);
+        }
+        writer.write(text(null, x1 + 3, 3 + (y1 + y2) / 2, label, ""));
+        writer.write("</g>\n");
+    }
+
+    private static StackTrie reverse(StackTrie stacks) {
+        int columns = stacks.getColumns();
+        StackTrie reversed = new StackTrie(columns);
+        stacks.visit((frames, depth, node) -> {
+            int reversedNode = StackTrie.ROOT;
+            for (int i = depth - 1; i >= 0; i--) {
+                reversedNode = reversed.child(reversedNode, reversed.internFrame(stacks.getFrameName(frames[i])));
+            }
+            for (int column = 0; column < columns; column++) {
+                reversed.add(reversedNode, column, stacks.getValue(node, column));
+            }
+        });
+        return reversed;
+    }
+
+    private String viewer(Options options) {
+        Map<String, String> variables = new HashMap<>();
+        variables.put("bgcolor1", "#eeeeee");
+        variables.put("bgcolor2", "#eeeeb0");
+        variables.put("fonttype", FONT_TYPE);
+        variables.put("fontsize", String.valueOf(FONT_SIZE));
+        variables.put("fontwidth", String.valueOf(FONT_WIDTH));
+        variables.put("titlesize", String.valueOf(TITLE_SIZE));
+        variables.put("black", BLACK);
+        variables.put("vdgrey", VERY_DARK_GREY);
+        variables.put("xpad", String.valueOf(XPAD));
+        variables.put("inverted", options.isInverted() ? "1" : "0");
+        variables.put("nametype", "Function:");
+        variables.put("searchcolor", SEARCH_COLOR);
+
+        Matcher matcher = PERL_INTERPOLATION.matcher(viewerTemplate);
+        StringBuffer result = new StringBuffer();
+        while (matcher.find()) {
+            String replacement;
+            if (matcher.group(1) != null) {
+                replacement = matcher.group(1);
+            } else {
+                String name = matcher.group(2) != null ? matcher.group(2) : matcher.group(3);
+                replacement = variables.get(name);
+                if (replacement == null) {
+                    throw new IllegalStateException("Unknown variable '" + name + "' in flame graph viewer template.");
+                }
+            }
+            matcher.appendReplacement(result, Matcher.quoteReplacement(replacement));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    /**
+     * Extracts the styles and the script of the interactive viewer from the {@code $inc} here-document of {@code flamegraph.pl}.
+     */
+    private static String loadViewerTemplate() {
+        String script;
+        try (InputStream stream = FlameGraphRenderer.class.getResourceAsStream(VIEWER_SOURCE)) {
+            if (stream == null) {
+                throw new IllegalStateException("Could not find " + VIEWER_SOURCE);
+            }
+            script = new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        String start = "my $inc = <<INC;\n";
+        int startIndex = script.indexOf(start);
+        int endIndex = script.indexOf("\nINC\n", startIndex);
+        if (startIndex < 0 || endIndex < 0) {
+            throw new IllegalStateException("Could not find the viewer script in " + VIEWER_SOURCE);
+        }
+        return script.substring(startIndex + start.length(), endIndex + 1);
+    }
+
+    private static String colorScale(long value, long max, boolean negate) {
+        long scaled = negate ? -value : value;
+        int r = 255;
+        int g = 255;
+        int b = 255;
+        if (scaled > 0) {
+            g = b = (int) (210 * (max - scaled) / max);
+        } else if (scaled < 0) {
+            r = g = (int) (210 * (max + scaled) / max);
+        }
+        return "rgb(" + r + "," + g + "," + b + ")";
+    }
+
+    private static String rectangle(double x1, double y1, double x2, double y2, String fill, String extra) {
+        String x = String.format(Locale.ROOT, "%.1f", x1);
+        String width = String.format(Locale.ROOT, "%.1f", Double.parseDouble(String.format(Locale.ROOT, "%.1f", x2)) - Double.parseDouble(x));
+        String height = String.format(Locale.ROOT, "%.1f", y2 - y1);
+        return "<rect x=\"" + x + "\" y=\"" + number(y1) + "\" width=\"" + width + "\" height=\"" + height + "\" fill=\"" + fill + "\" " + extra + " />\n";
+    }
+
+    private static String text(String id, double x, double y, String text, String extra) {
+        String idAttribute = id == null ? "" : "id=\"" + id + "\"";
+        return "<text " + idAttribute + " x=\"" + String.format(Locale.ROOT, "%.2f", x) + "\" y=\"" + number(y) + "\" " + extra + ">" + text + "</text>\n";
+    }
+
+    private static String number(double value) {
+        return value == Math.rint(value) ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private static String escapeAttribute(String text) {
+        return escape(text).replace("\"", "&quot;");
+    }
+
+    /**
+     * Computes the position of each frame that is wide enough to be drawn.
+     */
+    private static class Layout {
+        private final boolean differential;
+        private final long timeMax;
+        private final double widthPerTime;
+        private final List<Frame> frames = new ArrayList<>();
+        private int depthMax;
+        private long maxDelta = 1;
+
+        Layout(StackTrie tree, Options options) {
+            int columns = tree.getColumns();
+            this.differential = columns > 1;
+            int widthColumn = columns - 1;
+
+            // Children are always created after their parent, so visiting the nodes backwards sums up the children first
+            int nodeCount = tree.getNodeCount();
+            long[] widths = new long[nodeCount];
+            long[] deltas = new long[nodeCount];
+            for (int node = nodeCount - 1; node >= 0; node--) {
+                widths[node] += tree.getValue(node, widthColumn);
+                deltas[node] += tree.getValue(node, widthColumn) - tree.getValue(node, 0);
+                if (node != StackTrie.ROOT) {
+                    widths[tree.getParent(node)] += widths[node];
+                    deltas[tree.getParent(node)] += deltas[node];
+                }
+            }
+            this.timeMax = widths[StackTrie.ROOT];
+            this.widthPerTime = (IMAGE_WIDTH - 2.0 * XPAD) / Math.max(timeMax, 1);
+            double minWidthTime = options.getMinWidth() / widthPerTime;
+
+            // flamegraph.pl sorts the collapsed stacks, where a frame is followed by ';' when the stack continues
+            Comparator<Integer> byName = Comparator.comparing(node -> tree.getFrameName(tree.getFrame(node)) + ';');
+            List<Frame> pending = new ArrayList<>();
+            pending.add(new Frame(StackTrie.ROOT, 0, 0, timeMax, deltas[StackTrie.ROOT]));
+            while (!pending.isEmpty()) {
+                Frame frame = pending.remove(pending.size() - 1);
+                frames.add(frame);
+                depthMax = Math.max(depthMax, frame.depth);
+                maxDelta = Math.max(maxDelta, Math.abs(frame.delta));
+
+                List<Integer> children = new ArrayList<>();
+                for (int child = tree.getFirstChild(frame.node); child != StackTrie.NO_NODE; child = tree.getNextSibling(child)) {
+                    if (widths[child] > 0) {
+                        children.add(child);
+                    }
+                }
+                children.sort(byName);
+                // Stacks ending in this frame come first, as flamegraph.pl sorts them before longer stacks with the same prefix.
+                // Frames that are too narrow are omitted, but still take up their space.
+                long start = frame.start + tree.getValue(frame.node, widthColumn);
+                for (int child : children) {
+                    if (widths[child] >= minWidthTime) {
+                        pending.add(new Frame(child, frame.depth + 1, start, widths[child], deltas[child]));
+                    }
+                    start += widths[child];
+                }
+            }
+        }
+    }
+
+    private static class Frame {
+        private final int node;
+        private final int depth;
+        private final long start;
+        private final long width;
+        private final long delta;
+
+        Frame(int node, int depth, long start, long width, long delta) {
+            this.node = node;
+            this.depth = depth;
+            this.start = start;
+            this.width = width;
+            this.delta = delta;
+        }
+    }
+
+    public enum Palette {
+        HOT {
+            @Override
+            String color(String name) {
+                double v1 = nameHash(name);
+                double v2 = nameHash(new StringBuilder(name).reverse().toString());
+                return "rgb(" + (205 + (int) (50 * v2)) + "," + (int) (230 * v1) + "," + (int) (55 * v2) + ")";
+            }
+        },
+        JAVA {
+            @Override
+            String color(String name) {
+                double v1 = nameHash(name);
+                if (name.endsWith("_[j]")) {
+                    return green(v1);
+                } else if (name.endsWith("_[i]")) {
+                    return "rgb(" + (50 + (int) (60 * v1)) + "," + (165 + (int) (55 * v1)) + "," + (165 + (int) (55 * v1)) + ")";
+                } else if (JAVA_PACKAGE.matcher(name).find()) {
+                    return green(v1);
+                } else if (name.endsWith("_[k]")) {
+                    return "rgb(" + (190 + (int) (65 * v1)) + "," + (90 + (int) (65 * v1)) + ",0)";
+                } else if (name.contains("::")) {
+                    int x = 175 + (int) (55 * v1);
+                    return "rgb(" + x + "," + x + "," + (50 + (int) (20 * v1)) + ")";
+                } else {
+                    int x = 50 + (int) (80 * v1);
+                    return "rgb(" + (200 + (int) (55 * v1)) + "," + x + "," + x + ")";
+                }
+            }
+
+            private String green(double v1) {
+                int x = 50 + (int) (60 * v1);
+                return "rgb(" + x + "," + (200 + (int) (55 * v1)) + "," + x + ")";
+            }
+        };
+
+        abstract String color(String name);
+
+        /**
+         * A hash of the name in [0, 1], weighting early over later characters.
+         */
+        static double nameHash(String name) {
+            double vector = 0;
+            double weight = 1;
+            double max = 1;
+            int mod = 10;
+            int moduleEnd = name.indexOf('`');
+            String function = moduleEnd > 0 ? name.substring(moduleEnd + 1) : name;
+            for (int i = 0; i < function.length() && mod <= 12; i++) {
+                int c = function.charAt(i) % mod;
+                vector += ((double) c / (mod++ - 1)) * weight;
+                max += weight;
+                weight *= 0.70;
+            }
+            return 1 - vector / max;
+        }
+    }
+
+    public static class Options {
+        private String title;
+        private String countName = "samples";
+        private Palette palette = Palette.HOT;
+        private double minWidth = 0.1;
+        private boolean reverse;
+        private boolean inverted;
+        private boolean negate;
+
+        public String getTitle() {
+            if (title == null) {
+                return inverted ? "Icicle Graph" : "Flame Graph";
+            }
+            return title;
+        }
+
+        public Options setTitle(String title) {
+            this.title = title;
+            return this;
+        }
+
+        public String getCountName() {
+            return countName;
+        }
+
+        public Options setCountName(String countName) {
+            this.countName = countName;
+            return this;
+        }
+
+        public Palette getPalette() {
+            return palette;
+        }
+
+        public Options setPalette(Palette palette) {
+            this.palette = palette;
+            return this;
+        }
+
+        public double getMinWidth() {
+            return minWidth;
+        }
+
+        /**
+         * Omits frames narrower than the given number of pixels.
+         */
+        public Options setMinWidth(double minWidth) {
+            this.minWidth = minWidth;
+            return this;
+        }
+
+        public boolean isReverse() {
+            return reverse;
+        }
+
+        /**
+         * Merges the stacks from the innermost frame instead of from the outermost frame.
+         */
+        public Options setReverse(boolean reverse) {
+            this.reverse = reverse;
+            return this;
+        }
+
+        public boolean isInverted() {
+            return inverted;
+        }
+
+        /**
+         * Draws an icicle graph, growing downwards.
+         */
+        public Options setInverted(boolean inverted) {
+            this.inverted = inverted;
+            return this;
+        }
+
+        public boolean isNegate() {
+            return negate;
+        }
+
+        /**
+         * Switches the hues of differential graphs, so that a decrease is shown in red.
+         */
+        public Options setNegate(boolean negate) {
+            this.negate = negate;
+            return this;
+        }
+    }
+}
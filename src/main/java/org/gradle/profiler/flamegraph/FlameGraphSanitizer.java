@@ -1,22 +1,14 @@
 package org.gradle.profiler.flamegraph;
 
 import com.google.common.base.CharMatcher;
-import com.google.common.base.Joiner;
-import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
@@ -28,11 +20,12 @@
 
 /**
  * Simplifies stacks to make flame graphs more readable.
+ *
+ * <p>The sanitize functions are compiled into a pipeline of stages working on arrays of frame ids.
+ * Since the same frames occur in many stacks, everything that only depends on a single frame, like mapping it or
+ * checking it for keywords, is done once per distinct frame and sanitize call.</p>
  */
 public class FlameGraphSanitizer {
-    private static final Splitter STACKTRACE_SPLITTER = Splitter.on(";").omitEmptyStrings();
-    private static final Joiner STACKTRACE_JOINER = Joiner.on(";");
-
     public static final SanitizeFunction COLLAPSE_BUILD_SCRIPTS = new ReplaceRegex(
             ImmutableMap.of(
                     Pattern.compile("build_[a-z0-9]+"), "build script",
@@ -55,7 +48,7 @@ public class FlameGraphSanitizer {
 
     public static final SanitizeFunction NORMALIZE_LAMBDA_NAMES = new NormalizeLambda();
 
-    private final SanitizeFunction sanitizeFunction;
+    private final List<Stage> stages;
 
     public static FlameGraphSanitizer simplified(SanitizeFunction... additionalSanitizers) {
         ImmutableList.Builder<SanitizeFunction> builder = ImmutableList.builder();
@@ -78,39 +71,116 @@ public static FlameGraphSanitizer raw(SanitizeFunction... additionalSanitizers)
         return new FlameGraphSanitizer(builder.build());
     }
 
+    /**
+     * Removes all stacks that have a frame containing one of the given key words.
+     */
+    public static SanitizeFunction removeStacksContaining(String... keyWords) {
+        return new RemoveStacksContaining(asList(keyWords));
+    }
+
     public FlameGraphSanitizer(ImmutableList<SanitizeFunction> sanitizeFunctions) {
-        this.sanitizeFunction = new CompositeSanitizeFunction(sanitizeFunctions);
+        this.stages = compile(sanitizeFunctions);
     }
 
     public void sanitize(final File in, File out) {
-        out.getParentFile().mkdirs();
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(out));
-             BufferedReader reader = Files.newBufferedReader(in.toPath())) {
-            String line;
-            StringBuilder sb = new StringBuilder();
-            while ((line = reader.readLine()) != null) {
-                int endOfStack = line.lastIndexOf(" ");
-                if (endOfStack <= 0) {
-                    continue;
+        sanitize(StackTrie.read(in)).write(out);
+    }
+
+    /**
+     * Sanitizes each stack of the given tree, folding the sanitized stacks into a new tree.
+     */
+    public StackTrie sanitize(StackTrie stacks) {
+        FrameTable frameTable = new FrameTable(stacks);
+        List<StageRun> runs = new ArrayList<>(stages.size());
+        for (Stage stage : stages) {
+            runs.add(stage.start(frameTable));
+        }
+        StackTrie sanitizedStacks = new StackTrie();
+        FrameMemo sanitizedFrameIds = new FrameMemo();
+        StackBuffer stack = new StackBuffer();
+        stacks.visit((frames, depth, node) -> {
+            stack.set(frames, depth);
+            for (StageRun run : runs) {
+                run.apply(stack);
+                if (stack.depth == 0) {
+                    return;
+                }
+            }
+            int sanitizedNode = StackTrie.ROOT;
+            for (int i = 0; i < stack.depth; i++) {
+                int frame = stack.frames[i];
+                int sanitizedFrame = sanitizedFrameIds.get(frame);
+                if (sanitizedFrame < 0) {
+                    sanitizedFrame = sanitizedStacks.internFrame(frameTable.getName(frame));
+                    sanitizedFrameIds.put(frame, sanitizedFrame);
                 }
-                String stackTrace = line.substring(0, endOfStack);
-                String invocationCount = line.substring(endOfStack + 1);
-                List<String> stackTraceElements = STACKTRACE_SPLITTER.splitToList(stackTrace);
-                List<String> sanitizedStackElements = sanitizeFunction.map(stackTraceElements);
-                if (!sanitizedStackElements.isEmpty()) {
-                    sb.setLength(0);
-                    STACKTRACE_JOINER.appendTo(sb, sanitizedStackElements);
-                    sb.append(" ");
-                    sb.append(invocationCount);
-                    sb.append("\n");
-                    writer.write(sb.toString());
+                sanitizedNode = sanitizedStacks.child(sanitizedNode, sanitizedFrame);
+            }
+            sanitizedStacks.add(sanitizedNode, 0, stacks.getValue(node, 0));
+        });
+        return sanitizedStacks;
+    }
+
+    private static List<Stage> compile(List<SanitizeFunction> sanitizeFunctions) {
+        List<SanitizeFunction> functions = new ArrayList<>();
+        flatten(sanitizeFunctions, functions);
+
+        List<Stage> stages = new ArrayList<>();
+        int i = 0;
+        while (i < functions.size()) {
+            SanitizeFunction function = functions.get(i);
+            if (function instanceof FrameWiseSanitizeFunction) {
+                List<FrameWiseSanitizeFunction> frameFunctions = new ArrayList<>();
+                while (i < functions.size() && functions.get(i) instanceof FrameWiseSanitizeFunction) {
+                    FrameWiseSanitizeFunction frameFunction = (FrameWiseSanitizeFunction) functions.get(i++);
+                    int last = frameFunctions.size() - 1;
+                    if (last >= 0 && frameFunctions.get(last) instanceof ReplaceContainment && frameFunction instanceof ReplaceContainment) {
+                        frameFunctions.set(last, ((ReplaceContainment) frameFunctions.get(last)).followedBy((ReplaceContainment) frameFunction));
+                    } else {
+                        frameFunctions.add(frameFunction);
+                    }
                 }
+                stages.add(new MapFrames(frameFunctions));
+            } else if (function instanceof ChopPrefix) {
+                List<String> stopTokens = new ArrayList<>();
+                while (i < functions.size() && functions.get(i) instanceof ChopPrefix && stopTokens.size() < Long.SIZE) {
+                    stopTokens.add(((ChopPrefix) functions.get(i++)).stopToken);
+                }
+                stages.add(new ChopPrefixes(stopTokens));
+            } else if (function instanceof RemoveStacksContaining) {
+                stages.add(new RemoveStacks((RemoveStacksContaining) function));
+                i++;
+            } else if (function instanceof CollapseDuplicateFrames) {
+                stages.add(frameTable -> FlameGraphSanitizer::collapseDuplicateFrames);
+                i++;
+            } else {
+                stages.add(new MapStacks(function));
+                i++;
+            }
+        }
+        return stages;
+    }
+
+    private static void flatten(Collection<SanitizeFunction> functions, List<SanitizeFunction> result) {
+        for (SanitizeFunction function : functions) {
+            if (function instanceof CompositeSanitizeFunction) {
+                flatten(((CompositeSanitizeFunction) function).sanitizeFunctions, result);
+            } else {
+                result.add(function);
             }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
         }
     }
 
+    private static void collapseDuplicateFrames(StackBuffer stack) {
+        int depth = 0;
+        for (int i = 0; i < stack.depth; i++) {
+            if (depth == 0 || stack.frames[depth - 1] != stack.frames[i]) {
+                stack.frames[depth++] = stack.frames[i];
+            }
+        }
+        stack.depth = depth;
+    }
+
     public interface SanitizeFunction {
         List<String> map(List<String> stack);
     }
@@ -150,23 +220,48 @@ public final List<String> map(List<String> stack) {
         protected abstract String mapFrame(String frame);
     }
 
+    /**
+     * Replaces frames containing one of the key words of a group with the replacement of that group.
+     * Later groups are checked against the replacement of earlier groups, as if each group was applied one after the other.
+     */
     private static class ReplaceContainment extends FrameWiseSanitizeFunction {
-        private final Collection<String> keyWords;
-        private final String replacement;
+        private final List<Collection<String>> keyWordGroups;
+        private final List<String> replacements;
+        private final KeywordMatcher matcher;
+        private final long[] replacementMatches;
 
         private ReplaceContainment(Collection<String> keyWords, String replacement) {
-            this.keyWords = keyWords;
-            this.replacement = replacement;
+            this(singletonList(keyWords), singletonList(replacement));
+        }
+
+        private ReplaceContainment(List<Collection<String>> keyWordGroups, List<String> replacements) {
+            this.keyWordGroups = keyWordGroups;
+            this.replacements = replacements;
+            this.matcher = new KeywordMatcher(keyWordGroups);
+            this.replacementMatches = new long[replacements.size()];
+            for (int group = 0; group < replacements.size(); group++) {
+                replacementMatches[group] = matcher.matchingGroups(replacements.get(group));
+            }
+        }
+
+        public ReplaceContainment followedBy(ReplaceContainment next) {
+            return new ReplaceContainment(
+                ImmutableList.<Collection<String>>builder().addAll(keyWordGroups).addAll(next.keyWordGroups).build(),
+                ImmutableList.<String>builder().addAll(replacements).addAll(next.replacements).build()
+            );
         }
 
         @Override
         protected String mapFrame(String frame) {
-            for (String keyWord : keyWords) {
-                if (frame.contains(keyWord)) {
-                    return replacement;
-                }
+            String result = frame;
+            long matches = matcher.matchingGroups(frame);
+            while (matches != 0) {
+                int group = Long.numberOfTrailingZeros(matches);
+                result = replacements.get(group);
+                // Only groups after the replacing one still apply
+                matches = replacementMatches[group] & (-1L << group << 1);
             }
-            return frame;
+            return result;
         }
     }
 
@@ -181,14 +276,11 @@ private ReplaceRegex(Map<Pattern, String> replacements) {
         protected String mapFrame(String frame) {
             for (Map.Entry<Pattern, String> replacement : replacements.entrySet()) {
                 Matcher matcher = replacement.getKey().matcher(frame);
-                String value = replacement.getValue();
-                StringBuffer sb = new StringBuffer();
-                while (matcher.find()) {
-                    matcher.appendReplacement(sb, value);
-                }
-                matcher.appendTail(sb);
-                if (sb.length() > 0) {
-                    frame = sb.toString();
+                if (matcher.find()) {
+                    String replaced = matcher.replaceAll(replacement.getValue());
+                    if (!replaced.isEmpty()) {
+                        frame = replaced;
+                    }
                 }
             }
             return frame;
@@ -231,6 +323,26 @@ public List<String> map(List<String> stack) {
         }
     }
 
+    private static class RemoveStacksContaining implements SanitizeFunction {
+        private final List<String> keyWords;
+
+        private RemoveStacksContaining(List<String> keyWords) {
+            this.keyWords = keyWords;
+        }
+
+        @Override
+        public List<String> map(List<String> stack) {
+            for (String frame : stack) {
+                for (String keyWord : keyWords) {
+                    if (frame.contains(keyWord)) {
+                        return ImmutableList.of();
+                    }
+                }
+            }
+            return stack;
+        }
+    }
+
     private static class NormalizeLambda extends FrameWiseSanitizeFunction {
 
         private static final Pattern LAMBDA_PATTERN = Pattern.compile(Pattern.quote("$$Lambda$") + "[0-9]+[./][0-9]+(?:x[0-9a-fA-F]+)?");
@@ -251,4 +363,237 @@ protected String mapFrame(String frame) {
             return frame.substring(Math.max(firstUpper, 0));
         }
     }
+
+    /**
+     * A compiled part of the sanitizer pipeline. Stages are shared, while their runs hold the state of a single sanitize call.
+     */
+    private interface Stage {
+        StageRun start(FrameTable frameTable);
+    }
+
+    private interface StageRun {
+        /**
+         * Sanitizes the stack in place.
+         */
+        void apply(StackBuffer stack);
+    }
+
+    /**
+     * Applies consecutive frame-wise functions, once per distinct frame.
+     */
+    private static class MapFrames implements Stage {
+        private final List<FrameWiseSanitizeFunction> functions;
+
+        private MapFrames(List<FrameWiseSanitizeFunction> functions) {
+            this.functions = functions;
+        }
+
+        @Override
+        public StageRun start(FrameTable frameTable) {
+            FrameMemo mappedFrames = new FrameMemo();
+            return stack -> {
+                for (int i = 0; i < stack.depth; i++) {
+                    int frame = stack.frames[i];
+                    int mappedFrame = mappedFrames.get(frame);
+                    if (mappedFrame < 0) {
+                        String name = frameTable.getName(frame);
+                        for (FrameWiseSanitizeFunction function : functions) {
+                            name = function.mapFrame(name);
+                        }
+                        mappedFrame = frameTable.intern(name);
+                        mappedFrames.put(frame, mappedFrame);
+                    }
+                    stack.frames[i] = mappedFrame;
+                }
+            };
+        }
+    }
+
+    /**
+     * Applies consecutive {@link ChopPrefix} functions, checking each distinct frame only once for all stop tokens.
+     */
+    private static class ChopPrefixes implements Stage {
+        private final int stopTokenCount;
+        private final KeywordMatcher matcher;
+
+        private ChopPrefixes(List<String> stopTokens) {
+            this.stopTokenCount = stopTokens.size();
+            List<List<String>> groups = new ArrayList<>();
+            for (String stopToken : stopTokens) {
+                groups.add(singletonList(stopToken));
+            }
+            this.matcher = new KeywordMatcher(groups);
+        }
+
+        @Override
+        public StageRun start(FrameTable frameTable) {
+            FrameMatches frameMatches = new FrameMatches(frameTable, matcher);
+            return stack -> {
+                int start = 0;
+                for (int stopToken = 0; stopToken < stopTokenCount; stopToken++) {
+                    long stopTokenBit = 1L << stopToken;
+                    for (int i = start; i < stack.depth; i++) {
+                        if ((frameMatches.get(stack.frames[i]) & stopTokenBit) != 0) {
+                            start = i;
+                            break;
+                        }
+                    }
+                }
+                if (start > 0) {
+                    System.arraycopy(stack.frames, start, stack.frames, 0, stack.depth - start);
+                    stack.depth -= start;
+                }
+            };
+        }
+    }
+
+    private static class RemoveStacks implements Stage {
+        private final KeywordMatcher matcher;
+
+        private RemoveStacks(RemoveStacksContaining function) {
+            this.matcher = new KeywordMatcher(singletonList(function.keyWords));
+        }
+
+        @Override
+        public StageRun start(FrameTable frameTable) {
+            FrameMatches frameMatches = new FrameMatches(frameTable, matcher);
+            return stack -> {
+                for (int i = 0; i < stack.depth; i++) {
+                    if (frameMatches.get(stack.frames[i]) != 0) {
+                        stack.depth = 0;
+                        return;
+                    }
+                }
+            };
+        }
+    }
+
+    /**
+     * Runs a sanitize function that cannot be compiled on the frame names of the stack.
+     */
+    private static class MapStacks implements Stage {
+        private final SanitizeFunction function;
+
+        private MapStacks(SanitizeFunction function) {
+            this.function = function;
+        }
+
+        @Override
+        public StageRun start(FrameTable frameTable) {
+            List<String> names = new ArrayList<>();
+            return stack -> {
+                names.clear();
+                for (int i = 0; i < stack.depth; i++) {
+                    names.add(frameTable.getName(stack.frames[i]));
+                }
+                List<String> mapped = function.map(names);
+                stack.ensureCapacity(mapped.size());
+                for (int i = 0; i < mapped.size(); i++) {
+                    stack.frames[i] = frameTable.intern(mapped.get(i));
+                }
+                stack.depth = mapped.size();
+            };
+        }
+    }
+
+    /**
+     * The frames of the stack being sanitized.
+     */
+    private static class StackBuffer {
+        private int[] frames = new int[64];
+        private int depth;
+
+        void set(int[] frames, int depth) {
+            ensureCapacity(depth);
+            System.arraycopy(frames, 0, this.frames, 0, depth);
+            this.depth = depth;
+        }
+
+        void ensureCapacity(int capacity) {
+            if (frames.length < capacity) {
+                frames = Arrays.copyOf(frames, Math.max(capacity, frames.length * 2));
+            }
+        }
+    }
+
+    /**
+     * Frames of a single sanitize call: the frames of the input, followed by the frames created by the sanitizer.
+     */
+    private static class FrameTable {
+        private final StackTrie input;
+        private final int inputFrameCount;
+        private final Map<String, Integer> createdFrameIds = new HashMap<>();
+        private final List<String> createdFrames = new ArrayList<>();
+
+        FrameTable(StackTrie input) {
+            this.input = input;
+            this.inputFrameCount = input.getFrameCount();
+        }
+
+        int intern(String frame) {
+            int id = input.findFrame(frame);
+            if (id >= 0) {
+                return id;
+            }
+            Integer createdId = createdFrameIds.get(frame);
+            if (createdId == null) {
+                createdId = inputFrameCount + createdFrames.size();
+                createdFrames.add(frame);
+                createdFrameIds.put(frame, createdId);
+            }
+            return createdId;
+        }
+
+        String getName(int frame) {
+            return frame < inputFrameCount ? input.getFrameName(frame) : createdFrames.get(frame - inputFrameCount);
+        }
+    }
+
+    /**
+     * Remembers a frame id for each frame id.
+     */
+    private static class FrameMemo {
+        private int[] values = new int[0];
+
+        int get(int frame) {
+            return frame < values.length ? values[frame] : -1;
+        }
+
+        void put(int frame, int value) {
+            if (frame >= values.length) {
+                int oldLength = values.length;
+                values = Arrays.copyOf(values, Math.max(frame + 1, oldLength * 2));
+                Arrays.fill(values, oldLength, values.length, -1);
+            }
+            values[frame] = value;
+        }
+    }
+
+    /**
+     * Remembers the keyword groups contained in each frame.
+     */
+    private static class FrameMatches {
+        private final FrameTable frameTable;
+        private final KeywordMatcher matcher;
+        private long[] matches = new long[0];
+        private boolean[] known = new boolean[0];
+
+        FrameMatches(FrameTable frameTable, KeywordMatcher matcher) {
+            this.frameTable = frameTable;
+            this.matcher = matcher;
+        }
+
+        long get(int frame) {
+            if (frame >= known.length) {
+                int length = Math.max(frame + 1, known.length * 2);
+                matches = Arrays.copyOf(matches, length);
+                known = Arrays.copyOf(known, length);
+            }
+            if (!known[frame]) {
+                matches[frame] = matcher.matchingGroups(frameTable.getName(frame));
+                known[frame] = true;
+            }
+            return matches[frame];
+        }
+    }
 }
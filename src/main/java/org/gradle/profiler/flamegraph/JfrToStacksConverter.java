@@ -4,7 +4,9 @@
 import org.openjdk.jmc.common.IMCStackTrace;
 import org.openjdk.jmc.common.item.IItem;
 import org.openjdk.jmc.common.item.IItemCollection;
-import org.openjdk.jmc.common.item.ItemToolkit;
+import org.openjdk.jmc.common.item.IItemIterable;
+import org.openjdk.jmc.common.item.IMemberAccessor;
+import org.openjdk.jmc.common.item.IType;
 import org.openjdk.jmc.flightrecorder.CouldNotLoadRecordingException;
 import org.openjdk.jmc.flightrecorder.JfrAttributes;
 import org.openjdk.jmc.flightrecorder.JfrLoaderToolkit;
@@ -13,25 +15,27 @@
 import org.openjdk.jmc.flightrecorder.stacktrace.StacktraceFormatToolkit;
 
 import javax.annotation.Nullable;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Consumer;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.ToLongFunction;
 
 import static java.util.Objects.requireNonNull;
 
 /**
  * Converts JFR recordings to the collapsed stacks format used by the FlameGraph tool.
+ *
+ * <p>Events are visited only once: each event lane of each recording is folded on a {@link ForkJoinPool}
+ * into per-{@link EventType} counts of distinct stack traces. The partial folds are merged at the end,
+ * and each stack trace is then folded once into a {@link StackTrie} for every {@link DetailLevel}.</p>
  */
 public class JfrToStacksConverter {
     private final Map<DetailLevel, FlameGraphSanitizer> sanitizers;
@@ -41,157 +45,171 @@ public JfrToStacksConverter(Map<DetailLevel, FlameGraphSanitizer> sanitizers) {
     }
 
     public List<Stacks> generateStacks(File jfrFile, String outputBaseName) {
-        Stream<File> jfrFiles = jfrFile.isDirectory()
-            ? Stream.of(requireNonNull(jfrFile.listFiles((dir, name) -> name.endsWith(".jfr"))))
-            : Stream.of(jfrFile);
-        List<IItemCollection> recordings = jfrFiles
-            .map(file -> {
-                try {
-                    return JfrLoaderToolkit.loadEvents(file);
-                } catch (IOException | CouldNotLoadRecordingException e) {
-                    throw new RuntimeException(e);
-                }
-            }).collect(Collectors.toList());
+        List<File> jfrFiles = jfrFile.isDirectory()
+            ? Arrays.asList(requireNonNull(jfrFile.listFiles((dir, name) -> name.endsWith(".jfr"))))
+            : Collections.singletonList(jfrFile);
 
-        List<Stacks> stacks = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool();
         try {
+            StackFolder folder = foldStacks(pool, jfrFiles);
+
+            List<ForkJoinTask<Stacks>> conversions = new ArrayList<>();
             for (EventType type : EventType.values()) {
+                Map<IMCStackTrace, long[]> foldedStacks = folder.getFoldedStacks(type);
+                if (foldedStacks.isEmpty()) {
+                    continue;
+                }
                 for (DetailLevel level : DetailLevel.values()) {
                     String eventFileBaseName = outputBaseName + Stacks.postFixFor(type, level);
-                    File stacksFile = generateStacks(jfrFile.getParentFile(), eventFileBaseName, recordings, type, level);
-                    if (stacksFile != null) {
-                        stacks.add(new Stacks(stacksFile, type, level, eventFileBaseName));
-                    }
+                    conversions.add(pool.submit(() -> generateStacks(jfrFile.getParentFile(), eventFileBaseName, foldedStacks, type, level)));
+                }
+            }
+
+            List<Stacks> stacks = new ArrayList<>();
+            for (ForkJoinTask<Stacks> conversion : conversions) {
+                Stacks result = conversion.join();
+                if (result != null) {
+                    stacks.add(result);
                 }
             }
             return stacks;
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        } finally {
+            pool.shutdown();
         }
     }
 
-    @Nullable
-    private File generateStacks(File baseDir, String eventFileBaseName, List<IItemCollection> recordings, EventType type, DetailLevel level) throws IOException {
-        File stacks = File.createTempFile("stacks", ".txt");
-        convertToStacks(recordings, stacks, new Options(type, level.isShowArguments(), level.isShowLineNumbers()));
-        if (stacks.length() == 0) {
-            Files.delete(stacks.toPath());
-            return null;
+    private static StackFolder foldStacks(ForkJoinPool pool, List<File> jfrFiles) {
+        List<ForkJoinTask<IItemCollection>> recordings = new ArrayList<>();
+        for (File file : jfrFiles) {
+            recordings.add(pool.submit(() -> loadEvents(file)));
+        }
+
+        List<ForkJoinTask<StackFolder>> partialFolds = new ArrayList<>();
+        for (ForkJoinTask<IItemCollection> recording : recordings) {
+            for (IItemIterable events : recording.join()) {
+                if (matchingEventType(events.getType()) != null) {
+                    partialFolds.add(pool.submit(() -> {
+                        StackFolder folder = new StackFolder();
+                        folder.fold(events);
+                        return folder;
+                    }));
+                }
+            }
         }
-        File sanitizedStacks = new File(baseDir, eventFileBaseName + Stacks.STACKS_FILE_SUFFIX);
-        sanitizers.get(level).sanitize(stacks, sanitizedStacks);
-        Files.delete(stacks.toPath());
-        return sanitizedStacks;
-    }
 
-    private void convertToStacks(List<IItemCollection> recordings, File targetFile, Options options) {
-        Map<String, Long> foldedStacks = foldStacks(recordings, options);
-        writeFoldedStacks(foldedStacks, targetFile);
+        StackFolder result = new StackFolder();
+        for (ForkJoinTask<StackFolder> partialFold : partialFolds) {
+            result.merge(partialFold.join());
+        }
+        return result;
     }
 
-    private Map<String, Long> foldStacks(List<IItemCollection> recordings, Options options) {
-        StackFolder folder = new StackFolder(options);
-        recordings.stream()
-            .flatMap(recording -> StreamSupport.stream(recording.spliterator(), false))
-            .flatMap(eventStream -> StreamSupport.stream(eventStream.spliterator(), false))
-            .filter(options.eventType::matches)
-            .filter(event -> getStackTrace(event) != null)
-            .forEach(folder);
-        return folder.getFoldedStacks();
+    private static IItemCollection loadEvents(File file) {
+        try {
+            return JfrLoaderToolkit.loadEvents(file);
+        } catch (IOException | CouldNotLoadRecordingException e) {
+            throw new RuntimeException(e);
+        }
     }
 
-    private void writeFoldedStacks(Map<String, Long> foldedStacks, File targetFile) {
-        targetFile.getParentFile().mkdirs();
-        try (BufferedWriter writer = Files.newBufferedWriter(targetFile.toPath(), StandardCharsets.UTF_8)) {
-            for (Map.Entry<String, Long> entry : foldedStacks.entrySet()) {
-                writer.write(String.format("%s %d%n", entry.getKey(), entry.getValue()));
+    @Nullable
+    private static EventType matchingEventType(IType<IItem> eventType) {
+        for (EventType type : EventType.values()) {
+            if (type.matches(eventType)) {
+                return type;
             }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
         }
+        return null;
     }
 
-    private static IMCStackTrace getStackTrace(IItem event) {
-        return ItemToolkit.getItemType(event).getAccessor(JfrAttributes.EVENT_STACKTRACE.getKey()).getMember(event);
+    @Nullable
+    private Stacks generateStacks(File baseDir, String eventFileBaseName, Map<IMCStackTrace, long[]> foldedStacks, EventType type, DetailLevel level) {
+        StackTrie sanitizedStacks = sanitizers.get(level).sanitize(new StackFormatter(level).format(foldedStacks));
+        if (sanitizedStacks.isEmpty()) {
+            return null;
+        }
+        File stacksFile = new File(baseDir, eventFileBaseName + Stacks.STACKS_FILE_SUFFIX);
+        // The stack traces are folded in hash order, so sort them to write the same file for the same recording
+        sanitizedStacks.sortChildren();
+        sanitizedStacks.write(stacksFile);
+        return new Stacks(stacksFile, type, level, eventFileBaseName);
     }
 
-    private static class StackFolder implements Consumer<IItem> {
-        private final Options options;
-        private final Map<String, Long> foldedStacks = new LinkedHashMap<>();
+    /**
+     * Sums up event values by distinct stack trace, for every event type.
+     */
+    private static class StackFolder {
+        private final Map<EventType, Map<IMCStackTrace, long[]>> foldedStacks = new EnumMap<>(EventType.class);
+
+        public void fold(IItemIterable events) {
+            IType<IItem> eventType = events.getType();
+            EventType type = requireNonNull(matchingEventType(eventType));
+            IMemberAccessor<IMCStackTrace, IItem> stackTraceAccessor = eventType.getAccessor(JfrAttributes.EVENT_STACKTRACE.getKey());
+            if (stackTraceAccessor == null) {
+                return;
+            }
+            ToLongFunction<IItem> valueAccessor = type.valueAccessor(eventType);
+            Map<IMCStackTrace, long[]> stacks = foldedStacks.computeIfAbsent(type, key -> new HashMap<>());
+            for (IItem event : events) {
+                IMCStackTrace stackTrace = stackTraceAccessor.getMember(event);
+                if (stackTrace != null) {
+                    stacks.computeIfAbsent(stackTrace, key -> new long[1])[0] += valueAccessor.applyAsLong(event);
+                }
+            }
+        }
+
+        public void merge(StackFolder other) {
+            other.foldedStacks.forEach((type, otherStacks) -> {
+                Map<IMCStackTrace, long[]> stacks = foldedStacks.computeIfAbsent(type, key -> new HashMap<>());
+                otherStacks.forEach((stackTrace, value) -> stacks.computeIfAbsent(stackTrace, key -> new long[1])[0] += value[0]);
+            });
+        }
 
-        public StackFolder(Options options) {
-            this.options = options;
+        public Map<IMCStackTrace, long[]> getFoldedStacks(EventType type) {
+            return foldedStacks.getOrDefault(type, Collections.emptyMap());
         }
+    }
 
-        @Override
-        public void accept(IItem event) {
-            String stack = toStack(event);
-            Long sum = foldedStacks.get(stack);
-            long value = getValue(event);
-            if (sum == null) {
-                sum = value;
-            } else {
-                sum += value;
-            }
-            foldedStacks.put(stack, sum);
+    /**
+     * Folds stack traces into a {@link StackTrie}, formatting each distinct frame only once.
+     */
+    private static class StackFormatter {
+        private final DetailLevel level;
+        private final FrameSeparator frameSeparator;
+        private final Map<IMCFrame, Integer> frameIds = new HashMap<>();
+        private final StackTrie stacks = new StackTrie();
+
+        public StackFormatter(DetailLevel level) {
+            this.level = level;
+            this.frameSeparator = new FrameSeparator(level.isShowLineNumbers() ? FrameCategorization.LINE : FrameCategorization.METHOD, false);
         }
 
-        private String toStack(IItem event) {
-            IMCStackTrace stackTrace = getStackTrace(event);
-            List<IMCFrame> reverseStacks = new ArrayList<>(stackTrace.getFrames());
-            Collections.reverse(reverseStacks);
-            return reverseStacks.stream()
-                .map(this::frameName)
-                .collect(Collectors.joining(";"));
+        public StackTrie format(Map<IMCStackTrace, long[]> foldedStacks) {
+            foldedStacks.forEach((stackTrace, value) -> {
+                List<? extends IMCFrame> frames = stackTrace.getFrames();
+                int node = StackTrie.ROOT;
+                for (int i = frames.size() - 1; i >= 0; i--) {
+                    node = stacks.child(node, frameIds.computeIfAbsent(frames.get(i), frame -> stacks.internFrame(frameName(frame))));
+                }
+                stacks.add(node, 0, value[0]);
+            });
+            return stacks;
         }
 
         private String frameName(IMCFrame frame) {
             String frameName = StacktraceFormatToolkit.formatFrame(
                 frame,
-                new FrameSeparator(options.isShowLineNumbers() ? FrameCategorization.LINE : FrameCategorization.METHOD, false),
+                frameSeparator,
                 false,
                 false,
                 true,
                 true,
-                options.isShowArguments(),
+                level.isShowArguments(),
                 true
             );
             return frame.getType() == IMCFrame.Type.UNKNOWN
                 ? frameName
                 : frameName + "_[j]";
         }
-
-        private long getValue(IItem event) {
-            return options.getEventType().getValue(event);
-        }
-
-        public Map<String, Long> getFoldedStacks() {
-            return foldedStacks;
-        }
-    }
-
-    public static class Options {
-        private final EventType eventType;
-        private final boolean showArguments;
-        private final boolean showLineNumbers;
-
-        public Options(EventType eventType, boolean showArguments, boolean showLineNumbers) {
-            this.eventType = eventType;
-            this.showArguments = showArguments;
-            this.showLineNumbers = showLineNumbers;
-        }
-
-        public EventType getEventType() {
-            return eventType;
-        }
-
-        public boolean isShowArguments() {
-            return showArguments;
-        }
-
-        public boolean isShowLineNumbers() {
-            return showLineNumbers;
-        }
     }
-
 }
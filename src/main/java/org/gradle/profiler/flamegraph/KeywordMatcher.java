@@ -0,0 +1,136 @@
+package org.gradle.profiler.flamegraph;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Finds which groups of keywords occur in a string, scanning the string only once.
+ *
+ * <p>All keywords are compiled into a single Aho-Corasick automaton. Each state knows the groups of all keywords
+ * ending in it, so a scan is a single table lookup per character, independent of the number of keywords.</p>
+ */
+class KeywordMatcher {
+    private static final int MAX_GROUPS = Long.SIZE;
+
+    private final int[] charClasses;
+    private final int alphabetSize;
+    private final int[] transitions;
+    private final long[] groupMasks;
+    private final long allGroups;
+
+    /**
+     * @param keywordGroups the keywords, grouped. At most 64 groups are supported.
+     */
+    KeywordMatcher(List<? extends Iterable<String>> keywordGroups) {
+        if (keywordGroups.size() > MAX_GROUPS) {
+            throw new IllegalArgumentException("At most " + MAX_GROUPS + " groups of keywords are supported, but got " + keywordGroups.size());
+        }
+        this.allGroups = keywordGroups.size() == MAX_GROUPS ? -1L : (1L << keywordGroups.size()) - 1;
+
+        // Class 0 stands for all characters that do not occur in any keyword
+        char maxChar = 0;
+        for (Iterable<String> group : keywordGroups) {
+            for (String keyword : group) {
+                for (int i = 0; i < keyword.length(); i++) {
+                    maxChar = (char) Math.max(maxChar, keyword.charAt(i));
+                }
+            }
+        }
+        charClasses = new int[maxChar + 1];
+        int classes = 1;
+        for (Iterable<String> group : keywordGroups) {
+            for (String keyword : group) {
+                for (int i = 0; i < keyword.length(); i++) {
+                    if (charClasses[keyword.charAt(i)] == 0) {
+                        charClasses[keyword.charAt(i)] = classes++;
+                    }
+                }
+            }
+        }
+        alphabetSize = classes;
+
+        // Build the keyword trie, with -1 for missing edges
+        List<int[]> edges = new ArrayList<>();
+        List<Long> masks = new ArrayList<>();
+        edges.add(newEdges());
+        masks.add(0L);
+        for (int group = 0; group < keywordGroups.size(); group++) {
+            for (String keyword : keywordGroups.get(group)) {
+                if (keyword.isEmpty()) {
+                    throw new IllegalArgumentException("Keywords must not be empty");
+                }
+                int state = 0;
+                for (int i = 0; i < keyword.length(); i++) {
+                    int charClass = charClasses[keyword.charAt(i)];
+                    if (edges.get(state)[charClass] < 0) {
+                        edges.get(state)[charClass] = edges.size();
+                        edges.add(newEdges());
+                        masks.add(0L);
+                    }
+                    state = edges.get(state)[charClass];
+                }
+                masks.set(state, masks.get(state) | (1L << group));
+            }
+        }
+
+        // Complete the trie into a deterministic automaton, following failure links breadth first
+        int states = edges.size();
+        transitions = new int[states * alphabetSize];
+        groupMasks = new long[states];
+        int[] failures = new int[states];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int charClass = 0; charClass < alphabetSize; charClass++) {
+            int next = edges.get(0)[charClass];
+            if (next < 0) {
+                transitions[charClass] = 0;
+            } else {
+                transitions[charClass] = next;
+                failures[next] = 0;
+                queue.add(next);
+            }
+        }
+        groupMasks[0] = masks.get(0);
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            groupMasks[state] = masks.get(state) | groupMasks[failures[state]];
+            for (int charClass = 0; charClass < alphabetSize; charClass++) {
+                int next = edges.get(state)[charClass];
+                int fallback = transitions[failures[state] * alphabetSize + charClass];
+                if (next < 0) {
+                    transitions[state * alphabetSize + charClass] = fallback;
+                } else {
+                    transitions[state * alphabetSize + charClass] = next;
+                    failures[next] = fallback;
+                    queue.add(next);
+                }
+            }
+        }
+    }
+
+    private int[] newEdges() {
+        int[] stateEdges = new int[alphabetSize];
+        Arrays.fill(stateEdges, -1);
+        return stateEdges;
+    }
+
+    /**
+     * Returns a bit mask with bit {@code i} set when the text contains a keyword of group {@code i}.
+     */
+    long matchingGroups(String text) {
+        int state = 0;
+        long matches = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int charClass = c < charClasses.length ? charClasses[c] : 0;
+            state = transitions[state * alphabetSize + charClass];
+            matches |= groupMasks[state];
+            if (matches == allGroups) {
+                break;
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,491 @@
+package org.gradle.profiler.flamegraph;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A call tree of folded stacks.
+ *
+ * <p>Frames are interned to int ids and stacks share the nodes of their common prefix,
+ * so the memory used grows with the number of distinct frames and call paths instead of with the length of the stacks.
+ * Each node holds one or more primitive counters, one per column, so the same tree can hold the stacks of several
+ * recordings side by side.</p>
+ *
+ * <p>Stacks are only turned into the collapsed stacks format, where frames are separated by {@code ;} and followed by the counters,
+ * when {@link #write(File) written}.</p>
+ */
+public class StackTrie {
+    public static final int ROOT = 0;
+    public static final int NO_NODE = -1;
+
+    private static final long NO_KEY = -1;
+
+    private final int columns;
+
+    private final Map<String, Integer> frameIds = new HashMap<>();
+    private final List<String> frameNames = new ArrayList<>();
+
+    private int nodeCount;
+    private int[] nodeFrames;
+    private int[] parents;
+    private int[] firstChildren;
+    private int[] lastChildren;
+    private int[] nextSiblings;
+    private long[] values;
+    // Nodes at which at least one stack ends
+    private final BitSet stackEnds = new BitSet();
+
+    // Open addressing index from (parent node, frame id) to child node
+    private long[] childKeys;
+    private int[] childNodes;
+
+    public StackTrie() {
+        this(1);
+    }
+
+    public StackTrie(int columns) {
+        this.columns = columns;
+        int capacity = 1024;
+        nodeFrames = new int[capacity];
+        parents = new int[capacity];
+        firstChildren = new int[capacity];
+        lastChildren = new int[capacity];
+        nextSiblings = new int[capacity];
+        values = new long[capacity * columns];
+        childKeys = new long[capacity * 2];
+        childNodes = new int[capacity * 2];
+        Arrays.fill(childKeys, NO_KEY);
+        newNode(NO_NODE, -1);
+    }
+
+    /**
+     * Loads a collapsed stacks file into a new tree.
+     */
+    public static StackTrie read(File stacksFile) {
+        StackTrie stacks = new StackTrie();
+        stacks.read(stacksFile, 0);
+        return stacks;
+    }
+
+    /**
+     * Loads a collapsed stacks file where each stack is followed by the given number of values into a new tree.
+     */
+    public static StackTrie readColumns(File stacksFile, int columns) {
+        StackTrie stacks = new StackTrie(columns);
+        try (BufferedReader reader = Files.newBufferedReader(stacksFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                stacks.addCollapsedStack(line);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return stacks;
+    }
+
+    /**
+     * Adds the stacks of a collapsed stacks file to the given column.
+     */
+    public void read(File stacksFile, int column) {
+        try (BufferedReader reader = Files.newBufferedReader(stacksFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                addCollapsedStack(line, column);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Adds a single line in the collapsed stacks format to the given column.
+     */
+    public void addCollapsedStack(String line, int column) {
+        int endOfStack = line.lastIndexOf(' ');
+        if (endOfStack <= 0) {
+            return;
+        }
+        long value = Long.parseLong(line.substring(endOfStack + 1));
+        add(addFrames(line, endOfStack), column, value);
+    }
+
+    /**
+     * Adds a single line in the collapsed stacks format, followed by one value for each column.
+     */
+    public void addCollapsedStack(String line) {
+        long[] lineValues = new long[columns];
+        int endOfStack = line.length();
+        for (int column = columns - 1; column >= 0; column--) {
+            int separator = line.lastIndexOf(' ', endOfStack - 1);
+            if (separator <= 0) {
+                return;
+            }
+            lineValues[column] = Long.parseLong(line.substring(separator + 1, endOfStack));
+            endOfStack = separator;
+        }
+        int node = addFrames(line, endOfStack);
+        for (int column = 0; column < columns; column++) {
+            add(node, column, lineValues[column]);
+        }
+    }
+
+    private int addFrames(String line, int endOfStack) {
+        int node = ROOT;
+        int start = 0;
+        while (start < endOfStack) {
+            int end = line.indexOf(';', start);
+            if (end < 0 || end > endOfStack) {
+                end = endOfStack;
+            }
+            String frame = line.substring(start, end).trim();
+            if (!frame.isEmpty()) {
+                node = child(node, internFrame(frame));
+            }
+            start = end + 1;
+        }
+        return node;
+    }
+
+    /**
+     * Adds a stack, given from the outermost to the innermost frame, to the first column.
+     */
+    public void addStack(List<String> frames, long value) {
+        int node = ROOT;
+        for (String frame : frames) {
+            node = child(node, internFrame(frame));
+        }
+        add(node, 0, value);
+    }
+
+    public int internFrame(String frame) {
+        Integer id = frameIds.get(frame);
+        if (id == null) {
+            id = frameNames.size();
+            frameNames.add(frame);
+            frameIds.put(frame, id);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the id of the given frame, or -1 if no stack of this tree contains it.
+     */
+    public int findFrame(String frame) {
+        Integer id = frameIds.get(frame);
+        return id == null ? -1 : id;
+    }
+
+    public String getFrameName(int frameId) {
+        return frameNames.get(frameId);
+    }
+
+    public int getFrameCount() {
+        return frameNames.size();
+    }
+
+    /**
+     * Returns the child of the given node for the given frame, creating it if necessary.
+     */
+    public int child(int node, int frameId) {
+        long key = ((long) node << 32) | frameId;
+        int mask = childKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (childKeys[slot] != NO_KEY) {
+            if (childKeys[slot] == key) {
+                return childNodes[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        int child = newNode(node, frameId);
+        childKeys[slot] = key;
+        childNodes[slot] = child;
+        if ((nodeCount - 1) * 2 > childKeys.length) {
+            rehash();
+        }
+        return child;
+    }
+
+    /**
+     * Adds a value to the given column of the stack that ends at the given node.
+     */
+    public void add(int node, int column, long value) {
+        if (node == ROOT) {
+            // Empty stacks cannot be represented in the collapsed stacks format
+            return;
+        }
+        values[node * columns + column] += value;
+        stackEnds.set(node);
+    }
+
+    public long getValue(int node, int column) {
+        return values[node * columns + column];
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getFrame(int node) {
+        return nodeFrames[node];
+    }
+
+    public int getParent(int node) {
+        return parents[node];
+    }
+
+    /**
+     * Returns the first child of the given node, or {@link #NO_NODE}. Children are kept in the order they were added, until {@link #sortChildren()} is called.
+     */
+    public int getFirstChild(int node) {
+        return firstChildren[node];
+    }
+
+    public int getNextSibling(int node) {
+        return nextSiblings[node];
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public boolean isEmpty() {
+        return stackEnds.isEmpty();
+    }
+
+    /**
+     * Orders the children of every node by frame name, so that the stacks are visited and written in the same order, whatever order they were added in.
+     */
+    public void sortChildren() {
+        Integer[] framesByName = new Integer[frameNames.size()];
+        for (int frameId = 0; frameId < framesByName.length; frameId++) {
+            framesByName[frameId] = frameId;
+        }
+        Arrays.sort(framesByName, Comparator.comparing(frameNames::get));
+        int[] ranks = new int[framesByName.length];
+        for (int rank = 0; rank < framesByName.length; rank++) {
+            ranks[framesByName[rank]] = rank;
+        }
+
+        // The frames of the children of a node are distinct, so sorting by rank and then node orders the children by frame name
+        long[] children = new long[16];
+        for (int node = 0; node < nodeCount; node++) {
+            int count = 0;
+            for (int child = firstChildren[node]; child != NO_NODE; child = nextSiblings[child]) {
+                if (count == children.length) {
+                    children = Arrays.copyOf(children, count * 2);
+                }
+                children[count++] = ((long) ranks[nodeFrames[child]] << 32) | child;
+            }
+            if (count < 2) {
+                continue;
+            }
+            Arrays.sort(children, 0, count);
+            int previous = (int) children[0];
+            firstChildren[node] = previous;
+            for (int i = 1; i < count; i++) {
+                int child = (int) children[i];
+                nextSiblings[previous] = child;
+                previous = child;
+            }
+            nextSiblings[previous] = NO_NODE;
+            lastChildren[node] = previous;
+        }
+    }
+
+    /**
+     * Visits all stacks in depth-first order.
+     */
+    public void visit(StackVisitor visitor) {
+        int[] path = new int[64];
+        int depth = 0;
+        int node = firstChildren[ROOT];
+        while (node != NO_NODE) {
+            if (depth == path.length) {
+                path = Arrays.copyOf(path, depth * 2);
+            }
+            path[depth++] = nodeFrames[node];
+            if (stackEnds.get(node)) {
+                visitor.visitStack(path, depth, node);
+            }
+            if (firstChildren[node] != NO_NODE) {
+                node = firstChildren[node];
+                continue;
+            }
+            while (true) {
+                depth--;
+                if (nextSiblings[node] != NO_NODE) {
+                    node = nextSiblings[node];
+                    break;
+                }
+                node = parents[node];
+                if (node == ROOT) {
+                    node = NO_NODE;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the values of a column of another tree to a column of this tree.
+     */
+    public void merge(StackTrie other, int otherColumn, int column) {
+        int[] frameIdsOfOther = new int[other.getFrameCount()];
+        Arrays.fill(frameIdsOfOther, NO_NODE);
+        int[] nodesOfOther = new int[other.nodeCount];
+        nodesOfOther[ROOT] = ROOT;
+        // Parents are always created before their children
+        for (int otherNode = 1; otherNode < other.nodeCount; otherNode++) {
+            int otherFrame = other.nodeFrames[otherNode];
+            if (frameIdsOfOther[otherFrame] == NO_NODE) {
+                frameIdsOfOther[otherFrame] = internFrame(other.frameNames.get(otherFrame));
+            }
+            int node = child(nodesOfOther[other.parents[otherNode]], frameIdsOfOther[otherFrame]);
+            nodesOfOther[otherNode] = node;
+            if (other.stackEnds.get(otherNode)) {
+                add(node, column, other.getValue(otherNode, otherColumn));
+            }
+        }
+    }
+
+    /**
+     * Writes the stacks in the collapsed stacks format, followed by the value of each column.
+     */
+    public void write(File stacksFile) {
+        write(stacksFile, allColumns());
+    }
+
+    /**
+     * Writes the stacks in the collapsed stacks format, followed by the values of the given columns.
+     * Stacks without a value in any of the given columns are left out.
+     */
+    public void write(File stacksFile, int... columns) {
+        stacksFile.getParentFile().mkdirs();
+        try (BufferedWriter writer = Files.newBufferedWriter(stacksFile.toPath(), StandardCharsets.UTF_8)) {
+            write(writer, columns);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void write(Writer writer) {
+        write(writer, allColumns());
+    }
+
+    public void write(Writer writer, int... columns) {
+        boolean everyColumn = columns.length == this.columns;
+        StringBuilder line = new StringBuilder();
+        visit((frames, depth, node) -> {
+            if (!everyColumn && !hasValue(node, columns)) {
+                return;
+            }
+            line.setLength(0);
+            for (int i = 0; i < depth; i++) {
+                if (i > 0) {
+                    line.append(';');
+                }
+                line.append(frameNames.get(frames[i]));
+            }
+            for (int column : columns) {
+                line.append(' ').append(getValue(node, column));
+            }
+            line.append('\n');
+            try {
+                writer.append(line);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private boolean hasValue(int node, int[] columns) {
+        for (int column : columns) {
+            if (getValue(node, column) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int[] allColumns() {
+        int[] allColumns = new int[columns];
+        for (int column = 0; column < columns; column++) {
+            allColumns[column] = column;
+        }
+        return allColumns;
+    }
+
+    private int newNode(int parent, int frameId) {
+        if (nodeCount == nodeFrames.length) {
+            int capacity = nodeCount * 2;
+            nodeFrames = Arrays.copyOf(nodeFrames, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            lastChildren = Arrays.copyOf(lastChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            values = Arrays.copyOf(values, capacity * columns);
+        }
+        int node = nodeCount++;
+        nodeFrames[node] = frameId;
+        parents[node] = parent;
+        firstChildren[node] = NO_NODE;
+        lastChildren[node] = NO_NODE;
+        nextSiblings[node] = NO_NODE;
+        if (parent != NO_NODE) {
+            if (firstChildren[parent] == NO_NODE) {
+                firstChildren[parent] = node;
+            } else {
+                nextSiblings[lastChildren[parent]] = node;
+            }
+            lastChildren[parent] = node;
+        }
+        return node;
+    }
+
+    private void rehash() {
+        long[] oldKeys = childKeys;
+        int[] oldNodes = childNodes;
+        childKeys = new long[oldKeys.length * 2];
+        childNodes = new int[oldNodes.length * 2];
+        Arrays.fill(childKeys, NO_KEY);
+        int mask = childKeys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != NO_KEY) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (childKeys[slot] != NO_KEY) {
+                    slot = (slot + 1) & mask;
+                }
+                childKeys[slot] = oldKeys[i];
+                childNodes[slot] = oldNodes[i];
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+
+    public interface StackVisitor {
+        /**
+         * Visits a stack that ends at the given node.
+         *
+         * @param frames the frame ids of the stack, from the outermost to the innermost frame. Only valid during the call.
+         * @param depth the number of frames of the stack
+         */
+        void visitStack(int[] frames, int depth, int node);
+    }
+}
@@ -4,9 +4,14 @@
 import org.gradle.profiler.buildops.BuildOperationExecutionData;
 import org.gradle.profiler.buildops.BuildOperationInstrumentation;
 import org.gradle.profiler.buildops.BuildOperationMeasurement;
+import org.gradle.profiler.buildops.ResourceUsage;
+import org.gradle.profiler.buildops.internal.InternalBuildMeasurements;
 import org.gradle.profiler.instrument.PidInstrumentation;
+import org.gradle.profiler.process.ProcessTreeSampler;
+import org.gradle.profiler.process.ProcessTreeUsage;
 import org.gradle.profiler.result.BuildActionResult;
 
+import javax.annotation.Nullable;
 import java.time.Duration;
 import java.util.*;
 
@@ -19,6 +24,7 @@ public class BuildUnderTestInvoker {
     private final GradleClient gradleClient;
     private final PidInstrumentation pidInstrumentation;
     private final BuildOperationInstrumentation buildOperationInstrumentation;
+    private final Duration processTreeSamplingInterval;
     private final Map<String, Duration> previousGcTimes = new HashMap<>();
 
     BuildStepAction<GradleBuildInvocationResult> NO_OP = new BuildStepAction<GradleBuildInvocationResult>() {
@@ -33,12 +39,20 @@ public GradleBuildInvocationResult run(BuildContext buildContext, BuildStep buil
         }
     };
 
-    public BuildUnderTestInvoker(List<String> jvmArgs, List<String> gradleArgs, GradleClient gradleClient, PidInstrumentation pidInstrumentation, BuildOperationInstrumentation buildOperationInstrumentation) {
+    public BuildUnderTestInvoker(
+        List<String> jvmArgs,
+        List<String> gradleArgs,
+        GradleClient gradleClient,
+        PidInstrumentation pidInstrumentation,
+        BuildOperationInstrumentation buildOperationInstrumentation,
+        @Nullable Duration processTreeSamplingInterval
+    ) {
         this.jvmArgs = jvmArgs;
         this.gradleArgs = gradleArgs;
         this.gradleClient = gradleClient;
         this.pidInstrumentation = pidInstrumentation;
         this.buildOperationInstrumentation = buildOperationInstrumentation;
+        this.processTreeSamplingInterval = processTreeSamplingInterval;
     }
 
     public BuildStepAction<GradleBuildInvocationResult> create(BuildAction action) {
@@ -68,22 +82,44 @@ public GradleBuildInvocationResult run(BuildContext buildContext, BuildStep buil
             jvmArgs.add("-Dorg.gradle.profiler.phase.display.name=" + buildContext.getPhase().getDisplayName());
             jvmArgs.add("-Dorg.gradle.profiler.number=" + buildContext.getIteration());
             jvmArgs.add("-Dorg.gradle.profiler.step=" + buildStep);
+            String buildId = buildContext.getUniqueBuildId() + "@" + buildStep;
+            jvmArgs.add("-D" + InternalBuildMeasurements.BUILD_ID_PROPERTY + "=" + buildId);
 
-            BuildActionResult buildActionResult = action.run(gradleClient, gradleArgs, jvmArgs);
+            ProcessTreeSampler processTreeSampler = processTreeSamplingInterval == null ? null : startProcessTreeSampler();
+
+            BuildActionResult buildActionResult;
+            try {
+                buildActionResult = action.run(gradleClient, gradleArgs, jvmArgs);
+            } finally {
+                if (processTreeSampler != null) {
+                    processTreeSampler.stop();
+                }
+            }
 
             String pid = pidInstrumentation.getPidForLastBuild();
             Logging.detailed().printf("Used daemon with pid %s%n", pid);
 
-            Optional<Duration> garbageCollectionTime = buildOperationInstrumentation.getTotalGarbageCollectionTime()
+            ProcessTreeUsage processTreeUsage = ProcessTreeUsage.NONE;
+            if (processTreeSampler != null) {
+                processTreeUsage = processTreeSampler.usageOf(Long.parseLong(pid));
+                Logging.detailed().printf(
+                    "Process tree of %d processes used %d ms user and %d ms system CPU time%n",
+                    processTreeUsage.getProcessCount(), processTreeUsage.getUserCpuTime().toMillis(), processTreeUsage.getSystemCpuTime().toMillis()
+                );
+            }
+
+            BuildOperationInstrumentation.Measurements measurements = buildOperationInstrumentation.receiveMeasurements(buildId);
+            Optional<Duration> garbageCollectionTime = measurements.getTotalGarbageCollectionTime()
                 .map(currentTotal -> {
                     Duration previousTotal = previousGcTimes.getOrDefault(pid, Duration.ZERO);
                     previousGcTimes.put(pid, currentTotal);
                     return currentTotal.minus(previousTotal);
                 });
-            Optional<Long> localBuildCacheSize = buildOperationInstrumentation.getLocalBuildCacheSize();
-            Optional<Duration> timeToTaskExecution = buildOperationInstrumentation.getTimeToTaskExecution();
+            Optional<Long> localBuildCacheSize = measurements.getLocalBuildCacheSize();
+            Optional<Duration> timeToTaskExecution = measurements.getTimeToTaskExecution();
+            ResourceUsage resourceUsage = measurements.getResourceUsage();
 
-            Map<BuildOperationMeasurement, BuildOperationExecutionData> totalExecutionData = buildOperationInstrumentation.getTotalBuildOperationExecutionData();
+            Map<BuildOperationMeasurement, BuildOperationExecutionData> totalExecutionData = measurements.getTotalBuildOperationExecutionData();
             totalExecutionData.forEach((opMeasurement, duration) -> {
                 Logging.detailed().printf(
                     "%s %s is %s ms (%s occurrences)%n",
@@ -93,6 +129,7 @@ public GradleBuildInvocationResult run(BuildContext buildContext, BuildStep buil
             });
             garbageCollectionTime.ifPresent(duration -> Logging.detailed().printf("Total GC time: %d ms%n", duration.toMillis()));
             timeToTaskExecution.ifPresent(duration -> Logging.detailed().printf("Time to task execution %d ms%n", duration.toMillis()));
+            resourceUsage.getProcessCpuTime().ifPresent(duration -> Logging.detailed().printf("Process CPU time: %d ms%n", duration.toMillis()));
 
             return new GradleBuildInvocationResult(
                 buildContext,
@@ -101,8 +138,24 @@ public GradleBuildInvocationResult run(BuildContext buildContext, BuildStep buil
                 localBuildCacheSize.orElse(null),
                 timeToTaskExecution.orElse(null),
                 totalExecutionData,
+                resourceUsage,
+                processTreeUsage,
                 pid);
         }
+
+        /**
+         * Samples the processes started by the profiler, which include a daemon started for this build, as well as the daemon of the previous build,
+         * which is reused when it is still compatible. Only the tree of the daemon that runs the build is accounted once it is known.
+         */
+        private ProcessTreeSampler startProcessTreeSampler() {
+            List<Long> rootPids = new ArrayList<>();
+            rootPids.add(ProcessHandle.current().pid());
+            String previousPid = pidInstrumentation.getPidForLastBuild();
+            if (previousPid != null) {
+                rootPids.add(Long.parseLong(previousPid));
+            }
+            return ProcessTreeSampler.startForRunningProcesses(processTreeSamplingInterval, rootPids);
+        }
     }
 
     public BuildUnderTestInvoker withJvmArgs(List<String> jvmArgs) {
@@ -120,6 +173,6 @@ public BuildUnderTestInvoker withGradleArgs(List<String> gradleArgs) {
     }
 
     private BuildUnderTestInvoker copy(List<String> jvmArgs, List<String> gradleArgs) {
-        return new BuildUnderTestInvoker(jvmArgs, gradleArgs, gradleClient, pidInstrumentation, buildOperationInstrumentation);
+        return new BuildUnderTestInvoker(jvmArgs, gradleArgs, gradleClient, pidInstrumentation, buildOperationInstrumentation, processTreeSamplingInterval);
     }
 }
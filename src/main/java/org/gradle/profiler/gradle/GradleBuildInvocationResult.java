@@ -3,14 +3,23 @@
 import org.gradle.profiler.BuildContext;
 import org.gradle.profiler.buildops.BuildOperationExecutionData;
 import org.gradle.profiler.buildops.BuildOperationMeasurement;
+import org.gradle.profiler.buildops.BuildOperationMeasurementKind;
+import org.gradle.profiler.buildops.HistogramStatistic;
+import org.gradle.profiler.buildops.ResourceUsage;
+import org.gradle.profiler.process.ProcessTreeUsage;
 import org.gradle.profiler.result.BuildActionResult;
 import org.gradle.profiler.result.BuildInvocationResult;
 import org.gradle.profiler.result.DurationSample;
 import org.gradle.profiler.result.Sample;
 import org.gradle.profiler.result.SingleInvocationDurationSample;
+import org.gradle.profiler.result.SingleInvocationSample;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
 import javax.annotation.Nullable;
 
 public class GradleBuildInvocationResult extends BuildInvocationResult {
@@ -18,6 +27,7 @@ public class GradleBuildInvocationResult extends BuildInvocationResult {
     private final Long localBuildCacheSize;
     private final Duration timeToTaskExecution;
     private final Map<BuildOperationMeasurement, BuildOperationExecutionData> buildOperationExecutionData;
+    private final ResourceUsage resourceUsage;
     private final String daemonPid;
 
     public GradleBuildInvocationResult(
@@ -27,13 +37,16 @@ public GradleBuildInvocationResult(
         @Nullable Long localBuildCacheSize,
         @Nullable Duration timeToTaskExecution,
         Map<BuildOperationMeasurement, BuildOperationExecutionData> buildOperationExecutionData,
+        ResourceUsage resourceUsage,
+        ProcessTreeUsage processTreeUsage,
         String daemonPid
     ) {
-        super(buildContext, actionResult);
+        super(buildContext, actionResult, processTreeUsage);
         this.garbageCollectionTime = garbageCollectionTime;
         this.localBuildCacheSize = localBuildCacheSize;
         this.timeToTaskExecution = timeToTaskExecution;
         this.buildOperationExecutionData = buildOperationExecutionData;
+        this.resourceUsage = resourceUsage;
         this.daemonPid = daemonPid;
     }
 
@@ -57,6 +70,43 @@ public Map<BuildOperationMeasurement, BuildOperationExecutionData> getBuildOpera
         return buildOperationExecutionData;
     }
 
+    public ResourceUsage getResourceUsage() {
+        return resourceUsage;
+    }
+
+    /**
+     * Returns the samples of the given measurement: one per statistic for {@link BuildOperationMeasurementKind#HISTOGRAM}, a single one otherwise.
+     */
+    public static List<Sample<GradleBuildInvocationResult>> samplesBuildOperation(BuildOperationMeasurement measurement) {
+        List<Sample<GradleBuildInvocationResult>> samples = new ArrayList<>();
+        if (measurement.getMeasurementKind() == BuildOperationMeasurementKind.HISTOGRAM) {
+            for (HistogramStatistic statistic : HistogramStatistic.values()) {
+                samples.add(sampleBuildOperationHistogram(measurement, statistic));
+            }
+        } else {
+            samples.add(sampleBuildOperation(measurement));
+        }
+        return samples;
+    }
+
+    public static Sample<GradleBuildInvocationResult> sampleBuildOperationHistogram(BuildOperationMeasurement measurement, HistogramStatistic statistic) {
+        return new DurationSample<>(measurement.toDisplayString() + " " + statistic.toValueString()) {
+            @Override
+            protected Duration extractTotalDurationFrom(GradleBuildInvocationResult result) {
+                return Duration.ofMillis(getExecutionData(result).getHistogram().getOrDefault(statistic, 0L));
+            }
+
+            @Override
+            public int extractTotalCountFrom(GradleBuildInvocationResult result) {
+                return getExecutionData(result).getTotalCount();
+            }
+
+            private BuildOperationExecutionData getExecutionData(GradleBuildInvocationResult result) {
+                return result.buildOperationExecutionData.getOrDefault(measurement, BuildOperationExecutionData.ZERO);
+            }
+        };
+    }
+
     public static Sample<GradleBuildInvocationResult> sampleBuildOperation(BuildOperationMeasurement measurement) {
         return new DurationSample<>(measurement.toDisplayString()) {
             @Override
@@ -93,4 +143,43 @@ public int extractTotalCountFrom(GradleBuildInvocationResult result) {
 
     public static final Sample<GradleBuildInvocationResult> TIME_TO_TASK_EXECUTION
         = SingleInvocationDurationSample.from("task start", GradleBuildInvocationResult::getTimeToTaskExecution);
+
+    /**
+     * Returns the samples of the resource usage of the daemon that were measured in any of the results, including one per heap memory pool.
+     */
+    public static List<Sample<GradleBuildInvocationResult>> samplesResourceUsage(List<? extends GradleBuildInvocationResult> results) {
+        List<Sample<GradleBuildInvocationResult>> samples = new ArrayList<>();
+        // Some values cannot be measured on every platform, for example the I/O of the daemon, so only add the samples that have a value in some result
+        if (results.stream().anyMatch(result -> result.getResourceUsage().getProcessCpuTime().isPresent())) {
+            samples.add(SingleInvocationDurationSample.from("process CPU time", result -> result.getResourceUsage().getProcessCpuTime().orElse(Duration.ZERO)));
+        }
+        addIfMeasured(samples, results, "allocated memory", "MiB", usage -> usage.getAllocatedBytes().map(SingleInvocationSample::toMiB));
+        addIfMeasured(samples, results, "peak allocation rate", "MiB/s", usage -> usage.getPeakAllocationRate().map(SingleInvocationSample::toMiB));
+        addIfMeasured(samples, results, "peak heap usage", "MiB", usage -> usage.getPeakHeapBytes().map(SingleInvocationSample::toMiB));
+        results.stream()
+            .flatMap(result -> result.getResourceUsage().getPeakHeapPools().stream())
+            .distinct()
+            .sorted()
+            .forEach(pool -> samples.add(sampleResourceUsage("peak heap usage " + pool, "MiB", usage -> usage.getPeakHeapBytes(pool).map(SingleInvocationSample::toMiB))));
+        addIfMeasured(samples, results, "heap usage after GC", "MiB", usage -> usage.getHeapAfterGcBytes().map(SingleInvocationSample::toMiB));
+        results.stream()
+            .flatMap(result -> result.getResourceUsage().getHeapAfterGcPools().stream())
+            .distinct()
+            .sorted()
+            .forEach(pool -> samples.add(sampleResourceUsage("heap usage after GC " + pool, "MiB", usage -> usage.getHeapAfterGcBytes(pool).map(SingleInvocationSample::toMiB))));
+        addIfMeasured(samples, results, "peak thread count", "threads", usage -> usage.getPeakThreadCount().map(Long::doubleValue));
+        addIfMeasured(samples, results, "I/O read", "MiB", usage -> usage.getIoReadBytes().map(SingleInvocationSample::toMiB));
+        addIfMeasured(samples, results, "I/O written", "MiB", usage -> usage.getIoWriteBytes().map(SingleInvocationSample::toMiB));
+        return samples;
+    }
+
+    private static void addIfMeasured(List<Sample<GradleBuildInvocationResult>> samples, List<? extends GradleBuildInvocationResult> results, String name, String unit, Function<ResourceUsage, Optional<Double>> extractor) {
+        if (results.stream().anyMatch(result -> extractor.apply(result.getResourceUsage()).isPresent())) {
+            samples.add(sampleResourceUsage(name, unit, extractor));
+        }
+    }
+
+    private static Sample<GradleBuildInvocationResult> sampleResourceUsage(String name, String unit, Function<ResourceUsage, Optional<Double>> extractor) {
+        return SingleInvocationSample.from(name, unit, result -> extractor.apply(result.getResourceUsage()).orElse(0.0));
+    }
 }
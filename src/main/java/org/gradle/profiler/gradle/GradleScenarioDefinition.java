@@ -157,6 +157,9 @@ public void visitProblems(InvocationSettings settings, Consumer<String> reporter
         if (settings.isMeasureConfigTime() && isBuildServiceUnsupported()) {
             reporter.accept("Measuring build configuration is only supported for Gradle 6.1-milestone-3 and later");
         }
+        if (settings.isMeasureResources() && isBuildServiceUnsupported()) {
+            reporter.accept("Measuring resource usage is only supported for Gradle 6.1-milestone-3 and later");
+        }
         super.visitProblems(settings, reporter);
     }
 
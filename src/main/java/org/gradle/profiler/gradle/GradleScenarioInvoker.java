@@ -17,6 +17,7 @@
 import org.gradle.profiler.ScenarioContext;
 import org.gradle.profiler.ScenarioInvoker;
 import org.gradle.profiler.ScenarioSettings;
+import org.gradle.profiler.StoppingRule;
 import org.gradle.profiler.buildops.BuildOperationInstrumentation;
 import org.gradle.profiler.instrument.PidInstrumentation;
 import org.gradle.profiler.perfetto.BuildOperationToPerfettoConverter;
@@ -26,6 +27,7 @@
 
 import java.io.File;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -59,8 +61,14 @@ public SampleProvider<GradleBuildInvocationResult> samplesFor(InvocationSettings
             if (settings.isMeasureConfigTime()) {
                 builder.add(GradleBuildInvocationResult.TIME_TO_TASK_EXECUTION);
             }
+            if (settings.isMeasureResources()) {
+                builder.addAll(GradleBuildInvocationResult.samplesResourceUsage(results));
+            }
+            if (settings.isMeasureProcessTree()) {
+                builder.addAll(BuildInvocationResult.PROCESS_TREE_SAMPLES);
+            }
             scenario.getBuildOperationMeasurements().stream()
-                .map(GradleBuildInvocationResult::sampleBuildOperation)
+                .flatMap(measurement -> GradleBuildInvocationResult.samplesBuildOperation(measurement).stream())
                 .forEach(builder::add);
             return builder.build();
         };
@@ -78,7 +86,10 @@ public void run(GradleScenarioDefinition scenario, InvocationSettings settings,
             settings.isMeasureGarbageCollection(),
             settings.isMeasureLocalBuildCache(),
             settings.isMeasureConfigTime(),
-            scenario.getBuildOperationMeasurements()
+            scenario.getBuildOperationMeasurements(),
+            settings.getResourceSamplingInterval(),
+            scenarioSettings.profilerOutputLocationFor("-resources"),
+            scenarioSettings.getProfilerOutputBaseName()
         );
         if (buildOperationInstrumentation.requiresInitScript()) {
             allBuildsGradleArgsCalculator = allBuildsGradleArgsCalculator.plus(buildOperationInstrumentation);
@@ -123,7 +134,14 @@ public void run(GradleScenarioDefinition scenario, InvocationSettings settings,
             allBuildsGradleArgsCalculator.calculateGradleArgs(allBuildsGradleArgs);
             logGradleArgs(allBuildsGradleArgs);
 
-            BuildUnderTestInvoker uninstrumented = new BuildUnderTestInvoker(allBuildsJvmArgs, allBuildsGradleArgs, gradleClient, pidInstrumentation, buildOperationInstrumentation);
+            BuildUnderTestInvoker uninstrumented = new BuildUnderTestInvoker(
+                allBuildsJvmArgs,
+                allBuildsGradleArgs,
+                gradleClient,
+                pidInstrumentation,
+                buildOperationInstrumentation,
+                settings.getProcessTreeSamplingInterval()
+            );
 
             BuildStepAction<?> cleanupStep = cleanupStep(uninstrumented, mutator, scenario, buildConfiguration);
             BuildStepAction<GradleBuildInvocationResult> warmupBuildStep = buildStep(uninstrumented, scenario);
@@ -132,11 +150,16 @@ public void run(GradleScenarioDefinition scenario, InvocationSettings settings,
 
             GradleBuildInvocationResult results = null;
             String pid = null;
+            StoppingRule stoppingRule = StoppingRule.from(settings);
 
-            for (int iteration = 1; iteration <= scenario.getWarmUpCount(); iteration++) {
+            List<Duration> warmUpTimes = new ArrayList<>();
+            for (int iteration = 1; iteration <= scenario.getWarmUpCount() && !stoppingRule.isSteadyState(warmUpTimes); iteration++) {
                 BuildContext buildContext = scenarioContext.withBuild(WARM_UP, iteration);
-                cleanupStep.run(buildContext, CLEANUP);
-                results = runMeasured(buildContext, mutator, warmupBuildStep, resultConsumer);
+                results = runInTurn(buildContext, () -> {
+                    cleanupStep.run(buildContext, CLEANUP);
+                    return runMeasured(buildContext, mutator, warmupBuildStep, resultConsumer);
+                });
+                warmUpTimes.add(results.getExecutionTime());
                 if (pid == null) {
                     pid = results.getDaemonPid();
                 } else {
@@ -166,10 +189,14 @@ public void run(GradleScenarioDefinition scenario, InvocationSettings settings,
             RecordingBuildStepAction recordingBuildStep = new RecordingBuildStepAction(measuredBuildStep, cleanupStep, scenario, control);
 
             control.startSession();
-            for (int i = 1; i <= scenario.getBuildCount(); i++) {
+            List<Duration> buildTimes = new ArrayList<>();
+            for (int i = 1; i <= scenario.getBuildCount() && !stoppingRule.isConverged(buildTimes); i++) {
                 BuildContext buildContext = scenarioContext.withBuild(MEASURE, i);
-                cleanupStep.run(buildContext, CLEANUP);
-                results = runMeasured(buildContext, mutator, recordingBuildStep, resultConsumer);
+                results = runInTurn(buildContext, () -> {
+                    cleanupStep.run(buildContext, CLEANUP);
+                    return runMeasured(buildContext, mutator, recordingBuildStep, resultConsumer);
+                });
+                buildTimes.add(results.getExecutionTime());
             }
 
             control.stopSession();
@@ -181,6 +208,7 @@ public void run(GradleScenarioDefinition scenario, InvocationSettings settings,
             mutator.afterScenario(scenarioContext);
             gradleClient.close();
             daemonControl.stop(buildConfiguration);
+            buildOperationInstrumentation.close();
         }
 
         if (scenario.isBuildOperationsTrace()) {
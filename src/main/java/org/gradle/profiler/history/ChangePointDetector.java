@@ -0,0 +1,110 @@
+package org.gradle.profiler.history;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Finds the points where the mean of a series of values shifts, using a CUSUM chart combined with bootstrapping.
+ *
+ * <p>A segment of the series contains a change when the range of the cumulative sum of the differences to the mean of the segment
+ * is larger than for at least {@value #CONFIDENCE_LEVEL} of the random reorderings of the segment. The change is located at the
+ * extreme of the cumulative sum, and both sides of the change are searched again for further changes.
+ * The reorderings use a fixed seed, so the same series always produces the same change points.</p>
+ */
+public class ChangePointDetector {
+    static final double CONFIDENCE_LEVEL = 0.95;
+
+    private static final int BOOTSTRAPS = 1000;
+    private static final int MIN_SEGMENT_SIZE = 2;
+    private static final long SEED = 0x5EED;
+
+    /**
+     * Returns the indexes of the values that start a new segment of the series, in ascending order.
+     */
+    public List<Integer> detect(double[] values) {
+        List<Integer> changePoints = new ArrayList<>();
+        detect(values, 0, values.length, new Random(SEED), changePoints);
+        Collections.sort(changePoints);
+        return changePoints;
+    }
+
+    private static void detect(double[] values, int start, int end, Random random, List<Integer> changePoints) {
+        if (end - start < 2 * MIN_SEGMENT_SIZE) {
+            return;
+        }
+        double[] segment = new double[end - start];
+        System.arraycopy(values, start, segment, 0, segment.length);
+        double range = cusumRange(segment);
+        if (range == 0) {
+            return;
+        }
+        int smaller = 0;
+        double[] shuffled = segment.clone();
+        for (int i = 0; i < BOOTSTRAPS; i++) {
+            shuffle(shuffled, random);
+            if (cusumRange(shuffled) < range) {
+                smaller++;
+            }
+        }
+        if ((double) smaller / BOOTSTRAPS < CONFIDENCE_LEVEL) {
+            return;
+        }
+        int changePoint = start + cusumExtreme(segment) + 1;
+        if (changePoint - start < MIN_SEGMENT_SIZE || end - changePoint < MIN_SEGMENT_SIZE) {
+            return;
+        }
+        changePoints.add(changePoint);
+        detect(values, start, changePoint, random, changePoints);
+        detect(values, changePoint, end, random, changePoints);
+    }
+
+    private static double cusumRange(double[] values) {
+        double mean = mean(values);
+        double sum = 0;
+        double min = 0;
+        double max = 0;
+        for (double value : values) {
+            sum += value - mean;
+            min = Math.min(min, sum);
+            max = Math.max(max, sum);
+        }
+        return max - min;
+    }
+
+    /**
+     * Returns the index of the last value before the change, where the cumulative sum is furthest from zero.
+     */
+    private static int cusumExtreme(double[] values) {
+        double mean = mean(values);
+        double sum = 0;
+        double extreme = -1;
+        int index = 0;
+        for (int i = 0; i < values.length; i++) {
+            sum += values[i] - mean;
+            if (Math.abs(sum) > extreme) {
+                extreme = Math.abs(sum);
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    private static void shuffle(double[] values, Random random) {
+        for (int i = values.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            double value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.gradle.profiler.history;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * The results of one scenario in one earlier benchmark run.
+ */
+public class HistoryEntry {
+    private final String invocationId;
+    private final Instant date;
+    private final String scenario;
+    private final String displayName;
+    private final String buildTool;
+    private final String operatingSystem;
+    private final Map<String, SampleValues> samples;
+
+    public HistoryEntry(String invocationId, Instant date, String scenario, String displayName, String buildTool, String operatingSystem, Map<String, SampleValues> samples) {
+        this.invocationId = invocationId;
+        this.date = date;
+        this.scenario = scenario;
+        this.displayName = displayName;
+        this.buildTool = buildTool;
+        this.operatingSystem = operatingSystem;
+        this.samples = samples;
+    }
+
+    public String getInvocationId() {
+        return invocationId;
+    }
+
+    public Instant getDate() {
+        return date;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * The key that identifies the same scenario across runs: the scenario, the build tool and its version, and the environment.
+     */
+    public String getKey() {
+        return scenario + " | " + buildTool + " | " + operatingSystem;
+    }
+
+    public Map<String, SampleValues> getSamples() {
+        return samples;
+    }
+
+    public static class SampleValues {
+        private final String unit;
+        private final double[] values;
+
+        public SampleValues(String unit, double[] values) {
+            this.unit = unit;
+            this.values = values;
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+
+        public double[] getValues() {
+            return values;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.gradle.profiler.history;
+
+import org.gradle.profiler.InvocationSettings;
+import org.gradle.profiler.report.BenchmarkResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * Appends the results of a benchmark run to the {@link HistoryStore} in the history directory. Unlike the reports, the history is never overwritten.
+ */
+public class HistoryGenerator {
+    private final HistoryStore store;
+
+    public HistoryGenerator(File historyDir) {
+        this.store = new HistoryStore(historyDir);
+    }
+
+    public File getHistoryFile() {
+        return store.getHistoryFile();
+    }
+
+    public void write(InvocationSettings settings, BenchmarkResult result) throws IOException {
+        store.append(settings.getInvocationId(), Instant.now(), settings.getBenchmarkTitle(), result.getScenarios());
+    }
+}
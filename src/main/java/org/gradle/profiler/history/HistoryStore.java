@@ -0,0 +1,140 @@
+package org.gradle.profiler.history;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.gradle.profiler.Logging;
+import org.gradle.profiler.OperatingSystem;
+import org.gradle.profiler.Phase;
+import org.gradle.profiler.Version;
+import org.gradle.profiler.report.BuildScenarioResult;
+import org.gradle.profiler.result.BuildInvocationResult;
+import org.gradle.profiler.result.Sample;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A local store of the results of earlier benchmark runs, so that runs of the same scenarios can be compared over time.
+ *
+ * <p>The store is a single append-only file in the history directory, with one JSON object per line for each scenario of each run.
+ * Each line holds the measured values of every sample of the scenario, keyed by the scenario name, the build tool and its version,
+ * and the environment the run happened in.</p>
+ */
+public class HistoryStore {
+    public static final String HISTORY_FILE_NAME = "history.jsonl";
+
+    private final File historyFile;
+    private final Gson gson = new GsonBuilder()
+        .serializeSpecialFloatingPointValues()
+        .create();
+
+    public HistoryStore(File historyDir) {
+        this.historyFile = new File(historyDir, HISTORY_FILE_NAME);
+    }
+
+    public File getHistoryFile() {
+        return historyFile;
+    }
+
+    /**
+     * Appends the results of the given run to the store.
+     */
+    public void append(UUID invocationId, Instant date, @Nullable String title, List<? extends BuildScenarioResult<?>> scenarios) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (BuildScenarioResult<?> scenario : scenarios) {
+            lines.append(gson.toJson(serialize(invocationId, date, title, scenario))).append('\n');
+        }
+        Files.createDirectories(historyFile.getParentFile().toPath());
+        Files.write(historyFile.toPath(), lines.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Reads all entries of the store, in the order in which they were appended.
+     */
+    public List<HistoryEntry> read() throws IOException {
+        List<HistoryEntry> entries = new ArrayList<>();
+        if (!historyFile.isFile()) {
+            return entries;
+        }
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(historyFile.toPath(), StandardCharsets.UTF_8)) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                entries.add(deserialize(JsonParser.parseString(line).getAsJsonObject()));
+            } catch (RuntimeException e) {
+                Logging.detailed().println("Ignoring malformed line " + lineNumber + " of " + historyFile);
+            }
+        }
+        return entries;
+    }
+
+    private static <T extends BuildInvocationResult> JsonObject serialize(UUID invocationId, Instant date, @Nullable String title, BuildScenarioResult<T> scenario) {
+        JsonObject json = new JsonObject();
+        json.addProperty("invocation", invocationId.toString());
+        json.addProperty("date", date.toString());
+        if (title != null) {
+            json.addProperty("title", title);
+        }
+        json.addProperty("scenario", scenario.getScenarioDefinition().getName());
+        json.addProperty("displayName", scenario.getScenarioDefinition().getDisplayName());
+        json.addProperty("buildTool", scenario.getScenarioDefinition().getBuildToolDisplayName());
+        JsonObject environment = new JsonObject();
+        environment.addProperty("profilerVersion", Version.getVersion());
+        environment.addProperty("operatingSystem", OperatingSystem.getId());
+        json.add("environment", environment);
+        JsonArray samplesJson = new JsonArray();
+        for (Sample<? super T> sample : scenario.getSamples()) {
+            JsonObject sampleJson = new JsonObject();
+            sampleJson.addProperty("name", sample.getName());
+            sampleJson.addProperty("unit", sample.getUnit());
+            JsonArray values = new JsonArray();
+            scenario.getResults().stream()
+                .filter(result -> result.getBuildContext().getPhase() == Phase.MEASURE)
+                .forEach(result -> values.add(sample.extractValue(result)));
+            sampleJson.add("values", values);
+            samplesJson.add(sampleJson);
+        }
+        json.add("samples", samplesJson);
+        return json;
+    }
+
+    private static HistoryEntry deserialize(JsonObject json) {
+        Map<String, HistoryEntry.SampleValues> samples = new LinkedHashMap<>();
+        for (JsonElement element : json.getAsJsonArray("samples")) {
+            JsonObject sample = element.getAsJsonObject();
+            JsonArray valuesJson = sample.getAsJsonArray("values");
+            double[] values = new double[valuesJson.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = valuesJson.get(i).getAsDouble();
+            }
+            samples.put(sample.get("name").getAsString(), new HistoryEntry.SampleValues(sample.get("unit").getAsString(), values));
+        }
+        JsonObject environment = json.getAsJsonObject("environment");
+        return new HistoryEntry(
+            json.get("invocation").getAsString(),
+            Instant.parse(json.get("date").getAsString()),
+            json.get("scenario").getAsString(),
+            json.get("displayName").getAsString(),
+            json.get("buildTool").getAsString(),
+            environment.get("operatingSystem").getAsString(),
+            samples
+        );
+    }
+}
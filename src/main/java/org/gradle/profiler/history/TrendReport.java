@@ -0,0 +1,224 @@
+package org.gradle.profiler.history;
+
+import com.google.common.escape.Escaper;
+import com.google.common.html.HtmlEscapers;
+import org.gradle.profiler.report.SampleStatistics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Renders the median of each sample of each scenario over the last runs recorded in a {@link HistoryStore},
+ * and reports the runs where the median shifted.
+ */
+public class TrendReport {
+    public static final String TRENDS_FILE_NAME = "trends.html";
+
+    private static final int CHART_WIDTH = 800;
+    private static final int CHART_HEIGHT = 200;
+    private static final int CHART_MARGIN = 10;
+
+    private final List<Trend> trends;
+
+    private TrendReport(List<Trend> trends) {
+        this.trends = trends;
+    }
+
+    /**
+     * Collects the trend of each sample of each scenario over the last given number of runs of the scenario.
+     */
+    public static TrendReport from(List<HistoryEntry> entries, int runs) {
+        Map<String, List<HistoryEntry>> entriesByKey = new LinkedHashMap<>();
+        for (HistoryEntry entry : entries) {
+            entriesByKey.computeIfAbsent(entry.getKey(), key -> new ArrayList<>()).add(entry);
+        }
+        ChangePointDetector detector = new ChangePointDetector();
+        List<Trend> trends = new ArrayList<>();
+        for (Map.Entry<String, List<HistoryEntry>> scenario : entriesByKey.entrySet()) {
+            List<HistoryEntry> scenarioEntries = scenario.getValue();
+            scenarioEntries.sort((a, b) -> a.getDate().compareTo(b.getDate()));
+            scenarioEntries = scenarioEntries.subList(Math.max(0, scenarioEntries.size() - runs), scenarioEntries.size());
+            Map<String, Trend> scenarioTrends = new LinkedHashMap<>();
+            for (HistoryEntry entry : scenarioEntries) {
+                for (Map.Entry<String, HistoryEntry.SampleValues> sample : entry.getSamples().entrySet()) {
+                    double[] values = sample.getValue().getValues();
+                    if (values.length == 0) {
+                        continue;
+                    }
+                    Trend trend = scenarioTrends.computeIfAbsent(sample.getKey(), name -> new Trend(scenario.getKey(), entry.getDisplayName(), name, sample.getValue().getUnit()));
+                    trend.dates.add(entry.getDate());
+                    trend.medians.add(SampleStatistics.from(values).getMedian());
+                }
+            }
+            for (Trend trend : scenarioTrends.values()) {
+                trend.changePoints.addAll(detector.detect(trend.getMedians()));
+                trends.add(trend);
+            }
+        }
+        return new TrendReport(trends);
+    }
+
+    public List<Trend> getTrends() {
+        return trends;
+    }
+
+    /**
+     * Prints the change points of each trend.
+     */
+    public void printTo(PrintStream out) {
+        if (trends.isEmpty()) {
+            out.println("No results recorded yet.");
+            return;
+        }
+        for (Trend trend : trends) {
+            out.println(trend.key + " - " + trend.sample + " (" + trend.medians.size() + " runs)");
+            if (trend.changePoints.isEmpty()) {
+                out.println("  No change points detected");
+            }
+            for (ChangePoint changePoint : trend.getChangePoints()) {
+                out.println("  " + changePoint.describe(trend.unit));
+            }
+        }
+    }
+
+    /**
+     * Writes the trends as an HTML file, with one chart per sample of each scenario.
+     */
+    public void writeHtml(File outputFile) throws IOException {
+        Escaper escaper = HtmlEscapers.htmlEscaper();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
+            writer.write("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"utf-8\">\n<title>Benchmark trends</title>\n");
+            writer.write("<style>body { font-family: sans-serif; } polyline { fill: none; stroke: #1f77b4; stroke-width: 2; } line.change { stroke: #d62728; stroke-dasharray: 4; } circle { fill: #1f77b4; }</style>\n");
+            writer.write("</head>\n<body>\n<h1>Benchmark trends</h1>\n");
+            for (Trend trend : trends) {
+                writer.write("<h2>" + escaper.escape(trend.displayName) + " - " + escaper.escape(trend.sample) + "</h2>\n");
+                writer.write("<p>" + escaper.escape(trend.key) + "</p>\n");
+                writeChart(trend, writer);
+                writer.write("<ul>\n");
+                for (ChangePoint changePoint : trend.getChangePoints()) {
+                    writer.write("<li>" + escaper.escape(changePoint.describe(trend.unit)) + "</li>\n");
+                }
+                writer.write("</ul>\n");
+            }
+            writer.write("</body>\n</html>\n");
+        }
+    }
+
+    private static void writeChart(Trend trend, BufferedWriter writer) throws IOException {
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        for (double median : trend.medians) {
+            min = Math.min(min, median);
+            max = Math.max(max, median);
+        }
+        double range = max == min ? 1 : max - min;
+        int count = trend.medians.size();
+        double step = count < 2 ? 0 : (double) (CHART_WIDTH - 2 * CHART_MARGIN) / (count - 1);
+        StringBuilder points = new StringBuilder();
+        StringBuilder circles = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            double x = CHART_MARGIN + i * step;
+            double y = CHART_HEIGHT - CHART_MARGIN - (trend.medians.get(i) - min) / range * (CHART_HEIGHT - 2 * CHART_MARGIN);
+            points.append(String.format(Locale.US, "%.1f,%.1f ", x, y));
+            circles.append(String.format(Locale.US, "<circle cx=\"%.1f\" cy=\"%.1f\" r=\"3\"><title>%s: %.2f %s</title></circle>", x, y, trend.dates.get(i), trend.medians.get(i), HtmlEscapers.htmlEscaper().escape(trend.unit)));
+        }
+        writer.write(String.format(Locale.US, "<svg width=\"%d\" height=\"%d\">", CHART_WIDTH, CHART_HEIGHT));
+        for (int changePoint : trend.changePoints) {
+            double x = CHART_MARGIN + (changePoint - 0.5) * step;
+            writer.write(String.format(Locale.US, "<line class=\"change\" x1=\"%.1f\" y1=\"0\" x2=\"%.1f\" y2=\"%d\"/>", x, x, CHART_HEIGHT));
+        }
+        writer.write("<polyline points=\"" + points.toString().trim() + "\"/>");
+        writer.write(circles.toString());
+        writer.write("</svg>\n");
+    }
+
+    /**
+     * The median of one sample of one scenario in each of its recorded runs, oldest first.
+     */
+    public static class Trend {
+        private final String key;
+        private final String displayName;
+        private final String sample;
+        private final String unit;
+        private final List<Instant> dates = new ArrayList<>();
+        private final List<Double> medians = new ArrayList<>();
+        private final List<Integer> changePoints = new ArrayList<>();
+
+        private Trend(String key, String displayName, String sample, String unit) {
+            this.key = key;
+            this.displayName = displayName;
+            this.sample = sample;
+            this.unit = unit;
+        }
+
+        public String getSample() {
+            return sample;
+        }
+
+        public double[] getMedians() {
+            return medians.stream().mapToDouble(Double::doubleValue).toArray();
+        }
+
+        /**
+         * The shifts of the median, each compared to the median of the runs since the previous shift.
+         */
+        public List<ChangePoint> getChangePoints() {
+            List<ChangePoint> result = new ArrayList<>();
+            double[] values = getMedians();
+            for (int i = 0; i < changePoints.size(); i++) {
+                int start = i == 0 ? 0 : changePoints.get(i - 1);
+                int index = changePoints.get(i);
+                int end = i == changePoints.size() - 1 ? values.length : changePoints.get(i + 1);
+                result.add(new ChangePoint(dates.get(index), median(values, start, index), median(values, index, end)));
+            }
+            return result;
+        }
+
+        private static double median(double[] values, int start, int end) {
+            double[] segment = new double[end - start];
+            System.arraycopy(values, start, segment, 0, segment.length);
+            return SampleStatistics.from(segment).getMedian();
+        }
+    }
+
+    public static class ChangePoint {
+        private final Instant date;
+        private final double before;
+        private final double after;
+
+        private ChangePoint(Instant date, double before, double after) {
+            this.date = date;
+            this.before = before;
+            this.after = after;
+        }
+
+        /**
+         * The date of the first run after the shift.
+         */
+        public Instant getDate() {
+            return date;
+        }
+
+        public double getBefore() {
+            return before;
+        }
+
+        public double getAfter() {
+            return after;
+        }
+
+        String describe(String unit) {
+            String change = before == 0 ? "" : String.format(Locale.US, " (%+.1f%%)", (after - before) / before * 100);
+            return String.format(Locale.US, "Change at %s: median %.2f %s -> %.2f %s%s", date, before, unit, after, unit, change);
+        }
+    }
+}
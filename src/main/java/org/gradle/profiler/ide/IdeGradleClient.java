@@ -3,6 +3,7 @@
 import org.gradle.internal.Pair;
 import org.gradle.profiler.GradleClient;
 import org.gradle.profiler.InvocationSettings;
+import org.gradle.profiler.client.protocol.MessageListener;
 import org.gradle.profiler.client.protocol.ServerConnection;
 import org.gradle.profiler.client.protocol.messages.*;
 import org.gradle.profiler.instrument.GradleInstrumentation;
@@ -21,11 +22,14 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.gradle.profiler.client.protocol.messages.IdeRequest.IdeRequestType.*;
 import static org.gradle.profiler.client.protocol.messages.IdeSyncRequestCompleted.IdeSyncRequestResult.FAILED;
@@ -39,7 +43,6 @@ public enum CleanCacheMode {
     }
 
     private static final Duration CACHE_CLEANUP_COMPLETED_TIMEOUT = Duration.ofSeconds(60);
-    private static final Duration GRADLE_INVOCATION_STARTED_TIMEOUT = Duration.ofMillis(100);
     private static final Duration GRADLE_INVOCATION_COMPLETED_TIMEOUT = Duration.ofMinutes(60);
     private static final Duration SYNC_REQUEST_COMPLETED_TIMEOUT = Duration.ofMinutes(90);
 
@@ -47,7 +50,6 @@ public enum CleanCacheMode {
     private final IdeProcessController processController;
     private final IdePluginInstaller idePluginInstaller;
     private final CleanCacheMode cleanCacheMode;
-    private final ExecutorService executor;
     private final IdeSandbox sandbox;
     private boolean isFirstRun;
 
@@ -68,7 +70,6 @@ public IdeGradleClient(
         this.idePluginInstaller = new IdePluginInstaller(sandbox.getPluginsDir());
         idePluginInstaller.installPlugin(Arrays.asList(idePlugin, protocolJar));
         this.processController = new IdeProcessController(ideType, ideInstallDir, sandbox, invocationSettings, buildConfiguration);
-        this.executor = Executors.newSingleThreadExecutor();
     }
 
     public BuildActionResult sync(List<String> gradleArgs, List<String> jvmArgs) {
@@ -109,11 +110,23 @@ private void maybeThrownExceptionOnSyncFailure(IdeSyncRequestCompleted syncReque
 
     private Pair<IdeSyncRequestCompleted, IdeBuildActionResult> waitForSyncToFinish(IdeConnections connections, List<String> gradleArgs, List<String> jvmArgs) {
         System.out.println("* Sync has started, waiting for it to complete...");
-        AtomicBoolean isSyncRequestCompleted = new AtomicBoolean();
-        CompletableFuture<List<Duration>> gradleInvocations = CompletableFuture.supplyAsync(() -> collectGradleInvocations(connections, isSyncRequestCompleted, gradleArgs, jvmArgs), executor);
-        IdeSyncRequestCompleted syncRequestCompleted = connections.getPluginConnection().receiveSyncRequestCompleted(SYNC_REQUEST_COMPLETED_TIMEOUT);
-        isSyncRequestCompleted.set(true);
-        List<Duration> gradleInvocationDurations = gradleInvocations.join();
+        ServerConnection agentConnection = connections.getAgentConnection();
+        GradleInvocations gradleInvocations = new GradleInvocations();
+        IdeSyncRequestCompleted syncRequestCompleted;
+        List<Duration> gradleInvocationDurations;
+        try (
+            MessageListener.Registration started = agentConnection.onMessage(GradleInvocationStarted.class, (invocationStarted, receivedAtNanos) -> {
+                // The invocation waits for its parameters, so reply as soon as it has started
+                agentConnection.send(new GradleInvocationParameters(gradleArgs, jvmArgs));
+                gradleInvocations.started(invocationStarted, receivedAtNanos);
+            });
+            MessageListener.Registration completed = agentConnection.onMessage(GradleInvocationCompleted.class, (invocationCompleted, receivedAtNanos) ->
+                gradleInvocations.completed(invocationCompleted, receivedAtNanos)
+            )
+        ) {
+            syncRequestCompleted = connections.getPluginConnection().receiveSyncRequestCompleted(SYNC_REQUEST_COMPLETED_TIMEOUT);
+            gradleInvocationDurations = gradleInvocations.awaitCompletion(GRADLE_INVOCATION_COMPLETED_TIMEOUT);
+        }
         long totalGradleDuration = gradleInvocationDurations.stream()
             .mapToLong(Duration::toMillis)
             .sum();
@@ -126,23 +139,6 @@ private Pair<IdeSyncRequestCompleted, IdeBuildActionResult> waitForSyncToFinish(
         return Pair.of(syncRequestCompleted, result);
     }
 
-    private List<Duration> collectGradleInvocations(IdeConnections connections, AtomicBoolean isSyncRequestCompleted, List<String> gradleArgs, List<String> jvmArgs) {
-        List<Duration> durations = new ArrayList<>();
-        int invocation = 1;
-        ServerConnection agentConnection = connections.getAgentConnection();
-        while (!isSyncRequestCompleted.get()) {
-            Optional<GradleInvocationStarted> invocationStarted = agentConnection.maybeReceiveGradleInvocationStarted(GRADLE_INVOCATION_STARTED_TIMEOUT);
-            if (invocationStarted.isPresent()) {
-                System.out.printf("* Gradle invocation %s has started, waiting for it to complete...%n", invocation);
-                agentConnection.send(new GradleInvocationParameters(gradleArgs, jvmArgs));
-                GradleInvocationCompleted agentCompleted = agentConnection.receiveGradleInvocationCompleted(GRADLE_INVOCATION_COMPLETED_TIMEOUT);
-                System.out.printf("* Gradle invocation %s has completed in: %sms%n", invocation++, agentCompleted.getDurationMillis());
-                durations.add(Duration.ofMillis(agentCompleted.getDurationMillis()));
-            }
-        }
-        return durations;
-    }
-
     private boolean shouldCleanCache() {
         return isFirstRun && cleanCacheMode == CleanCacheMode.BEFORE_SCENARIO
             || cleanCacheMode == CleanCacheMode.BEFORE_BUILD;
@@ -151,7 +147,6 @@ private boolean shouldCleanCache() {
     @Override
     public void close() {
         try {
-            executor.shutdown();
             if (processController.isProcessRunning()) {
                 processController.runAndWaitToStop((connections) -> {
                     System.out.println("* Stopping " + ideType.getDisplayName() + "....");
@@ -166,4 +161,54 @@ public void close() {
             idePluginInstaller.uninstallPlugin();
         }
     }
+
+    /**
+     * The Gradle invocations of a sync, which can run at the same time.
+     * Updated by the thread that reads the messages of the agent, as they arrive.
+     *
+     * <p>The duration of an invocation is the time between the arrival of its started and completed messages, so that all durations are measured
+     * on the clock of this process. This includes sending the parameters of the invocation to the agent.</p>
+     */
+    private static class GradleInvocations {
+        private final Map<Integer, CompletableFuture<Duration>> invocationsById = new ConcurrentHashMap<>();
+        private final Map<Integer, Long> startedAtNanos = new ConcurrentHashMap<>();
+        private final List<CompletableFuture<Duration>> invocationsInStartOrder = new CopyOnWriteArrayList<>();
+
+        void started(GradleInvocationStarted started, long receivedAtNanos) {
+            startedAtNanos.put(started.getId(), receivedAtNanos);
+            invocationsInStartOrder.add(invocation(started.getId()));
+            System.out.printf("* Gradle invocation %s has started, waiting for it to complete...%n", invocationsInStartOrder.size());
+        }
+
+        void completed(GradleInvocationCompleted completed, long receivedAtNanos) {
+            Long startNanos = startedAtNanos.get(completed.getId());
+            // Only the agent knows how long an invocation took whose start was not seen
+            Duration duration = startNanos == null ? Duration.ofMillis(completed.getDurationMillis()) : Duration.ofNanos(receivedAtNanos - startNanos);
+            System.out.printf("* Gradle invocation %s has completed in: %sms%n", invocationsInStartOrder.indexOf(invocation(completed.getId())) + 1, duration.toMillis());
+            invocation(completed.getId()).complete(duration);
+        }
+
+        private CompletableFuture<Duration> invocation(int id) {
+            return invocationsById.computeIfAbsent(id, key -> new CompletableFuture<>());
+        }
+
+        /**
+         * Waits for the invocations that have started to complete, and returns their durations in the order they started.
+         */
+        List<Duration> awaitCompletion(Duration timeout) {
+            List<CompletableFuture<Duration>> invocations = new ArrayList<>(invocationsInStartOrder);
+            try {
+                CompletableFuture.allOf(invocations.toArray(new CompletableFuture<?>[0])).get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                throw new IllegalStateException("Timeout waiting for Gradle invocations to complete.", e);
+            } catch (InterruptedException | ExecutionException e) {
+                throw new RuntimeException(e);
+            }
+            List<Duration> durations = new ArrayList<>(invocations.size());
+            for (CompletableFuture<Duration> invocation : invocations) {
+                durations.add(invocation.join());
+            }
+            return durations;
+        }
+    }
 }
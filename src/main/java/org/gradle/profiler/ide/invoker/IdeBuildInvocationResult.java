@@ -17,6 +17,8 @@ public IdeBuildInvocationResult(GradleBuildInvocationResult result) {
             result.getLocalBuildCacheSize(),
             result.getTimeToTaskExecution(),
             result.getBuildOperationExecutionData(),
+            result.getResourceUsage(),
+            result.getProcessTreeUsage(),
             result.getDaemonPid()
         );
     }
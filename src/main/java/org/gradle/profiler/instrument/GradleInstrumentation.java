@@ -1,6 +1,7 @@
 package org.gradle.profiler.instrument;
 
 import org.gradle.internal.UncheckedException;
+import org.gradle.profiler.ContentAddressedCache;
 import org.gradle.profiler.GeneratedInitScript;
 import org.gradle.profiler.GradleArgsCalculator;
 
@@ -8,9 +9,10 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
-import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -18,24 +20,35 @@
  * Represents some instrumentation that uses Gradle APIs and that is injected by gradle-profiler.
  */
 public abstract class GradleInstrumentation implements GradleArgsCalculator {
+    private static final Map<String, File> UNPACKED_PLUGINS = new ConcurrentHashMap<>();
+
     private GeneratedInitScript initScript;
 
     protected abstract void generateInitScriptBody(PrintWriter writer);
 
+    /**
+     * Adds the system properties that the init script reads, which are passed to the build with {@code -D}.
+     * Values that differ between runs, like paths of temporary files or ports, are passed this way, so that the init script stays the same.
+     */
+    protected void calculateSystemProperties(Map<String, String> systemProperties) {
+    }
+
     @Override
     public void calculateGradleArgs(List<String> gradleArgs) {
         maybeGenerate();
         initScript.calculateGradleArgs(gradleArgs);
+        Map<String, String> systemProperties = new LinkedHashMap<>();
+        calculateSystemProperties(systemProperties);
+        systemProperties.forEach((name, value) -> gradleArgs.add("-D" + name + "=" + value));
     }
 
     private void maybeGenerate() {
         File buildOpJar = unpackPlugin("build-operations");
-        // Dependency of build-operations
-        File guavaJar = unpackPlugin("guava");
         File buildOpMeasurementsJar = unpackPlugin("build-operations-measuring");
+        File clientProtocolJar = unpackPlugin("client-protocol");
         File chromeTraceJar = unpackPlugin("chrome-trace");
         File heapDumpJar = unpackPlugin("heap-dump");
-        String filesExpr = Stream.of(buildOpJar, guavaJar, buildOpMeasurementsJar, chromeTraceJar, heapDumpJar)
+        String filesExpr = Stream.of(buildOpJar, buildOpMeasurementsJar, clientProtocolJar, chromeTraceJar, heapDumpJar)
             .map(f -> "'" + f.toURI().toASCIIString() + "'")
             .collect(Collectors.joining(", ", "files(", ")"));
         initScript = new GeneratedInitScript() {
@@ -52,14 +65,20 @@ public void writeContents(final PrintWriter writer) {
         };
     }
 
+    /**
+     * Unpacks the given embedded jar into the {@link ContentAddressedCache}, so that the same jar is always at the same path.
+     */
     public static File unpackPlugin(String jarName) {
+        return UNPACKED_PLUGINS.computeIfAbsent(jarName, GradleInstrumentation::doUnpackPlugin);
+    }
+
+    private static File doUnpackPlugin(String jarName) {
         try {
-            File pluginJar = File.createTempFile(jarName, ".jar").getCanonicalFile();
+            byte[] content;
             try (InputStream inputStream = GradleInstrumentation.class.getResourceAsStream("/META-INF/jars/" + jarName + ".jar")) {
-                Files.copy(inputStream, pluginJar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                content = inputStream.readAllBytes();
             }
-            pluginJar.deleteOnExit();
-            return pluginJar;
+            return ContentAddressedCache.getDefault().store(jarName, ".jar", content).getCanonicalFile();
         } catch (IOException e) {
             throw UncheckedException.throwAsUncheckedException(e);
         }
@@ -1,8 +1,11 @@
 package org.gradle.profiler.instrument;
 
 import java.io.*;
+import java.util.Map;
 
 public class PidInstrumentation extends GradleInstrumentation {
+    private static final String PID_FILE_PROPERTY = "org.gradle.profiler.pid.file";
+
     private final File pidFile;
 
     public PidInstrumentation() throws IOException {
@@ -12,7 +15,12 @@ public PidInstrumentation() throws IOException {
 
     @Override
     protected void generateInitScriptBody(PrintWriter writer) {
-        writer.println("org.gradle.trace.pid.PidCollector.collect(gradle, new File(new URI('" + pidFile.toURI() + "')))");
+        writer.println("org.gradle.trace.pid.PidCollector.collect(gradle, new File(System.getProperty('" + PID_FILE_PROPERTY + "')))");
+    }
+
+    @Override
+    protected void calculateSystemProperties(Map<String, String> systemProperties) {
+        systemProperties.put(PID_FILE_PROPERTY, pidFile.getAbsolutePath());
     }
 
     public String getPidForLastBuild() {
@@ -2,6 +2,7 @@
 
 import org.gradle.profiler.BuildContext;
 import org.gradle.profiler.ScenarioContext;
+import org.gradle.profiler.mutations.support.TextChange;
 
 import java.io.File;
 
@@ -16,8 +17,8 @@ public abstract class AbstractDelegateFileMutator extends AbstractFileChangeMuta
     protected abstract AbstractFileChangeMutator getFileChangeMutator(File sourceFile);
 
     @Override
-    protected void applyChangeTo(BuildContext context, StringBuilder text) {
-        fileChangeMutator.applyChangeTo(context, text);
+    protected TextChange prepareChange(String originalText) {
+        return fileChangeMutator.prepareChange(originalText);
     }
 
     @Override
@@ -4,13 +4,21 @@
 import org.gradle.profiler.BuildMutator;
 import org.gradle.profiler.ScenarioContext;
 import org.gradle.profiler.mutations.support.FileSupport;
+import org.gradle.profiler.mutations.support.TextChange;
 
 import java.io.File;
 
+/**
+ * Applies a unique change to a file before each build.
+ *
+ * <p>The file is analyzed once per scenario, before the first build, to find where the change is inserted into the original text.
+ * Before each build, the change for the build is spliced into the original text, so that mutating large files does not add time between builds.</p>
+ */
 public abstract class AbstractFileChangeMutator implements BuildMutator {
     protected final File sourceFile;
     private final String changeDescription;
     private String originalText;
+    private TextChange change;
 
     protected AbstractFileChangeMutator(File sourceFile, String changeDescription) {
         this.sourceFile = sourceFile;
@@ -29,21 +37,26 @@ public boolean requiresBaseline() {
     @Override
     public void beforeScenario(ScenarioContext context) {
         this.originalText = readText(sourceFile);
+        this.change = null;
     }
 
     @Override
     public void beforeBuild(BuildContext context) {
         System.out.printf("> Applying %s to '%s'%n", changeDescription, sourceFile);
-        StringBuilder modifiedText = new StringBuilder(originalText);
-        applyChangeTo(context, modifiedText);
-        FileSupport.writeUnchecked(sourceFile.toPath(), modifiedText.toString());
+        if (change == null) {
+            change = prepareChange(originalText);
+        }
+        FileSupport.writeUnchecked(sourceFile.toPath(), change.applyTo(originalText, context));
     }
 
     private String readText(File file) {
         return FileSupport.readUnchecked(file.toPath());
     }
 
-    protected abstract void applyChangeTo(BuildContext context, StringBuilder text);
+    /**
+     * Determines the change to apply to the original text of the file before each build. Called once per scenario, before the first build.
+     */
+    protected abstract TextChange prepareChange(String originalText);
 
     @Override
     public void afterScenario(ScenarioContext context) {
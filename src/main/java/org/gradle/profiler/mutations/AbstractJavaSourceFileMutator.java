@@ -1,11 +1,22 @@
 package org.gradle.profiler.mutations;
 
 import com.github.javaparser.JavaParser;
+import com.github.javaparser.Position;
 import com.github.javaparser.ast.CompilationUnit;
-import org.gradle.profiler.BuildContext;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import org.gradle.profiler.mutations.support.TextChange;
 
 import java.io.File;
+import java.util.List;
 
+/**
+ * Changes a Java source file. The file is parsed once per scenario, to find where the changes are inserted,
+ * and the rest of the file is left as it is.
+ */
 public abstract class AbstractJavaSourceFileMutator extends AbstractFileChangeMutator {
     public AbstractJavaSourceFileMutator(File sourceFile, String changeDescription) {
         super(sourceFile, changeDescription);
@@ -15,11 +26,73 @@ public AbstractJavaSourceFileMutator(File sourceFile, String changeDescription)
     }
 
     @Override
-    protected void applyChangeTo(BuildContext context, StringBuilder text) {
-        CompilationUnit compilationUnit = new JavaParser().parse(text.toString()).getResult().get();
-        applyChangeTo(context, compilationUnit);
-        text.replace(0, text.length(), compilationUnit.toString());
+    protected TextChange prepareChange(String originalText) {
+        CompilationUnit compilationUnit = new JavaParser().parse(originalText).getResult().get();
+        TextChange change = new TextChange();
+        prepareChange(new SourceOffsets(originalText), compilationUnit, change);
+        return change;
     }
 
-    protected abstract void applyChangeTo(BuildContext context, CompilationUnit compilationUnit);
+    protected abstract void prepareChange(SourceOffsets offsets, CompilationUnit compilationUnit, TextChange change);
+
+    protected TypeDeclaration<?> getFirstType(CompilationUnit compilationUnit) {
+        NodeList<TypeDeclaration<?>> types = compilationUnit.getTypes();
+        if (types.isEmpty()) {
+            throw new IllegalArgumentException("No types to change in " + sourceFile);
+        }
+        return types.get(0);
+    }
+
+    protected MethodDeclaration getFirstMethod(TypeDeclaration<?> type) {
+        List<MethodDeclaration> methods = type.getMethods();
+        if (methods.isEmpty()) {
+            throw new IllegalArgumentException("No methods to change in " + sourceFile);
+        }
+        return methods.get(0);
+    }
+
+    protected BlockStmt getBody(MethodDeclaration method) {
+        return method.getBody()
+            .orElseThrow(() -> new RuntimeException("Method body not found"));
+    }
+
+    /**
+     * Maps the positions of parsed nodes to offsets in the original text.
+     */
+    protected static class SourceOffsets {
+        private final String text;
+
+        SourceOffsets(String text) {
+            this.text = text;
+        }
+
+        /**
+         * The offset of the first character of the node.
+         */
+        public int begin(Node node) {
+            return offsetOf(node.getBegin().orElseThrow(() -> new IllegalArgumentException("No position for " + node)));
+        }
+
+        /**
+         * The offset of the last character of the node.
+         */
+        public int end(Node node) {
+            return offsetOf(node.getEnd().orElseThrow(() -> new IllegalArgumentException("No position for " + node)));
+        }
+
+        private int offsetOf(Position position) {
+            // Lines and columns start at 1, and the parser counts "\r\n", "\r" and "\n" as line breaks
+            int offset = 0;
+            for (int line = 1; line < position.line; line++) {
+                while (offset < text.length() && text.charAt(offset) != '\n' && text.charAt(offset) != '\r') {
+                    offset++;
+                }
+                if (offset < text.length() - 1 && text.charAt(offset) == '\r' && text.charAt(offset + 1) == '\n') {
+                    offset++;
+                }
+                offset++;
+            }
+            return offset + position.column - 1;
+        }
+    }
 }
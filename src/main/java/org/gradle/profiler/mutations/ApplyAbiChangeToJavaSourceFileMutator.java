@@ -1,15 +1,12 @@
 package org.gradle.profiler.mutations;
 
 import com.github.javaparser.ast.CompilationUnit;
-import com.github.javaparser.ast.Modifier;
-import com.github.javaparser.ast.NodeList;
 import com.github.javaparser.ast.body.MethodDeclaration;
 import com.github.javaparser.ast.body.TypeDeclaration;
-import com.github.javaparser.ast.expr.MethodCallExpr;
 import org.gradle.profiler.BuildContext;
+import org.gradle.profiler.mutations.support.TextChange;
 
 import java.io.File;
-import java.util.List;
 
 public class ApplyAbiChangeToJavaSourceFileMutator extends AbstractJavaSourceFileMutator {
     public ApplyAbiChangeToJavaSourceFileMutator(File sourceFile) {
@@ -17,21 +14,16 @@ public ApplyAbiChangeToJavaSourceFileMutator(File sourceFile) {
     }
 
     @Override
-    protected void applyChangeTo(BuildContext context, CompilationUnit compilationUnit) {
-        NodeList<TypeDeclaration<?>> types = compilationUnit.getTypes();
-        if (types.isEmpty()) {
-            throw new IllegalArgumentException("No types to change in " + sourceFile);
-        }
-        TypeDeclaration<?> type = types.get(0);
-        List<MethodDeclaration> methods = type.getMethods();
-        if (methods.isEmpty()) {
-            throw new IllegalArgumentException("No methods to change in " + sourceFile);
-        }
+    protected void prepareChange(SourceOffsets offsets, CompilationUnit compilationUnit, TextChange change) {
+        TypeDeclaration<?> type = getFirstType(compilationUnit);
+        MethodDeclaration existingMethod = getFirstMethod(type);
 
-        String newMethodName = "_m" + context.getUniqueBuildId();
-        MethodDeclaration existingMethod = methods.get(0);
-        existingMethod.getBody().get().addStatement(0, new MethodCallExpr(null, newMethodName));
+        // Call the new method at the start of the existing method, and add the new method at the end of the type
+        change.insert(offsets.begin(getBody(existingMethod)) + 1, context -> newMethodName(context) + "();");
+        change.insert(offsets.end(type), context -> "public static void " + newMethodName(context) + "() { }");
+    }
 
-        type.addMethod(newMethodName, Modifier.Keyword.PUBLIC, Modifier.Keyword.STATIC);
+    private static String newMethodName(BuildContext context) {
+        return "_m" + context.getUniqueBuildId();
     }
 }
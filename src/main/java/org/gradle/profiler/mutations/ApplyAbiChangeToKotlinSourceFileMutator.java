@@ -1,6 +1,7 @@
 package org.gradle.profiler.mutations;
 
 import org.gradle.profiler.BuildContext;
+import org.gradle.profiler.mutations.support.TextChange;
 
 import java.io.File;
 
@@ -11,10 +12,7 @@ public ApplyAbiChangeToKotlinSourceFileMutator(File sourceFile) {
     }
 
     @Override
-    protected void applyChangeTo(BuildContext context, StringBuilder text) {
-        text.append("\n\n")
-            .append("public fun _m")
-            .append(context.getUniqueBuildId())
-            .append("() {}");
+    protected TextChange prepareChange(String originalText) {
+        return new TextChange().append(originalText, context -> "\n\npublic fun _m" + context.getUniqueBuildId() + "() {}");
     }
 }
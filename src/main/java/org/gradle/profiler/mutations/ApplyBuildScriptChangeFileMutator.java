@@ -1,6 +1,7 @@
 package org.gradle.profiler.mutations;
 
 import org.gradle.profiler.BuildContext;
+import org.gradle.profiler.mutations.support.TextChange;
 
 import java.io.File;
 
@@ -10,10 +11,7 @@ public ApplyBuildScriptChangeFileMutator(File sourceFile) {
     }
 
     @Override
-    protected void applyChangeTo(BuildContext context, StringBuilder text) {
-        text.append("\n");
-        text.append("println(\"");
-        text.append(context.getUniqueBuildId());
-        text.append("\")\n");
+    protected TextChange prepareChange(String originalText) {
+        return new TextChange().append(originalText, context -> "\nprintln(\"" + context.getUniqueBuildId() + "\")\n");
     }
 }
@@ -1,6 +1,7 @@
 package org.gradle.profiler.mutations;
 
 import org.gradle.profiler.BuildContext;
+import org.gradle.profiler.mutations.support.TextChange;
 
 import java.io.File;
 
@@ -18,32 +19,32 @@ public ApplyChangeToAndroidLayoutFileMutator(File sourceFile) {
     }
 
     @Override
-    protected void applyChangeTo(BuildContext context, StringBuilder text) {
-        int insertPos = text.lastIndexOf("</layout>");
+    protected TextChange prepareChange(String originalText) {
+        int insertPos = originalText.lastIndexOf("</layout>");
         if (insertPos < 0) {
-            applyChangeToNonDataBindingLayout(context, text);
+            return prepareChangeToNonDataBindingLayout(originalText);
         } else {
-            applyChangeToDataBindingLayout(context, text, insertPos);
+            return prepareChangeToDataBindingLayout(originalText, insertPos);
         }
     }
 
-    private void applyChangeToDataBindingLayout(BuildContext context, StringBuilder text, int tagEndPosition) {
-        String substring = text.substring(0, tagEndPosition);
-        int insertPos = substring.lastIndexOf("</");
+    private TextChange prepareChangeToDataBindingLayout(String originalText, int tagEndPosition) {
+        // The last closing tag that ends before the closing layout tag
+        int insertPos = originalText.lastIndexOf("</", tagEndPosition - "</".length());
         if (insertPos < 0) {
             throw new IllegalArgumentException("Cannot parse android layout file " + sourceFile + " to apply changes position " + insertPos);
         }
 
-        text.insert(insertPos, generateUniqueViewItem(context));
+        return new TextChange().insert(insertPos, this::generateUniqueViewItem);
     }
 
-    private void applyChangeToNonDataBindingLayout(BuildContext context, StringBuilder text) {
-        int insertPos = text.lastIndexOf("</");
+    private TextChange prepareChangeToNonDataBindingLayout(String originalText) {
+        int insertPos = originalText.lastIndexOf("</");
         if (insertPos < 0) {
             throw new IllegalArgumentException("Cannot parse android layout file " + sourceFile + " to apply changes");
         }
 
-        text.insert(insertPos, generateUniqueViewItem(context));
+        return new TextChange().insert(insertPos, this::generateUniqueViewItem);
     }
 
     private String generateUniqueViewItem(BuildContext context) {
@@ -1,6 +1,7 @@
 package org.gradle.profiler.mutations;
 
 import org.gradle.profiler.BuildContext;
+import org.gradle.profiler.mutations.support.TextChange;
 
 import java.io.File;
 
@@ -10,11 +11,11 @@ public ApplyChangeToAndroidManifestFileMutator(File sourceFile) {
     }
 
     @Override
-    protected void applyChangeTo(BuildContext context, StringBuilder text) {
-        int insertPos = text.lastIndexOf("</manifest>");
+    protected TextChange prepareChange(String originalText) {
+        int insertPos = originalText.lastIndexOf("</manifest>");
         if (insertPos < 0) {
             throw new IllegalArgumentException("Cannot parse android manifest file " + sourceFile + " to apply changes");
         }
-        text.insert(insertPos, "<!-- " + context.getUniqueBuildId() + " --><permission android:name=\"com.acme.SOME_PERMISSION\"/>");
+        return new TextChange().insert(insertPos, context -> "<!-- " + context.getUniqueBuildId() + " --><permission android:name=\"com.acme.SOME_PERMISSION\"/>");
     }
 }
@@ -1,6 +1,7 @@
 package org.gradle.profiler.mutations;
 
 import org.gradle.profiler.BuildContext;
+import org.gradle.profiler.mutations.support.TextChange;
 
 import java.io.File;
 
@@ -10,11 +11,11 @@ public ApplyChangeToAndroidResourceFileMutator(File sourceFile) {
     }
 
     @Override
-    protected void applyChangeTo(BuildContext context, StringBuilder text) {
-        int insertPos = text.lastIndexOf("</resources>");
+    protected TextChange prepareChange(String originalText) {
+        int insertPos = originalText.lastIndexOf("</resources>");
         if (insertPos < 0) {
             throw new IllegalArgumentException("Cannot parse source file " + sourceFile + " to apply changes");
         }
-        text.insert(insertPos, "<string name=\"new_resource"+ context.getUniqueBuildId() + "\">" + context.getUniqueBuildId() + "</string>");
+        return new TextChange().insert(insertPos, context -> "<string name=\"new_resource"+ context.getUniqueBuildId() + "\">" + context.getUniqueBuildId() + "</string>");
     }
 }
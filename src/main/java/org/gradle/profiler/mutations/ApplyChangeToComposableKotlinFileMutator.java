@@ -1,6 +1,7 @@
 package org.gradle.profiler.mutations;
 
 import org.gradle.profiler.BuildContext;
+import org.gradle.profiler.mutations.support.TextChange;
 
 import java.io.File;
 
@@ -15,10 +16,7 @@ public ApplyChangeToComposableKotlinFileMutator(File sourceFile) {
     }
 
     @Override
-    protected void applyChangeTo(BuildContext context, StringBuilder text) {
-        text.append("\n\n")
-            .append("@androidx.compose.runtime.Composable fun M")
-            .append(context.getUniqueBuildId())
-            .append("() {}\n");
+    protected TextChange prepareChange(String originalText) {
+        return new TextChange().append(originalText, context -> "\n\n@androidx.compose.runtime.Composable fun M" + context.getUniqueBuildId() + "() {}\n");
     }
 }
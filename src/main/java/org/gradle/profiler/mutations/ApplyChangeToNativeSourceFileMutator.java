@@ -2,6 +2,7 @@
 
 import org.apache.commons.io.FilenameUtils;
 import org.gradle.profiler.BuildContext;
+import org.gradle.profiler.mutations.support.TextChange;
 
 import java.io.File;
 import java.util.Arrays;
@@ -31,17 +32,15 @@ public ApplyChangeToNativeSourceFileMutator(File file) {
     }
 
     @Override
-    protected void applyChangeTo(BuildContext context, StringBuilder text) {
-        int insertPos;
+    protected TextChange prepareChange(String originalText) {
         if (nativeSourcecodeFileEndings.contains(getSourceFileExtension())) {
-            insertPos = text.length();
-            applyChangeAt(context, text, insertPos);
+            return new TextChange().append(originalText, this::sourceChange);
         } else {
-            insertPos = text.lastIndexOf("#endif");
+            int insertPos = originalText.lastIndexOf("#endif");
             if (insertPos < 0) {
                 throw new IllegalArgumentException("Cannot parse header file " + sourceFile + " to apply changes");
             }
-            applyHeaderChangeAt(context, text, insertPos);
+            return new TextChange().insert(insertPos, this::headerChange);
         }
     }
 
@@ -53,14 +52,14 @@ protected String getFieldName(BuildContext context) {
         return "_m" + context.getUniqueBuildId();
     }
 
-    private void applyChangeAt(BuildContext context, StringBuilder text, int insertPos) {
+    private String sourceChange(BuildContext context) {
         // The code need to be confusing enough so the compiler and linker doesn't decide to simply inline it away.
         //   The compiler generally doesn't try to optimize away `volatile` variable.
         //   To make extra-sure, we return a value that can't be statically inferred from code analysis.
-        text.insert(insertPos, "\nint " + getFieldName(context) + "(void) { volatile int dummy = 0; return (int)((unsigned long)&dummy & 0x7FFFFFFFul); }");
+        return "\nint " + getFieldName(context) + "(void) { volatile int dummy = 0; return (int)((unsigned long)&dummy & 0x7FFFFFFFul); }";
     }
 
-    private void applyHeaderChangeAt(BuildContext context, StringBuilder text, int insertPos) {
-        text.insert(insertPos, "int " + getFieldName(context) + "(void);\n");
+    private String headerChange(BuildContext context) {
+        return "int " + getFieldName(context) + "(void);\n";
     }
 }
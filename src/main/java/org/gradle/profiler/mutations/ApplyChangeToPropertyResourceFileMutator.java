@@ -1,6 +1,7 @@
 package org.gradle.profiler.mutations;
 
 import org.gradle.profiler.BuildContext;
+import org.gradle.profiler.mutations.support.TextChange;
 
 import java.io.File;
 
@@ -10,7 +11,7 @@ public ApplyChangeToPropertyResourceFileMutator(File sourceFile) {
     }
 
     @Override
-    protected void applyChangeTo(BuildContext context, StringBuilder text) {
-        text.append("\norg.acme.some=").append(context.getUniqueBuildId()).append("\n");
+    protected TextChange prepareChange(String originalText) {
+        return new TextChange().append(originalText, context -> "\norg.acme.some=" + context.getUniqueBuildId() + "\n");
     }
 }
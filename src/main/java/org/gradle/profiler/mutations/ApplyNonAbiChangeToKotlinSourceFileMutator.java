@@ -1,6 +1,7 @@
 package org.gradle.profiler.mutations;
 
 import org.gradle.profiler.BuildContext;
+import org.gradle.profiler.mutations.support.TextChange;
 
 import java.io.File;
 
@@ -11,12 +12,9 @@ public ApplyNonAbiChangeToKotlinSourceFileMutator(File sourceFile) {
     }
 
     @Override
-    protected void applyChangeTo(BuildContext context, StringBuilder text) {
-        text.append("\n\n")
-            .append("private fun _m")
-            .append(context.getUniqueScenarioId())
-            .append("() {println(\"")
-            .append(context.getUniqueBuildId())
-            .append("\")}");
+    protected TextChange prepareChange(String originalText) {
+        return new TextChange().append(originalText, context ->
+            "\n\nprivate fun _m" + context.getUniqueScenarioId() + "() {println(\"" + context.getUniqueBuildId() + "\")}"
+        );
     }
 }
@@ -8,6 +8,7 @@
 import org.apache.commons.io.FileUtils;
 import org.gradle.profiler.*;
 import org.gradle.profiler.mutations.support.FileSupport;
+import org.gradle.profiler.mutations.support.TextChange;
 
 import java.io.File;
 import java.io.IOException;
@@ -106,11 +107,14 @@ public void validate(BuildInvoker invoker) {
     }
 
     @Override
-    protected void applyChangeTo(BuildContext context, StringBuilder text) {
-        text.append("\ndependencies {\n");
-        Set<String> projects = projectCombinations.getNextCombination();
-        projects.forEach(it -> text.append("    project(\":").append(it).append("\")\n"));
-        text.append("}");
+    protected TextChange prepareChange(String originalText) {
+        return new TextChange().append(originalText, context -> {
+            StringBuilder text = new StringBuilder("\ndependencies {\n");
+            Set<String> projects = projectCombinations.getNextCombination();
+            projects.forEach(it -> text.append("    project(\":").append(it).append("\")\n"));
+            text.append("}");
+            return text.toString();
+        });
     }
 
     public static class ProjectCombinations {
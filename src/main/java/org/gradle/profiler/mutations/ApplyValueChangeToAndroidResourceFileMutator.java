@@ -1,6 +1,7 @@
 package org.gradle.profiler.mutations;
 
 import org.gradle.profiler.BuildContext;
+import org.gradle.profiler.mutations.support.TextChange;
 
 import java.io.File;
 
@@ -10,11 +11,11 @@ public ApplyValueChangeToAndroidResourceFileMutator(File sourceFile) {
     }
 
     @Override
-    protected void applyChangeTo(BuildContext context, StringBuilder text) {
-        int insertPos = text.lastIndexOf("</string>");
+    protected TextChange prepareChange(String originalText) {
+        int insertPos = originalText.lastIndexOf("</string>");
         if (insertPos < 0) {
             throw new IllegalArgumentException("Cannot parse source file " + sourceFile + " to apply changes");
         }
-        text.insert(insertPos, context.getUniqueBuildId());
+        return new TextChange().insert(insertPos, BuildContext::getUniqueBuildId);
     }
 }
@@ -0,0 +1,68 @@
+package org.gradle.profiler.mutations.support;
+
+import org.gradle.profiler.BuildContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A change to a text that inserts content, which can differ for each build, at fixed offsets of the original text.
+ * The offsets are found once per scenario, so applying the change to a build only copies the original text around them.
+ */
+public class TextChange {
+    private final List<Insertion> insertions = new ArrayList<>();
+
+    /**
+     * Inserts the content before the character at the given offset of the original text.
+     * Content inserted at the same offset is inserted in the order it was added.
+     */
+    public TextChange insert(int offset, Function<BuildContext, String> content) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Cannot insert at offset " + offset);
+        }
+        int index = insertions.size();
+        while (index > 0 && insertions.get(index - 1).offset > offset) {
+            index--;
+        }
+        insertions.add(index, new Insertion(offset, content));
+        return this;
+    }
+
+    public TextChange append(String originalText, Function<BuildContext, String> content) {
+        return insert(originalText.length(), content);
+    }
+
+    public String applyTo(String originalText, BuildContext context) {
+        List<String> contents = new ArrayList<>(insertions.size());
+        int length = originalText.length();
+        for (Insertion insertion : insertions) {
+            if (insertion.offset > originalText.length()) {
+                throw new IllegalArgumentException("Cannot insert at offset " + insertion.offset + " of a text with length " + originalText.length());
+            }
+            String content = insertion.content.apply(context);
+            contents.add(content);
+            length += content.length();
+        }
+        StringBuilder text = new StringBuilder(length);
+        int copied = 0;
+        for (int i = 0; i < insertions.size(); i++) {
+            int offset = insertions.get(i).offset;
+            text.append(originalText, copied, offset);
+            text.append(contents.get(i));
+            copied = offset;
+        }
+        text.append(originalText, copied, originalText.length());
+        return text.toString();
+    }
+
+    private static class Insertion {
+        private final int offset;
+        private final Function<BuildContext, String> content;
+
+        private Insertion(int offset, Function<BuildContext, String> content) {
+            this.offset = offset;
+            this.content = content;
+        }
+    }
+}
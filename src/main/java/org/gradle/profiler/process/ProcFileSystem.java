@@ -0,0 +1,193 @@
+package org.gradle.profiler.process;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the state of processes from the Linux {@code /proc} file system, which is readable for the processes of the current user without root.
+ * A process can exit at any time, so every read returns {@code null} when its files are gone.
+ */
+class ProcFileSystem {
+    /**
+     * Linux reports CPU times in clock ticks, which are 100 per second on all common architectures.
+     */
+    static final long NANOS_PER_CLOCK_TICK = 10_000_000;
+
+    private final Path root;
+
+    ProcFileSystem(Path root) {
+        this.root = root;
+    }
+
+    boolean isAvailable() {
+        return Files.isDirectory(root.resolve("self"));
+    }
+
+    /**
+     * Returns the stat of all processes, keyed by pid.
+     */
+    Map<Long, ProcessStat> readAllStats() {
+        Map<Long, ProcessStat> stats = new HashMap<>();
+        try (DirectoryStream<Path> processDirs = Files.newDirectoryStream(root, ProcFileSystem::isProcessDir)) {
+            for (Path processDir : processDirs) {
+                ProcessStat stat = readStat(processDir);
+                if (stat != null) {
+                    stats.put(stat.pid, stat);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not list processes in " + root, e);
+        }
+        return stats;
+    }
+
+    private static boolean isProcessDir(Path path) {
+        String name = path.getFileName().toString();
+        if (name.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (!Character.isDigit(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Nullable
+    private static ProcessStat readStat(Path processDir) {
+        String stat = readFile(processDir.resolve("stat"));
+        if (stat == null) {
+            return null;
+        }
+        // The command name is in parentheses and can itself contain spaces and parentheses, so the other fields start after the last one
+        int commandEnd = stat.lastIndexOf(')');
+        if (commandEnd < 0) {
+            return null;
+        }
+        String[] fields = stat.substring(commandEnd + 2).trim().split(" ");
+        if (fields.length < 20) {
+            return null;
+        }
+        // The fields after the command name start with field 3 of proc(5)
+        return new ProcessStat(
+            Long.parseLong(processDir.getFileName().toString()),
+            Long.parseLong(fields[1]),
+            Long.parseLong(fields[19]),
+            Long.parseLong(fields[11]),
+            Long.parseLong(fields[12]),
+            Long.parseLong(fields[13]),
+            Long.parseLong(fields[14])
+        );
+    }
+
+    /**
+     * Returns the resident set size of the given process in bytes, or -1 when it has exited.
+     */
+    long readResidentSetSize(long pid) {
+        String status = readFile(root.resolve(Long.toString(pid)).resolve("status"));
+        if (status == null) {
+            return -1;
+        }
+        long residentKiB = parseField(status, "VmRSS:");
+        return residentKiB < 0 ? 0 : residentKiB * 1024;
+    }
+
+    /**
+     * Returns the voluntary and involuntary context switches of each thread of the given process, keyed by thread id.
+     * The kernel only reports them per thread.
+     */
+    Map<Long, long[]> readThreadContextSwitches(long pid) {
+        Map<Long, long[]> contextSwitches = new HashMap<>();
+        Path taskDir = root.resolve(Long.toString(pid)).resolve("task");
+        try (DirectoryStream<Path> threadDirs = Files.newDirectoryStream(taskDir, ProcFileSystem::isProcessDir)) {
+            for (Path threadDir : threadDirs) {
+                String status = readFile(threadDir.resolve("status"));
+                if (status != null) {
+                    contextSwitches.put(
+                        Long.parseLong(threadDir.getFileName().toString()),
+                        new long[]{parseField(status, "voluntary_ctxt_switches:"), parseField(status, "nonvoluntary_ctxt_switches:")}
+                    );
+                }
+            }
+        } catch (IOException e) {
+            // The process has exited
+        }
+        return contextSwitches;
+    }
+
+    /**
+     * Returns the bytes read from and written to storage by the given process, including its children that it has waited for,
+     * or {@code null} when the process has exited or its I/O statistics are not readable.
+     */
+    @Nullable
+    long[] readBlockIo(long pid) {
+        String io = readFile(root.resolve(Long.toString(pid)).resolve("io"));
+        if (io == null) {
+            return null;
+        }
+        return new long[]{Math.max(0, parseField(io, "read_bytes:")), Math.max(0, parseField(io, "write_bytes:"))};
+    }
+
+    private static long parseField(String text, String name) {
+        int start = text.startsWith(name) ? 0 : text.indexOf("\n" + name);
+        if (start < 0) {
+            return -1;
+        }
+        if (start > 0) {
+            start++;
+        }
+        int valueStart = start + name.length();
+        int end = text.indexOf('\n', valueStart);
+        String value = (end < 0 ? text.substring(valueStart) : text.substring(valueStart, end)).trim();
+        int space = value.indexOf(' ');
+        try {
+            return Long.parseLong(space < 0 ? value : value.substring(0, space));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Nullable
+    private static String readFile(Path file) {
+        try {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.ISO_8859_1);
+            return String.join("\n", lines);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    static class ProcessStat {
+        final long pid;
+        final long parentPid;
+        /**
+         * When the process started, in clock ticks after boot. Together with the pid, this identifies a process, as pids are reused.
+         */
+        final long startTime;
+        final long userTicks;
+        final long systemTicks;
+        /**
+         * The CPU time of the children that the process has waited for, which includes their own waited-for children.
+         */
+        final long childrenUserTicks;
+        final long childrenSystemTicks;
+
+        ProcessStat(long pid, long parentPid, long startTime, long userTicks, long systemTicks, long childrenUserTicks, long childrenSystemTicks) {
+            this.pid = pid;
+            this.parentPid = parentPid;
+            this.startTime = startTime;
+            this.userTicks = userTicks;
+            this.systemTicks = systemTicks;
+            this.childrenUserTicks = childrenUserTicks;
+            this.childrenSystemTicks = childrenSystemTicks;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package org.gradle.profiler.process;
+
+import org.gradle.profiler.process.ProcFileSystem.ProcessStat;
+
+import javax.annotation.Nullable;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples the processes descended from some root processes at a fixed interval while a build runs, by reading {@code /proc}.
+ *
+ * <p>The usage is computed for the tree below one of the sampled processes once the build has finished,
+ * so that the tree of the Gradle daemon can be sampled before it is known which daemon runs the build.</p>
+ *
+ * <p>The CPU time and block I/O of a process include those of its children once it has waited for them. These are used
+ * to account for what a child did after it was last sampled, or for a child that lived too short to be sampled at all,
+ * such as a forked compiler. The context switches and resident set size are only known from the samples.</p>
+ */
+public class ProcessTreeSampler {
+    private final ProcFileSystem procFileSystem;
+    private final Set<Long> rootPids;
+    private final long selfPid;
+    private final boolean rootsStartedForBuild;
+    private final Map<ProcessKey, ProcessRecord> processes = new LinkedHashMap<>();
+    private final List<Map<ProcessKey, Long>> residentSetSizes = new ArrayList<>();
+    private ScheduledExecutorService executor;
+    private int sampleCount;
+
+    /**
+     * @param selfPid the pid of the profiler, which can be used as a root to find the processes it starts, but is itself never measured
+     * @param rootsStartedForBuild whether the roots were started for the build, so that everything they did counts, rather than only what they did once sampling started
+     */
+    // Visible for testing
+    ProcessTreeSampler(ProcFileSystem procFileSystem, Collection<Long> rootPids, long selfPid, boolean rootsStartedForBuild) {
+        this.procFileSystem = procFileSystem;
+        this.rootPids = new HashSet<>(rootPids);
+        this.selfPid = selfPid;
+        this.rootsStartedForBuild = rootsStartedForBuild;
+    }
+
+    public static boolean isSupported() {
+        return new ProcFileSystem(Paths.get("/proc")).isAvailable();
+    }
+
+    /**
+     * Starts sampling the given running processes and their descendants at the given interval. Only what they do from now on is measured.
+     */
+    public static ProcessTreeSampler startForRunningProcesses(Duration interval, Collection<Long> rootPids) {
+        return start(interval, rootPids, false);
+    }
+
+    /**
+     * Starts sampling the given process, which was just started for the build, and its descendants at the given interval.
+     * Everything they do is measured, including what they did before the first sample.
+     */
+    public static ProcessTreeSampler startForNewProcess(Duration interval, long pid) {
+        return start(interval, List.of(pid), true);
+    }
+
+    private static ProcessTreeSampler start(Duration interval, Collection<Long> rootPids, boolean rootsStartedForBuild) {
+        ProcessTreeSampler sampler = new ProcessTreeSampler(new ProcFileSystem(Paths.get("/proc")), rootPids, ProcessHandle.current().pid(), rootsStartedForBuild);
+        sampler.sample();
+        sampler.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "process tree sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.executor.scheduleAtFixedRate(sampler::sample, interval.toNanos(), interval.toNanos(), TimeUnit.NANOSECONDS);
+        return sampler;
+    }
+
+    /**
+     * Stops sampling, after taking a last sample.
+     */
+    public void stop() {
+        if (executor != null) {
+            // Let a sample that is being taken finish, instead of interrupting it while it reads the files of the processes
+            executor.shutdown();
+            try {
+                executor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        sample();
+    }
+
+    // Visible for testing
+    synchronized void sample() {
+        Map<Long, ProcessStat> stats = procFileSystem.readAllStats();
+
+        Map<Long, List<Long>> childrenByParent = new HashMap<>();
+        for (ProcessStat stat : stats.values()) {
+            childrenByParent.computeIfAbsent(stat.parentPid, key -> new ArrayList<>()).add(stat.pid);
+        }
+
+        // Processes stay in the tree when they are reparented after their parent exits.
+        // The tree is walked from the roots, so that the parent of a process is recorded before the process.
+        Set<Long> tree = new LinkedHashSet<>();
+        Deque<Long> queue = new ArrayDeque<>(rootPids);
+        for (ProcessRecord process : processes.values()) {
+            if (process.alive) {
+                queue.add(process.key.pid);
+            }
+        }
+        while (!queue.isEmpty()) {
+            long pid = queue.poll();
+            if (stats.containsKey(pid) && tree.add(pid)) {
+                queue.addAll(childrenByParent.getOrDefault(pid, List.of()));
+            }
+        }
+
+        for (ProcessRecord process : processes.values()) {
+            ProcessStat stat = stats.get(process.key.pid);
+            if (process.alive && (stat == null || stat.startTime != process.key.startTime)) {
+                process.alive = false;
+                process.vanishedAtSample = sampleCount;
+            }
+        }
+
+        Map<ProcessKey, Long> residentSetSize = new HashMap<>();
+        for (long pid : tree) {
+            ProcessStat stat = stats.get(pid);
+            ProcessKey key = new ProcessKey(pid, stat.startTime);
+            ProcessRecord process = processes.get(key);
+            if (process == null) {
+                ProcessRecord parent = processes.get(new ProcessKey(stat.parentPid, stats.containsKey(stat.parentPid) ? stats.get(stat.parentPid).startTime : -1));
+                process = new ProcessRecord(key, parent, sampleCount == 0 && !rootsStartedForBuild);
+                processes.put(key, process);
+            }
+            if (pid == selfPid) {
+                process.update(stat, null, Map.of(), sampleCount);
+                continue;
+            }
+            long rss = procFileSystem.readResidentSetSize(pid);
+            if (rss < 0) {
+                // Exited while sampling, so the values read so far are kept
+                continue;
+            }
+            process.update(stat, procFileSystem.readBlockIo(pid), procFileSystem.readThreadContextSwitches(pid), sampleCount);
+            residentSetSize.put(key, rss);
+        }
+        residentSetSizes.add(residentSetSize);
+        sampleCount++;
+    }
+
+    /**
+     * Returns the usage of the tree below the given process, or {@link ProcessTreeUsage#NONE} when the process was not sampled.
+     */
+    public synchronized ProcessTreeUsage usageOf(long rootPid) {
+        ProcessRecord root = null;
+        for (ProcessRecord process : processes.values()) {
+            if (process.key.pid == rootPid && (root == null || process.alive)) {
+                root = process;
+            }
+        }
+        if (root == null) {
+            return ProcessTreeUsage.NONE;
+        }
+
+        Set<ProcessKey> tree = new HashSet<>();
+        for (ProcessRecord process : processes.values()) {
+            if (process.isDescendantOf(root)) {
+                tree.add(process.key);
+            }
+        }
+
+        // What the vanished descendants of a process did until they were last sampled. Once the process has waited for a child,
+        // this is also included in the totals of the process, together with what the child did afterwards.
+        Map<ProcessKey, long[]> sampledByWaitedForChildren = new HashMap<>();
+        for (ProcessKey key : tree) {
+            ProcessRecord child = processes.get(key);
+            ProcessRecord waitedForBy = child.alive ? null : waitedForBy(child);
+            if (waitedForBy == null) {
+                continue;
+            }
+            long[] sampled = sampledByWaitedForChildren.computeIfAbsent(waitedForBy.key, k -> new long[4]);
+            sampled[0] += child.last.userTicks + child.last.childrenUserTicks;
+            sampled[1] += child.last.systemTicks + child.last.childrenSystemTicks;
+            sampled[2] += child.lastBlockIo[0];
+            sampled[3] += child.lastBlockIo[1];
+        }
+
+        long userTicks = 0;
+        long systemTicks = 0;
+        long voluntaryContextSwitches = 0;
+        long involuntaryContextSwitches = 0;
+        long blockIoRead = 0;
+        long blockIoWrite = 0;
+        for (ProcessKey key : tree) {
+            ProcessRecord process = processes.get(key);
+            long[] sampledByChildren = sampledByWaitedForChildren.getOrDefault(key, new long[4]);
+            userTicks += process.last.userTicks - process.base.userTicks;
+            systemTicks += process.last.systemTicks - process.base.systemTicks;
+            userTicks += Math.max(0, process.last.childrenUserTicks - process.base.childrenUserTicks - sampledByChildren[0]);
+            systemTicks += Math.max(0, process.last.childrenSystemTicks - process.base.childrenSystemTicks - sampledByChildren[1]);
+            // The block I/O of a process includes the block I/O of the children it has waited for
+            blockIoRead += Math.max(0, process.lastBlockIo[0] - process.baseBlockIo[0] - sampledByChildren[2]);
+            blockIoWrite += Math.max(0, process.lastBlockIo[1] - process.baseBlockIo[1] - sampledByChildren[3]);
+            for (Map.Entry<Long, long[]> thread : process.lastContextSwitches.entrySet()) {
+                long[] base = process.baseContextSwitches.getOrDefault(thread.getKey(), new long[2]);
+                voluntaryContextSwitches += thread.getValue()[0] - base[0];
+                involuntaryContextSwitches += thread.getValue()[1] - base[1];
+            }
+        }
+
+        long peakResidentSetSize = 0;
+        for (Map<ProcessKey, Long> sample : residentSetSizes) {
+            long total = 0;
+            for (Map.Entry<ProcessKey, Long> entry : sample.entrySet()) {
+                if (tree.contains(entry.getKey())) {
+                    total += entry.getValue();
+                }
+            }
+            peakResidentSetSize = Math.max(peakResidentSetSize, total);
+        }
+
+        return new ProcessTreeUsage(
+            tree.size(),
+            Duration.ofNanos(userTicks * ProcFileSystem.NANOS_PER_CLOCK_TICK),
+            Duration.ofNanos(systemTicks * ProcFileSystem.NANOS_PER_CLOCK_TICK),
+            peakResidentSetSize,
+            voluntaryContextSwitches,
+            involuntaryContextSwitches,
+            blockIoRead,
+            blockIoWrite
+        );
+    }
+
+    /**
+     * Returns the closest ancestor that was sampled after it has waited for the given vanished process, and so includes its totals.
+     * When the parent exits before it is sampled again, its own parent receives the totals of both.
+     */
+    @Nullable
+    private static ProcessRecord waitedForBy(ProcessRecord process) {
+        ProcessRecord child = process;
+        ProcessRecord parent = process.lastParent;
+        while (parent != null && child.vanishedAtSample > parent.lastSample) {
+            if (parent.alive) {
+                return null;
+            }
+            child = parent;
+            parent = parent.lastParent;
+        }
+        return parent;
+    }
+
+    private static final class ProcessKey {
+        private final long pid;
+        private final long startTime;
+
+        ProcessKey(long pid, long startTime) {
+            this.pid = pid;
+            this.startTime = startTime;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ProcessKey)) {
+                return false;
+            }
+            ProcessKey other = (ProcessKey) o;
+            return pid == other.pid && startTime == other.startTime;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(pid) * 31 + Long.hashCode(startTime);
+        }
+    }
+
+    private static class ProcessRecord {
+        private static final ProcessStat ZERO = new ProcessStat(0, 0, 0, 0, 0, 0, 0);
+
+        private final ProcessKey key;
+        @Nullable
+        private final ProcessRecord parent;
+        /**
+         * Whether the process already existed when sampling started, so that only what it did afterwards is counted.
+         */
+        private final boolean existedAtStart;
+        private ProcessStat base = ZERO;
+        private ProcessStat last = ZERO;
+        private long[] baseBlockIo = new long[2];
+        private long[] lastBlockIo = new long[2];
+        private final Map<Long, long[]> baseContextSwitches = new HashMap<>();
+        private final Map<Long, long[]> lastContextSwitches = new HashMap<>();
+        /**
+         * The parent when the process was last sampled, which differs from the original parent once it has been reparented.
+         */
+        @Nullable
+        private ProcessRecord lastParent;
+        private int lastSample = -1;
+        private boolean alive = true;
+        private int vanishedAtSample;
+
+        ProcessRecord(ProcessKey key, @Nullable ProcessRecord parent, boolean existedAtStart) {
+            this.key = key;
+            this.parent = parent;
+            this.existedAtStart = existedAtStart;
+        }
+
+        void update(ProcessStat stat, @Nullable long[] blockIo, Map<Long, long[]> contextSwitches, int sample) {
+            if (lastSample < 0 && existedAtStart) {
+                base = stat;
+                if (blockIo != null) {
+                    baseBlockIo = blockIo;
+                }
+                baseContextSwitches.putAll(contextSwitches);
+            }
+            lastSample = sample;
+            last = stat;
+            if (blockIo != null) {
+                lastBlockIo = blockIo;
+            }
+            // Threads that have exited keep the values they were last sampled with
+            lastContextSwitches.putAll(contextSwitches);
+            lastParent = parent != null && parent.key.pid == stat.parentPid ? parent : null;
+        }
+
+        boolean isDescendantOf(ProcessRecord ancestor) {
+            for (ProcessRecord process = this; process != null; process = process.parent) {
+                if (process == ancestor) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.gradle.profiler.process;
+
+import java.time.Duration;
+
+/**
+ * The resources used by a tree of processes during a build, such as the Gradle daemon with its workers, test JVMs and the Kotlin daemon.
+ */
+public class ProcessTreeUsage {
+    public static final ProcessTreeUsage NONE = new ProcessTreeUsage(0, Duration.ZERO, Duration.ZERO, 0, 0, 0, 0, 0);
+
+    private final int processCount;
+    private final Duration userCpuTime;
+    private final Duration systemCpuTime;
+    private final long peakResidentSetSize;
+    private final long voluntaryContextSwitches;
+    private final long involuntaryContextSwitches;
+    private final long blockIoReadBytes;
+    private final long blockIoWriteBytes;
+
+    public ProcessTreeUsage(
+        int processCount,
+        Duration userCpuTime,
+        Duration systemCpuTime,
+        long peakResidentSetSize,
+        long voluntaryContextSwitches,
+        long involuntaryContextSwitches,
+        long blockIoReadBytes,
+        long blockIoWriteBytes
+    ) {
+        this.processCount = processCount;
+        this.userCpuTime = userCpuTime;
+        this.systemCpuTime = systemCpuTime;
+        this.peakResidentSetSize = peakResidentSetSize;
+        this.voluntaryContextSwitches = voluntaryContextSwitches;
+        this.involuntaryContextSwitches = involuntaryContextSwitches;
+        this.blockIoReadBytes = blockIoReadBytes;
+        this.blockIoWriteBytes = blockIoWriteBytes;
+    }
+
+    /**
+     * The number of processes in the tree that were seen while sampling.
+     */
+    public int getProcessCount() {
+        return processCount;
+    }
+
+    public Duration getUserCpuTime() {
+        return userCpuTime;
+    }
+
+    public Duration getSystemCpuTime() {
+        return systemCpuTime;
+    }
+
+    /**
+     * The highest sampled sum of the resident set sizes of the processes in the tree, in bytes.
+     */
+    public long getPeakResidentSetSize() {
+        return peakResidentSetSize;
+    }
+
+    public long getVoluntaryContextSwitches() {
+        return voluntaryContextSwitches;
+    }
+
+    public long getInvoluntaryContextSwitches() {
+        return involuntaryContextSwitches;
+    }
+
+    public long getBlockIoReadBytes() {
+        return blockIoReadBytes;
+    }
+
+    public long getBlockIoWriteBytes() {
+        return blockIoWriteBytes;
+    }
+}
@@ -0,0 +1,114 @@
+package org.gradle.profiler.report;
+
+import org.gradle.profiler.ScenarioDefinition;
+import org.gradle.profiler.result.BuildInvocationResult;
+import org.gradle.profiler.result.Sample;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compares the samples of each scenario with the samples of the same name of a baseline scenario.
+ */
+public class BaselineComparison {
+    private final BuildScenarioResult<?> baseline;
+
+    private BaselineComparison(BuildScenarioResult<?> baseline) {
+        this.baseline = baseline;
+    }
+
+    /**
+     * Selects the baseline among the given scenarios.
+     *
+     * @param baseline the display name or the name of the baseline scenario, or {@code null} to use the first scenario
+     * @return the comparison, or {@code null} when there is nothing to compare the baseline with
+     * @throws IllegalArgumentException when there is no scenario with the given name
+     */
+    @Nullable
+    public static BaselineComparison select(List<? extends BuildScenarioResult<?>> scenarios, @Nullable String baseline) {
+        if (scenarios.size() < 2) {
+            return null;
+        }
+        if (baseline == null) {
+            return new BaselineComparison(scenarios.get(0));
+        }
+        for (BuildScenarioResult<?> scenario : scenarios) {
+            if (matches(scenario.getScenarioDefinition(), baseline)) {
+                return new BaselineComparison(scenario);
+            }
+        }
+        throw new IllegalArgumentException("Could not find baseline scenario '" + baseline + "'.");
+    }
+
+    /**
+     * Whether the given scenario is the one the user refers to with the given display name or name.
+     */
+    public static boolean matches(ScenarioDefinition scenario, String baseline) {
+        return scenario.getDisplayName().equals(baseline) || scenario.getName().equals(baseline);
+    }
+
+    public BuildScenarioResult<?> getBaseline() {
+        return baseline;
+    }
+
+    /**
+     * Compares the measured values of the given sample with the ones of the baseline.
+     *
+     * @return the comparison, or {@code null} when the scenario is the baseline, or either scenario has no measured value for the sample
+     */
+    @Nullable
+    public <T extends BuildInvocationResult> SampleComparison compare(BuildScenarioResult<T> scenario, Sample<? super T> sample) {
+        if (scenario == baseline) {
+            return null;
+        }
+        double[] baselineValues = measuredValues(baseline, sample.getName());
+        double[] values = ScenarioResultWriter.measuredValues(scenario, sample);
+        if (baselineValues.length == 0 || values.length == 0) {
+            return null;
+        }
+        return SampleComparison.compare(baseline.getScenarioDefinition().getDisplayName(), baselineValues, values);
+    }
+
+    /**
+     * Describes each duration sample of the given scenarios that is significantly greater than in the baseline, by more than the given fraction of the baseline median.
+     * Other samples, like memory usage or counts, are not considered a slowdown.
+     */
+    public List<String> findRegressions(List<? extends BuildScenarioResult<?>> scenarios, double threshold) {
+        List<String> regressions = new ArrayList<>();
+        for (BuildScenarioResult<?> scenario : scenarios) {
+            collectRegressions(scenario, threshold, regressions);
+        }
+        return regressions;
+    }
+
+    private <T extends BuildInvocationResult> void collectRegressions(BuildScenarioResult<T> scenario, double threshold, List<String> regressions) {
+        for (Sample<? super T> sample : scenario.getSamples()) {
+            if (!sample.isDuration()) {
+                continue;
+            }
+            SampleComparison comparison = compare(scenario, sample);
+            if (comparison != null && comparison.isRegression(threshold)) {
+                regressions.add(String.format(Locale.US, "%s: %s increased by %.1f%% compared to %s (p-value %.4f, median difference %.2f %s)",
+                    scenario.getScenarioDefinition().getDisplayName(),
+                    sample.getName(),
+                    comparison.getRelativeMedianDifference() * 100,
+                    comparison.getBaseline(),
+                    comparison.getPValue(),
+                    comparison.getMedianDifference(),
+                    sample.getUnit()
+                ));
+            }
+        }
+    }
+
+    private static <T extends BuildInvocationResult> double[] measuredValues(BuildScenarioResult<T> scenario, String sampleName) {
+        for (Sample<? super T> sample : scenario.getSamples()) {
+            if (sample.getName().equals(sampleName)) {
+                return ScenarioResultWriter.measuredValues(scenario, sample);
+            }
+        }
+        return new double[0];
+    }
+}
@@ -0,0 +1,176 @@
+package org.gradle.profiler.report;
+
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.gradle.profiler.Phase;
+import org.gradle.profiler.ScenarioDefinition;
+import org.gradle.profiler.StoppingRule;
+import org.gradle.profiler.result.BuildInvocationResult;
+import org.gradle.profiler.result.RecordedBuildInvocationResult;
+import org.gradle.profiler.result.RecordedBuildInvocationResult.RecordedValue;
+import org.gradle.profiler.result.Sample;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * An append-only log of the result of each build, one JSON object per line.
+ *
+ * <p>Each line is appended as soon as the build has finished, so the log survives when the profiler crashes or is killed,
+ * unlike the reports which are only rendered at the end of the invocation. An interrupted invocation can be resumed from
+ * the log, reusing the results of the scenarios that have completed.</p>
+ */
+public class BenchmarkResultLog {
+    private final File logFile;
+    private final Gson gson = new GsonBuilder()
+        .serializeSpecialFloatingPointValues()
+        .create();
+    /**
+     * The results recorded by an earlier invocation, grouped by the unique scenario id of each run of a scenario.
+     */
+    private final Map<String, List<JsonObject>> recordedRuns = new LinkedHashMap<>();
+
+    /**
+     * Starts a new log, removing any existing log file.
+     */
+    public BenchmarkResultLog(File logFile) throws IOException {
+        this(logFile, false);
+    }
+
+    /**
+     * @param resume whether to keep an existing log file and make the results recorded in it available via {@link #restore(ScenarioDefinition, StoppingRule)}.
+     * New results are appended to the existing log file.
+     */
+    public BenchmarkResultLog(File logFile, boolean resume) throws IOException {
+        this.logFile = logFile;
+        if (resume && logFile.isFile()) {
+            String content = new String(Files.readAllBytes(logFile.toPath()), StandardCharsets.UTF_8);
+            if (!content.isEmpty() && !content.endsWith("\n")) {
+                // Terminate an incomplete last line, so that new results start on a line of their own
+                Files.write(logFile.toPath(), "\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            }
+            int lineNumber = 0;
+            for (String line : content.split("\n")) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    JsonObject json = JsonParser.parseString(line).getAsJsonObject();
+                    recordedRuns.computeIfAbsent(json.get("scenarioId").getAsString(), id -> new ArrayList<>()).add(json);
+                } catch (RuntimeException e) {
+                    // The last line may be incomplete when the process was killed while writing it
+                    System.out.println("Ignoring malformed line " + lineNumber + " of " + logFile);
+                }
+            }
+        } else {
+            Files.deleteIfExists(logFile.toPath());
+        }
+    }
+
+    public File getLogFile() {
+        return logFile;
+    }
+
+    /**
+     * Returns the results recorded for the given scenario, if an earlier invocation ran all of its builds.
+     *
+     * @param stoppingRule the rule that decides whether the earlier invocation could stop running builds before the configured number of builds.
+     * @return the recorded results, or an empty list when the scenario did not complete.
+     * @throws IllegalStateException when results were recorded for a scenario with the same name but a different definition.
+     */
+    public List<RecordedBuildInvocationResult> restore(ScenarioDefinition scenario, StoppingRule stoppingRule) {
+        String definition = definitionHash(scenario);
+        List<RecordedBuildInvocationResult> completedRun = Collections.emptyList();
+        for (List<JsonObject> run : recordedRuns.values()) {
+            if (!run.get(0).get("scenario").getAsString().equals(scenario.getDisplayName())) {
+                continue;
+            }
+            if (!run.get(0).get("definition").getAsString().equals(definition)) {
+                throw new IllegalStateException("The definition of scenario " + scenario.getDisplayName() + " has changed since its results were recorded in " + logFile + ".");
+            }
+            List<RecordedBuildInvocationResult> results = run.stream().map(BenchmarkResultLog::toResult).collect(Collectors.toList());
+            List<Duration> warmUpTimes = executionTimes(results, Phase.WARM_UP);
+            List<Duration> buildTimes = executionTimes(results, Phase.MEASURE);
+            boolean warmedUp = warmUpTimes.size() == scenario.getWarmUpCount() || stoppingRule.isSteadyState(warmUpTimes);
+            boolean measured = buildTimes.size() == scenario.getBuildCount() || stoppingRule.isConverged(buildTimes);
+            if (warmedUp && measured) {
+                completedRun = results;
+            }
+        }
+        return completedRun;
+    }
+
+    private static RecordedBuildInvocationResult toResult(JsonObject json) {
+        Map<String, RecordedValue> values = new LinkedHashMap<>();
+        JsonObject units = json.getAsJsonObject("units");
+        JsonObject counts = json.getAsJsonObject("counts");
+        for (Map.Entry<String, JsonElement> value : json.getAsJsonObject("values").entrySet()) {
+            values.put(value.getKey(), new RecordedValue(
+                units.get(value.getKey()).getAsString(),
+                value.getValue().getAsDouble(),
+                counts.get(value.getKey()).getAsInt()
+            ));
+        }
+        return new RecordedBuildInvocationResult(
+            json.get("scenarioId").getAsString(),
+            json.get("id").getAsString(),
+            Phase.valueOf(json.get("phase").getAsString()),
+            json.get("iteration").getAsInt(),
+            values
+        );
+    }
+
+    private static List<Duration> executionTimes(List<RecordedBuildInvocationResult> results, Phase phase) {
+        return results.stream()
+            .filter(result -> result.getBuildContext().getPhase() == phase)
+            .map(BuildInvocationResult::getExecutionTime)
+            .collect(Collectors.toList());
+    }
+
+    public <T extends BuildInvocationResult> void append(ScenarioDefinition scenario, List<? extends Sample<? super T>> samples, T result) {
+        JsonObject json = new JsonObject();
+        json.addProperty("scenario", scenario.getDisplayName());
+        json.addProperty("definition", definitionHash(scenario));
+        json.addProperty("scenarioId", result.getBuildContext().getUniqueScenarioId());
+        json.addProperty("id", result.getBuildContext().getUniqueBuildId());
+        json.addProperty("phase", result.getBuildContext().getPhase().name());
+        json.addProperty("iteration", result.getBuildContext().getIteration());
+        json.addProperty("title", result.getBuildContext().getDisplayName());
+        JsonObject valuesJson = new JsonObject();
+        JsonObject unitsJson = new JsonObject();
+        JsonObject countsJson = new JsonObject();
+        for (Sample<? super T> sample : samples) {
+            valuesJson.addProperty(sample.getName(), sample.extractValue(result));
+            unitsJson.addProperty(sample.getName(), sample.getUnit());
+            countsJson.addProperty(sample.getName(), sample.extractTotalCountFrom(result));
+        }
+        json.add("values", valuesJson);
+        json.add("units", unitsJson);
+        json.add("counts", countsJson);
+        try {
+            Files.write(logFile.toPath(), (gson.toJson(json) + "\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not append result to " + logFile, e);
+        }
+    }
+
+    private static String definitionHash(ScenarioDefinition scenario) {
+        return Hashing.sha256().hashString(JsonResultWriter.serializeDefinition(scenario).toString(), StandardCharsets.UTF_8).toString();
+    }
+}
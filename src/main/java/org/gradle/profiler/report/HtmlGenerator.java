@@ -26,7 +26,7 @@ public boolean processLine(String line) throws IOException {
                 if (line.equals(SCRIPT_PLACEHOLDER)) {
                     Resources.asCharSource(Resources.getResource(HtmlGenerator.class, "report.js"), StandardCharsets.UTF_8).copyTo(writer);
                 } else if (line.equals(JSON_PLACEHOLDER)) {
-                    new JsonResultWriter(true).write(
+                    new JsonResultWriter(true, settings).write(
                         settings.getBenchmarkTitle(),
                         Instant.now(),
                         benchmarkResult.getScenarios(),
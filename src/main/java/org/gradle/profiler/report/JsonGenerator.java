@@ -14,7 +14,7 @@ public JsonGenerator(File outputFile) {
 
     @Override
     protected void write(InvocationSettings settings, BenchmarkResult benchmarkResult, BufferedWriter writer) throws IOException {
-        new JsonResultWriter(true).write(
+        new JsonResultWriter(true, settings).write(
             settings.getBenchmarkTitle(),
             Instant.now(),
             benchmarkResult.getScenarios(),
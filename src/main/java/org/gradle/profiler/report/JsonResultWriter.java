@@ -8,8 +8,10 @@
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
 import org.gradle.profiler.gradle.GradleScenarioDefinition;
+import org.gradle.profiler.InvocationSettings;
 import org.gradle.profiler.OperatingSystem;
 import org.gradle.profiler.ScenarioDefinition;
+import org.gradle.profiler.StoppingRule;
 import org.gradle.profiler.Version;
 import org.gradle.profiler.maven.MavenScenarioDefinition;
 
@@ -26,31 +28,59 @@
 public class JsonResultWriter {
 
     private final boolean pretty;
+    private final StoppingRule stoppingRule;
+    private final boolean compareWithBaseline;
+    private final String baseline;
 
     public JsonResultWriter(boolean pretty) {
         this.pretty = pretty;
+        this.stoppingRule = StoppingRule.FIXED;
+        this.compareWithBaseline = false;
+        this.baseline = null;
+    }
+
+    /**
+     * Also records how the number of builds of each scenario was decided, and how each scenario compares with the baseline scenario of the given settings.
+     */
+    public JsonResultWriter(boolean pretty, InvocationSettings settings) {
+        this.pretty = pretty;
+        this.stoppingRule = StoppingRule.from(settings);
+        this.compareWithBaseline = true;
+        this.baseline = settings.getBaseline();
     }
 
     public void write(@Nullable String title, Temporal reportDate, List<? extends BuildScenarioResult<?>> scenarios, Writer writer) {
+        Gson gson = createGson(pretty);
+
+        JsonObject json = new JsonObject();
+        if (title != null) {
+            json.addProperty("title", title);
+        }
+        json.add("date", gson.toJsonTree(reportDate));
+        json.add("environment", gson.toJsonTree(new Environment()));
+        BaselineComparison baselineComparison = compareWithBaseline ? BaselineComparison.select(scenarios, baseline) : null;
+        writeScenarioResults(scenarios, gson, stoppingRule, baselineComparison, json);
+        gson.toJson(json, writer);
+    }
+
+    /**
+     * Serializes the definition of a scenario, in the same way as it is written to the report.
+     */
+    static JsonObject serializeDefinition(ScenarioDefinition scenario) {
+        return (JsonObject) createGson(false).toJsonTree(scenario);
+    }
+
+    private static Gson createGson(boolean pretty) {
         GsonBuilder builder = new GsonBuilder();
         if (pretty) {
             builder.setPrettyPrinting();
         }
-        Gson gson = builder
+        return builder
             .registerTypeHierarchyAdapter(ScenarioDefinition.class, new ScenarioSerializer<>())
             .registerTypeHierarchyAdapter(GradleScenarioDefinition.class, new GradleScenarioSerializer())
             .registerTypeHierarchyAdapter(MavenScenarioDefinition.class, new MavenScenarioSerializer())
             .registerTypeHierarchyAdapter(Temporal.class, (JsonSerializer<Temporal>) (date, type, context) -> new JsonPrimitive(DateTimeFormatter.ISO_INSTANT.format(date)))
             .create();
-
-        JsonObject json = new JsonObject();
-        if (title != null) {
-            json.addProperty("title", title);
-        }
-        json.add("date", gson.toJsonTree(reportDate));
-        json.add("environment", gson.toJsonTree(new Environment()));
-        writeScenarioResults(scenarios, gson, json);
-        gson.toJson(json, writer);
     }
 
     private static class Environment {
@@ -63,10 +93,10 @@ public Environment() {
         }
     }
 
-    private static void writeScenarioResults(List<? extends BuildScenarioResult<?>> results, Gson gson, JsonObject json) {
+    private static void writeScenarioResults(List<? extends BuildScenarioResult<?>> results, Gson gson, StoppingRule stoppingRule, @Nullable BaselineComparison baselineComparison, JsonObject json) {
         JsonArray scenariosJson = new JsonArray();
         for (BuildScenarioResult<?> scenario : results) {
-            scenariosJson.add(ScenarioResultWriter.serialize(scenario, gson));
+            scenariosJson.add(ScenarioResultWriter.serialize(scenario, gson, stoppingRule, baselineComparison));
         }
         json.add("scenarios", scenariosJson);
     }
@@ -0,0 +1,148 @@
+package org.gradle.profiler.report;
+
+import org.apache.commons.math3.stat.inference.MannWhitneyUTest;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The comparison of the measured values of a sample with the values of the same sample of a baseline scenario.
+ *
+ * <ul>
+ *     <li>The p-value is the one of the two-sided Mann-Whitney U test, as shown by the HTML report.</li>
+ *     <li>The confidence interval of the difference between the medians is a 95% percentile bootstrap interval.
+ *     The resampling uses a fixed seed, so the same values always produce the same interval.</li>
+ *     <li>The effect size is Cliff's delta: the probability that a value is greater than a baseline value,
+ *     minus the probability that it is smaller. It ranges from -1 to 1, positive when the values are greater than the baseline values.</li>
+ * </ul>
+ */
+public class SampleComparison {
+    /**
+     * The p-value below which a difference is considered to be statistically significant.
+     */
+    public static final double SIGNIFICANCE_LEVEL = 0.05;
+
+    private static final int BOOTSTRAP_RESAMPLES = 2000;
+    private static final long BOOTSTRAP_SEED = 0x5EED;
+
+    final String baseline;
+    final double pValue;
+    final boolean significant;
+    final double medianDifference;
+    final double[] medianDifferenceInterval;
+    final Double relativeMedianDifference;
+    final double effectSize;
+
+    private SampleComparison(String baseline, double pValue, double medianDifference, double[] medianDifferenceInterval, @Nullable Double relativeMedianDifference, double effectSize) {
+        this.baseline = baseline;
+        this.pValue = pValue;
+        this.significant = pValue < SIGNIFICANCE_LEVEL;
+        this.medianDifference = medianDifference;
+        this.medianDifferenceInterval = medianDifferenceInterval;
+        this.relativeMedianDifference = relativeMedianDifference;
+        this.effectSize = effectSize;
+    }
+
+    /**
+     * Compares the given values with the given baseline values. Both must not be empty.
+     *
+     * @param baseline the display name of the baseline scenario
+     */
+    public static SampleComparison compare(String baseline, double[] baselineValues, double[] values) {
+        double pValue = new MannWhitneyUTest().mannWhitneyUTest(baselineValues, values);
+        double baselineMedian = SampleStatistics.from(baselineValues).getMedian();
+        double medianDifference = SampleStatistics.from(values).getMedian() - baselineMedian;
+        return new SampleComparison(
+            baseline,
+            pValue,
+            medianDifference,
+            bootstrapMedianDifference(baselineValues, values),
+            baselineMedian == 0 ? null : medianDifference / baselineMedian,
+            cliffsDelta(baselineValues, values)
+        );
+    }
+
+    public String getBaseline() {
+        return baseline;
+    }
+
+    public double getPValue() {
+        return pValue;
+    }
+
+    /**
+     * Whether the difference with the baseline is statistically significant, see {@link #SIGNIFICANCE_LEVEL}.
+     */
+    public boolean isSignificant() {
+        return significant;
+    }
+
+    /**
+     * The median of the values minus the median of the baseline values.
+     */
+    public double getMedianDifference() {
+        return medianDifference;
+    }
+
+    /**
+     * The 95% confidence interval of {@link #getMedianDifference()}, as {@code [lower, upper]}.
+     */
+    public double[] getMedianDifferenceInterval() {
+        return medianDifferenceInterval.clone();
+    }
+
+    /**
+     * The difference of the medians relative to the median of the baseline, or {@code null} when the median of the baseline is zero.
+     */
+    @Nullable
+    public Double getRelativeMedianDifference() {
+        return relativeMedianDifference;
+    }
+
+    public double getEffectSize() {
+        return effectSize;
+    }
+
+    /**
+     * Whether the values are significantly greater than the baseline values, by more than the given fraction of the baseline median.
+     */
+    public boolean isRegression(double threshold) {
+        return significant && relativeMedianDifference != null && relativeMedianDifference > threshold;
+    }
+
+    private static double[] bootstrapMedianDifference(double[] baselineValues, double[] values) {
+        Random random = new Random(BOOTSTRAP_SEED);
+        double[] baselineResample = new double[baselineValues.length];
+        double[] resample = new double[values.length];
+        double[] differences = new double[BOOTSTRAP_RESAMPLES];
+        for (int i = 0; i < BOOTSTRAP_RESAMPLES; i++) {
+            resample(random, baselineValues, baselineResample);
+            resample(random, values, resample);
+            differences[i] = SampleStatistics.from(resample).getMedian() - SampleStatistics.from(baselineResample).getMedian();
+        }
+        Arrays.sort(differences);
+        return new double[]{SampleStatistics.quantile(differences, 0.025), SampleStatistics.quantile(differences, 0.975)};
+    }
+
+    private static void resample(Random random, double[] values, double[] resample) {
+        for (int i = 0; i < resample.length; i++) {
+            resample[i] = values[random.nextInt(values.length)];
+        }
+    }
+
+    private static double cliffsDelta(double[] baselineValues, double[] values) {
+        long greater = 0;
+        long smaller = 0;
+        for (double value : values) {
+            for (double baselineValue : baselineValues) {
+                if (value > baselineValue) {
+                    greater++;
+                } else if (value < baselineValue) {
+                    smaller++;
+                }
+            }
+        }
+        return (double) (greater - smaller) / ((long) values.length * baselineValues.length);
+    }
+}
@@ -1,5 +1,6 @@
 package org.gradle.profiler.report;
 
+import javax.annotation.Nullable;
 import java.util.Arrays;
 
 /**
@@ -47,7 +48,39 @@ public static SampleStatistics from(double[] values) {
         );
     }
 
-    private static double quantile(double[] sorted, double q) {
+    /**
+     * Returns the distribution-free 95% confidence interval of the median as {@code [lower, upper]}, using the order statistics
+     * whose ranks are given by the normal approximation of the binomial distribution.
+     *
+     * @return the interval, or {@code null} when there are too few values for the interval to have 95% confidence.
+     */
+    @Nullable
+    public static double[] medianConfidenceInterval(double[] values) {
+        int n = values.length;
+        double spread = 1.96 * Math.sqrt(n);
+        int lowerRank = (int) Math.floor((n - spread) / 2);
+        int upperRank = (int) Math.ceil(1 + (n + spread) / 2);
+        if (lowerRank < 1 || upperRank > n) {
+            return null;
+        }
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return new double[]{sorted[lowerRank - 1], sorted[upperRank - 1]};
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getMedian() {
+        return median;
+    }
+
+    public double getStddev() {
+        return stddev;
+    }
+
+    static double quantile(double[] sorted, double q) {
         double pos = (sorted.length - 1) * q;
         int base = (int) Math.floor(pos);
         double rest = pos - base;
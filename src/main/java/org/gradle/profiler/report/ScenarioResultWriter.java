@@ -4,10 +4,14 @@
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import org.gradle.profiler.Phase;
+import org.gradle.profiler.StoppingRule;
 import org.gradle.profiler.result.BuildInvocationResult;
 import org.gradle.profiler.result.Sample;
 
+import javax.annotation.Nullable;
+import java.time.Duration;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * Serializes the result of a single scenario, including its definition, the statistics
@@ -18,7 +22,10 @@ public class ScenarioResultWriter {
     private ScenarioResultWriter() {
     }
 
-    public static <T extends BuildInvocationResult> JsonObject serialize(BuildScenarioResult<T> scenarioResult, Gson gson) {
+    /**
+     * @param baselineComparison the comparison with the baseline to record for each sample, if any
+     */
+    public static <T extends BuildInvocationResult> JsonObject serialize(BuildScenarioResult<T> scenarioResult, Gson gson, StoppingRule stoppingRule, @Nullable BaselineComparison baselineComparison) {
         JsonObject json = new JsonObject();
         List<T> results = scenarioResult.getResults();
 
@@ -33,7 +40,7 @@ public static <T extends BuildInvocationResult> JsonObject serialize(BuildScenar
         JsonArray samplesJson = new JsonArray();
         List<Sample<? super T>> samples = scenarioResult.getSamples();
         for (Sample<? super T> sample : samples) {
-            samplesJson.add(serializeSample(scenarioResult, sample, gson));
+            samplesJson.add(serializeSample(scenarioResult, sample, gson, baselineComparison));
         }
         json.add("samples", samplesJson);
         JsonArray iterationsJson = new JsonArray();
@@ -41,10 +48,42 @@ public static <T extends BuildInvocationResult> JsonObject serialize(BuildScenar
             iterationsJson.add(serializeIteration(result, samples));
         }
         json.add("iterations", iterationsJson);
+        if (stoppingRule.isAdaptive()) {
+            json.add("stopping", serializeStoppingDecision(scenarioResult, stoppingRule));
+        }
         return json;
     }
 
-    private static <T extends BuildInvocationResult> JsonObject serializeSample(BuildScenarioResult<T> scenarioResult, Sample<? super T> sample, Gson gson) {
+    /**
+     * Records why the warm-up builds and the measured builds of the scenario stopped.
+     */
+    private static <T extends BuildInvocationResult> JsonObject serializeStoppingDecision(BuildScenarioResult<T> scenarioResult, StoppingRule stoppingRule) {
+        List<Duration> warmUpTimes = executionTimes(scenarioResult, Phase.WARM_UP);
+        List<Duration> buildTimes = executionTimes(scenarioResult, Phase.MEASURE);
+        JsonObject json = new JsonObject();
+        json.addProperty("targetError", stoppingRule.getTargetError());
+        JsonObject warmUpsJson = new JsonObject();
+        warmUpsJson.addProperty("count", warmUpTimes.size());
+        warmUpsJson.addProperty("max", scenarioResult.getScenarioDefinition().getWarmUpCount());
+        warmUpsJson.addProperty("reason", stoppingRule.isSteadyState(warmUpTimes) ? "steady-state" : "max-warm-ups");
+        json.add("warmUps", warmUpsJson);
+        JsonObject buildsJson = new JsonObject();
+        buildsJson.addProperty("count", buildTimes.size());
+        buildsJson.addProperty("max", scenarioResult.getScenarioDefinition().getBuildCount());
+        buildsJson.addProperty("reason", stoppingRule.isConverged(buildTimes) ? "converged" : "max-builds");
+        buildsJson.addProperty("relativeError", StoppingRule.relativeError(buildTimes));
+        json.add("builds", buildsJson);
+        return json;
+    }
+
+    private static <T extends BuildInvocationResult> List<Duration> executionTimes(BuildScenarioResult<T> scenarioResult, Phase phase) {
+        return scenarioResult.getResults().stream()
+            .filter(result -> result.getBuildContext().getPhase() == phase)
+            .map(BuildInvocationResult::getExecutionTime)
+            .collect(Collectors.toList());
+    }
+
+    private static <T extends BuildInvocationResult> JsonObject serializeSample(BuildScenarioResult<T> scenarioResult, Sample<? super T> sample, Gson gson, @Nullable BaselineComparison baselineComparison) {
         JsonObject json = new JsonObject();
         json.addProperty("name", sample.getName());
         json.addProperty("unit", sample.getUnit());
@@ -52,10 +91,14 @@ private static <T extends BuildInvocationResult> JsonObject serializeSample(Buil
         if (values.length > 0) {
             json.add("stats", gson.toJsonTree(SampleStatistics.from(values)));
         }
+        SampleComparison comparison = baselineComparison == null ? null : baselineComparison.compare(scenarioResult, sample);
+        if (comparison != null) {
+            json.add("comparison", gson.toJsonTree(comparison));
+        }
         return json;
     }
 
-    private static <T extends BuildInvocationResult> double[] measuredValues(BuildScenarioResult<T> scenarioResult, Sample<? super T> sample) {
+    static <T extends BuildInvocationResult> double[] measuredValues(BuildScenarioResult<T> scenarioResult, Sample<? super T> sample) {
         return scenarioResult.getResults().stream()
             .filter(result -> result.getBuildContext().getPhase() == Phase.MEASURE)
             .mapToDouble(sample::extractValue)
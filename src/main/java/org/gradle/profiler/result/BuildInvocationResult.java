@@ -1,16 +1,27 @@
 package org.gradle.profiler.result;
 
+import com.google.common.collect.ImmutableList;
 import org.gradle.profiler.BuildContext;
+import org.gradle.profiler.process.ProcessTreeUsage;
 
 import java.time.Duration;
+import java.util.List;
+
+import static org.gradle.profiler.result.SingleInvocationSample.toMiB;
 
 public class BuildInvocationResult {
     private final BuildContext buildContext;
     private final BuildActionResult actionResult;
+    private final ProcessTreeUsage processTreeUsage;
 
     public BuildInvocationResult(BuildContext buildContext, BuildActionResult actionResult) {
+        this(buildContext, actionResult, ProcessTreeUsage.NONE);
+    }
+
+    public BuildInvocationResult(BuildContext buildContext, BuildActionResult actionResult, ProcessTreeUsage processTreeUsage) {
         this.buildContext = buildContext;
         this.actionResult = actionResult;
+        this.processTreeUsage = processTreeUsage;
     }
 
     public String getDisplayName() {
@@ -29,6 +40,23 @@ public Duration getExecutionTime() {
         return actionResult.getExecutionTime();
     }
 
+    /**
+     * The resources used by the processes of the build, or {@link ProcessTreeUsage#NONE} when they were not measured.
+     */
+    public ProcessTreeUsage getProcessTreeUsage() {
+        return processTreeUsage;
+    }
+
     public static final Sample<BuildInvocationResult> EXECUTION_TIME
         = SingleInvocationDurationSample.from("total execution time", BuildInvocationResult::getExecutionTime);
+
+    public static final List<Sample<BuildInvocationResult>> PROCESS_TREE_SAMPLES = ImmutableList.of(
+        SingleInvocationDurationSample.from("process tree user CPU time", result -> result.getProcessTreeUsage().getUserCpuTime()),
+        SingleInvocationDurationSample.from("process tree system CPU time", result -> result.getProcessTreeUsage().getSystemCpuTime()),
+        SingleInvocationSample.from("process tree peak RSS", "MiB", result -> toMiB(result.getProcessTreeUsage().getPeakResidentSetSize())),
+        SingleInvocationSample.from("process tree voluntary context switches", "switches", result -> result.getProcessTreeUsage().getVoluntaryContextSwitches()),
+        SingleInvocationSample.from("process tree involuntary context switches", "switches", result -> result.getProcessTreeUsage().getInvoluntaryContextSwitches()),
+        SingleInvocationSample.from("process tree block I/O read", "MiB", result -> toMiB(result.getProcessTreeUsage().getBlockIoReadBytes())),
+        SingleInvocationSample.from("process tree block I/O written", "MiB", result -> toMiB(result.getProcessTreeUsage().getBlockIoWriteBytes()))
+    );
 }
@@ -3,8 +3,10 @@
 import java.time.Duration;
 
 public abstract class DurationSample<T extends BuildInvocationResult> extends Sample<T> {
+    public static final String UNIT = "ms";
+
     public DurationSample(String name) {
-        super(name, "ms");
+        super(name, UNIT);
     }
 
     @Override
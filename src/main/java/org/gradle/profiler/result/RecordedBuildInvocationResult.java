@@ -0,0 +1,114 @@
+package org.gradle.profiler.result;
+
+import org.gradle.profiler.BuildContext;
+import org.gradle.profiler.Phase;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of a build that was run by an earlier invocation, restored from the values of its samples.
+ */
+public class RecordedBuildInvocationResult extends BuildInvocationResult {
+    private final Map<String, RecordedValue> values;
+
+    public RecordedBuildInvocationResult(String scenarioId, String buildId, Phase phase, int iteration, Map<String, RecordedValue> values) {
+        super(new RecordedBuildContext(scenarioId, buildId, phase, iteration), new BuildActionResult(executionTime(values)));
+        this.values = values;
+    }
+
+    private static Duration executionTime(Map<String, RecordedValue> values) {
+        RecordedValue executionTime = values.get(BuildInvocationResult.EXECUTION_TIME.getName());
+        return executionTime == null ? Duration.ZERO : Duration.ofNanos(Math.round(executionTime.value * 1_000_000d));
+    }
+
+    /**
+     * Provides the samples recorded for the given results, in the order in which they were recorded.
+     */
+    public static SampleProvider<RecordedBuildInvocationResult> samples() {
+        return results -> {
+            Map<String, Sample<? super RecordedBuildInvocationResult>> samples = new LinkedHashMap<>();
+            for (RecordedBuildInvocationResult result : results) {
+                result.values.forEach((name, value) -> samples.computeIfAbsent(name, key -> new RecordedSample(name, value.unit)));
+            }
+            return new ArrayList<>(samples.values());
+        };
+    }
+
+    public static class RecordedValue {
+        private final String unit;
+        private final double value;
+        private final int totalCount;
+
+        public RecordedValue(String unit, double value, int totalCount) {
+            this.unit = unit;
+            this.value = value;
+            this.totalCount = totalCount;
+        }
+    }
+
+    private static class RecordedSample extends Sample<RecordedBuildInvocationResult> {
+        RecordedSample(String name, String unit) {
+            super(name, unit);
+        }
+
+        @Override
+        public double extractValue(RecordedBuildInvocationResult result) {
+            RecordedValue value = result.values.get(getName());
+            return value == null ? 0 : value.value;
+        }
+
+        @Override
+        public int extractTotalCountFrom(RecordedBuildInvocationResult result) {
+            RecordedValue value = result.values.get(getName());
+            return value == null ? 0 : value.totalCount;
+        }
+    }
+
+    private static class RecordedBuildContext implements BuildContext {
+        private final String scenarioId;
+        private final String buildId;
+        private final Phase phase;
+        private final int iteration;
+
+        RecordedBuildContext(String scenarioId, String buildId, Phase phase, int iteration) {
+            this.scenarioId = scenarioId;
+            this.buildId = buildId;
+            this.phase = phase;
+            this.iteration = iteration;
+        }
+
+        @Override
+        public String getUniqueScenarioId() {
+            return scenarioId;
+        }
+
+        @Override
+        public BuildContext withBuild(Phase phase, int count) {
+            throw new UnsupportedOperationException("Cannot run builds for recorded results.");
+        }
+
+        @Override
+        public String getUniqueBuildId() {
+            return buildId;
+        }
+
+        @Override
+        public Phase getPhase() {
+            return phase;
+        }
+
+        @Override
+        public int getIteration() {
+            return iteration;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return phase.displayBuildNumber(iteration);
+        }
+    }
+}
@@ -17,6 +17,13 @@ public String getUnit() {
         return unit;
     }
 
+    /**
+     * Whether the values of this sample are durations, including the ones of recorded results.
+     */
+    public boolean isDuration() {
+        return DurationSample.UNIT.equals(unit);
+    }
+
     public abstract double extractValue(T result);
 
     public abstract int extractTotalCountFrom(T result);
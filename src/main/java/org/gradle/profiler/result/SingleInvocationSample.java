@@ -0,0 +1,30 @@
+package org.gradle.profiler.result;
+
+import java.util.function.ToDoubleFunction;
+
+public abstract class SingleInvocationSample<T extends BuildInvocationResult> extends Sample<T> {
+    public SingleInvocationSample(String name, String unit) {
+        super(name, unit);
+    }
+
+    public static <T extends BuildInvocationResult> Sample<T> from(String name, String unit, ToDoubleFunction<T> extractor) {
+        return new SingleInvocationSample<T>(name, unit) {
+            @Override
+            public double extractValue(T result) {
+                return extractor.applyAsDouble(result);
+            }
+        };
+    }
+
+    /**
+     * Converts a number of bytes to the MiB that samples of memory and I/O are reported in.
+     */
+    public static double toMiB(long bytes) {
+        return bytes / 1024.0 / 1024.0;
+    }
+
+    @Override
+    public int extractTotalCountFrom(T result) {
+        return 1;
+    }
+}
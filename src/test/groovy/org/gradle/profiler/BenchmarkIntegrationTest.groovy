@@ -132,6 +132,33 @@ class BenchmarkIntegrationTest extends AbstractProfilerIntegrationTest {
         lines.get(19).matches("measured build #10,,$SAMPLE")
     }
 
+    def "runs scenarios in parallel and reports them in declaration order"() {
+        def (gradleVersion1, gradleVersion2) = currentJvmSupportedGradleVersionRange()
+
+        given:
+        instrumentedBuildScript()
+
+        when:
+        warmups = 2
+        iterations = 3
+        run([
+            "--gradle-version", gradleVersion1, "--gradle-version", gradleVersion2,
+            "--parallel-scenarios", "2",
+            "--benchmark", "assemble"
+        ])
+
+        then:
+        output.contains("Parallel scenarios: 2")
+        logFile.find("<gradle-version: $gradleVersion1>").size() == 6
+        logFile.find("<gradle-version: $gradleVersion2>").size() == 6
+
+        def lines = resultFile.lines
+        lines.size() == totalLinesForExecutions(5)
+        lines.get(1) == "version,Gradle $gradleVersion1,Gradle $gradleVersion2"
+        lines.get(4).matches("warm-up build #1,$SAMPLE,$SAMPLE")
+        lines.get(8).matches("measured build #3,$SAMPLE,$SAMPLE")
+    }
+
     def brokenBuild(String brokenGradleVersion, int successfulIterations) {
         instrumentedBuildScript()
         buildFile << """
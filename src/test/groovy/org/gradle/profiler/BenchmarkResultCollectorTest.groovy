@@ -2,8 +2,11 @@ package org.gradle.profiler
 
 import org.gradle.profiler.report.AbstractGenerator
 import org.gradle.profiler.report.BenchmarkResult
+import org.gradle.profiler.report.ResultWriterTestFixtures.TestInvocationResult
+import org.gradle.profiler.report.ResultWriterTestFixtures.TestScenarioContext
 import org.gradle.profiler.result.BuildInvocationResult
 import org.gradle.profiler.result.Sample
+import org.gradle.profiler.result.SingleInvocationSample
 import spock.lang.Specification
 
 class BenchmarkResultCollectorTest extends Specification {
@@ -35,6 +38,59 @@ class BenchmarkResultCollectorTest extends Specification {
         scenarioResult.results == [result1, result2]
     }
 
+    def "reports expected scenarios in expected order"() {
+        def first = scenario("first")
+        def second = scenario("second")
+        def other = scenario("other")
+        BenchmarkResult result = null
+        def settings = new InvocationSettings.InvocationSettingsBuilder().build()
+
+        when:
+        collector.expectScenarios([first, second])
+        collector.scenario(other, { [sample()] })
+        collector.scenario(second, { [sample()] })
+        collector.scenario(first, { [sample()] })
+        collector.write(settings)
+
+        then:
+        1 * generator.write(settings, _) >> { InvocationSettings s, BenchmarkResult r ->
+            result = r
+        }
+        result.scenarios*.scenarioDefinition == [first, second, other]
+    }
+
+    def "reports regressions of duration samples"() {
+        def memory = SingleInvocationSample.from("memory", "MiB", { TestInvocationResult result -> result.testTime.toMillis() })
+        def baseline = collector.scenario(scenario("baseline"), { [BuildInvocationResult.EXECUTION_TIME, memory] })
+        def slower = collector.scenario(scenario("slower"), { [BuildInvocationResult.EXECUTION_TIME, memory] })
+
+        when:
+        8.times {
+            baseline.accept(measuredResult("baseline", it, 100 + it, 100 + it))
+            slower.accept(measuredResult("slower", it, 200 + it, 100 + it))
+        }
+
+        then:
+        def regressions = collector.findRegressions(null, 0.1d)
+        regressions.size() == 1
+        regressions[0].startsWith("slower: total execution time increased by ")
+    }
+
+    def "does not report regressions of samples other than durations"() {
+        def memory = SingleInvocationSample.from("memory", "MiB", { TestInvocationResult result -> result.testTime.toMillis() })
+        def baseline = collector.scenario(scenario("baseline"), { [BuildInvocationResult.EXECUTION_TIME, memory] })
+        def bigger = collector.scenario(scenario("bigger"), { [BuildInvocationResult.EXECUTION_TIME, memory] })
+
+        when:
+        8.times {
+            baseline.accept(measuredResult("baseline", it, 100 + it, 100 + it))
+            bigger.accept(measuredResult("bigger", it, 100 + it, 200 + it))
+        }
+
+        then:
+        collector.findRegressions(null, 0.1d).empty
+    }
+
     def sample() {
         return Stub(Sample)
     }
@@ -43,9 +99,14 @@ class BenchmarkResultCollectorTest extends Specification {
         return Stub(BuildInvocationResult)
     }
 
+    def measuredResult(String scenario, int iteration, long executionTime, long testTime) {
+        return new TestInvocationResult(new TestScenarioContext(scenario).withBuild(Phase.MEASURE, iteration), executionTime, testTime)
+    }
+
     def scenario(String name = "one") {
         def definition = Stub(ScenarioDefinition)
         definition.name >> name
+        definition.displayName >> name
         definition.buildToolDisplayName >> "Gradle"
         return definition
     }
@@ -0,0 +1,92 @@
+package org.gradle.profiler
+
+import org.gradle.profiler.buildops.BuildOperationInstrumentation
+import org.gradle.profiler.instrument.PidInstrumentation
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+import java.time.Duration
+
+class ContentAddressedCacheTest extends Specification {
+
+    @Rule
+    TemporaryFolder tmpDir = new TemporaryFolder()
+
+    def "stores the same content at the same path"() {
+        def cacheDir = new File(tmpDir.root, "cache")
+
+        when:
+        def first = new ContentAddressedCache(cacheDir.toPath()).store("init", ".gradle", "println 'hello'".bytes)
+        def second = new ContentAddressedCache(cacheDir.toPath()).store("init", ".gradle", "println 'hello'".bytes)
+        def other = new ContentAddressedCache(cacheDir.toPath()).store("init", ".gradle", "println 'bye'".bytes)
+
+        then:
+        first == second
+        first != other
+        first.parentFile == cacheDir
+        first.name ==~ /init-[0-9a-f]{32}\.gradle/
+        first.text == "println 'hello'"
+        other.text == "println 'bye'"
+        cacheDir.list().sort() == [first.name, other.name].sort()
+    }
+
+    def "reuses a file that was stored earlier"() {
+        def cache = new ContentAddressedCache(tmpDir.root.toPath())
+        def file = cache.store("plugin", ".jar", [1, 2, 3] as byte[])
+        file.setLastModified(0)
+
+        when:
+        def reused = cache.store("plugin", ".jar", [1, 2, 3] as byte[])
+
+        then:
+        reused == file
+        reused.lastModified() == 0
+    }
+
+    def "pid instrumentation uses the same init script for every pid file"() {
+        when:
+        def first = gradleArgs(new PidInstrumentation())
+        def second = gradleArgs(new PidInstrumentation())
+
+        then:
+        first[0] == "-I"
+        first[1] == second[1]
+        first[2].startsWith("-Dorg.gradle.profiler.pid.file=")
+        first[2] != second[2]
+        !new File(first[1]).text.contains(valueOf(first[2]))
+    }
+
+    def "build operation instrumentation uses the same init script for every port and output directory"() {
+        def first = buildOperationInstrumentation(tmpDir.newFolder("first"), "first")
+        def second = buildOperationInstrumentation(tmpDir.newFolder("second"), "second")
+
+        when:
+        def firstArgs = gradleArgs(first)
+        def secondArgs = gradleArgs(second)
+
+        then:
+        firstArgs[1] == secondArgs[1]
+        firstArgs.drop(2) != secondArgs.drop(2)
+        def script = new File(firstArgs[1]).text
+        firstArgs.drop(2).every { !script.contains(valueOf(it)) }
+
+        cleanup:
+        first.close()
+        second.close()
+    }
+
+    private static List<String> gradleArgs(GradleArgsCalculator calculator) {
+        def args = []
+        calculator.calculateGradleArgs(args)
+        return args
+    }
+
+    private static String valueOf(String systemPropertyArg) {
+        systemPropertyArg.substring(systemPropertyArg.indexOf('=') + 1)
+    }
+
+    private static BuildOperationInstrumentation buildOperationInstrumentation(File timeSeriesDirectory, String timeSeriesBaseName) {
+        new BuildOperationInstrumentation(false, false, false, [], Duration.ofMillis(100), timeSeriesDirectory, timeSeriesBaseName)
+    }
+}
@@ -0,0 +1,96 @@
+package org.gradle.profiler
+
+import spock.lang.Specification
+
+import java.util.concurrent.CopyOnWriteArrayList
+
+class InterleavedBuildsTest extends Specification {
+
+    def "runs one build of each scenario per round, warm-up builds first"() {
+        when:
+        def builds = runScenarios(InterleavedBuilds.Order.ROUND_ROBIN, [a: [2, 2], b: [1, 2], c: [2, 1]])
+
+        then:
+        builds == ["a warm-up", "b warm-up", "c warm-up", "a warm-up", "c warm-up", "a measured", "b measured", "c measured", "a measured", "b measured"]
+    }
+
+    def "runs the builds of each round in random order"() {
+        when:
+        def builds = runScenarios(InterleavedBuilds.Order.RANDOM, [a: [1, 3], b: [1, 3], c: [1, 3]])
+
+        then:
+        builds.size() == 12
+        builds.collate(3).every { round -> round.collect { it.split(" ")[0] }.toSet() == ["a", "b", "c"] as Set }
+        builds.take(3).every { it.endsWith("warm-up") }
+        builds.drop(3).every { it.endsWith("measured") }
+    }
+
+    def "continues with the other scenarios when a scenario fails"() {
+        def interleavedBuilds = new InterleavedBuilds(InterleavedBuilds.Order.ROUND_ROBIN)
+        def failing = interleavedBuilds.join("failing")
+        def builds = new CopyOnWriteArrayList<String>()
+
+        when:
+        def threads = [
+            Thread.start {
+                try {
+                    failing.await(build(Phase.WARM_UP))
+                    failing.release()
+                } finally {
+                    failing.finish()
+                }
+            },
+            scenario(interleavedBuilds.join("b"), "b", 1, 2, builds)
+        ]
+        threads*.join()
+
+        then:
+        builds == ["b warm-up", "b measured", "b measured"]
+    }
+
+    def "parses the order"() {
+        expect:
+        InterleavedBuilds.Order.parse("round-robin") == InterleavedBuilds.Order.ROUND_ROBIN
+        InterleavedBuilds.Order.parse("random") == InterleavedBuilds.Order.RANDOM
+
+        when:
+        InterleavedBuilds.Order.parse("alphabetical")
+
+        then:
+        def e = thrown(IllegalArgumentException)
+        e.message == "Unknown interleaving order: alphabetical"
+    }
+
+    private static List<String> runScenarios(InterleavedBuilds.Order order, Map<String, List<Integer>> buildCounts) {
+        def interleavedBuilds = new InterleavedBuilds(order)
+        def builds = new CopyOnWriteArrayList<String>()
+        def turns = buildCounts.collectEntries { name, counts -> [name, interleavedBuilds.join(name)] }
+        // Start the scenarios in reverse order, the order of the builds must not depend on it
+        def threads = buildCounts.keySet().toList().reverse().collect { name ->
+            scenario(turns[name], name, buildCounts[name][0], buildCounts[name][1], builds)
+        }
+        threads*.join()
+        return builds
+    }
+
+    private static Thread scenario(BuildTurns turns, String name, int warmUps, int measured, List<String> builds) {
+        Thread.start {
+            try {
+                ([Phase.WARM_UP] * warmUps + [Phase.MEASURE] * measured).each { phase ->
+                    turns.await(build(phase))
+                    try {
+                        builds << "$name ${phase.displayName}".toString()
+                    } finally {
+                        turns.release()
+                    }
+                }
+            } finally {
+                turns.finish()
+            }
+        }
+    }
+
+    private static BuildContext build(Phase phase) {
+        return [getPhase: { phase }] as BuildContext
+    }
+}
@@ -161,15 +161,13 @@ class JFRProfilerGradleCrossVersionTest extends AbstractGradleCrossVersionTest {
         logFile.find("<invocations: 1>").size() == 2 + iterationCount
 
         jfrFileDirectory.listFiles().findAll { it.name.endsWith(".jfr") }.size() == iterationCount
-        // No perl installed on Windows
-        if (!OperatingSystem.isWindows()) {
-            // Events: alloc, cpu / Type: raw, simplified
-            // Looks like monitor-locked and io mostly aren't captured
-            int numberOfFlames = 2 * 2
-            assert outputDir.listFiles().findAll { it.name.endsWith("-flames.svg") }.size() >= numberOfFlames
-            assert outputDir.listFiles().findAll { it.name.endsWith("-icicles.svg") }.size() >= numberOfFlames
-            assert outputDir.listFiles().findAll { it.name.endsWith("-stacks.txt") }.size() >= numberOfFlames
-        }
+        // Events: alloc, cpu / Type: raw, simplified
+        // Looks like monitor-locked and io mostly aren't captured
+        int numberOfFlames = 2 * 2
+        outputDir.listFiles().findAll { it.name.endsWith("-flames.svg") }.size() >= numberOfFlames
+        outputDir.listFiles().findAll { it.name.endsWith("-icicles.svg") }.size() >= numberOfFlames
+        outputDir.listFiles().findAll { it.name.endsWith("-stacks.txt") }.size() >= numberOfFlames
+
         where:
         iterationCount << [1, 2]
     }
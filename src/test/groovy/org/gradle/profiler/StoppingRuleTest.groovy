@@ -0,0 +1,43 @@
+package org.gradle.profiler
+
+import spock.lang.Specification
+
+import java.time.Duration
+
+class StoppingRuleTest extends Specification {
+
+    def "fixed rule never stops early"() {
+        expect:
+        !StoppingRule.FIXED.adaptive
+        !StoppingRule.FIXED.isSteadyState(millis(1000, 1000, 1000, 1000, 1000, 1000, 1000, 1000, 1000))
+        !StoppingRule.FIXED.isConverged(millis(100, 100, 100, 100, 100, 100, 100, 100))
+    }
+
+    def "warm-ups reach a steady state once the variation of the build time has stabilized"() {
+        def rule = StoppingRule.adaptive(0.02)
+
+        expect:
+        rule.isSteadyState(millis(1000, 1005, 995, 1000, 1002, 998, 1000, 1001, 999))
+        // The slow first builds are still part of the sliding windows
+        !rule.isSteadyState(millis(2000, 1500, 1200, 1100, 1000, 1000, 1010, 990, 1000))
+        // Too few builds to compare windows
+        !rule.isSteadyState(millis(1000, 1005, 995, 1000, 1002, 998, 1000, 1001))
+    }
+
+    def "measured builds converge once the confidence interval of the median is within the target error"() {
+        def rule = StoppingRule.adaptive(0.02)
+
+        expect:
+        StoppingRule.relativeError(millis(100, 101, 99, 100, 102, 98, 100, 101)) == 0.02d
+        rule.isConverged(millis(100, 101, 99, 100, 102, 98, 100, 101))
+        StoppingRule.relativeError(millis(100, 120, 80, 100, 130, 70, 100, 110)) == 0.3d
+        !rule.isConverged(millis(100, 120, 80, 100, 130, 70, 100, 110))
+        // Too few builds for a 95% confidence interval
+        StoppingRule.relativeError(millis(100, 100, 100, 100, 100, 100, 100)) == null
+        !rule.isConverged(millis(100, 100, 100, 100, 100, 100, 100))
+    }
+
+    private static List<Duration> millis(long... values) {
+        return values.collect { Duration.ofMillis(it) }
+    }
+}
@@ -0,0 +1,81 @@
+package org.gradle.profiler.flamegraph
+
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+class DifferentialStacksGeneratorTest extends Specification {
+
+    @Rule
+    TemporaryFolder tmpDir = new TemporaryFolder()
+
+    def "compares each experiment with each other experiment"() {
+        def outputDir = tmpDir.newFolder("out")
+        writeStacks(outputDir, "8.0", "main;a 1\nmain;b 2\n")
+        writeStacks(outputDir, "8.1", "main;b 3\nmain;c 4\n")
+        writeStacks(outputDir, "8.2", "main;c 5\n")
+
+        when:
+        def stacks = new DifferentialStacksGenerator().generateDifferentialStacks(outputDir)
+
+        then:
+        stacks.size() == 12
+        stacks.every { it.type == EventType.CPU && it.level == DetailLevel.SIMPLIFIED && it.file.file }
+        diff(stacks, "8.0-vs-8.1-cpu-simplified-forward-diff").file.readLines() == ["main;a 1 0", "main;b 2 3", "main;c 0 4"]
+        diff(stacks, "8.0-vs-8.1-cpu-simplified-forward-diff").negate
+        diff(stacks, "8.0-vs-8.1-cpu-simplified-backward-diff").file.readLines() == ["main;a 0 1", "main;b 3 2", "main;c 4 0"]
+        !diff(stacks, "8.0-vs-8.1-cpu-simplified-backward-diff").negate
+        diff(stacks, "8.2-vs-8.0-cpu-simplified-forward-diff").file.readLines() == ["main;a 0 1", "main;b 0 2", "main;c 5 0"]
+        diff(stacks, "8.2-vs-8.0-cpu-simplified-forward-diff").file.parentFile == new File(outputDir, "8.2/diffs")
+    }
+
+    def "compares each experiment only with the baseline"() {
+        def outputDir = tmpDir.newFolder("out")
+        writeStacks(outputDir, "8.0", "main;a 1\n")
+        writeStacks(outputDir, "8.1", "main;b 3\n")
+        writeStacks(outputDir, "8.2", "main;c 5\n")
+
+        when:
+        def stacks = new DifferentialStacksGenerator().generateDifferentialStacks(outputDir, "8.0")
+
+        then:
+        stacks*.fileBaseName.sort() == [
+            "8.1-vs-8.0-cpu-simplified-backward-diff",
+            "8.1-vs-8.0-cpu-simplified-forward-diff",
+            "8.2-vs-8.0-cpu-simplified-backward-diff",
+            "8.2-vs-8.0-cpu-simplified-forward-diff",
+        ]
+        diff(stacks, "8.2-vs-8.0-cpu-simplified-forward-diff").file.readLines() == ["main;a 0 1", "main;c 5 0"]
+    }
+
+    def "generates no diffs when baseline does not exist"() {
+        def outputDir = tmpDir.newFolder("out")
+        writeStacks(outputDir, "8.0", "main;a 1\n")
+        writeStacks(outputDir, "8.1", "main;b 3\n")
+
+        expect:
+        new DifferentialStacksGenerator().generateDifferentialStacks(outputDir, "7.0").empty
+    }
+
+    def "finds the experiment of a scenario"() {
+        def outputDir = new File("out")
+
+        expect:
+        DifferentialStacksGenerator.isExperiment(outputDir, new File(outputDir, "assemble"), "assemble")
+        DifferentialStacksGenerator.isExperiment(outputDir, new File(outputDir, "assemble/8.0"), "assemble")
+        DifferentialStacksGenerator.isExperiment(outputDir, new File(outputDir, "8.0"), "8.0")
+        !DifferentialStacksGenerator.isExperiment(outputDir, new File(outputDir, "assemble/8.0"), "8.0")
+        !DifferentialStacksGenerator.isExperiment(outputDir, new File(outputDir, "assemble-debug"), "assemble")
+        !DifferentialStacksGenerator.isExperiment(outputDir, outputDir, "assemble")
+    }
+
+    private static void writeStacks(File outputDir, String experiment, String text) {
+        def stacksFile = new File(outputDir, "$experiment/$experiment${Stacks.postFixFor(EventType.CPU, DetailLevel.SIMPLIFIED)}${Stacks.STACKS_FILE_SUFFIX}")
+        stacksFile.parentFile.mkdirs()
+        stacksFile.text = text
+    }
+
+    private static Stacks diff(List<Stacks> stacks, String name) {
+        return stacks.find { it.fileBaseName == name }
+    }
+}
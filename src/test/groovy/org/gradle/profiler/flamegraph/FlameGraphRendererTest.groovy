@@ -0,0 +1,106 @@
+package org.gradle.profiler.flamegraph
+
+import spock.lang.Specification
+
+class FlameGraphRendererTest extends Specification {
+
+    def renderer = new FlameGraphRenderer()
+
+    def "renders flame graph of folded stacks"() {
+        def stacks = stacks("main;a;b 10", "main;a;c 20", "main;a 5", "main;d_[j] 30")
+
+        when:
+        def svg = render(stacks, new FlameGraphRenderer.Options().setTitle("CPU Flame Graph").setCountName("samples").setPalette(FlameGraphRenderer.Palette.JAVA))
+
+        then:
+        svg.startsWith("<?xml")
+        svg.contains('<text id="title" x="600.00" y="24" >CPU Flame Graph</text>')
+        svg.contains("<title>all (65 samples, 100%)</title>")
+        svg.contains("<title>a (35 samples, 53.85%)</title>")
+        svg.contains("<title>d (30 samples, 46.15%)</title>")
+        // Self time of a is drawn left of its children
+        Math.abs(frameX(svg, "b") - (frameX(svg, "a") + 5 * 1180 / 65)) < 0.1
+        frameX(svg, "c") > frameX(svg, "b")
+        svg.contains("font-size:12px")
+        svg.endsWith("</svg>\n")
+    }
+
+    def "renders icicle graph merged from the innermost frame"() {
+        def stacks = stacks("main;a;leaf 10", "main;b;leaf 20", "main;c 5")
+
+        when:
+        def svg = render(stacks, new FlameGraphRenderer.Options().setReverse(true).setInverted(true))
+
+        then:
+        svg.contains('>Icicle Graph</text>')
+        svg.contains("<title>leaf (30 samples, 85.71%)</title>")
+        svg.findAll("<title>main ").size() == 3
+        svg.contains("if (1 == 0) {")
+    }
+
+    def "colors frames of differential graph by change"() {
+        def stacks = new StackTrie(2)
+        stacks.addCollapsedStack("main;grew 10 30")
+        stacks.addCollapsedStack("main;shrank 30 10")
+
+        when:
+        def svg = render(stacks, new FlameGraphRenderer.Options().setNegate(negate))
+
+        then:
+        svg.contains("<title>grew (30 samples, 75.00%; ${grewDelta}%)</title><rect x=\"10.0\" y=\"37\" width=\"885.0\" height=\"15.0\" fill=\"${grewColor}\"")
+        svg.contains("<title>shrank (10 samples, 25.00%; ${shrankDelta}%)</title>")
+
+        where:
+        negate | grewDelta | shrankDelta | grewColor
+        false  | "+50.00"  | "-50.00"    | "rgb(255,0,0)"
+        true   | "-50.00"  | "+50.00"    | "rgb(0,0,255)"
+    }
+
+    def "omits frames narrower than min width"() {
+        def stacks = stacks("main;wide 10000", "main;narrow 1")
+
+        when:
+        def svg = render(stacks, new FlameGraphRenderer.Options().setMinWidth(1))
+
+        then:
+        svg.contains("<title>wide ")
+        !svg.contains("<title>narrow ")
+    }
+
+    def "escapes frame names"() {
+        def stacks = stacks('main;List<"a"&b> 1')
+
+        when:
+        def svg = render(stacks, new FlameGraphRenderer.Options())
+
+        then:
+        svg.contains("<title>List&lt;&quot;a&quot;&amp;b&gt; (1 samples, 100.00%)</title>")
+    }
+
+    def "fails for stacks without counts"() {
+        when:
+        render(stacks("main;a 0"), new FlameGraphRenderer.Options())
+
+        then:
+        def e = thrown(IllegalArgumentException)
+        e.message == "No stack counts found"
+    }
+
+    private static StackTrie stacks(String... lines) {
+        def stacks = new StackTrie()
+        lines.each { stacks.addCollapsedStack(it, 0) }
+        return stacks
+    }
+
+    private String render(StackTrie stacks, FlameGraphRenderer.Options options) {
+        def writer = new StringWriter()
+        renderer.render(stacks, writer, options)
+        return writer.toString()
+    }
+
+    private static double frameX(String svg, String frame) {
+        def matcher = svg =~ /<title>${frame} \([^)]*\)<\/title><rect x="([\d.]+)"/
+        assert matcher.find()
+        return matcher.group(1) as double
+    }
+}
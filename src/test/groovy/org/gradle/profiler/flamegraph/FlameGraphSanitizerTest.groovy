@@ -11,4 +11,55 @@ class FlameGraphSanitizerTest extends Specification {
         normalizer.map(['DefaultPlanExecutor$ExecutorWorker$$Lambda$887/1827771163.execute']) == ['DefaultPlanExecutor$ExecutorWorker$$Lambda$.execute']
         normalizer.map(['DefaultPlanExecutor$ExecutorWorker$$Lambda$92.0x00007f9338139800.execute']) == ['DefaultPlanExecutor$ExecutorWorker$$Lambda$.execute']
     }
+
+    def "simplifies stacks"() {
+        def stacks = new StackTrie()
+        stacks.addStack(["java.lang.Thread.run", "org.gradle.Main.executeTasks", "org.gradle.DynamicObject.invoke", "groovy.Closure.call", "build_3k2j.run"], 1)
+        stacks.addStack(["java.lang.Thread.run", "org.gradle.Main.configureBuild", "org.gradle.api.internal.tasks.execution.ExecuteActionsTaskExecuter.execute"], 2)
+        stacks.addStack(["java.lang.Thread.run", "org.gradle.Main.configureBuild", "org.gradle.BuildOperationRunner.run", "org.gradle.ProjectEvaluator.evaluate"], 3)
+        stacks.addStack(["java.lang.Thread.run", "org.gradle.Main.configureBuild", "org.gradle.Foo\$\$Lambda\$887.1827771163.execute"], 4)
+
+        when:
+        def sanitized = FlameGraphSanitizer.simplified().sanitize(stacks)
+
+        then:
+        write(sanitized) == [
+            "Main.executeTasks;dynamic invocation_[j];build script.run 1",
+            "task execution_[j] 2",
+            "Main.configureBuild;Gradle infrastructure_[j] 3",
+            "Main.configureBuild;Foo\$\$Lambda\$.execute 4",
+        ]
+    }
+
+    def "removes stacks containing key words"() {
+        def stacks = new StackTrie()
+        stacks.addStack(["thread_start", "GCTaskThread::run", "gc"], 1)
+        stacks.addStack(["thread_start", "JavaThread::run", "interpreter"], 2)
+        stacks.addStack(["java.lang.Thread.run", "org.gradle.Main.run"], 3)
+
+        when:
+        def sanitized = FlameGraphSanitizer.simplified(FlameGraphSanitizer.removeStacksContaining("GCTaskThread", "JavaThread")).sanitize(stacks)
+
+        then:
+        write(sanitized) == ["Thread.run;Main.run 3"]
+    }
+
+    def "runs custom sanitize functions"() {
+        def stacks = new StackTrie()
+        stacks.addStack(["a", "b"], 1)
+        stacks.addStack(["c"], 2)
+        FlameGraphSanitizer.SanitizeFunction dropC = { stack -> stack.contains("c") ? [] : stack + ["added"] }
+
+        when:
+        def sanitized = FlameGraphSanitizer.raw(dropC).sanitize(stacks)
+
+        then:
+        write(sanitized) == ["a;b;added 1"]
+    }
+
+    private static List<String> write(StackTrie stacks) {
+        def writer = new StringWriter()
+        stacks.write(writer)
+        return writer.toString().readLines()
+    }
 }
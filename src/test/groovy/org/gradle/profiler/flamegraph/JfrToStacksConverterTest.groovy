@@ -0,0 +1,109 @@
+package org.gradle.profiler.flamegraph
+
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import org.openjdk.jmc.common.IMCFrame
+import org.openjdk.jmc.common.IMCStackTrace
+import org.openjdk.jmc.common.item.IItem
+import org.openjdk.jmc.common.item.IItemIterable
+import org.openjdk.jmc.flightrecorder.JfrAttributes
+import org.openjdk.jmc.flightrecorder.JfrLoaderToolkit
+import org.openjdk.jmc.flightrecorder.stacktrace.FrameSeparator
+import org.openjdk.jmc.flightrecorder.stacktrace.StacktraceFormatToolkit
+import spock.lang.Specification
+
+/**
+ * Converts a small recording of CPU samples, allocations and monitor contention, made with {@code -XX:StartFlightRecording}.
+ */
+class JfrToStacksConverterTest extends Specification {
+    private static final Map<DetailLevel, FlameGraphSanitizer> SANITIZERS = [
+        (DetailLevel.RAW): FlameGraphSanitizer.raw(),
+        (DetailLevel.SIMPLIFIED): FlameGraphSanitizer.simplified(),
+    ]
+
+    @Rule
+    TemporaryFolder tmpDir = new TemporaryFolder()
+
+    def "writes the same stacks as folding the events one by one"() {
+        def jfrFile = recording(tmpDir.newFolder("single"), "recording.jfr")
+
+        when:
+        def stacks = new JfrToStacksConverter(SANITIZERS).generateStacks(jfrFile, "recording")
+
+        then:
+        stacks*.type.unique().sort() == [EventType.CPU, EventType.ALLOCATION, EventType.MONITOR_BLOCKED].sort()
+        stacks.size() == 3 * DetailLevel.values().length
+        stacks.each { Stacks stack ->
+            assert stack.file.name == "recording" + Stacks.postFixFor(stack.type, stack.level) + Stacks.STACKS_FILE_SUFFIX
+            assert stack.file.readLines().sort() == foldSequentially([jfrFile], stack.type, stack.level)
+        }
+    }
+
+    def "writes the stacks in the same order every time"() {
+        def jfrFile = recording(tmpDir.newFolder("single"), "recording.jfr")
+        def converter = new JfrToStacksConverter(SANITIZERS)
+        def firstTexts = converter.generateStacks(jfrFile, "recording").collect { it.file.text }
+
+        when:
+        def secondTexts = converter.generateStacks(jfrFile, "recording").collect { it.file.text }
+
+        then:
+        secondTexts == firstTexts
+    }
+
+    def "merges the stacks of all recordings in a directory"() {
+        def recordings = tmpDir.newFolder("recordings")
+        def first = recording(recordings, "first.jfr")
+        def second = recording(recordings, "second.jfr")
+
+        when:
+        def stacks = new JfrToStacksConverter(SANITIZERS).generateStacks(recordings, "merged")
+
+        then:
+        stacks.size() == 3 * DetailLevel.values().length
+        stacks.each { Stacks stack ->
+            assert stack.file.parentFile == tmpDir.root
+            def lines = stack.file.readLines()
+            assert lines.sort() == foldSequentially([first, second], stack.type, stack.level)
+            // Both recordings are the same, so every value is the sum of two equal partial folds
+            assert lines.every { (it.substring(it.lastIndexOf(' ') + 1) as long) % 2 == 0 }
+        }
+    }
+
+    private File recording(File dir, String name) {
+        def file = new File(dir, name)
+        file.bytes = getClass().getResourceAsStream("JfrToStacksConverterTest/recording.jfr").bytes
+        file
+    }
+
+    /**
+     * Folds the stacks the way the converter did before it folded recordings in parallel: one event at a time, keyed by the formatted stack.
+     */
+    private List<String> foldSequentially(List<File> jfrFiles, EventType type, DetailLevel level) {
+        def frameSeparator = new FrameSeparator(level.showLineNumbers ? FrameSeparator.FrameCategorization.LINE : FrameSeparator.FrameCategorization.METHOD, false)
+        Map<String, Long> folded = [:]
+        jfrFiles.each { jfrFile ->
+            JfrLoaderToolkit.loadEvents(jfrFile).each { IItemIterable events ->
+                if (!type.matches(events.type)) {
+                    return
+                }
+                def stackTraceAccessor = events.type.getAccessor(JfrAttributes.EVENT_STACKTRACE.key)
+                events.each { IItem event ->
+                    IMCStackTrace stackTrace = stackTraceAccessor?.getMember(event)
+                    if (stackTrace != null) {
+                        def stack = stackTrace.frames.reverse().collect { IMCFrame frame ->
+                            def frameName = StacktraceFormatToolkit.formatFrame(frame, frameSeparator, false, false, true, true, level.showArguments, true)
+                            frame.type == IMCFrame.Type.UNKNOWN ? frameName : frameName + "_[j]"
+                        }.join(";")
+                        folded[stack] = (folded[stack] ?: 0L) + type.getValue(event)
+                    }
+                }
+            }
+        }
+        def unsanitized = tmpDir.newFile()
+        unsanitized.text = folded.collect { stack, value -> "$stack $value\n" }.join("")
+        def sanitized = tmpDir.newFile()
+        SANITIZERS[level].sanitize(unsanitized, sanitized)
+        sanitized.readLines().sort()
+    }
+}
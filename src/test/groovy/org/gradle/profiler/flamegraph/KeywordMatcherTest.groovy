@@ -0,0 +1,32 @@
+package org.gradle.profiler.flamegraph
+
+import spock.lang.Specification
+
+class KeywordMatcherTest extends Specification {
+
+    def "finds groups of contained keywords"() {
+        def matcher = new KeywordMatcher([["he", "she"], ["his", "hers"], ["xyz"]])
+
+        expect:
+        matcher.matchingGroups(text) == groups
+
+        where:
+        text           | groups
+        ""             | 0
+        "h"            | 0
+        "ushers"       | 0b011
+        "this"         | 0b010
+        "ahxyzh"       | 0b100
+        "xy"           | 0
+        "\u00dcber"    | 0
+        "\u00dcberShe" | 0b001
+    }
+
+    def "rejects too many groups"() {
+        when:
+        new KeywordMatcher((0..64).collect { ["k$it".toString()] })
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+}
@@ -0,0 +1,152 @@
+package org.gradle.profiler.flamegraph
+
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+class StackTrieTest extends Specification {
+
+    @Rule
+    TemporaryFolder tmpDir = new TemporaryFolder()
+
+    def "folds stacks sharing a common prefix"() {
+        def stacks = new StackTrie()
+
+        when:
+        stacks.addCollapsedStack("main;a;b 1", 0)
+        stacks.addCollapsedStack("main;a;c 2", 0)
+        stacks.addCollapsedStack("main;a;b 3", 0)
+        stacks.addCollapsedStack("main;a 4", 0)
+        stacks.addCollapsedStack("main;;d 5", 0)
+
+        then:
+        write(stacks) == [
+            "main;a 4",
+            "main;a;b 4",
+            "main;a;c 2",
+            "main;d 5",
+        ]
+        stacks.frameCount == 5
+    }
+
+    def "sorts children by frame name"() {
+        def stacks = new StackTrie()
+        stacks.addCollapsedStack("main;c;b 1", 0)
+        stacks.addCollapsedStack("other 2", 0)
+        stacks.addCollapsedStack("main;b 3", 0)
+        stacks.addCollapsedStack("main;c;a 4", 0)
+        stacks.addCollapsedStack("main;a 5", 0)
+
+        when:
+        stacks.sortChildren()
+        stacks.addCollapsedStack("main;c;b 6", 0)
+
+        then:
+        write(stacks) == [
+            "main;a 5",
+            "main;b 3",
+            "main;c;a 4",
+            "main;c;b 7",
+            "other 2",
+        ]
+    }
+
+    def "ignores lines without stack"() {
+        def stacks = new StackTrie()
+
+        when:
+        stacks.addCollapsedStack("", 0)
+        stacks.addCollapsedStack(" 12", 0)
+        stacks.addStack([], 3)
+
+        then:
+        stacks.empty
+        write(stacks) == []
+    }
+
+    def "reads stacks file back into tree"() {
+        def file = new File(tmpDir.root, "some-stacks.txt")
+        def stacks = new StackTrie()
+        stacks.addStack(["main", "a", "b"], 1)
+        stacks.addStack(["main", "c"], 2)
+        stacks.write(file)
+
+        when:
+        def readStacks = StackTrie.read(file)
+
+        then:
+        write(readStacks) == ["main;a;b 1", "main;c 2"]
+    }
+
+    def "holds several columns side by side"() {
+        def first = tmpDir.newFile("first-stacks.txt")
+        first.text = "main;a 1\nmain;b 2\n"
+        def second = tmpDir.newFile("second-stacks.txt")
+        second.text = "main;b 3\nmain;c 4\n"
+        def stacks = new StackTrie(2)
+
+        when:
+        stacks.read(first, 0)
+        stacks.read(second, 1)
+
+        then:
+        write(stacks) == ["main;a 1 0", "main;b 2 3", "main;c 0 4"]
+    }
+
+    def "reads file with several columns per line"() {
+        def file = tmpDir.newFile("diff-stacks.txt")
+        file.text = "main;a 1 0\nmain;b 2 3\nmalformed 4\n"
+
+        when:
+        def stacks = StackTrie.readColumns(file, 2)
+
+        then:
+        write(stacks) == ["main;a 1 0", "main;b 2 3"]
+    }
+
+    def "merges other trees into columns and writes selected columns"() {
+        def first = new StackTrie()
+        first.addStack(["main", "a"], 1)
+        first.addStack(["main", "b"], 2)
+        def second = new StackTrie()
+        second.addStack(["main", "b"], 3)
+        second.addStack(["main"], 4)
+        def stacks = new StackTrie(3)
+
+        when:
+        stacks.merge(first, 0, 0)
+        stacks.merge(second, 0, 2)
+
+        then:
+        write(stacks) == ["main 0 0 4", "main;a 1 0 0", "main;b 2 0 3"]
+        write(stacks, 2, 0) == ["main 4 0", "main;a 0 1", "main;b 3 2"]
+        write(stacks, 1) == []
+    }
+
+    def "handles deep and wide trees"() {
+        def stacks = new StackTrie()
+        def deepStack = (1..5000).collect { "frame$it".toString() }
+
+        when:
+        stacks.addStack(deepStack, 1)
+        10000.times { stacks.addStack(["main", "leaf$it".toString()], it) }
+
+        then:
+        def lines = write(stacks)
+        lines.size() == 10001
+        lines[0] == deepStack.join(";") + " 1"
+        lines[10000] == "main;leaf9999 9999"
+    }
+
+    private static List<String> write(StackTrie stacks) {
+        def writer = new StringWriter()
+        stacks.write(writer)
+        return writer.toString().readLines()
+    }
+
+    private static List<String> write(StackTrie stacks, int... columns) {
+        def writer = new StringWriter()
+        stacks.write(writer, columns)
+        return writer.toString().readLines()
+    }
+}
@@ -0,0 +1,39 @@
+package org.gradle.profiler.gradle
+
+import org.gradle.profiler.buildops.ResourceUsage
+import org.gradle.profiler.process.ProcessTreeUsage
+import spock.lang.Specification
+
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.ALLOCATED_BYTES
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.IO_READ_BYTES
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.PEAK_HEAP
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.PROCESS_CPU_TIME
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.memoryPoolMeasurementName
+
+class GradleBuildInvocationResultTest extends Specification {
+
+    def "only samples the resource usage that was measured in some build"() {
+        def results = [
+            result((PROCESS_CPU_TIME): 1000L, (ALLOCATED_BYTES): 2 * 1024 * 1024L),
+            result((PROCESS_CPU_TIME): 2000L, (IO_READ_BYTES): 1024 * 1024L, (memoryPoolMeasurementName(PEAK_HEAP, "G1 Old Gen")): 1024L),
+        ]
+
+        when:
+        def samples = GradleBuildInvocationResult.samplesResourceUsage(results)
+
+        then:
+        samples*.name == ["process CPU time", "allocated memory", "peak heap usage G1 Old Gen", "I/O read"]
+        samples[0].extractValue(results[1]) == 2000
+        samples[1].extractValue(results[0]) == 2.0
+        samples[3].extractValue(results[1]) == 1.0
+    }
+
+    def "has no resource usage samples when resources were not measured"() {
+        expect:
+        GradleBuildInvocationResult.samplesResourceUsage([result([:])]).empty
+    }
+
+    private static GradleBuildInvocationResult result(Map<String, Long> values) {
+        new GradleBuildInvocationResult(null, null, null, null, null, [:], new ResourceUsage(values), ProcessTreeUsage.NONE, "1234")
+    }
+}
@@ -0,0 +1,30 @@
+package org.gradle.profiler.history
+
+import spock.lang.Specification
+
+class ChangePointDetectorTest extends Specification {
+
+    def detector = new ChangePointDetector()
+
+    def "does not detect changes in a stable series"() {
+        expect:
+        detector.detect([100, 102, 98, 101, 99, 100, 103, 97, 100, 101] as double[]) == []
+        detector.detect([5, 5, 5, 5, 5] as double[]) == []
+    }
+
+    def "detects a shift of the mean"() {
+        expect:
+        detector.detect([100, 102, 98, 101, 99, 120, 122, 118, 121, 119] as double[]) == [5]
+    }
+
+    def "detects several shifts of the mean"() {
+        expect:
+        detector.detect([100, 102, 98, 101, 99, 120, 122, 118, 121, 119, 140, 142, 138, 141, 139] as double[]) == [5, 10]
+    }
+
+    def "does not detect changes in a series that is too short"() {
+        expect:
+        detector.detect([] as double[]) == []
+        detector.detect([1, 2] as double[]) == []
+    }
+}
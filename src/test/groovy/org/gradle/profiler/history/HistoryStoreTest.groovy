@@ -0,0 +1,105 @@
+package org.gradle.profiler.history
+
+import org.gradle.profiler.Phase
+import org.gradle.profiler.ScenarioDefinition
+import org.gradle.profiler.report.BuildScenarioResult
+import org.gradle.profiler.report.ResultWriterTestFixtures.TestInvocationResult
+import org.gradle.profiler.report.ResultWriterTestFixtures.TestSample
+import org.gradle.profiler.report.ResultWriterTestFixtures.TestScenarioContext
+import org.gradle.profiler.result.BuildInvocationResult
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+import java.time.Instant
+
+class HistoryStoreTest extends Specification {
+
+    @Rule
+    TemporaryFolder tmpDir = new TemporaryFolder()
+
+    def "appends the measured values of each run"() {
+        def historyDir = new File(tmpDir.root, "history")
+        def store = new HistoryStore(historyDir)
+
+        when:
+        store.append(UUID.randomUUID(), Instant.parse("2024-01-01T00:00:00Z"), "nightly", [scenarioResult("assemble", 100, 110)])
+        store.append(UUID.randomUUID(), Instant.parse("2024-01-02T00:00:00Z"), null, [scenarioResult("assemble", 120, 130)])
+        def entries = store.read()
+
+        then:
+        store.historyFile == new File(historyDir, "history.jsonl")
+        store.historyFile.readLines().size() == 2
+        entries.size() == 2
+        entries*.date == [Instant.parse("2024-01-01T00:00:00Z"), Instant.parse("2024-01-02T00:00:00Z")]
+        entries*.displayName == ["assemble using Gradle 8.0", "assemble using Gradle 8.0"]
+        entries[0].key == entries[1].key
+        entries[0].samples.keySet() as List == ["total execution time", "Test sample"]
+        entries[0].samples["total execution time"].unit == "ms"
+        entries[0].samples["total execution time"].values == [100d, 110d] as double[]
+        entries[1].samples["Test sample"].values == [121d, 131d] as double[]
+    }
+
+    def "ignores malformed lines"() {
+        def store = new HistoryStore(tmpDir.root)
+        store.append(UUID.randomUUID(), Instant.parse("2024-01-01T00:00:00Z"), null, [scenarioResult("assemble", 100, 110)])
+        store.historyFile << "{\"truncated\n"
+
+        expect:
+        store.read().size() == 1
+    }
+
+    def "reads nothing when no run was recorded"() {
+        expect:
+        new HistoryStore(tmpDir.root).read().empty
+    }
+
+    def "renders the trend of each sample"() {
+        def store = new HistoryStore(tmpDir.root)
+        def medians = [100, 102, 98, 101, 99, 120, 122, 118, 121, 119]
+        medians.eachWithIndex { median, day ->
+            store.append(UUID.randomUUID(), Instant.parse("2024-01-01T00:00:00Z").plusSeconds(day * 86400L), null, [scenarioResult("assemble", median, median)])
+        }
+
+        when:
+        def report = TrendReport.from(store.read(), 30)
+        def trendsFile = tmpDir.newFile("trends.html")
+        report.writeHtml(trendsFile)
+
+        then:
+        report.trends*.sample == ["total execution time", "Test sample"]
+        def trend = report.trends[0]
+        trend.medians == medians as double[]
+        trend.changePoints.size() == 1
+        trend.changePoints[0].date == Instant.parse("2024-01-06T00:00:00Z")
+        trend.changePoints[0].before == 100d
+        trend.changePoints[0].after == 120d
+        trendsFile.text.contains("<svg")
+
+        when:
+        def lastRuns = TrendReport.from(store.read(), 4)
+
+        then:
+        lastRuns.trends[0].medians == [122, 118, 121, 119] as double[]
+        lastRuns.trends[0].changePoints.empty
+    }
+
+    private BuildScenarioResult<BuildInvocationResult> scenarioResult(String name, long firstValue, long secondValue) {
+        def scenario = Stub(ScenarioDefinition) {
+            getName() >> name
+            getDisplayName() >> "$name using Gradle 8.0"
+            getBuildToolDisplayName() >> "Gradle 8.0"
+        }
+        def context = new TestScenarioContext("$name@0")
+        def results = [
+            new TestInvocationResult(context.withBuild(Phase.WARM_UP, 1), 500, 500),
+            new TestInvocationResult(context.withBuild(Phase.MEASURE, 1), firstValue, firstValue + 1),
+            new TestInvocationResult(context.withBuild(Phase.MEASURE, 2), secondValue, secondValue + 1),
+        ]
+        Stub(BuildScenarioResult) {
+            getScenarioDefinition() >> scenario
+            getSamples() >> [BuildInvocationResult.EXECUTION_TIME, TestSample.INSTANCE]
+            getResults() >> results
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package org.gradle.profiler.mutations
 
+import org.gradle.profiler.Phase
+
 class ApplyAbiChangeToJavaSourceFileMutatorTest extends AbstractMutatorTest implements JavaParserFixture {
 
     def "adds and replaces public method at end of source file"() {
@@ -15,6 +17,25 @@ class ApplyAbiChangeToJavaSourceFileMutatorTest extends AbstractMutatorTest impl
         parse(sourceFile) == parse("class Thing { public void existingMethod() { _m_276d92f3_16ac_4064_9a18_5f1dfd67992f_testScenario_3c4925d7_MEASURE_7();}public static void _m_276d92f3_16ac_4064_9a18_5f1dfd67992f_testScenario_3c4925d7_MEASURE_7() { }}")
     }
 
+    def "keeps formatting and comments of source file"() {
+        def sourceFile = tmpDir.newFile("Thing.java")
+        sourceFile.text = "// header\r\nclass Thing {\r\n\tpublic void existingMethod(){\r\n\t\tint x; // keep\r\n\t}\r\n}\r\n"
+        def mutator = new ApplyAbiChangeToJavaSourceFileMutator(sourceFile)
+
+        when:
+        mutator.beforeScenario(scenarioContext)
+        mutator.beforeBuild(buildContext)
+
+        then:
+        sourceFile.text == "// header\r\nclass Thing {\r\n\tpublic void existingMethod(){_m_276d92f3_16ac_4064_9a18_5f1dfd67992f_testScenario_3c4925d7_MEASURE_7();\r\n\t\tint x; // keep\r\n\t}\r\npublic static void _m_276d92f3_16ac_4064_9a18_5f1dfd67992f_testScenario_3c4925d7_MEASURE_7() { }}\r\n"
+
+        when:
+        mutator.beforeBuild(scenarioContext.withBuild(Phase.MEASURE, 8))
+
+        then:
+        sourceFile.text == "// header\r\nclass Thing {\r\n\tpublic void existingMethod(){_m_276d92f3_16ac_4064_9a18_5f1dfd67992f_testScenario_3c4925d7_MEASURE_8();\r\n\t\tint x; // keep\r\n\t}\r\npublic static void _m_276d92f3_16ac_4064_9a18_5f1dfd67992f_testScenario_3c4925d7_MEASURE_8() { }}\r\n"
+    }
+
     def "reverts changes when nothing has been applied"() {
         def sourceFile = tmpDir.newFile("Thing.java")
         sourceFile.text = "class Thing { public void existingMethod() { }}"
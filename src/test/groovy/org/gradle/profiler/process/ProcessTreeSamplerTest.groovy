@@ -0,0 +1,166 @@
+package org.gradle.profiler.process
+
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+import java.time.Duration
+
+class ProcessTreeSamplerTest extends Specification {
+    private static final long SELF = 1
+    private static final long DAEMON = 100
+    private static final long WORKER = 101
+    private static final long COMPILER = 102
+    private static final long OTHER = 200
+
+    @Rule
+    TemporaryFolder tmpDir = new TemporaryFolder()
+
+    def "accounts the processes below the root, including children that exited between samples"() {
+        def sampler = new ProcessTreeSampler(new ProcFileSystem(tmpDir.root.toPath()), [SELF], SELF, false)
+
+        when:
+        process(SELF, 0, user: 500)
+        process(DAEMON, SELF, user: 1000, system: 100, rss: 100_000, read: 1000, write: 10, threads: [1: [10, 1], 2: [5, 0]])
+        process(WORKER, DAEMON, user: 50, system: 5, rss: 50_000, threads: [3: [2, 2]])
+        process(OTHER, 0, user: 1000, rss: 1_000_000, read: 1000)
+        sampler.sample()
+
+        process(DAEMON, SELF, user: 1100, system: 110, rss: 150_000, read: 1000, write: 10, threads: [1: [15, 2], 2: [5, 0], 4: [3, 3]])
+        process(WORKER, DAEMON, user: 80, system: 8, rss: 60_000, threads: [3: [4, 2]])
+        process(COMPILER, DAEMON, user: 10, system: 1, rss: 20_000, read: 500, write: 100, threads: [5: [1, 1]])
+        process(OTHER, 0, user: 2000, rss: 1_000_000, read: 5000)
+        sampler.sample()
+
+        // The compiler exits after it did some more work, which is added to the daemon once it has waited for it
+        exited(COMPILER)
+        process(DAEMON, SELF, user: 1200, system: 120, childrenUser: 15, childrenSystem: 2, rss: 120_000, read: 1700, write: 160, threads: [1: [20, 2], 2: [6, 0]])
+        process(WORKER, DAEMON, user: 100, system: 10, rss: 70_000, threads: [3: [4, 3]])
+        sampler.sample()
+        def usage = sampler.usageOf(DAEMON)
+
+        then:
+        usage.processCount == 3
+        // The daemon, the worker, the sampled part of the compiler and the rest of the compiler
+        usage.userCpuTime == ticks(200 + 50 + 10 + 5)
+        usage.systemCpuTime == ticks(20 + 5 + 1 + 1)
+        usage.peakResidentSetSize == (150_000 + 60_000 + 20_000) * 1024
+        // Thread 4 of the daemon and the compiler exited, and keep the switches they were last sampled with
+        usage.voluntaryContextSwitches == (10 + 1 + 3) + 2 + 1
+        usage.involuntaryContextSwitches == (1 + 0 + 3) + 1 + 1
+        usage.blockIoReadBytes == 700
+        usage.blockIoWriteBytes == 150
+    }
+
+    def "accounts a child that exited before it was sampled to its parent"() {
+        def sampler = new ProcessTreeSampler(new ProcFileSystem(tmpDir.root.toPath()), [DAEMON], SELF, false)
+
+        when:
+        process(DAEMON, SELF, user: 1000, system: 100, childrenUser: 40, childrenSystem: 4, rss: 100_000)
+        sampler.sample()
+        process(DAEMON, SELF, user: 1010, system: 101, childrenUser: 70, childrenSystem: 9, rss: 100_000)
+        sampler.sample()
+        def usage = sampler.usageOf(DAEMON)
+
+        then:
+        usage.processCount == 1
+        usage.userCpuTime == ticks(10 + 30)
+        usage.systemCpuTime == ticks(1 + 5)
+    }
+
+    def "accounts a child whose parent exited before it was sampled again to the parent of its parent"() {
+        def sampler = new ProcessTreeSampler(new ProcFileSystem(tmpDir.root.toPath()), [DAEMON], SELF, false)
+
+        when:
+        process(DAEMON, SELF, user: 100)
+        process(WORKER, DAEMON, user: 10)
+        process(COMPILER, WORKER, user: 20)
+        sampler.sample()
+        exited(WORKER)
+        exited(COMPILER)
+        process(DAEMON, SELF, user: 100, childrenUser: (10 + 5) + (20 + 7))
+        sampler.sample()
+        def usage = sampler.usageOf(DAEMON)
+
+        then:
+        usage.processCount == 3
+        usage.userCpuTime == ticks(5 + 7)
+    }
+
+    def "keeps processes that are reparented after their parent exits"() {
+        def sampler = new ProcessTreeSampler(new ProcFileSystem(tmpDir.root.toPath()), [DAEMON], SELF, false)
+
+        when:
+        process(DAEMON, SELF, user: 100)
+        process(WORKER, DAEMON, user: 100)
+        process(COMPILER, WORKER, user: 100)
+        sampler.sample()
+        exited(WORKER)
+        process(DAEMON, SELF, user: 100)
+        process(COMPILER, 1, user: 130)
+        sampler.sample()
+        def usage = sampler.usageOf(DAEMON)
+
+        then:
+        usage.processCount == 3
+        usage.userCpuTime == ticks(30)
+    }
+
+    def "accounts everything that processes started for the build did"() {
+        def sampler = new ProcessTreeSampler(new ProcFileSystem(tmpDir.root.toPath()), [DAEMON], SELF, true)
+
+        when:
+        process(DAEMON, SELF, user: 10, system: 1, childrenUser: 5, read: 100, threads: [1: [3, 1]])
+        process(WORKER, DAEMON, user: 20, system: 2)
+        sampler.sample()
+        process(DAEMON, SELF, user: 30, system: 3, childrenUser: 5, read: 300, threads: [1: [5, 2]])
+        process(WORKER, DAEMON, user: 40, system: 4)
+        sampler.sample()
+        def usage = sampler.usageOf(DAEMON)
+
+        then:
+        usage.userCpuTime == ticks(30 + 5 + 40)
+        usage.systemCpuTime == ticks(3 + 4)
+        usage.voluntaryContextSwitches == 5
+        usage.involuntaryContextSwitches == 2
+        usage.blockIoReadBytes == 300
+    }
+
+    def "does not account a process that was never sampled"() {
+        def sampler = new ProcessTreeSampler(new ProcFileSystem(tmpDir.root.toPath()), [SELF], SELF, false)
+
+        when:
+        process(SELF, 0, user: 500)
+        sampler.sample()
+        def usage = sampler.usageOf(DAEMON)
+
+        then:
+        usage == ProcessTreeUsage.NONE
+    }
+
+    private static Duration ticks(long ticks) {
+        Duration.ofMillis(ticks * 10)
+    }
+
+    private void process(Map<String, ?> values, long pid, long parentPid) {
+        def dir = new File(tmpDir.root, pid as String)
+        dir.mkdirs()
+        def fields = ["S", parentPid, pid, pid, 0, -1, 0, 0, 0, 0, 0,
+                      values.user ?: 0, values.system ?: 0, values.childrenUser ?: 0, values.childrenSystem ?: 0,
+                      20, 0, 1, 0, pid * 10, 0]
+        new File(dir, "stat").text = "${pid} (java (${pid})) ${fields.join(' ')}\n"
+        new File(dir, "status").text = "Name:\tjava\nVmRSS:\t${values.rss ?: 0} kB\nThreads:\t1\n"
+        new File(dir, "io").text = "rchar: 0\nwchar: 0\nread_bytes: ${values.read ?: 0}\nwrite_bytes: ${values.write ?: 0}\n"
+        def taskDir = new File(dir, "task")
+        taskDir.deleteDir()
+        (values.threads ?: [:]).each { tid, switches ->
+            def threadDir = new File(taskDir, tid as String)
+            threadDir.mkdirs()
+            new File(threadDir, "status").text = "Name:\tjava\nvoluntary_ctxt_switches:\t${switches[0]}\nnonvoluntary_ctxt_switches:\t${switches[1]}\n"
+        }
+    }
+
+    private void exited(long pid) {
+        new File(tmpDir.root, pid as String).deleteDir()
+    }
+}
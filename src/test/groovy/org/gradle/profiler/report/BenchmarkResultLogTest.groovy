@@ -0,0 +1,142 @@
+package org.gradle.profiler.report
+
+import com.google.gson.JsonParser
+import org.gradle.profiler.Phase
+import org.gradle.profiler.ScenarioDefinition
+import org.gradle.profiler.StoppingRule
+import org.gradle.profiler.result.BuildInvocationResult
+import org.gradle.profiler.result.RecordedBuildInvocationResult
+import org.gradle.profiler.report.ResultWriterTestFixtures.TestInvocationResult
+import org.gradle.profiler.report.ResultWriterTestFixtures.TestSample
+import org.gradle.profiler.report.ResultWriterTestFixtures.TestScenarioContext
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+class BenchmarkResultLogTest extends Specification {
+
+    @Rule
+    TemporaryFolder tmpDir = new TemporaryFolder()
+
+    def "appends one line per result"() {
+        def logFile = tmpDir.newFile("benchmark-results.jsonl")
+        logFile.text = "left over from a previous invocation\n"
+        def scenario = Stub(ScenarioDefinition) {
+            getDisplayName() >> "assemble using Gradle 8.0"
+        }
+        def context = new TestScenarioContext("assemble@0")
+        def samples = [BuildInvocationResult.EXECUTION_TIME, TestSample.INSTANCE]
+
+        when:
+        def log = new BenchmarkResultLog(logFile)
+        log.append(scenario, samples, new TestInvocationResult(context.withBuild(Phase.WARM_UP, 1), 100, 120))
+        log.append(scenario, samples, new TestInvocationResult(context.withBuild(Phase.MEASURE, 1), 75, 90))
+
+        then:
+        def lines = logFile.readLines()
+        lines.size() == 2
+        def first = JsonParser.parseString(lines[0]).asJsonObject
+        first.get("scenario").asString == "assemble using Gradle 8.0"
+        first.get("scenarioId").asString == "assemble@0"
+        first.get("id").asString == "assemble@0@WARM_UP@1"
+        first.get("phase").asString == "WARM_UP"
+        first.get("iteration").asInt == 1
+        first.get("title").asString == "warm-up build #1"
+        first.getAsJsonObject("values").get("total execution time").asDouble == 100d
+        first.getAsJsonObject("values").get("Test sample").asDouble == 120d
+        first.getAsJsonObject("units").get("total execution time").asString == "ms"
+        def second = JsonParser.parseString(lines[1]).asJsonObject
+        second.get("phase").asString == "MEASURE"
+        second.getAsJsonObject("values").get("total execution time").asDouble == 75d
+    }
+
+    def "restores the results of a scenario that has completed"() {
+        def logFile = tmpDir.newFile("benchmark-results.jsonl")
+        def scenario = scenario("assemble", "assemble")
+        def samples = [BuildInvocationResult.EXECUTION_TIME, TestSample.INSTANCE]
+        def context = new TestScenarioContext("assemble@0")
+        def log = new BenchmarkResultLog(logFile)
+        log.append(scenario, samples, new TestInvocationResult(context.withBuild(Phase.WARM_UP, 1), 100, 120))
+        log.append(scenario, samples, new TestInvocationResult(context.withBuild(Phase.MEASURE, 1), 75, 90))
+        log.append(scenario, samples, new TestInvocationResult(context.withBuild(Phase.MEASURE, 2), 80, 95))
+
+        when:
+        def results = new BenchmarkResultLog(logFile, true).restore(scenario, StoppingRule.FIXED)
+
+        then:
+        results.size() == 3
+        results*.buildContext*.phase == [Phase.WARM_UP, Phase.MEASURE, Phase.MEASURE]
+        results*.buildContext*.uniqueBuildId == ["assemble@0@WARM_UP@1", "assemble@0@MEASURE@1", "assemble@0@MEASURE@2"]
+        results[1].executionTime.toMillis() == 75
+        def restoredSamples = RecordedBuildInvocationResult.samples().get(results)
+        restoredSamples*.name == ["total execution time", "Test sample"]
+        restoredSamples*.unit == ["ms", "ms"]
+        restoredSamples[1].extractValue(results[2]) == 95d
+        restoredSamples[1].extractTotalCountFrom(results[2]) == 1
+    }
+
+    def "does not restore the results of a scenario that was interrupted"() {
+        def logFile = tmpDir.newFile("benchmark-results.jsonl")
+        def scenario = scenario("assemble", "assemble")
+        def samples = [BuildInvocationResult.EXECUTION_TIME]
+        def context = new TestScenarioContext("assemble@0")
+        def log = new BenchmarkResultLog(logFile)
+        log.append(scenario, samples, new TestInvocationResult(context.withBuild(Phase.WARM_UP, 1), 100, 120))
+        log.append(scenario, samples, new TestInvocationResult(context.withBuild(Phase.MEASURE, 1), 75, 90))
+        // The process was killed while writing the next result
+        logFile << '{"scenario":"assemble","defin'
+
+        when:
+        def resumed = new BenchmarkResultLog(logFile, true)
+        def results = resumed.restore(scenario, StoppingRule.FIXED)
+        resumed.append(scenario, samples, new TestInvocationResult(new TestScenarioContext("assemble@1").withBuild(Phase.WARM_UP, 1), 110, 130))
+
+        then:
+        results.empty
+        def lines = logFile.readLines()
+        lines.size() == 4
+        JsonParser.parseString(lines[3]).asJsonObject.get("scenarioId").asString == "assemble@1"
+    }
+
+    def "fails to restore the results of a scenario whose definition has changed"() {
+        def logFile = tmpDir.newFile("benchmark-results.jsonl")
+        def samples = [BuildInvocationResult.EXECUTION_TIME]
+        def context = new TestScenarioContext("assemble@0")
+        def log = new BenchmarkResultLog(logFile)
+        log.append(scenario("assemble", "assemble"), samples, new TestInvocationResult(context.withBuild(Phase.WARM_UP, 1), 100, 120))
+        log.append(scenario("assemble", "assemble"), samples, new TestInvocationResult(context.withBuild(Phase.MEASURE, 1), 75, 90))
+
+        when:
+        new BenchmarkResultLog(logFile, true).restore(scenario("assemble", "clean assemble"), StoppingRule.FIXED)
+
+        then:
+        def e = thrown(IllegalStateException)
+        e.message == "The definition of scenario assemble has changed since its results were recorded in ${logFile}."
+    }
+
+    def "starts a new log when not resuming"() {
+        def logFile = tmpDir.newFile("benchmark-results.jsonl")
+        def scenario = scenario("assemble", "assemble")
+        def context = new TestScenarioContext("assemble@0")
+        def log = new BenchmarkResultLog(logFile)
+        log.append(scenario, [BuildInvocationResult.EXECUTION_TIME], new TestInvocationResult(context.withBuild(Phase.WARM_UP, 1), 100, 120))
+        log.append(scenario, [BuildInvocationResult.EXECUTION_TIME], new TestInvocationResult(context.withBuild(Phase.MEASURE, 1), 75, 90))
+
+        when:
+        def results = new BenchmarkResultLog(logFile, false).restore(scenario, StoppingRule.FIXED)
+
+        then:
+        results.empty
+        !logFile.exists()
+    }
+
+    private ScenarioDefinition scenario(String name, String tasks) {
+        return Stub(ScenarioDefinition) {
+            getName() >> name
+            getDisplayName() >> name
+            getTasksDisplayName() >> tasks
+            getWarmUpCount() >> 1
+            getBuildCount() >> 2
+        }
+    }
+}
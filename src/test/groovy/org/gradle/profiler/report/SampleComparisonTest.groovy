@@ -0,0 +1,52 @@
+package org.gradle.profiler.report
+
+import spock.lang.Specification
+
+class SampleComparisonTest extends Specification {
+
+    def "detects a significant slowdown"() {
+        when:
+        def comparison = SampleComparison.compare(
+            "baseline",
+            [100, 101, 102, 103, 104, 105, 106, 107] as double[],
+            [120, 121, 122, 123, 124, 125, 126, 127] as double[]
+        )
+
+        then:
+        comparison.baseline == "baseline"
+        comparison.getPValue() < 0.01d
+        comparison.significant
+        comparison.medianDifference == 20d
+        comparison.relativeMedianDifference == 20d / 103.5d
+        comparison.medianDifferenceInterval[0] > 0d
+        comparison.medianDifferenceInterval[0] <= 20d
+        comparison.medianDifferenceInterval[1] >= 20d
+        comparison.effectSize == 1d
+        comparison.isRegression(0.1d)
+        !comparison.isRegression(0.25d)
+    }
+
+    def "does not report a difference between identical samples"() {
+        when:
+        def comparison = SampleComparison.compare(
+            "baseline",
+            [100, 102, 104, 106] as double[],
+            [100, 102, 104, 106] as double[]
+        )
+
+        then:
+        !comparison.significant
+        comparison.medianDifference == 0d
+        comparison.relativeMedianDifference == 0d
+        comparison.effectSize == 0d
+        !comparison.isRegression(0d)
+    }
+
+    def "bootstrap interval is reproducible"() {
+        def baseline = [100, 110, 95, 102, 98, 105] as double[]
+        def values = [101, 112, 97, 99, 108, 103] as double[]
+
+        expect:
+        SampleComparison.compare("baseline", baseline, values).medianDifferenceInterval == SampleComparison.compare("baseline", baseline, values).medianDifferenceInterval
+    }
+}
@@ -32,6 +32,17 @@ class SampleStatisticsTest extends Specification {
         stats.stddev == 0.0d
     }
 
+    def "computes confidence interval of the median"() {
+        expect:
+        SampleStatistics.medianConfidenceInterval([8, 1, 7, 2, 6, 3, 5, 4] as double[]) == [1.0d, 8.0d] as double[]
+        SampleStatistics.medianConfidenceInterval((1..20).collect { it as double } as double[]) == [5.0d, 16.0d] as double[]
+    }
+
+    def "has no confidence interval of the median for small samples"() {
+        expect:
+        SampleStatistics.medianConfidenceInterval([1, 2, 3, 4, 5, 6, 7] as double[]) == null
+    }
+
     def "rejects empty sample"() {
         when:
         SampleStatistics.from(new double[0])
@@ -1,8 +1,12 @@
 package org.gradle.profiler.buildops;
 
+import java.util.Collections;
+import java.util.Map;
+
 /**
  * Carries information about the execution of a specific build operation type.
  * {@code value} is already computed according to the {@link BuildOperationMeasurementKind}.
+ * For {@link BuildOperationMeasurementKind#HISTOGRAM}, {@code value} is the median and the other statistics are available from {@link #getHistogram()}.
  */
 public class BuildOperationExecutionData {
 
@@ -10,10 +14,16 @@ public class BuildOperationExecutionData {
 
     private final long value;
     private final int totalCount;
+    private final Map<HistogramStatistic, Long> histogram;
 
     public BuildOperationExecutionData(long value, int totalCount) {
+        this(value, totalCount, Collections.emptyMap());
+    }
+
+    public BuildOperationExecutionData(long value, int totalCount, Map<HistogramStatistic, Long> histogram) {
         this.value = value;
         this.totalCount = totalCount;
+        this.histogram = histogram;
     }
 
     public long getValue() {
@@ -23,4 +33,11 @@ public long getValue() {
     public int getTotalCount() {
         return totalCount;
     }
+
+    /**
+     * The statistics of the durations of the build operations, in milliseconds. Empty unless measured with {@link BuildOperationMeasurementKind#HISTOGRAM}.
+     */
+    public Map<HistogramStatistic, Long> getHistogram() {
+        return histogram;
+    }
 }
@@ -33,6 +33,11 @@ public enum BuildOperationMeasurementKind {
      * Note that this is based on the end timestamp, not any particular ordering given to the operation listener.
      */
     TIME_TO_LAST_INCLUSIVE,
+    /**
+     * Records the duration of each build operation of the given type in a histogram, and reports the statistics of {@link HistogramStatistic}.
+     * Useful for telling whether all operations of a type got slower, or only a few of them.
+     */
+    HISTOGRAM,
     // If adding to this enum, also update the README.md documentation.
     ;
 
@@ -56,6 +61,8 @@ public static BuildOperationMeasurementKind fromString(String value) {
                 return TIME_TO_LAST_INCLUSIVE;
             case "time_to_first_exclusive":
                 return TIME_TO_FIRST_EXCLUSIVE;
+            case "histogram":
+                return HISTOGRAM;
             default:
                 // This error is user-facing, so make sure to include helpful information.
                 throw new IllegalArgumentException("Invalid measurement kind '" + value + "'. Valid values are: " + getValidValues());
@@ -92,6 +99,8 @@ public String toDisplayString() {
                 return "Time to Last Inclusive";
             case TIME_TO_FIRST_EXCLUSIVE:
                 return "Time to First Exclusive";
+            case HISTOGRAM:
+                return "Histogram";
             default:
                 throw new IllegalStateException("Unexpected value: " + this);
         }
@@ -0,0 +1,30 @@
+package org.gradle.profiler.buildops;
+
+import java.util.Locale;
+
+/**
+ * The statistics reported for build operations measured with {@link BuildOperationMeasurementKind#HISTOGRAM}.
+ */
+public enum HistogramStatistic {
+    P50(0.5),
+    P90(0.9),
+    P99(0.99),
+    MAX(1.0);
+
+    private final double quantile;
+
+    HistogramStatistic(double quantile) {
+        this.quantile = quantile;
+    }
+
+    /**
+     * The fraction of the build operations that took at most the value of this statistic.
+     */
+    public double getQuantile() {
+        return quantile;
+    }
+
+    public String toValueString() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,54 @@
+package org.gradle.profiler.buildops.internal;
+
+import org.gradle.profiler.buildops.HistogramStatistic;
+
+/**
+ * The names shared by the profiler and the build operations plugin for the measurements sent after each build.
+ */
+public final class InternalBuildMeasurements {
+    /**
+     * The system property that holds the id of the current build, which is sent back with its measurements.
+     */
+    public static final String BUILD_ID_PROPERTY = "org.gradle.profiler.build.id";
+
+    public static final String GARBAGE_COLLECTION_TIME = "gc-time";
+    public static final String LOCAL_BUILD_CACHE_SIZE = "local-build-cache-size";
+    public static final String TIME_TO_TASK_EXECUTION = "time-to-task-execution";
+
+    /**
+     * The prefix of the names of the resource usage measurements, which are taken by sampling the daemon while the build runs.
+     */
+    public static final String RESOURCES_PREFIX = "resources:";
+    public static final String PROCESS_CPU_TIME = RESOURCES_PREFIX + "cpu-time";
+    public static final String ALLOCATED_BYTES = RESOURCES_PREFIX + "allocated";
+    public static final String PEAK_ALLOCATION_RATE = RESOURCES_PREFIX + "peak-allocation-rate";
+    public static final String PEAK_HEAP = RESOURCES_PREFIX + "peak-heap";
+    public static final String HEAP_AFTER_GC = RESOURCES_PREFIX + "heap-after-gc";
+    public static final String PEAK_THREAD_COUNT = RESOURCES_PREFIX + "peak-threads";
+    public static final String IO_READ_BYTES = RESOURCES_PREFIX + "io-read";
+    public static final String IO_WRITE_BYTES = RESOURCES_PREFIX + "io-write";
+
+    private InternalBuildMeasurements() {
+    }
+
+    /**
+     * The name of the measurement of the given kind of the given build operation type.
+     */
+    public static String buildOperationMeasurementName(String buildOperationType, String measurementKind) {
+        return "build-op:" + buildOperationType + ":" + measurementKind;
+    }
+
+    /**
+     * The name of the given statistic of a build operation measured with a histogram.
+     */
+    public static String histogramStatisticName(String measurementName, HistogramStatistic statistic) {
+        return measurementName + ":" + statistic.toValueString();
+    }
+
+    /**
+     * The name of a resource usage measurement of the given memory pool, for example {@code resources:peak-heap:G1 Old Gen}.
+     */
+    public static String memoryPoolMeasurementName(String measurementName, String poolName) {
+        return measurementName + ":" + poolName;
+    }
+}
@@ -3,45 +3,29 @@
 import org.gradle.profiler.buildops.BuildOperationMeasurement;
 import org.gradle.profiler.buildops.BuildOperationMeasurementKind;
 
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 
 /**
  * Represents a request to measure a specific build operation during a Gradle build.
  */
 public final class InternalBuildOpMeasurementRequest implements Serializable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
 
-    private transient Path outputFile;
+    private final String measurementName;
     private final String buildOperationType;
     private final BuildOperationMeasurementKind measurementKind;
 
-    public InternalBuildOpMeasurementRequest(Path outputFile, String buildOperationType, BuildOperationMeasurementKind measurementKind) {
-        this.outputFile = outputFile;
+    public InternalBuildOpMeasurementRequest(String measurementName, String buildOperationType, BuildOperationMeasurementKind measurementKind) {
+        this.measurementName = measurementName;
         this.buildOperationType = buildOperationType;
         this.measurementKind = measurementKind;
     }
 
-    private void writeObject(ObjectOutputStream out) throws IOException {
-        out.defaultWriteObject();
-        out.writeUTF(outputFile.toString());
-    }
-
-    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
-        in.defaultReadObject();
-        String outputFilePath = in.readUTF();
-        this.outputFile = Paths.get(outputFilePath);
-    }
-
     /**
-     * The file where the measurement results will be written.
+     * The name under which the measurement result is sent to the profiler.
      */
-    public Path getOutputFile() {
-        return outputFile;
+    public String getMeasurementName() {
+        return measurementName;
     }
 
     /**
@@ -1,13 +1,14 @@
 plugins {
     id("profiler.embedded-library")
+    alias(libs.plugins.jmh)
 }
 
 description = "Plugin to collect build operation measurements."
 
 dependencies {
     api(gradleApi())
-    implementation(libs.guava)
     implementation(project(":build-operations-measuring"))
+    implementation(project(":client-protocol"))
 
     testImplementation(libs.bundles.testDependencies)
 }
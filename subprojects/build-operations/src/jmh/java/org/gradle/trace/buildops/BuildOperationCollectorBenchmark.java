@@ -0,0 +1,108 @@
+package org.gradle.trace.buildops;
+
+import org.gradle.internal.operations.OperationFinishEvent;
+import org.gradle.profiler.buildops.BuildOperationMeasurementKind;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead that measuring a build operation type adds to each finished build operation of that type,
+ * when many workers finish operations at the same time.
+ * The dispatch benchmarks pass the operations through the dispatcher, with a collector for each of {@value #MEASURED_TYPES} types of details.
+ *
+ * <p>Run with {@code ./gradlew :build-operations:jmh}.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(16)
+public class BuildOperationCollectorBenchmark {
+    private static final int MEASURED_TYPES = 10;
+    private static final Object DETAILS = new Details();
+    private static final Object UNMEASURED_DETAILS = new Object();
+
+    @Param({"CUMULATIVE_TIME", "WALL_CLOCK_TIME", "TIME_TO_FIRST_EXCLUSIVE", "TIME_TO_LAST_INCLUSIVE", "HISTOGRAM"})
+    public BuildOperationMeasurementKind kind;
+
+    private BuildOperationTrace.BuildOperationCollector collector;
+    private BuildOperationCollectorDispatcher dispatcher;
+
+    @Setup(Level.Iteration)
+    public void createCollector() {
+        collector = new BuildOperationTrace.BuildOperationCollector(Details.class, "benchmark", BuildOperationMeasurer.createForKind(kind));
+        List<BuildOperationTrace.BuildOperationCollector> collectors = new ArrayList<>();
+        collectors.add(collector);
+        for (int i = 1; i < MEASURED_TYPES; i++) {
+            collectors.add(new BuildOperationTrace.BuildOperationCollector(OtherDetails.class, "other-" + i, BuildOperationMeasurer.createForKind(kind)));
+        }
+        dispatcher = new BuildOperationCollectorDispatcher(collectors);
+    }
+
+    /**
+     * The clock of a worker, which runs one operation after the other.
+     */
+    @State(Scope.Thread)
+    public static class Worker {
+        long time;
+
+        @Setup(Level.Iteration)
+        public void start() {
+            time = 1_000_000 + ThreadLocalRandom.current().nextInt(1000);
+        }
+
+        long finishOperation() {
+            long start = time;
+            time += ThreadLocalRandom.current().nextInt(3);
+            return start;
+        }
+    }
+
+    @Benchmark
+    public OperationFinishEvent baseline(Worker worker) {
+        long start = worker.finishOperation();
+        return new OperationFinishEvent(start, worker.time, null, null);
+    }
+
+    @Benchmark
+    public void collect(Worker worker) {
+        long start = worker.finishOperation();
+        collector.collect(DETAILS, new OperationFinishEvent(start, worker.time, null, null));
+    }
+
+    @Benchmark
+    public void dispatch(Worker worker) {
+        long start = worker.finishOperation();
+        dispatcher.dispatch(DETAILS, new OperationFinishEvent(start, worker.time, null, null));
+    }
+
+    @Benchmark
+    public void dispatchUnmeasured(Worker worker) {
+        long start = worker.finishOperation();
+        dispatcher.dispatch(UNMEASURED_DETAILS, new OperationFinishEvent(start, worker.time, null, null));
+    }
+
+    private static class Details {
+    }
+
+    private interface OtherDetails {
+    }
+}
@@ -0,0 +1,43 @@
+package org.gradle.trace.buildops;
+
+import org.gradle.internal.operations.OperationFinishEvent;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Passes finished build operations to the collectors that measure them, with a single lookup per operation.
+ *
+ * <p>The collectors that match a type of build operation details are found once per details class, and cached in a {@link ClassValue}.
+ * Build operations with details that no collector measures are ignored without checking any collector.</p>
+ */
+final class BuildOperationCollectorDispatcher {
+    private static final int[] NO_COLLECTORS = new int[0];
+
+    private final BuildOperationTrace.BuildOperationCollector[] collectors;
+
+    // Caches the indices of the collectors rather than the collectors themselves:
+    // the cached values are held by the details classes, which outlive the build in the daemon.
+    private final ClassValue<int[]> matchingCollectors = new ClassValue<int[]>() {
+        @Override
+        protected int[] computeValue(Class<?> detailsClass) {
+            int[] matching = IntStream.range(0, collectors.length)
+                .filter(index -> collectors[index].matches(detailsClass))
+                .toArray();
+            return matching.length == 0 ? NO_COLLECTORS : matching;
+        }
+    };
+
+    BuildOperationCollectorDispatcher(List<BuildOperationTrace.BuildOperationCollector> collectors) {
+        this.collectors = collectors.toArray(new BuildOperationTrace.BuildOperationCollector[0]);
+    }
+
+    void dispatch(Object details, OperationFinishEvent operationFinishEvent) {
+        if (collectors.length == 0) {
+            return;
+        }
+        for (int index : matchingCollectors.get(details.getClass())) {
+            collectors[index].record(operationFinishEvent);
+        }
+    }
+}
@@ -3,6 +3,8 @@
 import org.gradle.profiler.buildops.BuildOperationMeasurementKind;
 
 import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Optional;
 import java.util.OptionalLong;
 
@@ -21,6 +23,8 @@ static BuildOperationMeasurer createForKind(BuildOperationMeasurementKind kind)
                 return new TimeToLastInclusiveBuildOperationMeasurer();
             case TIME_TO_FIRST_EXCLUSIVE:
                 return new TimeToFirstExclusiveBuildOperationMeasurer();
+            case HISTOGRAM:
+                return new HistogramBuildOperationMeasurer();
             default:
                 throw new IllegalArgumentException("Unsupported BuildOperationMeasurementKind: " + kind);
         }
@@ -43,4 +47,18 @@ static BuildOperationMeasurer createForKind(BuildOperationMeasurementKind kind)
      * @return the final measured value, or empty if the build start time is required but absent
      */
     Optional<Duration> computeFinalValue(OptionalLong buildStartTime);
+
+    /**
+     * Compute all final measured values, keyed by the name they are reported under.
+     * Most kinds measure a single value, which is reported under the name of the measurement.
+     *
+     * @param measurementName the name of the measurement
+     * @param buildStartTime see {@link #computeFinalValue(OptionalLong)}
+     * @return the final measured values, or empty if the build start time is required but absent
+     */
+    default Map<String, Duration> computeFinalValues(String measurementName, OptionalLong buildStartTime) {
+        return computeFinalValue(buildStartTime)
+            .map(value -> Collections.singletonMap(measurementName, value))
+            .orElse(Collections.emptyMap());
+    }
 }
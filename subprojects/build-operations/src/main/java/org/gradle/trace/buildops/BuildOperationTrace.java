@@ -3,12 +3,10 @@
 import org.gradle.api.NonNullApi;
 import org.gradle.api.file.Directory;
 import org.gradle.api.file.DirectoryProperty;
-import org.gradle.api.file.RegularFileProperty;
 import org.gradle.api.internal.GradleInternal;
-import org.gradle.api.model.ObjectFactory;
 import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.Property;
 import org.gradle.api.provider.Provider;
-import org.gradle.api.provider.ProviderFactory;
 import org.gradle.api.services.BuildService;
 import org.gradle.api.services.BuildServiceParameters;
 import org.gradle.api.services.BuildServiceRegistry;
@@ -23,22 +21,22 @@
 import org.gradle.internal.operations.OperationStartEvent;
 import org.gradle.profiler.buildops.BuildOperationMeasurementKind;
 import org.gradle.profiler.buildops.internal.InternalBuildOpMeasurementRequest;
+import org.gradle.profiler.client.protocol.Client;
+import org.gradle.profiler.client.protocol.messages.BuildMeasurements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
 import java.lang.management.GarbageCollectorMXBean;
 import java.lang.management.ManagementFactory;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.OptionalLong;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -47,6 +45,11 @@
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.BUILD_ID_PROPERTY;
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.GARBAGE_COLLECTION_TIME;
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.LOCAL_BUILD_CACHE_SIZE;
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.TIME_TO_TASK_EXECUTION;
+
 // Used by org.gradle.profiler.buildops.BuildOperationInstrumentation via an injected initscript.
 @SuppressWarnings("unused")
 @NonNullApi
@@ -56,6 +59,12 @@ public class BuildOperationTrace {
     private final GradleInternal gradle;
     private final BuildEventListenerRegistryInternal registry;
     private final BuildServiceRegistry sharedServices;
+    private final List<InternalBuildOpMeasurementRequest> capturedBuildOperations = new ArrayList<>();
+    private boolean measureGarbageCollection;
+    private boolean measureLocalBuildCache;
+    private long resourceSamplingIntervalMillis;
+    private File resourceTimeSeriesDirectory;
+    private String resourceTimeSeriesBaseName;
 
     public BuildOperationTrace(GradleInternal gradle) {
         this.gradle = gradle;
@@ -63,86 +72,70 @@ public BuildOperationTrace(GradleInternal gradle) {
         this.sharedServices = gradle.getSharedServices();
     }
 
-    public BuildOperationTrace measureGarbageCollection(File outFile) {
-        Provider<GcTimeCollectionService> listenerProvider = sharedServices.registerIfAbsent("gc-time", GcTimeCollectionService.class, spec -> {
-            spec.getParameters().getOutputFile().set(outFile);
-        });
-        // Force the service to be instantiated, so we actually get a close() call at the end of the build
-        registry.onOperationCompletion(listenerProvider);
+    public BuildOperationTrace measureGarbageCollection() {
+        measureGarbageCollection = true;
         return this;
     }
 
-    public BuildOperationTrace measureLocalBuildCache(File outFile) {
-        gradle.settingsEvaluated(settings -> {
-            Object cachePath = settings.getBuildCache().getLocal().getDirectory();
-            File cacheDirectory = cachePath != null
-                ? gradle.getServices().get(PathToFileResolver.class).resolve(cachePath)
-                : null;
-            Provider<LocalBuildCacheSizerService> listenerProvider = sharedServices.registerIfAbsent("local-build-cache-sizer", LocalBuildCacheSizerService.class, spec -> {
-                spec.getParameters().getGradleUserHome().set(gradle.getGradleUserHomeDir());
-                spec.getParameters().getCacheDirectory().set(cacheDirectory);
-                spec.getParameters().getOutputFile().set(outFile);
-            });
-            // Force the service to be instantiated, so we actually get a close() call at the end of the build
-            registry.onOperationCompletion(listenerProvider);
-        });
+    public BuildOperationTrace measureLocalBuildCache() {
+        measureLocalBuildCache = true;
         return this;
     }
 
-    public BuildOperationTrace measureConfigurationTime(File outFile) {
-        Provider<BuildOperationDurationRecordingListener> listenerProvider = sharedServices.registerIfAbsent("time-to-first-task", BuildOperationDurationRecordingListener.class, spec -> {
-            spec.getParameters().getCapturedBuildOperations().add(
-                new InternalBuildOpMeasurementRequest(
-                    outFile.toPath(),
-                    RunRootBuildWorkBuildOperationType.class.getName(),
-                    BuildOperationMeasurementKind.TIME_TO_FIRST_EXCLUSIVE
-                )
-            );
-        });
-        registry.onOperationCompletion(listenerProvider);
+    /**
+     * Samples the resources used by the daemon at the given interval, and writes the samples of each build to a time series file in the given directory.
+     */
+    public BuildOperationTrace measureResources(long samplingIntervalMillis, File timeSeriesDirectory, String timeSeriesBaseName) {
+        resourceSamplingIntervalMillis = samplingIntervalMillis;
+        resourceTimeSeriesDirectory = timeSeriesDirectory;
+        resourceTimeSeriesBaseName = timeSeriesBaseName;
         return this;
     }
 
-    public BuildOperationTrace measureBuildOperations(List<InternalBuildOpMeasurementRequest> capturedBuildOperations) {
-        Provider<BuildOperationDurationRecordingListener> listenerProvider = sharedServices.registerIfAbsent("measure-build-operations", BuildOperationDurationRecordingListener.class, spec -> {
-            spec.getParameters().getCapturedBuildOperations().set(capturedBuildOperations);
-        });
-        registry.onOperationCompletion(listenerProvider);
+    public BuildOperationTrace measureConfigurationTime() {
+        capturedBuildOperations.add(
+            new InternalBuildOpMeasurementRequest(
+                TIME_TO_TASK_EXECUTION,
+                RunRootBuildWorkBuildOperationType.class.getName(),
+                BuildOperationMeasurementKind.TIME_TO_FIRST_EXCLUSIVE
+            )
+        );
         return this;
     }
 
-    private static void writeToFile(Path outputFile, long value, int count) throws IOException {
-        // See `org.gradle.profiler.buildops.BuildOperationInstrumentation` for parsing
-        String line = value + "," + count;
-        Files.write(outputFile, Collections.singleton(line), StandardCharsets.UTF_8);
+    public BuildOperationTrace measureBuildOperations(List<InternalBuildOpMeasurementRequest> capturedBuildOperations) {
+        this.capturedBuildOperations.addAll(capturedBuildOperations);
+        return this;
     }
 
-    public static abstract class GcTimeCollectionService implements BuildService<GcTimeCollectionService.Params>, BuildOperationListener, AutoCloseable {
-        interface Params extends BuildServiceParameters {
-            RegularFileProperty getOutputFile();
-        }
-
-        @Override
-        public void started(BuildOperationDescriptor buildOperationDescriptor, OperationStartEvent operationStartEvent) {
-            // Ignore, we are only interested in the callback to close()
-        }
-
-        @Override
-        public void finished(BuildOperationDescriptor buildOperationDescriptor, OperationFinishEvent operationFinishEvent) {
-            // Ignore, we are only interested in the callback to close()
-        }
-
-        @Override
-        public void progress(OperationIdentifier operationIdentifier, OperationProgressEvent progressEvent) {
-            // Ignore, we are only interested in the callback to close()
-        }
-
-        @Override
-        public void close() throws Exception {
-            long totalGcTime = ManagementFactory.getGarbageCollectorMXBeans().stream()
-                .mapToLong(GarbageCollectorMXBean::getCollectionTime)
-                .sum();
-            writeToFile(getParameters().getOutputFile().getAsFile().get().toPath(), totalGcTime, 1);
+    /**
+     * Sends all measurements of the build in a single message to the profiler listening on the given port, once the build has finished.
+     */
+    public void sendMeasurementsTo(int port) {
+        Provider<BuildOperationDurationRecordingListener> listenerProvider = sharedServices.registerIfAbsent("measure-build-operations", BuildOperationDurationRecordingListener.class, spec -> {
+            spec.getParameters().getPort().set(port);
+            spec.getParameters().getMeasureGarbageCollection().set(measureGarbageCollection);
+            spec.getParameters().getCapturedBuildOperations().set(capturedBuildOperations);
+            spec.getParameters().getResourceSamplingIntervalMillis().set(resourceSamplingIntervalMillis);
+            spec.getParameters().getResourceTimeSeriesDirectory().set(resourceTimeSeriesDirectory);
+            spec.getParameters().getResourceTimeSeriesBaseName().set(resourceTimeSeriesBaseName);
+        });
+        // Force the service to be instantiated, so we actually get a close() call at the end of the build
+        registry.onOperationCompletion(listenerProvider);
+        if (measureLocalBuildCache) {
+            gradle.settingsEvaluated(settings -> {
+                Object cachePath = settings.getBuildCache().getLocal().getDirectory();
+                File cacheDirectory = cachePath != null
+                    ? gradle.getServices().get(PathToFileResolver.class).resolve(cachePath)
+                    : null;
+                Provider<LocalBuildCacheSizerService> sizerProvider = sharedServices.registerIfAbsent("local-build-cache-sizer", LocalBuildCacheSizerService.class, spec -> {
+                    spec.getParameters().getGradleUserHome().set(gradle.getGradleUserHomeDir());
+                    spec.getParameters().getCacheDirectory().set(cacheDirectory);
+                    spec.getParameters().getMeasurements().set(listenerProvider);
+                });
+                // Force the service to be instantiated, so we actually get a close() call at the end of the build
+                registry.onOperationCompletion(sizerProvider);
+            });
         }
     }
 
@@ -152,11 +145,13 @@ interface Params extends BuildServiceParameters {
 
             DirectoryProperty getCacheDirectory();
 
-            RegularFileProperty getOutputFile();
+            Property<BuildOperationDurationRecordingListener> getMeasurements();
         }
 
-        @Inject
-        protected abstract ProviderFactory getProviders();
+        public LocalBuildCacheSizerService() {
+            // The service is only created once the settings have been evaluated, so a build that fails earlier does not wait for it
+            getParameters().getMeasurements().get().expectLocalBuildCacheSize();
+        }
 
         @Override
         public void started(BuildOperationDescriptor buildOperationDescriptor, OperationStartEvent operationStartEvent) {
@@ -194,7 +189,7 @@ public void close() throws Exception {
                     cacheFileCount.incrementAndGet();
                     cacheSizeInBytes.addAndGet(file.length());
                 });
-            writeToFile(getParameters().getOutputFile().getAsFile().get().toPath(), cacheSizeInBytes.get(), cacheFileCount.get());
+            getParameters().getMeasurements().get().recordLocalBuildCacheSize(cacheSizeInBytes.get(), cacheFileCount.get());
         }
 
         @Nullable
@@ -203,12 +198,38 @@ private static File[] listBuildCacheDirectories(File cachesDir) {
         }
     }
 
+    /**
+     * Collects the measurements of a build and sends them to the profiler at the end of the build.
+     *
+     * <p>The size of the local build cache is computed by {@link LocalBuildCacheSizerService}, which may be closed before or after this service.
+     * When that service has been created, the measurements are sent once both have been closed.</p>
+     */
     public static abstract class BuildOperationDurationRecordingListener implements BuildService<BuildOperationDurationRecordingListener.Params>, BuildOperationListener, AutoCloseable {
         interface Params extends BuildServiceParameters {
+            Property<Integer> getPort();
+
+            Property<Boolean> getMeasureGarbageCollection();
+
             ListProperty<InternalBuildOpMeasurementRequest> getCapturedBuildOperations();
+
+            /**
+             * The interval at which to sample the resources used by the daemon, or 0 to not sample them.
+             */
+            Property<Long> getResourceSamplingIntervalMillis();
+
+            DirectoryProperty getResourceTimeSeriesDirectory();
+
+            Property<String> getResourceTimeSeriesBaseName();
         }
 
         private final List<BuildOperationCollector> collectors;
+        private final BuildOperationCollectorDispatcher dispatcher;
+
+        /**
+         * The id of the current build invocation, passed by the profiler as a system property for each build.
+         * The service is instantiated for every invocation, also when the configuration cache is reused.
+         */
+        private final String buildId = System.getProperty(BUILD_ID_PROPERTY, "");
 
         /**
          * The start time of the current build invocation, observed from the root build work operation.
@@ -221,8 +242,15 @@ interface Params extends BuildServiceParameters {
          */
         private final AtomicReference<OptionalLong> observedBuildStartTime = new AtomicReference<>(OptionalLong.empty());
 
+        @Nullable
+        private final ResourceSampler resourceSampler;
+
+        private final List<BuildMeasurements.Measurement> measurements = new ArrayList<>();
+        private boolean closed;
+        private boolean awaitingLocalBuildCacheSize;
+
         @Inject
-        public BuildOperationDurationRecordingListener(ObjectFactory objectFactory) {
+        public BuildOperationDurationRecordingListener() {
             this.collectors = new ArrayList<>();
             for (InternalBuildOpMeasurementRequest request : getParameters().getCapturedBuildOperations().get()) {
                 String operationType = request.getBuildOperationType();
@@ -235,7 +263,39 @@ public BuildOperationDurationRecordingListener(ObjectFactory objectFactory) {
                 }
 
                 BuildOperationMeasurer measurer = BuildOperationMeasurer.createForKind(request.getMeasurementKind());
-                collectors.add(new BuildOperationCollector(detailsType, request.getOutputFile(), measurer));
+                collectors.add(new BuildOperationCollector(detailsType, request.getMeasurementName(), measurer));
+            }
+            this.dispatcher = new BuildOperationCollectorDispatcher(collectors);
+            long samplingIntervalMillis = getParameters().getResourceSamplingIntervalMillis().getOrElse(0L);
+            if (samplingIntervalMillis > 0) {
+                resourceSampler = new ResourceSampler(Duration.ofMillis(samplingIntervalMillis), openResourceTimeSeries());
+                resourceSampler.start();
+            } else {
+                resourceSampler = null;
+            }
+        }
+
+        @Nullable
+        private Writer openResourceTimeSeries() {
+            File directory = getParameters().getResourceTimeSeriesDirectory().getAsFile().getOrNull();
+            if (directory == null) {
+                return null;
+            }
+            // Named like the Chrome traces, so that both can be loaded together
+            String phase = System.getProperty("org.gradle.profiler.phase.display.name");
+            String build = System.getProperty("org.gradle.profiler.number");
+            int invocation = 1;
+            File timeSeriesFile;
+            do {
+                String fileName = String.format("%s-%s-build-%s-invocation-%s-resources.json", getParameters().getResourceTimeSeriesBaseName().get(), phase, build, invocation);
+                timeSeriesFile = new File(directory, fileName);
+                invocation++;
+            } while (timeSeriesFile.exists());
+            try {
+                return Files.newBufferedWriter(timeSeriesFile.toPath(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                LOGGER.warn("Could not write resource usage time series to {}", directory, e);
+                return null;
             }
         }
 
@@ -256,16 +316,44 @@ public void finished(BuildOperationDescriptor buildOperationDescriptor, Operatio
             if (details instanceof RunRootBuildWorkBuildOperationType.Details) {
                 observedBuildStartTime.set(OptionalLong.of(((RunRootBuildWorkBuildOperationType.Details) details).getBuildStartTime()));
             }
-            for (BuildOperationCollector collector : collectors) {
-                collector.collect(details, operationFinishEvent);
-            }
+            dispatcher.dispatch(details, operationFinishEvent);
         }
 
         @Override
-        public void close() throws IOException {
+        public synchronized void close() throws IOException {
+            if (resourceSampler != null) {
+                measurements.addAll(resourceSampler.stop());
+            }
+            if (getParameters().getMeasureGarbageCollection().get()) {
+                long totalGcTime = ManagementFactory.getGarbageCollectorMXBeans().stream()
+                    .mapToLong(GarbageCollectorMXBean::getCollectionTime)
+                    .sum();
+                measurements.add(new BuildMeasurements.Measurement(GARBAGE_COLLECTION_TIME, totalGcTime, 1));
+            }
             OptionalLong buildStartTime = observedBuildStartTime.get();
             for (BuildOperationCollector collector : collectors) {
-                collector.write(buildStartTime);
+                measurements.addAll(collector.result(buildStartTime));
+            }
+            closed = true;
+            maybeSend();
+        }
+
+        synchronized void expectLocalBuildCacheSize() {
+            awaitingLocalBuildCacheSize = true;
+        }
+
+        synchronized void recordLocalBuildCacheSize(long sizeInBytes, int fileCount) throws IOException {
+            measurements.add(new BuildMeasurements.Measurement(LOCAL_BUILD_CACHE_SIZE, sizeInBytes, fileCount));
+            awaitingLocalBuildCacheSize = false;
+            maybeSend();
+        }
+
+        private void maybeSend() throws IOException {
+            if (!closed || awaitingLocalBuildCacheSize) {
+                return;
+            }
+            try (Client client = new Client(getParameters().getPort().get())) {
+                client.send(new BuildMeasurements(buildId, new ArrayList<>(measurements)));
             }
         }
     }
@@ -273,32 +361,46 @@ public void close() throws IOException {
     // Visible for testing
     static class BuildOperationCollector {
         private final Class<?> detailsType;
-        private final Path outputFile;
+        private final String measurementName;
         private final BuildOperationMeasurer measurer;
         private final AtomicInteger buildOperationCount = new AtomicInteger(0);
 
-        BuildOperationCollector(Class<?> detailsType, Path outputFile, BuildOperationMeasurer measurer) {
+        BuildOperationCollector(Class<?> detailsType, String measurementName, BuildOperationMeasurer measurer) {
             this.detailsType = detailsType;
-            this.outputFile = outputFile;
+            this.measurementName = measurementName;
             this.measurer = measurer;
         }
 
         public void collect(Object details, OperationFinishEvent operationFinishEvent) {
-            if (detailsType.isAssignableFrom(details.getClass())) {
-                measurer.update(operationFinishEvent.getStartTime(), operationFinishEvent.getEndTime());
-                buildOperationCount.incrementAndGet();
+            if (matches(details.getClass())) {
+                record(operationFinishEvent);
             }
         }
 
-        public void write(OptionalLong buildStartTime) throws IOException {
-            Optional<Duration> value = measurer.computeFinalValue(buildStartTime);
-            if (value.isPresent()) {
-                writeToFile(outputFile, value.get().toMillis(), buildOperationCount.get());
-            } else {
-                // Truncate the file so a value from a previous invocation is not mistaken
-                // for a result of this one. The profiler treats an empty file as a missing sample.
-                Files.write(outputFile, new byte[0]);
-            }
+        /**
+         * Whether this collector measures the build operations with details of the given class.
+         */
+        boolean matches(Class<?> detailsClass) {
+            return detailsType.isAssignableFrom(detailsClass);
+        }
+
+        /**
+         * Records a finished build operation that this collector {@link #matches(Class) measures}.
+         */
+        void record(OperationFinishEvent operationFinishEvent) {
+            measurer.update(operationFinishEvent.getStartTime(), operationFinishEvent.getEndTime());
+            buildOperationCount.incrementAndGet();
+        }
+
+        /**
+         * Returns the measurements, or nothing when the measured value is absent. The profiler treats a missing measurement as a missing sample.
+         */
+        public List<BuildMeasurements.Measurement> result(OptionalLong buildStartTime) {
+            List<BuildMeasurements.Measurement> result = new ArrayList<>();
+            measurer.computeFinalValues(measurementName, buildStartTime).forEach((name, duration) ->
+                result.add(new BuildMeasurements.Measurement(name, duration.toMillis(), buildOperationCount.get()))
+            );
+            return result;
         }
     }
 }
@@ -0,0 +1,40 @@
+package org.gradle.trace.buildops;
+
+import org.gradle.profiler.buildops.HistogramStatistic;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.histogramStatisticName;
+
+final class HistogramBuildOperationMeasurer implements BuildOperationMeasurer {
+    private final LogLinearHistogram histogram = new LogLinearHistogram();
+
+    @Override
+    public void update(long startTime, long endTime) {
+        histogram.record(Math.max(0, endTime - startTime));
+    }
+
+    /**
+     * Returns the median duration.
+     */
+    @Override
+    public Optional<Duration> computeFinalValue(OptionalLong buildStartTime) {
+        return Optional.of(Duration.ofMillis(histogram.getValueAtQuantile(HistogramStatistic.P50.getQuantile())));
+    }
+
+    @Override
+    public Map<String, Duration> computeFinalValues(String measurementName, OptionalLong buildStartTime) {
+        Map<String, Duration> values = new LinkedHashMap<>();
+        for (HistogramStatistic statistic : HistogramStatistic.values()) {
+            long value = statistic == HistogramStatistic.MAX
+                ? histogram.getMaxValue()
+                : histogram.getValueAtQuantile(statistic.getQuantile());
+            values.put(histogramStatisticName(measurementName, statistic), Duration.ofMillis(value));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,85 @@
+package org.gradle.trace.buildops;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative values, with buckets laid out like an HDR histogram.
+ *
+ * <p>Values below {@value #SUB_BUCKET_COUNT} are counted exactly. Larger values fall into buckets whose width doubles
+ * every {@value #HALF_SUB_BUCKET_COUNT} buckets, so that a recorded value is off by less than 1/{@value #HALF_SUB_BUCKET_COUNT}
+ * of the value. The buckets cover the whole range of {@code long} with a fixed array, so recording never allocates.</p>
+ */
+final class LogLinearHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+    private static final int MAX_SHIFT = Long.SIZE - SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(SUB_BUCKET_COUNT + MAX_SHIFT * HALF_SUB_BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    void record(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Cannot record negative value " + value);
+        }
+        counts.incrementAndGet(bucketIndex(value));
+        totalCount.incrementAndGet();
+        maxValue.accumulateAndGet(value, Math::max);
+    }
+
+    long getTotalCount() {
+        return totalCount.get();
+    }
+
+    long getMaxValue() {
+        return maxValue.get();
+    }
+
+    /**
+     * Returns the smallest recorded value such that at least the given fraction of the recorded values is less than or equal to it,
+     * within the precision of the buckets. The result never exceeds the largest recorded value. Returns 0 when nothing has been recorded.
+     */
+    long getValueAtQuantile(double quantile) {
+        long total = totalCount.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long max = maxValue.get();
+        long seen = 0;
+        for (int index = 0; index < counts.length(); index++) {
+            seen += counts.get(index);
+            if (seen >= rank) {
+                return Math.min(highestValueInBucket(index), max);
+            }
+        }
+        // Values recorded concurrently with this call may be counted in the total but not yet in a bucket
+        return max;
+    }
+
+    // Visible for testing
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        // Keep the top SUB_BUCKET_BITS - 1 significant bits below the leading one
+        int shift = (Long.SIZE - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - HALF_SUB_BUCKET_COUNT;
+        return SUB_BUCKET_COUNT + (shift - 1) * HALF_SUB_BUCKET_COUNT + subBucket;
+    }
+
+    // Visible for testing
+    static long highestValueInBucket(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / HALF_SUB_BUCKET_COUNT + 1;
+        long subBucket = (index - SUB_BUCKET_COUNT) % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+        long lowest = subBucket << shift;
+        long highest = lowest + (1L << shift) - 1;
+        // The last bucket reaches past Long.MAX_VALUE
+        return highest < lowest ? Long.MAX_VALUE : highest;
+    }
+}
@@ -0,0 +1,420 @@
+package org.gradle.trace.buildops;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import org.gradle.profiler.client.protocol.messages.BuildMeasurements;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.management.ListenerNotFoundException;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.ALLOCATED_BYTES;
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.HEAP_AFTER_GC;
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.IO_READ_BYTES;
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.IO_WRITE_BYTES;
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.PEAK_ALLOCATION_RATE;
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.PEAK_HEAP;
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.PEAK_THREAD_COUNT;
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.PROCESS_CPU_TIME;
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.memoryPoolMeasurementName;
+
+/**
+ * Samples the resources used by the daemon at a fixed interval while a build runs.
+ *
+ * <p>The CPU time, allocated memory and I/O of the build are the difference between the first and the last sample.
+ * The peak heap usage of each pool and the peak thread count are tracked by the JVM, and reset when sampling starts,
+ * so they do not depend on the interval. The pools reach their peaks at different times, so the peak usage of the whole heap is sampled instead.
+ * The heap usage after GC is the largest one reported by the GC notifications.
+ * Every sample is also written as Chrome trace counter events to the time series, when there is one.</p>
+ */
+class ResourceSampler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourceSampler.class);
+    private static final Path PROC_SELF_IO = Paths.get("/proc/self/io");
+    private static final double BYTES_PER_MIB = 1024.0 * 1024.0;
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+    @Nullable
+    private static final Method TOTAL_THREAD_ALLOCATED_BYTES = findTotalThreadAllocatedBytes();
+
+    private final long intervalNanos;
+    @Nullable
+    private final Writer timeSeries;
+    private final OperatingSystemMXBean operatingSystem = ManagementFactory.getOperatingSystemMXBean();
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+    private final Map<GarbageCollectorMXBean, NotificationListener> gcListeners = new HashMap<>();
+    private final int availableProcessors = Runtime.getRuntime().availableProcessors();
+    private ScheduledExecutorService executor;
+
+    // Guarded by this
+    private Snapshot first;
+    private Snapshot previous;
+    private int sampleCount;
+    private long peakAllocationRate = -1;
+    private long peakHeapUsed;
+    private long peakHeapAfterGc = -1;
+    private final Map<String, Long> peakHeapAfterGcByPool = new LinkedHashMap<>();
+    private boolean hasTimeSeriesEvents;
+
+    ResourceSampler(Duration interval, @Nullable Writer timeSeries) {
+        this.intervalNanos = interval.toNanos();
+        this.timeSeries = timeSeries;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                heapPools.add(pool);
+            }
+        }
+    }
+
+    void start() {
+        for (MemoryPoolMXBean pool : heapPools) {
+            pool.resetPeakUsage();
+        }
+        threads.resetPeakThreadCount();
+        // The listeners write to the time series as soon as they are registered, so only register them once the header has been written
+        synchronized (this) {
+            writeTimeSeries("{\"traceEvents\": [\n");
+            record(takeSnapshot());
+        }
+        for (GarbageCollectorMXBean garbageCollector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            NotificationListener listener = (notification, handback) -> {
+                if (notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                    GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                    recordHeapAfterGc(System.nanoTime(), heapUsedByPool(info.getGcInfo().getMemoryUsageAfterGc()));
+                }
+            };
+            ((NotificationEmitter) garbageCollector).addNotificationListener(listener, null, null);
+            gcListeners.put(garbageCollector, listener);
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gradle-profiler resource sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(() -> record(takeSnapshot()), intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops sampling and returns the measurements of the sampled period.
+     */
+    List<BuildMeasurements.Measurement> stop() {
+        // Let a sample that is being taken finish, as interrupting it would interrupt writing the time series
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                LOGGER.warn("Timed out waiting for the resource sampler to stop");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        gcListeners.forEach((garbageCollector, listener) -> {
+            try {
+                ((NotificationEmitter) garbageCollector).removeNotificationListener(listener);
+            } catch (ListenerNotFoundException e) {
+                // Ignore
+            }
+        });
+        record(takeSnapshot());
+        Map<String, Long> peakHeapByPool = new LinkedHashMap<>();
+        for (MemoryPoolMXBean pool : heapPools) {
+            MemoryUsage peakUsage = pool.getPeakUsage();
+            if (peakUsage != null) {
+                peakHeapByPool.put(pool.getName(), peakUsage.getUsed());
+            }
+        }
+        List<BuildMeasurements.Measurement> result = result(peakHeapByPool, threads.getPeakThreadCount());
+        closeTimeSeries();
+        return result;
+    }
+
+    private synchronized void closeTimeSeries() {
+        if (timeSeries == null) {
+            return;
+        }
+        writeTimeSeries("\n]}\n");
+        try {
+            timeSeries.close();
+        } catch (IOException e) {
+            LOGGER.warn("Could not write resource usage time series", e);
+        }
+    }
+
+    private Snapshot takeSnapshot() {
+        long[] io = readProcessIo();
+        return new Snapshot(
+            System.nanoTime(),
+            processCpuTime(),
+            allocatedBytes(),
+            memory.getHeapMemoryUsage().getUsed(),
+            threads.getThreadCount(),
+            io[0],
+            io[1]
+        );
+    }
+
+    private long processCpuTime() {
+        if (operatingSystem instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) operatingSystem).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    private long allocatedBytes() {
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        if (!allocations.isThreadAllocatedMemorySupported() || !allocations.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        if (TOTAL_THREAD_ALLOCATED_BYTES != null) {
+            try {
+                return (Long) TOTAL_THREAD_ALLOCATED_BYTES.invoke(allocations);
+            } catch (ReflectiveOperationException e) {
+                // Fall back to the allocations of the live threads
+            }
+        }
+        // Only the allocations of the live threads are available, so those of threads that have finished since the previous sample are missing
+        long total = 0;
+        for (long allocated : allocations.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (allocated > 0) {
+                total += allocated;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Returns {@code com.sun.management.ThreadMXBean.getTotalThreadAllocatedBytes()}, which is only available on Java 21 and later.
+     */
+    @Nullable
+    private static Method findTotalThreadAllocatedBytes() {
+        try {
+            return com.sun.management.ThreadMXBean.class.getMethod("getTotalThreadAllocatedBytes");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the bytes read and written by the process, or -1 when {@code /proc/self/io} is not available.
+     */
+    private static long[] readProcessIo() {
+        long[] io = {-1, -1};
+        if (!Files.isReadable(PROC_SELF_IO)) {
+            return io;
+        }
+        try {
+            for (String line : Files.readAllLines(PROC_SELF_IO, StandardCharsets.US_ASCII)) {
+                if (line.startsWith("read_bytes:")) {
+                    io[0] = Long.parseLong(line.substring("read_bytes:".length()).trim());
+                } else if (line.startsWith("write_bytes:")) {
+                    io[1] = Long.parseLong(line.substring("write_bytes:".length()).trim());
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            return new long[]{-1, -1};
+        }
+        return io;
+    }
+
+    private Map<String, Long> heapUsedByPool(Map<String, MemoryUsage> usageByPool) {
+        Map<String, Long> heapUsedByPool = new LinkedHashMap<>();
+        for (MemoryPoolMXBean pool : heapPools) {
+            MemoryUsage usage = usageByPool.get(pool.getName());
+            if (usage != null) {
+                heapUsedByPool.put(pool.getName(), usage.getUsed());
+            }
+        }
+        return heapUsedByPool;
+    }
+
+    // Visible for testing
+    synchronized void record(Snapshot snapshot) {
+        sampleCount++;
+        peakHeapUsed = Math.max(peakHeapUsed, snapshot.heapUsed);
+        Map<String, Double> cpu = new LinkedHashMap<>();
+        Map<String, Double> allocationRate = new LinkedHashMap<>();
+        Map<String, Double> io = new LinkedHashMap<>();
+        if (previous != null) {
+            long elapsedNanos = snapshot.timestampNanos - previous.timestampNanos;
+            if (elapsedNanos > 0) {
+                if (snapshot.cpuTime >= 0 && previous.cpuTime >= 0) {
+                    cpu.put("process %", (snapshot.cpuTime - previous.cpuTime) * 100.0 / elapsedNanos / availableProcessors);
+                }
+                if (snapshot.allocatedBytes >= 0 && previous.allocatedBytes >= 0) {
+                    long rate = (long) (Math.max(0, snapshot.allocatedBytes - previous.allocatedBytes) * NANOS_PER_SECOND / elapsedNanos);
+                    peakAllocationRate = Math.max(peakAllocationRate, rate);
+                    allocationRate.put("MiB/s", rate / BYTES_PER_MIB);
+                }
+                if (snapshot.ioReadBytes >= 0 && previous.ioReadBytes >= 0) {
+                    io.put("read MiB/s", (snapshot.ioReadBytes - previous.ioReadBytes) * NANOS_PER_SECOND / elapsedNanos / BYTES_PER_MIB);
+                    io.put("write MiB/s", (snapshot.ioWriteBytes - previous.ioWriteBytes) * NANOS_PER_SECOND / elapsedNanos / BYTES_PER_MIB);
+                }
+            }
+        } else {
+            first = snapshot;
+        }
+        previous = snapshot;
+
+        writeCounter("CPU", snapshot.timestampNanos, cpu);
+        writeCounter("allocation rate", snapshot.timestampNanos, allocationRate);
+        writeCounter("heap", snapshot.timestampNanos, singleValue("used MiB", snapshot.heapUsed / BYTES_PER_MIB));
+        writeCounter("threads", snapshot.timestampNanos, singleValue("live", snapshot.threadCount));
+        writeCounter("I/O", snapshot.timestampNanos, io);
+    }
+
+    // Visible for testing
+    synchronized void recordHeapAfterGc(long timestampNanos, Map<String, Long> heapUsedByPool) {
+        long total = 0;
+        Map<String, Double> counter = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : heapUsedByPool.entrySet()) {
+            total += entry.getValue();
+            peakHeapAfterGcByPool.merge(entry.getKey(), entry.getValue(), Math::max);
+            counter.put(entry.getKey() + " MiB", entry.getValue() / BYTES_PER_MIB);
+        }
+        peakHeapAfterGc = Math.max(peakHeapAfterGc, total);
+        writeCounter("heap after GC", timestampNanos, counter);
+    }
+
+    /**
+     * Returns the measurements of the recorded samples. Measurements that could not be taken on this JVM or OS are left out.
+     */
+    // Visible for testing
+    synchronized List<BuildMeasurements.Measurement> result(Map<String, Long> peakHeapByPool, int peakThreadCount) {
+        List<BuildMeasurements.Measurement> result = new ArrayList<>();
+        if (first == null) {
+            return result;
+        }
+        if (first.cpuTime >= 0 && previous.cpuTime >= 0) {
+            add(result, PROCESS_CPU_TIME, TimeUnit.NANOSECONDS.toMillis(previous.cpuTime - first.cpuTime));
+        }
+        if (first.allocatedBytes >= 0 && previous.allocatedBytes >= 0) {
+            add(result, ALLOCATED_BYTES, Math.max(0, previous.allocatedBytes - first.allocatedBytes));
+        }
+        if (peakAllocationRate >= 0) {
+            add(result, PEAK_ALLOCATION_RATE, peakAllocationRate);
+        }
+        add(result, PEAK_HEAP, peakHeapUsed);
+        peakHeapByPool.forEach((pool, used) -> add(result, memoryPoolMeasurementName(PEAK_HEAP, pool), used));
+        if (peakHeapAfterGc >= 0) {
+            add(result, HEAP_AFTER_GC, peakHeapAfterGc);
+            peakHeapAfterGcByPool.forEach((pool, used) -> add(result, memoryPoolMeasurementName(HEAP_AFTER_GC, pool), used));
+        }
+        add(result, PEAK_THREAD_COUNT, peakThreadCount);
+        if (first.ioReadBytes >= 0 && previous.ioReadBytes >= 0) {
+            add(result, IO_READ_BYTES, previous.ioReadBytes - first.ioReadBytes);
+            add(result, IO_WRITE_BYTES, previous.ioWriteBytes - first.ioWriteBytes);
+        }
+        return result;
+    }
+
+    private void add(List<BuildMeasurements.Measurement> result, String name, long value) {
+        result.add(new BuildMeasurements.Measurement(name, value, sampleCount));
+    }
+
+    private static Map<String, Double> singleValue(String name, double value) {
+        Map<String, Double> values = new LinkedHashMap<>();
+        values.put(name, value);
+        return values;
+    }
+
+    private void writeCounter(String name, long timestampNanos, Map<String, Double> values) {
+        if (timeSeries == null || values.isEmpty()) {
+            return;
+        }
+        StringBuilder json = new StringBuilder();
+        if (hasTimeSeriesEvents) {
+            json.append(",\n");
+        }
+        json.append("{\"name\": ");
+        appendString(json, name);
+        json.append(", \"ph\": \"C\", \"pid\": 0, \"tid\": 0, \"ts\": ").append(timestampNanos / 1000).append(", \"args\": {");
+        boolean firstValue = true;
+        for (Map.Entry<String, Double> entry : values.entrySet()) {
+            if (!firstValue) {
+                json.append(", ");
+            }
+            firstValue = false;
+            appendString(json, entry.getKey());
+            json.append(": ").append(entry.getValue());
+        }
+        json.append("}}");
+        hasTimeSeriesEvents = true;
+        writeTimeSeries(json);
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\');
+            }
+            json.append(c);
+        }
+        json.append('"');
+    }
+
+    private void writeTimeSeries(CharSequence text) {
+        if (timeSeries == null) {
+            return;
+        }
+        try {
+            timeSeries.append(text);
+        } catch (IOException e) {
+            LOGGER.warn("Could not write resource usage time series", e);
+        }
+    }
+
+    /**
+     * The resource usage of the process at a point in time. Values that are not available are -1.
+     */
+    // Visible for testing
+    static class Snapshot {
+        final long timestampNanos;
+        final long cpuTime;
+        final long allocatedBytes;
+        final long heapUsed;
+        final int threadCount;
+        final long ioReadBytes;
+        final long ioWriteBytes;
+
+        Snapshot(long timestampNanos, long cpuTime, long allocatedBytes, long heapUsed, int threadCount, long ioReadBytes, long ioWriteBytes) {
+            this.timestampNanos = timestampNanos;
+            this.cpuTime = cpuTime;
+            this.allocatedBytes = allocatedBytes;
+            this.heapUsed = heapUsed;
+            this.threadCount = threadCount;
+            this.ioReadBytes = ioReadBytes;
+            this.ioWriteBytes = ioWriteBytes;
+        }
+    }
+}
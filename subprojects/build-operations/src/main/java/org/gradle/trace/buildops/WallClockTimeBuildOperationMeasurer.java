@@ -1,43 +1,137 @@
 package org.gradle.trace.buildops;
 
-import com.google.common.collect.Range;
-import com.google.common.collect.RangeSet;
-import com.google.common.collect.TreeRangeSet;
-
 import java.time.Duration;
+import java.util.Arrays;
 import java.util.Optional;
 import java.util.OptionalLong;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 final class WallClockTimeBuildOperationMeasurer implements BuildOperationMeasurer {
     // This would be much simpler and based on OperationStartEvent, but we can't rely on those coming in
     // with an order consistent with their start times. So we must record all ranges.
-    private final RangeSet<Long> operationTimeRanges = TreeRangeSet.create();
-    private final ReentrantLock lock = new ReentrantLock();
+    // Each thread records its ranges into its own buffer, so that finishing operations on many workers does not contend.
+    private final Queue<IntervalBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<IntervalBuffer> threadBuffer = ThreadLocal.withInitial(() -> {
+        IntervalBuffer buffer = new IntervalBuffer();
+        buffers.add(buffer);
+        return buffer;
+    });
 
     @Override
     public void update(long startTime, long endTime) {
-        Range<Long> eventRange = Range.closed(startTime, endTime);
-
-        lock.lock();
-        try {
-            operationTimeRanges.add(eventRange);
-        } finally {
-            lock.unlock();
-        }
+        threadBuffer.get().add(startTime, Math.max(startTime, endTime));
     }
 
     @Override
     public Optional<Duration> computeFinalValue(OptionalLong buildStartTime) {
+        IntervalBuffer.Chunk[] chunks = buffers.stream().map(buffer -> buffer.current).toArray(IntervalBuffer.Chunk[]::new);
+        int[] sizes = new int[chunks.length];
+        int count = 0;
+        for (int i = 0; i < chunks.length; i++) {
+            sizes[i] = chunks[i].size;
+            count += sizes[i];
+        }
+        long[] starts = new long[count];
+        long[] ends = new long[count];
+        int offset = 0;
+        for (int i = 0; i < chunks.length; i++) {
+            System.arraycopy(chunks[i].starts, 0, starts, offset, sizes[i]);
+            System.arraycopy(chunks[i].ends, 0, ends, offset, sizes[i]);
+            offset += sizes[i];
+        }
+
+        int merged = merge(starts, ends, count);
         long totalTime = 0;
-        lock.lock();
-        try {
-            for (Range<Long> range : operationTimeRanges.asRanges()) {
-                totalTime += range.upperEndpoint() - range.lowerEndpoint();
-            }
-        } finally {
-            lock.unlock();
+        for (int i = 0; i < merged; i++) {
+            totalTime += ends[i] - starts[i];
         }
         return Optional.of(Duration.ofMillis(totalTime));
     }
+
+    /**
+     * Merges the given closed intervals into disjoint intervals, which replace the first elements of the arrays.
+     * Intervals that overlap or touch are merged.
+     *
+     * <p>The starts and the ends are sorted independently, so the start and end of an interval do not stay together.
+     * The merged intervals do not depend on that: a merged interval ends at the first end that leaves no interval open.</p>
+     *
+     * @return the number of merged intervals
+     */
+    // Visible for testing
+    static int merge(long[] starts, long[] ends, int count) {
+        if (count == 0) {
+            return 0;
+        }
+        Arrays.sort(starts, 0, count);
+        Arrays.sort(ends, 0, count);
+        int merged = 0;
+        int open = 0;
+        int nextEnd = 0;
+        for (int nextStart = 0; nextStart < count; nextStart++) {
+            while (ends[nextEnd] < starts[nextStart]) {
+                open--;
+                if (open == 0) {
+                    ends[merged++] = ends[nextEnd];
+                }
+                nextEnd++;
+            }
+            if (open == 0) {
+                starts[merged] = starts[nextStart];
+            }
+            open++;
+        }
+        // The intervals that are still open all end by the last end
+        ends[merged++] = ends[count - 1];
+        return merged;
+    }
+
+    /**
+     * The ranges recorded by a single thread. Only the owning thread adds ranges, other threads only read them.
+     */
+    private static final class IntervalBuffer {
+        private static final int INITIAL_CAPACITY = 256;
+
+        volatile Chunk current = new Chunk(INITIAL_CAPACITY);
+
+        void add(long start, long end) {
+            Chunk chunk = current;
+            int size = chunk.size;
+            if (size == chunk.starts.length) {
+                chunk = compact(chunk);
+                size = chunk.size;
+                current = chunk;
+            }
+            chunk.starts[size] = start;
+            chunk.ends[size] = end;
+            // Publish the size last, so that readers that see it also see the range
+            chunk.size = size + 1;
+        }
+
+        /**
+         * Merges the ranges of a full chunk into a new chunk, so that readers of the full chunk are not affected.
+         * Operations that run one after the other on the same thread usually touch at millisecond precision, so merging frees most of the space.
+         */
+        private static Chunk compact(Chunk full) {
+            long[] starts = full.starts.clone();
+            long[] ends = full.ends.clone();
+            int merged = merge(starts, ends, full.size);
+            Chunk compacted = new Chunk(Math.max(full.starts.length, merged * 2));
+            System.arraycopy(starts, 0, compacted.starts, 0, merged);
+            System.arraycopy(ends, 0, compacted.ends, 0, merged);
+            compacted.size = merged;
+            return compacted;
+        }
+
+        static final class Chunk {
+            final long[] starts;
+            final long[] ends;
+            volatile int size;
+
+            Chunk(int capacity) {
+                this.starts = new long[capacity];
+                this.ends = new long[capacity];
+            }
+        }
+    }
 }
@@ -0,0 +1,54 @@
+package org.gradle.trace.buildops
+
+import org.gradle.internal.operations.OperationFinishEvent
+import spock.lang.Specification
+
+import static org.gradle.profiler.buildops.BuildOperationMeasurementKind.CUMULATIVE_TIME
+
+class BuildOperationCollectorDispatcherTest extends Specification {
+
+    interface SomeDetails {}
+
+    interface OtherDetails {}
+
+    static class SomeDetailsImpl implements SomeDetails {}
+
+    static class BothDetailsImpl implements SomeDetails, OtherDetails {}
+
+    def someCollector = collector(SomeDetails, "some")
+    def otherCollector = collector(OtherDetails, "other")
+    def dispatcher = new BuildOperationCollectorDispatcher([someCollector, otherCollector])
+
+    def "passes operations to the collectors that match their details"() {
+        when:
+        dispatcher.dispatch(new SomeDetailsImpl(), new OperationFinishEvent(0, 10, null, null))
+        dispatcher.dispatch(new BothDetailsImpl(), new OperationFinishEvent(0, 20, null, null))
+
+        then:
+        someCollector.result(OptionalLong.empty())*.value == [30]
+        someCollector.result(OptionalLong.empty())*.count == [2]
+        otherCollector.result(OptionalLong.empty())*.value == [20]
+        otherCollector.result(OptionalLong.empty())*.count == [1]
+    }
+
+    def "ignores operations with details that no collector measures"() {
+        when:
+        dispatcher.dispatch("unrelated details", new OperationFinishEvent(0, 10, null, null))
+
+        then:
+        someCollector.result(OptionalLong.empty())*.count == [0]
+        otherCollector.result(OptionalLong.empty())*.count == [0]
+    }
+
+    def "can dispatch without collectors"() {
+        when:
+        new BuildOperationCollectorDispatcher([]).dispatch(new SomeDetailsImpl(), new OperationFinishEvent(0, 10, null, null))
+
+        then:
+        noExceptionThrown()
+    }
+
+    private static BuildOperationTrace.BuildOperationCollector collector(Class<?> detailsType, String name) {
+        new BuildOperationTrace.BuildOperationCollector(detailsType, name, BuildOperationMeasurer.createForKind(CUMULATIVE_TIME))
+    }
+}
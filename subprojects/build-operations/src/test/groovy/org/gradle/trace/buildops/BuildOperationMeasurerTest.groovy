@@ -8,6 +8,7 @@ import java.util.Optional
 import java.util.OptionalLong
 
 import static org.gradle.profiler.buildops.BuildOperationMeasurementKind.CUMULATIVE_TIME
+import static org.gradle.profiler.buildops.BuildOperationMeasurementKind.HISTOGRAM
 import static org.gradle.profiler.buildops.BuildOperationMeasurementKind.TIME_TO_FIRST_EXCLUSIVE
 import static org.gradle.profiler.buildops.BuildOperationMeasurementKind.TIME_TO_LAST_INCLUSIVE
 import static org.gradle.profiler.buildops.BuildOperationMeasurementKind.WALL_CLOCK_TIME
@@ -159,6 +160,48 @@ class BuildOperationMeasurerTest extends Specification {
         measurer.computeFinalValue(OptionalLong.of(0L)) == Optional.of(Duration.ofMillis(450))
     }
 
+    def "wall clock time merges events recorded by different threads"() {
+        given:
+        def measurer = BuildOperationMeasurer.createForKind(WALL_CLOCK_TIME)
+
+        when:
+        def threads = (0..<8).collect { worker ->
+            Thread.start {
+                // Each worker runs 1000 operations of 10ms one after the other, workers overlap by 5ms
+                1000.times { measurer.update(worker * 5 + it * 10, worker * 5 + it * 10 + 10) }
+            }
+        }
+        threads*.join()
+
+        then:
+        measurer.computeFinalValue(OptionalLong.empty()) == Optional.of(Duration.ofMillis(7 * 5 + 10_000))
+    }
+
+    def "wall clock time keeps disjoint events when compacting"() {
+        given:
+        def measurer = BuildOperationMeasurer.createForKind(WALL_CLOCK_TIME)
+
+        when:
+        10_000.times { measurer.update(it * 10, it * 10 + 3) }
+
+        then:
+        measurer.computeFinalValue(OptionalLong.empty()) == Optional.of(Duration.ofMillis(30_000))
+    }
+
+    def "merging intervals joins overlapping and touching intervals"() {
+        given:
+        long[] starts = [20, 0, 5, 30, 40]
+        long[] ends = [30, 10, 8, 35, 40]
+
+        when:
+        def merged = WallClockTimeBuildOperationMeasurer.merge(starts, ends, 5)
+
+        then:
+        merged == 3
+        starts[0..<merged] == [0, 20, 40]
+        ends[0..<merged] == [10, 35, 40]
+    }
+
     // --- TIME_TO_FIRST_EXCLUSIVE ---
 
     def "time to first exclusive with no events returns zero"() {
@@ -270,4 +313,42 @@ class BuildOperationMeasurerTest extends Specification {
         then:
         measurer.computeFinalValue(OptionalLong.of(100L)) == Optional.of(Duration.ZERO)
     }
+
+    // --- HISTOGRAM ---
+
+    def "histogram reports the percentiles of the durations"() {
+        given:
+        def measurer = BuildOperationMeasurer.createForKind(HISTOGRAM)
+
+        when:
+        (1..100).each { measurer.update(1000, 1000 + it) }
+
+        then:
+        measurer.computeFinalValue(OptionalLong.empty()) == Optional.of(Duration.ofMillis(50))
+        measurer.computeFinalValues("op", OptionalLong.empty()) == [
+            "op:p50": Duration.ofMillis(50),
+            "op:p90": Duration.ofMillis(90),
+            "op:p99": Duration.ofMillis(99),
+            "op:max": Duration.ofMillis(100),
+        ]
+    }
+
+    def "histogram with no events returns zero for each statistic"() {
+        given:
+        def measurer = BuildOperationMeasurer.createForKind(HISTOGRAM)
+
+        expect:
+        measurer.computeFinalValues("op", OptionalLong.of(0L)).values() as Set == [Duration.ZERO] as Set
+    }
+
+    def "other kinds report a single value under the measurement name"() {
+        given:
+        def measurer = BuildOperationMeasurer.createForKind(CUMULATIVE_TIME)
+
+        when:
+        measurer.update(100, 300)
+
+        then:
+        measurer.computeFinalValues("op", OptionalLong.empty()) == ["op": Duration.ofMillis(200)]
+    }
 }
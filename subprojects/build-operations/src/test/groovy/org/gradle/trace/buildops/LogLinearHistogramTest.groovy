@@ -0,0 +1,80 @@
+package org.gradle.trace.buildops
+
+import spock.lang.Specification
+
+class LogLinearHistogramTest extends Specification {
+
+    def "empty histogram reports zero"() {
+        given:
+        def histogram = new LogLinearHistogram()
+
+        expect:
+        histogram.totalCount == 0
+        histogram.maxValue == 0
+        histogram.getValueAtQuantile(0.5) == 0
+    }
+
+    def "small values are recorded exactly"() {
+        given:
+        def histogram = new LogLinearHistogram()
+
+        when:
+        (1..100).each { histogram.record(it) }
+
+        then:
+        histogram.totalCount == 100
+        histogram.getValueAtQuantile(0.5) == 50
+        histogram.getValueAtQuantile(0.9) == 90
+        histogram.getValueAtQuantile(0.99) == 99
+        histogram.getValueAtQuantile(1.0) == 100
+        histogram.maxValue == 100
+    }
+
+    def "large values are recorded within the precision of the buckets"() {
+        given:
+        def histogram = new LogLinearHistogram()
+
+        when:
+        (1..1000).each { histogram.record(it * 1000) }
+
+        then:
+        Math.abs(histogram.getValueAtQuantile(0.5) - 500_000) <= 500_000 / LogLinearHistogram.HALF_SUB_BUCKET_COUNT
+        Math.abs(histogram.getValueAtQuantile(0.99) - 990_000) <= 990_000 / LogLinearHistogram.HALF_SUB_BUCKET_COUNT
+        histogram.maxValue == 1_000_000
+    }
+
+    def "a few slow values show up in the upper percentiles only"() {
+        given:
+        def histogram = new LogLinearHistogram()
+
+        when:
+        98.times { histogram.record(10) }
+        2.times { histogram.record(5000) }
+
+        then:
+        histogram.getValueAtQuantile(0.5) == 10
+        histogram.getValueAtQuantile(0.9) == 10
+        histogram.getValueAtQuantile(0.99) >= 5000
+        histogram.maxValue == 5000
+    }
+
+    def "value #value falls into a bucket that contains it"() {
+        when:
+        def index = LogLinearHistogram.bucketIndex(value)
+
+        then:
+        LogLinearHistogram.highestValueInBucket(index) >= value
+        index == 0 || LogLinearHistogram.highestValueInBucket(index - 1) < value
+
+        where:
+        value << [0L, 1L, 127L, 128L, 129L, 255L, 256L, 1000L, 123_456_789L, Long.MAX_VALUE]
+    }
+
+    def "rejects negative values"() {
+        when:
+        new LogLinearHistogram().record(-1)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+}
@@ -0,0 +1,121 @@
+package org.gradle.trace.buildops
+
+import groovy.json.JsonSlurper
+import spock.lang.Specification
+
+import java.time.Duration
+
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.ALLOCATED_BYTES
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.HEAP_AFTER_GC
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.IO_READ_BYTES
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.IO_WRITE_BYTES
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.PEAK_ALLOCATION_RATE
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.PEAK_HEAP
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.PEAK_THREAD_COUNT
+import static org.gradle.profiler.buildops.internal.InternalBuildMeasurements.PROCESS_CPU_TIME
+
+class ResourceSamplerTest extends Specification {
+    private static final long MS = 1_000_000
+    private static final long MIB = 1024 * 1024
+
+    def "aggregates the samples of a build"() {
+        def sampler = new ResourceSampler(Duration.ofMillis(10), null)
+
+        when:
+        sampler.record(snapshot(0, 100 * MS, 10 * MIB, 50 * MIB, 20, 1000, 2000))
+        sampler.record(snapshot(10 * MS, 105 * MS, 30 * MIB, 80 * MIB, 25, 1500, 2000))
+        sampler.record(snapshot(20 * MS, 112 * MS, 35 * MIB, 60 * MIB, 22, 4000, 3000))
+        sampler.recordHeapAfterGc(15 * MS, ["eden": 0L, "old": 40 * MIB])
+        sampler.recordHeapAfterGc(18 * MS, ["eden": 0L, "old": 30 * MIB])
+        def result = sampler.result(["eden": 70 * MIB, "old": 40 * MIB], 27)
+
+        then:
+        def values = result.collectEntries { [it.name, it.value] }
+        values == [
+            (PROCESS_CPU_TIME): 12L,
+            (ALLOCATED_BYTES): 25 * MIB,
+            (PEAK_ALLOCATION_RATE): 2000 * MIB,
+            (PEAK_HEAP): 80 * MIB,
+            (PEAK_HEAP + ":eden"): 70 * MIB,
+            (PEAK_HEAP + ":old"): 40 * MIB,
+            (HEAP_AFTER_GC): 40 * MIB,
+            (HEAP_AFTER_GC + ":eden"): 0L,
+            (HEAP_AFTER_GC + ":old"): 40 * MIB,
+            (PEAK_THREAD_COUNT): 27L,
+            (IO_READ_BYTES): 3000L,
+            (IO_WRITE_BYTES): 1000L,
+        ]
+        result*.count.unique() == [3]
+    }
+
+    def "leaves out the measurements that are not available"() {
+        def sampler = new ResourceSampler(Duration.ofMillis(10), null)
+
+        when:
+        sampler.record(snapshot(0, -1, -1, 50 * MIB, 20, -1, -1))
+        sampler.record(snapshot(10 * MS, -1, -1, 60 * MIB, 20, -1, -1))
+        def result = sampler.result([:], 20)
+
+        then:
+        result*.name == [PEAK_HEAP, PEAK_THREAD_COUNT]
+    }
+
+    def "writes the samples as a Chrome trace"() {
+        def timeSeries = new StringWriter()
+        def sampler = new ResourceSampler(Duration.ofMillis(10), timeSeries)
+
+        when:
+        sampler.start()
+        Thread.sleep(50)
+        def result = sampler.stop()
+
+        then:
+        result*.name.containsAll([PROCESS_CPU_TIME, PEAK_HEAP, PEAK_THREAD_COUNT])
+        result.find { it.name == PEAK_THREAD_COUNT }.value > 0
+        result.find { it.name == PEAK_THREAD_COUNT }.count >= 2
+
+        def events = new JsonSlurper().parseText(timeSeries.toString()).traceEvents
+        events*.ph.unique() == ["C"]
+        events*.name.containsAll(["CPU", "heap", "threads"])
+        events.findAll { it.name == "threads" }.size() >= 2
+    }
+
+    def "writes a valid Chrome trace when a GC happens while the sampler starts"() {
+        def timeSeries = new GcOnFirstWriteWriter()
+        def sampler = new ResourceSampler(Duration.ofMillis(10), timeSeries)
+        timeSeries.sampler = sampler
+
+        when:
+        sampler.start()
+        timeSeries.gc.join()
+        sampler.stop()
+
+        then:
+        def text = timeSeries.toString()
+        text.startsWith("{\"traceEvents\": [\n")
+        def events = new JsonSlurper().parseText(text).traceEvents
+        events*.name.contains("heap after GC")
+    }
+
+    private static ResourceSampler.Snapshot snapshot(long timestamp, long cpuTime, long allocated, long heapUsed, int threads, long ioRead, long ioWrite) {
+        new ResourceSampler.Snapshot(timestamp, cpuTime, allocated, heapUsed, threads, ioRead, ioWrite)
+    }
+
+    /**
+     * Reports a GC from another thread while the first text is written, the same way the GC notification listeners do.
+     */
+    private static class GcOnFirstWriteWriter extends StringWriter {
+        ResourceSampler sampler
+        Thread gc
+
+        @Override
+        StringWriter append(CharSequence text) {
+            if (gc == null) {
+                gc = new Thread({ sampler.recordHeapAfterGc(System.nanoTime(), ["old": MIB]) })
+                gc.start()
+                gc.join(100)
+            }
+            return super.append(text)
+        }
+    }
+}
@@ -4,9 +4,11 @@
 import org.gradle.trace.stream.AsyncWriter;
 
 import java.io.File;
-import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
 
 public class AsynchronousTraceWriter {
+    private static final String BUFFER_SIZE_PROPERTY = "org.gradle.profiler.chrome-trace.buffer-size";
+    private static final String OVERFLOW_PROPERTY = "org.gradle.profiler.chrome-trace.overflow";
 
     private final AsyncWriter<TraceEvent> eventQueue;
     private final File traceFile;
@@ -25,7 +27,9 @@ public AsynchronousTraceWriter(File traceFile) {
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
-        eventQueue = new AsyncWriter<>(traceFile, new TraceEventRenderer());
+        int bufferSize = Integer.getInteger(BUFFER_SIZE_PROPERTY, AsyncWriter.DEFAULT_CAPACITY);
+        AsyncWriter.OverflowPolicy overflowPolicy = AsyncWriter.OverflowPolicy.parse(System.getProperty(OVERFLOW_PROPERTY, "block"));
+        eventQueue = new AsyncWriter<>(traceFile.toPath(), new TraceEventRenderer(), bufferSize, overflowPolicy);
     }
 
     public void add(TraceEvent event) {
@@ -34,6 +38,10 @@ public void add(TraceEvent event) {
 
     public void finish() {
         eventQueue.stop();
+        AsyncWriter.Statistics statistics = eventQueue.getStatistics();
+        if (statistics.getDropped() > 0) {
+            Logging.getLogger(AsynchronousTraceWriter.class).warn("Dropped " + statistics.getDropped() + " trace events, as the trace writer could not keep up. Increase " + BUFFER_SIZE_PROPERTY + " to keep them.");
+        }
         if (System.getProperty("trace") == null) {
             return;
         }
@@ -44,28 +52,33 @@ private class TraceEventRenderer implements AsyncWriter.Renderer<TraceEvent> {
         boolean hasEvents;
 
         @Override
-        public void header(PrintWriter writer) {
-            writer.println("{\n" +
-                "  \"traceEvents\": [\n");
+        public void header(StringBuilder output) {
+            output.append("{\n" +
+                "  \"traceEvents\": [\n\n");
         }
 
         @Override
-        public void write(TraceEvent value, PrintWriter writer) {
+        public void write(TraceEvent value, StringBuilder output) {
             if (hasEvents) {
-                writer.print(',');
+                output.append(',');
             } else {
                 hasEvents = true;
             }
-            writer.print(value.toString().replaceAll("/\\\\/g", "/\""));
+            value.appendJson(output);
         }
 
         @Override
-        public void footer(PrintWriter writer) {
-            writer.println("],\n" +
+        public void footer(StringBuilder output) {
+            // Events that could not be buffered are recorded, so that the overhead of tracing can be judged
+            AsyncWriter.Statistics statistics = eventQueue.getStatistics();
+            output.append("],\n" +
                 "  \"displayTimeUnit\": \"ns\",\n" +
                 "  \"systemTraceEvents\": \"SystemTraceData\",\n" +
                 "  \"otherData\": {\n" +
-                "    \"version\": \"My Application v1.0\"\n" +
+                "    \"version\": \"My Application v1.0\",\n" +
+                "    \"droppedEvents\": \"").append(statistics.getDropped()).append("\",\n" +
+                "    \"delayedEvents\": \"").append(statistics.getDelayed()).append("\",\n" +
+                "    \"eventDelayMillis\": \"").append(statistics.getDelay(TimeUnit.MILLISECONDS)).append("\"\n" +
                 "  }\n" +
                 "}\n");
         }
@@ -3,39 +3,49 @@
 import java.util.Iterator;
 import java.util.Map;
 
+import static org.gradle.trace.util.JsonUtil.appendString;
+
 public class CountEvent implements TraceEvent {
     private final String name;
+    private final long threadId;
     private final long timestampNanos;
     private final Map<String, Double> info;
     private final String colorName;
 
     public CountEvent(String name, Map<String, Double> info, String colorName) {
         this.name = name;
+        this.threadId = Thread.currentThread().getId();
         this.timestampNanos = System.nanoTime();
         this.info = info;
         this.colorName = colorName;
     }
 
     @Override
-    public String toString() {
-        long timestamp = timestampNanos / 1000;
-
-        StringBuilder s = new StringBuilder();
-        s.append("{");
+    public void appendJson(StringBuilder json) {
+        json.append("{\"name\": ");
+        appendString(json, name);
+        json.append(", \"ph\": \"C\", \"pid\": 0, \"tid\": ").append(threadId)
+            .append(", \"ts\": ").append(timestampNanos / 1000)
+            .append(", \"args\": {");
         Iterator<Map.Entry<String, Double>> itr = info.entrySet().iterator();
         while (itr.hasNext()) {
             Map.Entry<String, Double> entry = itr.next();
-            s.append("\"").append(entry.getKey()).append("\": ").append(entry.getValue()).append("");
-            s.append(itr.hasNext() ? "," : "");
+            appendString(json, entry.getKey());
+            json.append(": ").append(entry.getValue());
+            json.append(itr.hasNext() ? "," : "");
         }
-        s.append("}");
-        String args = s.toString();
-
-        String cname = "";
+        json.append('}');
         if (colorName != null) {
-            cname = String.format(", \"cname\": \"%s\"", colorName);
+            json.append(", \"cname\": ");
+            appendString(json, colorName);
         }
+        json.append('}');
+    }
 
-        return String.format("{\"name\": \"%s\", \"ph\": \"C\", \"pid\": 0, \"tid\": %d, \"ts\": %d, \"args\": %s %s}", name, Thread.currentThread().getId(), timestamp, args, cname);
+    @Override
+    public String toString() {
+        StringBuilder json = new StringBuilder();
+        appendJson(json);
+        return json.toString();
     }
 }
@@ -3,6 +3,8 @@
 import java.util.Iterator;
 import java.util.Map;
 
+import static org.gradle.trace.util.JsonUtil.appendString;
+
 public class DurationEvent implements TraceEvent {
     private final String name;
     private final String category;
@@ -26,26 +28,36 @@ public Map<String, String> getInfo() {
     }
 
     @Override
-    public String toString() {
-        long elapsed = endTimestamp - startTimestamp;
-
-        StringBuilder s = new StringBuilder();
-        s.append("{");
+    public void appendJson(StringBuilder json) {
+        json.append("{\"name\": ");
+        appendString(json, name);
+        json.append(", \"cat\": ");
+        appendString(json, category);
+        json.append(", \"ph\": \"X\", \"pid\": 0, \"tid\": ").append(threadId)
+            .append(", \"ts\": ").append(startTimestamp)
+            .append(", \"dur\": ").append(endTimestamp - startTimestamp)
+            .append(", \"args\": {");
         Iterator<Map.Entry<String, String>> itr = info.entrySet().iterator();
         while (itr.hasNext()) {
             Map.Entry<String, String> entry = itr.next();
-            s.append("\"").append(entry.getKey()).append("\": \"").append(entry.getValue()).append("\"");
-            s.append(itr.hasNext() ? "," : "");
+            appendString(json, entry.getKey());
+            json.append(": ");
+            appendString(json, entry.getValue());
+            json.append(itr.hasNext() ? "," : "");
         }
-        s.append("}");
-        String args = s.toString();
-
-        String cname = "";
+        json.append('}');
         if (colorName != null) {
-            cname = String.format(", \"cname\": \"%s\"", colorName);
+            json.append(", \"cname\": ");
+            appendString(json, colorName);
         }
+        json.append('}');
+    }
 
-        return String.format("{\"name\": \"%s\", \"cat\": \"%s\", \"ph\": \"X\", \"pid\": 0, \"tid\": %d, \"ts\": %d, \"dur\": %d, \"args\": %s %s}", name, category, threadId, startTimestamp, elapsed, args, cname);
+    @Override
+    public String toString() {
+        StringBuilder json = new StringBuilder();
+        appendJson(json);
+        return json.toString();
     }
 
     public void finished(long timestampNanos) {
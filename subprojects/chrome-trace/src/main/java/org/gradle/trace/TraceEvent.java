@@ -1,4 +1,8 @@
 package org.gradle.trace;
 
 public interface TraceEvent {
+    /**
+     * Appends the event as a JSON object in the Chrome trace event format.
+     */
+    void appendJson(StringBuilder json);
 }
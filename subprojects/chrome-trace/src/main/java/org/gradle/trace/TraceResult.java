@@ -31,6 +31,13 @@ public void start(String name, String category, long timestampNanos, String colo
         events.put(name, new DurationEvent(name, category, timestampNanos, new HashMap<>(), colorName));
     }
 
+    /**
+     * Adds an event that has already finished.
+     */
+    public void add(TraceEvent event) {
+        traceWriter.add(event);
+    }
+
     public void finish(String name, long timestampNanos, Map<String, String> info) {
         DurationEvent event = events.remove(name);
         if (event != null) {
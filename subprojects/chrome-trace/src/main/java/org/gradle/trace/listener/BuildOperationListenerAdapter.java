@@ -22,7 +22,7 @@ static BuildOperationListenerAdapter create(Gradle gradle, TraceResult traceResu
             return new Gradle47BuildOperationListenerAdapter(gradle, new Gradle47BuildOperationListenerInvocationHandler(traceResult));
         }
         if (gradleVersion.compareTo(version("5.0")) >= 0) {
-            return new Gradle47BuildOperationListenerAdapter(gradle, new Gradle50BuildOperationListenerInvocationHandler(traceResult));
+            return new Gradle50BuildOperationListenerAdapter(gradle, traceResult);
         }
         throw new IllegalStateException("Gradle version " + gradleVersion + " not supported, 3.5+ required");
     }
@@ -0,0 +1,139 @@
+package org.gradle.trace.listener;
+
+import org.gradle.api.internal.TaskInternal;
+import org.gradle.api.internal.tasks.TaskExecutionOutcome;
+import org.gradle.api.internal.tasks.execution.ExecuteTaskBuildOperationDetails;
+import org.gradle.api.internal.tasks.execution.ExecuteTaskBuildOperationType;
+import org.gradle.internal.operations.BuildOperationDescriptor;
+import org.gradle.internal.operations.BuildOperationListener;
+import org.gradle.internal.operations.OperationFinishEvent;
+import org.gradle.internal.operations.OperationIdentifier;
+import org.gradle.internal.operations.OperationProgressEvent;
+import org.gradle.internal.operations.OperationStartEvent;
+import org.gradle.trace.TraceEvent;
+import org.gradle.trace.TraceResult;
+import org.gradle.trace.util.TimeUtil;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.gradle.trace.util.FilePathUtil.normalizePathInDisplayName;
+import static org.gradle.trace.util.JsonUtil.appendString;
+
+/**
+ * Traces build operations for Gradle 5.0 and later, by implementing the listener directly instead of through a proxy.
+ *
+ * <p>Running operations are tracked by their id, and the build thread only records what is needed to render the operation later.
+ * The name and JSON of the operation are rendered by the trace writer thread.</p>
+ */
+public class Gradle50BuildOperationListener implements BuildOperationListener {
+    private static final String CATEGORY_OPERATION = "BUILD_OPERATION";
+
+    private final TraceResult traceResult;
+    private final Map<Long, OperationEvent> running = new ConcurrentHashMap<>();
+
+    public Gradle50BuildOperationListener(TraceResult traceResult) {
+        this.traceResult = traceResult;
+    }
+
+    @Override
+    public void started(BuildOperationDescriptor buildOperation, OperationStartEvent startEvent) {
+        running.put(buildOperation.getId().getId(), new OperationEvent(buildOperation, TimeUtil.toNanoTime(startEvent.getStartTime()), Thread.currentThread().getId()));
+    }
+
+    @Override
+    public void progress(OperationIdentifier operationIdentifier, OperationProgressEvent progressEvent) {
+    }
+
+    @Override
+    public void finished(BuildOperationDescriptor buildOperation, OperationFinishEvent finishEvent) {
+        OperationEvent event = running.remove(buildOperation.getId().getId());
+        if (event != null) {
+            event.finished(TimeUtil.toNanoTime(finishEvent.getEndTime()), finishEvent.getResult());
+            traceResult.add(event);
+        }
+    }
+
+    /**
+     * Finishes the operations that are still running, for example the operation running the build.
+     */
+    public void finishRunning(long timestampNanos) {
+        for (Long id : new ArrayList<>(running.keySet())) {
+            OperationEvent event = running.remove(id);
+            if (event != null) {
+                event.finished(timestampNanos, null);
+                traceResult.add(event);
+            }
+        }
+    }
+
+    protected String getName(Object operation) {
+        BuildOperationDescriptor operationDescriptor = (BuildOperationDescriptor) operation;
+        TaskInternal task = getTask(operationDescriptor);
+        if (task == null) {
+            return normalizePathInDisplayName(operationDescriptor.getDisplayName()) + " (" + operationDescriptor.getId() + ")";
+        } else {
+            return task.getPath();
+        }
+    }
+
+    private static TaskInternal getTask(BuildOperationDescriptor operation) {
+        Object details = operation.getDetails();
+        if (details instanceof ExecuteTaskBuildOperationDetails) {
+            return ((ExecuteTaskBuildOperationDetails) details).getTask();
+        }
+        return null;
+    }
+
+    private class OperationEvent implements TraceEvent {
+        private final BuildOperationDescriptor operation;
+        private final long startTimestampNanos;
+        private final long threadId;
+        private long endTimestampNanos;
+        // Captured when the task finishes, as the state of the task is only meaningful then
+        private String taskOutcome;
+        private boolean taskEnabled;
+        private boolean taskCacheable;
+
+        OperationEvent(BuildOperationDescriptor operation, long startTimestampNanos, long threadId) {
+            this.operation = operation;
+            this.startTimestampNanos = startTimestampNanos;
+            this.threadId = threadId;
+        }
+
+        void finished(long timestampNanos, Object result) {
+            this.endTimestampNanos = timestampNanos;
+            TaskInternal task = getTask(operation);
+            if (task != null) {
+                TaskExecutionOutcome outcome = task.getState().getOutcome();
+                taskOutcome = outcome == null ? null : outcome.name();
+                taskEnabled = task.getEnabled();
+                taskCacheable = result instanceof ExecuteTaskBuildOperationType.Result
+                    && ((ExecuteTaskBuildOperationType.Result) result).getCachingDisabledReasonCategory() == null;
+            }
+        }
+
+        @Override
+        public void appendJson(StringBuilder json) {
+            long startTimestamp = startTimestampNanos / 1000;
+            json.append("{\"name\": ");
+            appendString(json, getName(operation));
+            json.append(", \"cat\": \"").append(CATEGORY_OPERATION)
+                .append("\", \"ph\": \"X\", \"pid\": 0, \"tid\": ").append(threadId)
+                .append(", \"ts\": ").append(startTimestamp)
+                .append(", \"dur\": ").append(endTimestampNanos / 1000 - startTimestamp)
+                .append(", \"args\": {");
+            TaskInternal task = getTask(operation);
+            if (task != null) {
+                json.append("\"type\": ");
+                appendString(json, task.getClass().getSimpleName().replace("_Decorated", ""));
+                json.append(", \"enabled\": \"").append(taskEnabled)
+                    .append("\", \"cacheable\": \"").append(taskCacheable)
+                    .append("\", \"outcome\": ");
+                appendString(json, String.valueOf(taskOutcome));
+            }
+            json.append("}}");
+        }
+    }
+}
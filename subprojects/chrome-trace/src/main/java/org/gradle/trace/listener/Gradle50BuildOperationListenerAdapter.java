@@ -0,0 +1,27 @@
+package org.gradle.trace.listener;
+
+import org.gradle.api.internal.GradleInternal;
+import org.gradle.api.invocation.Gradle;
+import org.gradle.internal.operations.BuildOperationListenerManager;
+import org.gradle.trace.TraceResult;
+
+public class Gradle50BuildOperationListenerAdapter implements BuildOperationListenerAdapter {
+    private final GradleInternal gradle;
+    private final Gradle50BuildOperationListener listener;
+
+    public Gradle50BuildOperationListenerAdapter(Gradle gradle, TraceResult traceResult) {
+        this.gradle = (GradleInternal) gradle;
+        this.listener = new Gradle50BuildOperationListener(traceResult);
+        getListenerManager().addListener(listener);
+    }
+
+    @Override
+    public void remove() {
+        getListenerManager().removeListener(listener);
+        listener.finishRunning(System.nanoTime());
+    }
+
+    private BuildOperationListenerManager getListenerManager() {
+        return gradle.getServices().get(BuildOperationListenerManager.class);
+    }
+}
@@ -1,40 +1,147 @@
 package org.gradle.trace.stream;
 
 import java.io.File;
-import java.io.PrintWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Writes (immutable) values of type {@link T} to a file.
+ *
+ * <p>The values are kept in a bounded ring buffer, which is drained in batches by a background thread.
+ * The thread renders each batch to text and writes it through a direct buffer to the file.
+ * When the buffer is full, the {@link OverflowPolicy} decides whether the value is waited for or dropped.
+ * The number of dropped and delayed values is available from {@link #getStatistics()}.</p>
  */
 public class AsyncWriter<T> {
-    private final Object EOS = new Object();
-    private final BlockingQueue<Object> eventQueue = new LinkedBlockingQueue<>();
+    public static final int DEFAULT_CAPACITY = 16 * 1024;
+
+    private static final int WRITE_BUFFER_SIZE = 256 * 1024;
+    private static final int SAMPLE_RATE = 10;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Object[] buffer;
+    private final OverflowPolicy overflowPolicy;
     private final Path outPath;
     private final Renderer<T> renderer;
     private final Thread thread;
+    // Guarded by lock
+    private int head;
+    private int size;
+    private boolean finished;
+    private long dropped;
+    private long delayed;
+    private long delayNanos;
+    private long overflowCount;
 
-    public AsyncWriter(Path outPath, Renderer<T> renderer) {
+    public AsyncWriter(Path outPath, Renderer<T> renderer, int capacity, OverflowPolicy overflowPolicy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive, but was " + capacity);
+        }
+        this.buffer = new Object[capacity];
+        this.overflowPolicy = overflowPolicy;
         this.outPath = outPath;
         this.renderer = renderer;
-        thread = new Thread(this::run);
+        thread = new Thread(this::run, "Async writer " + outPath.getFileName());
         thread.start();
     }
 
+    public AsyncWriter(Path outPath, Renderer<T> renderer) {
+        this(outPath, renderer, DEFAULT_CAPACITY, OverflowPolicy.BLOCK);
+    }
+
     public AsyncWriter(File outPath, Renderer<T> renderer) {
         this(outPath.toPath(), renderer);
     }
 
     public void append(T value) {
-        eventQueue.add(value);
+        lock.lock();
+        try {
+            if (finished) {
+                dropped++;
+                return;
+            }
+            if (size == buffer.length && !makeSpace()) {
+                dropped++;
+                return;
+            }
+            buffer[(head + size) % buffer.length] = value;
+            size++;
+            if (size == 1) {
+                notEmpty.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Makes space for a value in the full buffer, according to the overflow policy. Returns false when the value should be dropped instead.
+     */
+    private boolean makeSpace() {
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                dropOldest();
+                return true;
+            case SAMPLE:
+                if (overflowCount++ % SAMPLE_RATE != 0) {
+                    return false;
+                }
+                dropOldest();
+                return true;
+            case BLOCK:
+            default:
+                return awaitSpace();
+        }
+    }
+
+    private void dropOldest() {
+        buffer[head] = null;
+        head = (head + 1) % buffer.length;
+        size--;
+        dropped++;
+    }
+
+    private boolean awaitSpace() {
+        long start = System.nanoTime();
+        boolean interrupted = false;
+        while (size == buffer.length && !finished) {
+            try {
+                notFull.await();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        delayed++;
+        delayNanos += System.nanoTime() - start;
+        return !finished;
     }
 
     public void finished() {
-        eventQueue.add(EOS);
+        lock.lock();
+        try {
+            finished = true;
+            notEmpty.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
     }
 
     public void stop() {
@@ -46,32 +153,174 @@ public void stop() {
         }
     }
 
-    private void run() {
+    public Statistics getStatistics() {
+        lock.lock();
         try {
-            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(outPath, StandardCharsets.UTF_8))) {
-                renderer.header(writer);
-                while (true) {
-                    Object next = eventQueue.take();
-                    if (next == EOS) {
-                        break;
-                    }
-                    T value = (T) next;
-                    renderer.write(value, writer);
+            return new Statistics(dropped, delayed, delayNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run() {
+        try (FileChannel channel = FileChannel.open(outPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output output = new Output(channel);
+            renderer.header(output.text);
+            Object[] batch = new Object[buffer.length];
+            while (true) {
+                int count = takeBatch(batch);
+                if (count < 0) {
+                    break;
+                }
+                for (int i = 0; i < count; i++) {
+                    @SuppressWarnings("unchecked")
+                    T value = (T) batch[i];
+                    renderer.write(value, output.text);
+                    output.writeIfFull();
                 }
-                renderer.footer(writer);
+                Arrays.fill(batch, 0, count, null);
+                output.write();
             }
+            renderer.footer(output.text);
+            output.write();
         } catch (Exception e) {
             e.printStackTrace();
+        } finally {
+            // Do not leave anyone waiting for space when writing fails
+            finished();
+        }
+    }
+
+    /**
+     * Moves the buffered values to the batch, waiting until there are some. Returns -1 when finished and nothing is left to write.
+     */
+    private int takeBatch(Object[] batch) throws InterruptedException {
+        lock.lock();
+        try {
+            while (size == 0) {
+                if (finished) {
+                    return -1;
+                }
+                notEmpty.await();
+            }
+            int count = size;
+            int firstPart = Math.min(count, buffer.length - head);
+            System.arraycopy(buffer, head, batch, 0, firstPart);
+            System.arraycopy(buffer, 0, batch, firstPart, count - firstPart);
+            Arrays.fill(buffer, head, head + firstPart, null);
+            Arrays.fill(buffer, 0, count - firstPart, null);
+            head = (head + count) % buffer.length;
+            size = 0;
+            notFull.signalAll();
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Encodes the rendered text as UTF-8 into a direct buffer, which is written to the file when full.
+     */
+    private static class Output {
+        private final StringBuilder text = new StringBuilder(WRITE_BUFFER_SIZE);
+        private final ByteBuffer bytes = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        private final FileChannel channel;
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void writeIfFull() throws IOException {
+            if (text.length() >= WRITE_BUFFER_SIZE) {
+                write();
+            }
+        }
+
+        void write() throws IOException {
+            CharBuffer chars = CharBuffer.wrap(text);
+            while (true) {
+                CoderResult result = encoder.encode(chars, bytes, true);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                flush();
+                if (result.isUnderflow()) {
+                    break;
+                }
+            }
+            encoder.reset();
+            text.setLength(0);
+        }
+
+        private void flush() throws IOException {
+            bytes.flip();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            bytes.clear();
+        }
+    }
+
+    /**
+     * What to do with a value when the buffer is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Waits until the writer has made space for the value.
+         */
+        BLOCK,
+        /**
+         * Drops the oldest value in the buffer to make space for the value.
+         */
+        DROP_OLDEST,
+        /**
+         * Keeps one of every ten values that arrive while the buffer is full, dropping the oldest value in the buffer for it, and drops the others.
+         */
+        SAMPLE;
+
+        public static OverflowPolicy parse(String value) {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    public static class Statistics {
+        private final long dropped;
+        private final long delayed;
+        private final long delayNanos;
+
+        Statistics(long dropped, long delayed, long delayNanos) {
+            this.dropped = dropped;
+            this.delayed = delayed;
+            this.delayNanos = delayNanos;
+        }
+
+        /**
+         * The number of values that were not written, because the buffer was full or the writer had finished.
+         */
+        public long getDropped() {
+            return dropped;
+        }
+
+        /**
+         * The number of values that had to wait for space in the buffer.
+         */
+        public long getDelayed() {
+            return delayed;
+        }
+
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(delayNanos, TimeUnit.NANOSECONDS);
         }
     }
 
     public interface Renderer<T> {
-        default void header(PrintWriter writer) {
+        default void header(StringBuilder output) {
         }
 
-        void write(T value, PrintWriter writer);
+        void write(T value, StringBuilder output);
 
-        default void footer(PrintWriter writer) {
+        default void footer(StringBuilder output) {
         }
     }
 }
@@ -1,10 +1,19 @@
 package org.gradle.trace.listener
 
+import groovy.json.JsonSlurper
 import org.gradle.internal.operations.BuildOperationDescriptor
+import org.gradle.internal.operations.OperationFinishEvent
 import org.gradle.internal.operations.OperationIdentifier
+import org.gradle.internal.operations.OperationStartEvent
+import org.gradle.trace.TraceResult
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
 import spock.lang.Specification
 
 class GradleBuildOperationListenerTest extends Specification {
+    @Rule
+    TemporaryFolder tmpDir = new TemporaryFolder()
+
     def "normalizes windows file paths in display names #gradleVersion"() {
         given:
         def displayName = "Apply initialization script 'C:\\some\\location\\init.gradle' to build"
@@ -12,13 +21,37 @@ class GradleBuildOperationListenerTest extends Specification {
             new OperationIdentifier(42), new OperationIdentifier(1))
 
         expect:
-        invocationHandler.getName(operation) ==
+        listener.getName(operation) ==
             "Apply initialization script 'C:/some/location/init.gradle' to build (42)"
 
         where:
-        gradleVersion | invocationHandler
-        "5.0"         | new Gradle50BuildOperationListenerInvocationHandler(null)
+        gradleVersion | listener
+        "5.0"         | new Gradle50BuildOperationListener(null)
         "4.7"         | new Gradle47BuildOperationListenerInvocationHandler(null)
         "4.0"         | new Gradle40BuildOperationListenerInvocationHandler(null)
     }
+
+    def "writes finished and still running operations to the trace"() {
+        given:
+        def traceFile = tmpDir.newFile("trace.json")
+        def traceResult = new TraceResult(traceFile)
+        def listener = new Gradle50BuildOperationListener(traceResult)
+        def build = BuildOperationDescriptor.displayName("Run build").build(new OperationIdentifier(1), null)
+        def script = BuildOperationDescriptor.displayName('Apply script "build.gradle"\n').build(new OperationIdentifier(2), new OperationIdentifier(1))
+
+        when:
+        listener.started(build, new OperationStartEvent(1000))
+        listener.started(script, new OperationStartEvent(1000))
+        listener.finished(script, new OperationFinishEvent(1000, 1010, null, null))
+        listener.finishRunning(System.nanoTime())
+        traceResult.finalizeTraceFile()
+
+        then:
+        def events = new JsonSlurper().parse(traceFile).traceEvents
+        events*.name == ['Apply script "build.gradle"\n (2)', "Run build (1)"]
+        events.every { it.cat == "BUILD_OPERATION" && it.ph == "X" && it.args == [:] }
+        events[0].dur == 10_000
+        events[0].ts == events[1].ts
+        events[1].dur > events[0].dur
+    }
 }
@@ -0,0 +1,134 @@
+package org.gradle.trace.stream
+
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+
+class AsyncWriterTest extends Specification {
+    @Rule
+    TemporaryFolder tmpDir = new TemporaryFolder()
+
+    def "writes values from multiple threads in the order they are appended to each thread"() {
+        given:
+        def file = tmpDir.newFile("values.txt")
+        def writer = new AsyncWriter<String>(file.toPath(), new LineRenderer(), 8, AsyncWriter.OverflowPolicy.BLOCK)
+
+        when:
+        def threads = (1..4).collect { thread ->
+            Thread.start {
+                (1..1000).each { writer.append("$thread-$it".toString()) }
+            }
+        }
+        threads*.join()
+        writer.stop()
+
+        then:
+        def lines = file.readLines()
+        lines.first() == "header"
+        lines.last() == "footer"
+        def values = lines.subList(1, lines.size() - 1)
+        values.size() == 4000
+        (1..4).every { thread -> values.findAll { it.startsWith("$thread-") } == (1..1000).collect { "$thread-$it".toString() } }
+        writer.statistics.dropped == 0
+    }
+
+    def "applies #policy policy when the buffer is full"() {
+        given:
+        def file = tmpDir.newFile("values.txt")
+        def renderer = new LineRenderer(blocked: new CountDownLatch(1))
+        def writer = new AsyncWriter<String>(file.toPath(), renderer, 4, policy)
+        writer.append("first")
+        renderer.rendering.await()
+
+        when:
+        (1..20).each { writer.append("value-$it".toString()) }
+        renderer.blocked.countDown()
+        writer.stop()
+
+        then:
+        def lines = file.readLines()
+        lines.subList(1, lines.size() - 1) == ["first"] + expected.collect { "value-$it".toString() }
+        writer.statistics.dropped == 20 - expected.size()
+        writer.statistics.delayed == 0
+
+        where:
+        policy                                 | expected
+        AsyncWriter.OverflowPolicy.DROP_OLDEST | 17..20
+        AsyncWriter.OverflowPolicy.SAMPLE      | [3, 4, 5, 15]
+    }
+
+    def "waits for space in the buffer with block policy"() {
+        given:
+        def file = tmpDir.newFile("values.txt")
+        def renderer = new LineRenderer(blocked: new CountDownLatch(1))
+        def writer = new AsyncWriter<String>(file.toPath(), renderer, 4, AsyncWriter.OverflowPolicy.BLOCK)
+        writer.append("first")
+        renderer.rendering.await()
+        (1..4).each { writer.append("value-$it".toString()) }
+
+        when:
+        def appending = Thread.start {
+            (5..24).each { writer.append("value-$it".toString()) }
+        }
+        Thread.sleep(100)
+        renderer.blocked.countDown()
+        appending.join()
+        writer.stop()
+
+        then:
+        def lines = file.readLines()
+        lines.subList(1, lines.size() - 1) == ["first"] + (1..24).collect { "value-$it".toString() }
+        writer.statistics.dropped == 0
+        writer.statistics.delayed >= 1
+    }
+
+    def "drops values appended after the writer has finished"() {
+        given:
+        def file = tmpDir.newFile("values.txt")
+        def writer = new AsyncWriter<String>(file.toPath(), new LineRenderer(), 4, AsyncWriter.OverflowPolicy.BLOCK)
+
+        when:
+        writer.append("value")
+        writer.stop()
+        writer.append("late")
+
+        then:
+        file.readLines() == ["header", "value", "footer"]
+        writer.statistics.dropped == 1
+    }
+
+    def "parses overflow policy #value"() {
+        expect:
+        AsyncWriter.OverflowPolicy.parse(value) == policy
+
+        where:
+        value         | policy
+        "block"       | AsyncWriter.OverflowPolicy.BLOCK
+        "drop-oldest" | AsyncWriter.OverflowPolicy.DROP_OLDEST
+        "SAMPLE"      | AsyncWriter.OverflowPolicy.SAMPLE
+    }
+
+    private static class LineRenderer implements AsyncWriter.Renderer<String> {
+        CountDownLatch rendering = new CountDownLatch(1)
+        CountDownLatch blocked = new CountDownLatch(0)
+
+        @Override
+        void header(StringBuilder output) {
+            output.append("header\n")
+        }
+
+        @Override
+        void write(String value, StringBuilder output) {
+            rendering.countDown()
+            blocked.await()
+            output.append(value).append('\n')
+        }
+
+        @Override
+        void footer(StringBuilder output) {
+            output.append("footer\n")
+        }
+    }
+}
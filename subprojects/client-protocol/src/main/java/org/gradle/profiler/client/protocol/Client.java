@@ -4,61 +4,97 @@
 import org.gradle.profiler.client.protocol.messages.Message;
 import org.gradle.profiler.client.protocol.messages.IdeAgentConnectionParameters;
 import org.gradle.profiler.client.protocol.messages.IdeRequest;
-import org.gradle.profiler.client.protocol.serialization.MessageProtocolHandler;
+import org.gradle.profiler.client.protocol.serialization.MessageFrameReader;
+import org.gradle.profiler.client.protocol.serialization.MessageSerializer;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.time.Duration;
 
 /**
  * A client process to communicate with the controller process.
+ *
+ * <p>Messages from the controller process are read by a background thread, which is started the first time a message is received.
+ * So clients that only send messages, like the instrumentation of a build, do not start a thread.</p>
  */
 public class Client implements Closeable {
 
-    private final Object lock = new Object();
-    private final Connection connection;
-    private final MessageProtocolHandler protocolHandler;
+    private static final String PEER_NAME = "controller process";
+
+    private final Object writeLock = new Object();
+    private final SocketChannel channel;
+    private final MessageInbox inbox = new MessageInbox(PEER_NAME);
+    private Thread reader;
 
     public Client(int port) {
         try {
-            Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
-            connection = new Connection(socket);
-            protocolHandler = new MessageProtocolHandler("controller process", connection);
+            channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
         } catch (IOException e) {
             throw new RuntimeException("Could not connect to controller process.", e);
         }
     }
 
     public void send(Message message) {
-        synchronized (lock) {
-            protocolHandler.send(message);
+        try {
+            ByteBuffer frame = MessageSerializer.toFrame(message);
+            synchronized (writeLock) {
+                while (frame.hasRemaining()) {
+                    channel.write(frame);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Could not write to %s.", PEER_NAME), e);
         }
     }
 
     public GradleInvocationParameters receiveSyncParameters(Duration timeout) {
-        synchronized (lock) {
-            return protocolHandler.receive(GradleInvocationParameters.class, timeout);
-        }
+        return receive(GradleInvocationParameters.class, timeout);
     }
 
     public IdeAgentConnectionParameters receiveConnectionParameters(Duration timeout) {
-        synchronized (lock) {
-            return protocolHandler.receive(IdeAgentConnectionParameters.class, timeout);
-        }
+        return receive(IdeAgentConnectionParameters.class, timeout);
     }
 
     public IdeRequest receiveIdeRequest(Duration timeout) {
-        synchronized (lock) {
-            return protocolHandler.receive(IdeRequest.class, timeout);
+        return receive(IdeRequest.class, timeout);
+    }
+
+    private <T extends Message> T receive(Class<T> type, Duration timeout) {
+        startReading();
+        return inbox.receive(type, timeout);
+    }
+
+    private synchronized void startReading() {
+        if (reader == null) {
+            reader = new Thread(this::read, "gradle-profiler client");
+            reader.setDaemon(true);
+            reader.start();
+        }
+    }
+
+    private void read() {
+        MessageFrameReader frameReader = new MessageFrameReader();
+        try {
+            while (frameReader.readFrom(channel, inbox)) {
+                // Keep reading until the connection is closed
+            }
+        } catch (IOException e) {
+            // The connection has been closed or is broken
+        } finally {
+            inbox.close();
         }
     }
 
     @Override
     public void close() throws IOException {
-        synchronized (lock) {
-            connection.close();
+        try {
+            channel.close();
+        } finally {
+            inbox.close();
         }
     }
 }
@@ -0,0 +1,125 @@
+package org.gradle.profiler.client.protocol;
+
+import org.gradle.profiler.client.protocol.messages.Message;
+import org.gradle.profiler.client.protocol.serialization.MessageFrameReader;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The messages that have arrived on a connection, by type.
+ *
+ * <p>A message is passed to the listeners of its type, or kept until it is received when there are none.
+ * Messages that arrived before a listener was added are passed to the listener when it is added, so none are missed.</p>
+ */
+class MessageInbox implements MessageFrameReader.Receiver {
+    private static final Logger LOGGER = Logger.getLogger(MessageInbox.class.getName());
+
+    private final String peerName;
+    private final Map<Class<?>, Deque<Received>> messages = new HashMap<>();
+    private final Map<Class<?>, List<MessageListener<?>>> listeners = new HashMap<>();
+    private boolean closed;
+
+    MessageInbox(String peerName) {
+        this.peerName = peerName;
+    }
+
+    @Override
+    public synchronized void received(Message message, long receivedAtNanos) {
+        List<MessageListener<?>> typeListeners = listeners.get(message.getClass());
+        if (typeListeners == null || typeListeners.isEmpty()) {
+            messages.computeIfAbsent(message.getClass(), type -> new ArrayDeque<>()).add(new Received(message, receivedAtNanos));
+            notifyAll();
+            return;
+        }
+        for (MessageListener<?> listener : new ArrayList<>(typeListeners)) {
+            deliver(listener, message, receivedAtNanos);
+        }
+    }
+
+    synchronized <T extends Message> MessageListener.Registration addListener(Class<T> type, MessageListener<? super T> listener) {
+        Deque<Received> pending = messages.remove(type);
+        if (pending != null) {
+            for (Received received : pending) {
+                deliver(listener, received.message, received.receivedAtNanos);
+            }
+        }
+        listeners.computeIfAbsent(type, key -> new ArrayList<>()).add(listener);
+        return () -> {
+            synchronized (this) {
+                listeners.get(type).remove(listener);
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void deliver(MessageListener<?> listener, Message message, long receivedAtNanos) {
+        try {
+            ((MessageListener<Message>) listener).onMessage(message, receivedAtNanos);
+        } catch (RuntimeException e) {
+            // Keep reading from the connection
+            LOGGER.log(Level.WARNING, "Could not handle " + message.getClass().getSimpleName() + " message.", e);
+        }
+    }
+
+    /**
+     * Waits for a message of the given type for the duration of the timeout, or returns Optional.empty() if waiting times out.
+     */
+    synchronized <T extends Message> Optional<T> maybeReceive(Class<T> type, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        try {
+            while (true) {
+                Deque<Received> pending = messages.get(type);
+                if (pending != null && !pending.isEmpty()) {
+                    return Optional.of(type.cast(pending.poll().message));
+                }
+                if (closed) {
+                    throw new IllegalStateException(String.format("Connection to %s has closed.", peerName));
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return Optional.empty();
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(String.format("Interrupted while waiting to receive %s.", type), e);
+        }
+    }
+
+    /**
+     * Waits for a message of the given type for the duration of the timeout and throws exception if waiting times out.
+     */
+    <T extends Message> T receive(Class<T> type, Duration timeout) {
+        return maybeReceive(type, timeout)
+            .orElseThrow(() -> new IllegalStateException(String.format("Timeout waiting to receive %s.", type)));
+    }
+
+    /**
+     * Marks the connection as closed. Messages that have arrived can still be received.
+     */
+    synchronized void close() {
+        closed = true;
+        notifyAll();
+    }
+
+    private static final class Received {
+        final Message message;
+        final long receivedAtNanos;
+
+        Received(Message message, long receivedAtNanos) {
+            this.message = message;
+            this.receivedAtNanos = receivedAtNanos;
+        }
+    }
+}
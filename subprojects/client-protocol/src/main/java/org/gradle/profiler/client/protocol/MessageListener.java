@@ -0,0 +1,22 @@
+package org.gradle.profiler.client.protocol;
+
+import org.gradle.profiler.client.protocol.messages.Message;
+
+/**
+ * Is notified of messages of a type as they arrive on a connection.
+ * Listeners are called by the thread that reads from the connection, so they must not block.
+ */
+public interface MessageListener<T extends Message> {
+    /**
+     * @param receivedAtNanos the {@link System#nanoTime()} at which the message arrived
+     */
+    void onMessage(T message, long receivedAtNanos);
+
+    /**
+     * Removes the listener from the connection when closed.
+     */
+    interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
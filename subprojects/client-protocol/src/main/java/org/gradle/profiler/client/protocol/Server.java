@@ -4,23 +4,43 @@
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.nio.channels.ClosedSelectorException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.time.Duration;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
- * An endpoint for communicating with a single client process.
+ * An endpoint for communicating with client processes.
+ *
+ * <p>A single thread accepts the connections and reads the messages of all of them with a {@link Selector}, as they arrive.
+ * The messages are delivered to the listeners of the {@link ServerConnection}, or kept until they are received.</p>
  */
 public class Server implements Closeable {
 
+    private static final Logger LOGGER = Logger.getLogger(Server.class.getName());
+    private static final Duration SELECTOR_THREAD_STOP_TIMEOUT = Duration.ofSeconds(5);
+
     private final ServerSocketChannel serverSocketChannel;
     private final Selector selector;
-    private final List<ServerConnection> connections = new ArrayList<>();
+    private final BlockingQueue<ServerConnection> incoming = new LinkedBlockingQueue<>();
+    private final Set<ServerConnection> connections = ConcurrentHashMap.newKeySet();
+    private final Queue<ServerConnection> pendingWrites = new ConcurrentLinkedQueue<>();
     private final String peerName;
+    private final Thread selectorThread;
+    private volatile boolean closed;
 
     public Server(String peerName) {
         this.peerName = peerName;
@@ -33,6 +53,9 @@ public Server(String peerName) {
         } catch (IOException e) {
             throw new RuntimeException(String.format("Could not start listening for incoming %s connections.", peerName), e);
         }
+        selectorThread = new Thread(this::run, "gradle-profiler " + peerName + " server");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
     }
 
     public int getPort() {
@@ -44,30 +67,106 @@ public int getPort() {
     }
 
     public ServerConnection waitForIncoming(Duration timeout) {
+        return maybeWaitForIncoming(timeout)
+            .orElseThrow(() -> new IllegalStateException(String.format("Timeout waiting for incoming connection from %s.", peerName)));
+    }
+
+    /**
+     * Waits for an incoming connection for the duration of the timeout, or returns Optional.empty() if waiting times out.
+     * A zero timeout only returns a connection that has already been accepted.
+     */
+    public Optional<ServerConnection> maybeWaitForIncoming(Duration timeout) {
         try {
-            int keys = selector.select(timeout.toMillis());
-            if (keys != 1) {
-                throw new IllegalStateException(String.format("Timeout waiting for incoming connection from %s.", peerName));
-            }
-            SocketChannel channel = serverSocketChannel.accept();
-            ServerConnection connection = new ServerConnection(peerName, new Connection(channel.socket()));
-            connections.add(connection);
-            return connection;
-        } catch (IOException e) {
-            throw new RuntimeException(String.format("Could not receive incoming connection from %s.", peerName), e);
+            ServerConnection connection = timeout.isZero()
+                ? incoming.poll()
+                : incoming.poll(timeout.toNanos(), TimeUnit.NANOSECONDS);
+            return Optional.ofNullable(connection);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(String.format("Interrupted while waiting for incoming connection from %s.", peerName), e);
         }
     }
 
+    /**
+     * Closes a connection that is no longer used, before the server is closed.
+     */
+    public void close(ServerConnection connection) throws IOException {
+        connections.remove(connection);
+        connection.close();
+    }
+
     @Override
     public void close() throws IOException {
         try {
+            // Close the connections while the selector thread still writes pending messages
             for (ServerConnection connection : connections) {
                 connection.close();
             }
+        } finally {
+            connections.clear();
+            closed = true;
+            selector.wakeup();
+            try {
+                selectorThread.join(SELECTOR_THREAD_STOP_TIMEOUT.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
             serverSocketChannel.close();
             selector.close();
+        }
+    }
+
+    /**
+     * Called by a connection when it has messages that could not be written right away.
+     */
+    void writeWhenReady(ServerConnection connection) {
+        pendingWrites.add(connection);
+        selector.wakeup();
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                selector.select();
+                ServerConnection pendingWrite;
+                while ((pendingWrite = pendingWrites.poll()) != null) {
+                    pendingWrite.enableWrites();
+                }
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        ((ServerConnection) key.attachment()).handle(key);
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (!closed) {
+                LOGGER.log(Level.WARNING, "Stopped reading messages from " + peerName + ".", e);
+            }
         } finally {
-            connections.clear();
+            // Do not leave anyone waiting for messages that will never be read
+            for (ServerConnection connection : connections) {
+                connection.disconnected();
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverSocketChannel.accept();
+        if (channel == null) {
+            return;
         }
+        channel.configureBlocking(false);
+        ServerConnection connection = new ServerConnection(peerName, channel, this);
+        connection.setKey(channel.register(selector, SelectionKey.OP_READ, connection));
+        connections.add(connection);
+        incoming.add(connection);
     }
 }
@@ -1,53 +1,186 @@
 package org.gradle.profiler.client.protocol;
 
+import org.gradle.profiler.client.protocol.messages.BuildMeasurements;
 import org.gradle.profiler.client.protocol.messages.GradleInvocationCompleted;
 import org.gradle.profiler.client.protocol.messages.GradleInvocationStarted;
 import org.gradle.profiler.client.protocol.messages.Message;
 import org.gradle.profiler.client.protocol.messages.IdeCacheCleanupCompleted;
 import org.gradle.profiler.client.protocol.messages.IdeSyncRequestCompleted;
-import org.gradle.profiler.client.protocol.serialization.MessageProtocolHandler;
+import org.gradle.profiler.client.protocol.serialization.MessageFrameReader;
+import org.gradle.profiler.client.protocol.serialization.MessageSerializer;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
 import java.time.Duration;
-import java.util.Optional;
+import java.util.ArrayDeque;
+import java.util.Queue;
 
+/**
+ * A connection to a client process, whose messages are read by the {@link Server}.
+ */
 public class ServerConnection implements Closeable {
 
-    private final Connection connection;
-    private final MessageProtocolHandler protocolHandler;
+    private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(5);
 
-    public ServerConnection(String peerName, Connection connection) {
-        this.connection = connection;
-        this.protocolHandler = new MessageProtocolHandler(peerName, connection);
+    private final String peerName;
+    private final SocketChannel channel;
+    private final Server server;
+    private final MessageInbox inbox;
+    private final MessageFrameReader frameReader = new MessageFrameReader();
+    // Guards writing to the channel
+    private final Queue<ByteBuffer> outgoing = new ArrayDeque<>();
+    // Only used by the selector thread
+    private SelectionKey key;
+
+    ServerConnection(String peerName, SocketChannel channel, Server server) {
+        this.peerName = peerName;
+        this.channel = channel;
+        this.server = server;
+        this.inbox = new MessageInbox(peerName);
     }
 
+    /**
+     * Sends the message. It is written right away when the client keeps up, otherwise it is written by the selector thread of the server.
+     */
     public void send(Message message) {
-        protocolHandler.send(message);
+        boolean writeLater;
+        try {
+            ByteBuffer frame = MessageSerializer.toFrame(message);
+            synchronized (outgoing) {
+                if (!channel.isOpen()) {
+                    throw new IllegalStateException(String.format("Connection to %s has closed.", peerName));
+                }
+                if (outgoing.isEmpty()) {
+                    channel.write(frame);
+                }
+                writeLater = frame.hasRemaining();
+                if (writeLater) {
+                    outgoing.add(frame);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Could not write to %s.", peerName), e);
+        }
+        if (writeLater) {
+            server.writeWhenReady(this);
+        }
     }
 
-    public Optional<GradleInvocationStarted> maybeReceiveGradleInvocationStarted(Duration timeout) {
-        return protocolHandler.maybeReceive(GradleInvocationStarted.class, timeout);
+    /**
+     * Calls the listener with each message of the given type, as it arrives.
+     * Messages of the type are no longer kept to be received while the listener is registered.
+     */
+    public <T extends Message> MessageListener.Registration onMessage(Class<T> type, MessageListener<? super T> listener) {
+        return inbox.addListener(type, listener);
     }
 
     public GradleInvocationStarted receiveGradleInvocationStarted(Duration timeout) {
-        return protocolHandler.receive(GradleInvocationStarted.class, timeout);
+        return inbox.receive(GradleInvocationStarted.class, timeout);
     }
 
     public GradleInvocationCompleted receiveGradleInvocationCompleted(Duration timeout) {
-        return protocolHandler.receive(GradleInvocationCompleted.class, timeout);
+        return inbox.receive(GradleInvocationCompleted.class, timeout);
     }
 
     public IdeSyncRequestCompleted receiveSyncRequestCompleted(Duration timeout) {
-        return protocolHandler.receive(IdeSyncRequestCompleted.class, timeout);
+        return inbox.receive(IdeSyncRequestCompleted.class, timeout);
+    }
+
+    public BuildMeasurements receiveBuildMeasurements(Duration timeout) {
+        return inbox.receive(BuildMeasurements.class, timeout);
     }
 
     public IdeCacheCleanupCompleted receiveCacheCleanupCompleted(Duration timeout) {
-        return protocolHandler.receive(IdeCacheCleanupCompleted.class, timeout);
+        return inbox.receive(IdeCacheCleanupCompleted.class, timeout);
     }
 
+    /**
+     * Closes the connection, once the messages that have been sent are written or the close times out.
+     */
     @Override
     public void close() throws IOException {
-        connection.close();
+        try {
+            synchronized (outgoing) {
+                long deadline = System.nanoTime() + CLOSE_TIMEOUT.toNanos();
+                long remaining;
+                while (!outgoing.isEmpty() && channel.isOpen() && (remaining = deadline - System.nanoTime()) > 0) {
+                    outgoing.wait(Math.max(1, remaining / 1_000_000));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            channel.close();
+            inbox.close();
+        }
+    }
+
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    /**
+     * Reads the messages that have arrived and writes pending messages, on the selector thread.
+     */
+    void handle(SelectionKey key) {
+        try {
+            if (key.isReadable() && !frameReader.readFrom(channel, inbox)) {
+                disconnected();
+                return;
+            }
+            if (key.isValid() && key.isWritable()) {
+                writeOutgoing();
+            }
+        } catch (IOException | CancelledKeyException e) {
+            disconnected();
+        }
+    }
+
+    void enableWrites() {
+        try {
+            if (key.isValid()) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        } catch (CancelledKeyException e) {
+            // Closed in the meantime
+        }
+    }
+
+    private void writeOutgoing() throws IOException {
+        synchronized (outgoing) {
+            while (!outgoing.isEmpty()) {
+                ByteBuffer frame = outgoing.peek();
+                channel.write(frame);
+                if (frame.hasRemaining()) {
+                    return;
+                }
+                outgoing.remove();
+            }
+            key.interestOps(SelectionKey.OP_READ);
+            outgoing.notifyAll();
+        }
+    }
+
+    /**
+     * The client has closed the connection or the connection is broken.
+     */
+    void disconnected() {
+        synchronized (outgoing) {
+            outgoing.clear();
+            outgoing.notifyAll();
+        }
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Ignore, the connection is gone anyway
+        }
+        inbox.close();
     }
 }
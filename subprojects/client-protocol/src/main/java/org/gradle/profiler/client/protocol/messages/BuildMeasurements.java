@@ -0,0 +1,61 @@
+package org.gradle.profiler.client.protocol.messages;
+
+import java.util.List;
+
+/**
+ * The measurements of a single build, sent by the build operations instrumentation once the build has finished.
+ */
+public class BuildMeasurements implements Message {
+    private final String buildId;
+    private final List<Measurement> measurements;
+
+    public BuildMeasurements(String buildId, List<Measurement> measurements) {
+        this.buildId = buildId;
+        this.measurements = measurements;
+    }
+
+    @Override
+    public String toString() {
+        return "build measurements " + buildId + " " + measurements;
+    }
+
+    /**
+     * The id of the build the measurements belong to, as passed to the build by the profiler.
+     */
+    public String getBuildId() {
+        return buildId;
+    }
+
+    public List<Measurement> getMeasurements() {
+        return measurements;
+    }
+
+    public static class Measurement {
+        private final String name;
+        private final long value;
+        private final int count;
+
+        public Measurement(String name, long value, int count) {
+            this.name = name;
+            this.value = value;
+            this.count = count;
+        }
+
+        @Override
+        public String toString() {
+            return name + "=" + value + " (" + count + ")";
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getValue() {
+            return value;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.gradle.profiler.client.protocol.serialization;
+
+import org.gradle.profiler.client.protocol.messages.Message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads frames written by {@link MessageSerializer#toFrame(Message)} from a channel, in blocking or non-blocking mode.
+ * Bytes of a frame that has not arrived completely are kept until the next read.
+ */
+public class MessageFrameReader {
+
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+    /**
+     * Reads the bytes that are available from the channel, and passes the messages that are complete to the receiver.
+     *
+     * @return false when the end of the stream has been reached
+     */
+    public boolean readFrom(ReadableByteChannel channel, Receiver receiver) throws IOException {
+        int read = channel.read(buffer);
+        if (read < 0) {
+            return false;
+        }
+        long receivedAtNanos = System.nanoTime();
+        buffer.flip();
+        while (buffer.remaining() >= Integer.BYTES) {
+            int length = buffer.getInt(buffer.position());
+            if (length <= 0 || length > MessageSerializer.MAX_FRAME_LENGTH) {
+                throw new IOException("Received a message frame with invalid length " + length + ".");
+            }
+            if (buffer.remaining() < Integer.BYTES + length) {
+                break;
+            }
+            int end = buffer.position() + Integer.BYTES + length;
+            ByteBuffer frame = buffer.duplicate();
+            frame.position(buffer.position() + Integer.BYTES);
+            frame.limit(end);
+            buffer.position(end);
+            receiver.received(MessageSerializer.fromFrame(frame), receivedAtNanos);
+        }
+        buffer.compact();
+        ensureCapacityForNextFrame();
+        return true;
+    }
+
+    private void ensureCapacityForNextFrame() {
+        if (buffer.position() < Integer.BYTES) {
+            return;
+        }
+        int frameSize = Integer.BYTES + buffer.getInt(0);
+        if (frameSize > buffer.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(frameSize);
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+    }
+
+    public interface Receiver {
+        /**
+         * @param receivedAtNanos the {@link System#nanoTime()} at which the message was read from the channel
+         */
+        void received(Message message, long receivedAtNanos);
+    }
+}
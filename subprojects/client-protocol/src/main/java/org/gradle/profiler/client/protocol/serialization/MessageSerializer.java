@@ -1,6 +1,6 @@
 package org.gradle.profiler.client.protocol.serialization;
 
-import org.gradle.profiler.client.protocol.Connection;
+import org.gradle.profiler.client.protocol.messages.BuildMeasurements;
 import org.gradle.profiler.client.protocol.messages.GradleInvocationCompleted;
 import org.gradle.profiler.client.protocol.messages.GradleInvocationParameters;
 import org.gradle.profiler.client.protocol.messages.GradleInvocationStarted;
@@ -12,8 +12,16 @@
 import org.gradle.profiler.client.protocol.messages.IdeSyncRequestCompleted;
 import org.gradle.profiler.client.protocol.messages.IdeSyncRequestCompleted.IdeSyncRequestResult;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -22,110 +30,140 @@
 import java.util.stream.Collectors;
 
 /**
- * Message serializers that read and write messages from and to a {@link Connection}.
+ * Message serializers that read and write messages from and to frames.
+ *
+ * <p>A frame is the length of the rest of the frame as an int, followed by the message id and the body of the message.
+ * So a reader can tell whether a message has arrived completely before decoding it, see {@link MessageFrameReader}.</p>
  */
 public enum MessageSerializer {
     GRADLE_INVOCATION_STARTED((byte) 1, GradleInvocationStarted.class) {
         @Override
-        public void doWriteTo(Connection connection, Message message) throws IOException {
+        public void doWriteTo(DataOutput output, Message message) throws IOException {
             GradleInvocationStarted gradleInvocationStarted = (GradleInvocationStarted) message;
-            connection.writeInt(gradleInvocationStarted.getId());
+            output.writeInt(gradleInvocationStarted.getId());
         }
 
         @Override
-        public Message doReadFrom(Connection connection, int bodyTimeoutMillis) throws IOException {
-            int startId = connection.readInt(bodyTimeoutMillis);
+        public Message doReadFrom(DataInput input) throws IOException {
+            int startId = input.readInt();
             return new GradleInvocationStarted(startId);
         }
     },
     GRADLE_INVOCATION_COMPLETED((byte) 2, GradleInvocationCompleted.class) {
         @Override
-        public void doWriteTo(Connection connection, Message message) throws IOException {
+        public void doWriteTo(DataOutput output, Message message) throws IOException {
             GradleInvocationCompleted gradleInvocationCompleted = (GradleInvocationCompleted) message;
-            connection.writeInt(gradleInvocationCompleted.getId());
-            connection.writeLong(gradleInvocationCompleted.getDurationMillis());
+            output.writeInt(gradleInvocationCompleted.getId());
+            output.writeLong(gradleInvocationCompleted.getDurationMillis());
         }
 
         @Override
-        public Message doReadFrom(Connection connection, int bodyTimeoutMillis) throws IOException {
-            int completeId = connection.readInt(bodyTimeoutMillis);
-            long durationMillis = connection.readLong(bodyTimeoutMillis);
+        public Message doReadFrom(DataInput input) throws IOException {
+            int completeId = input.readInt();
+            long durationMillis = input.readLong();
             return new GradleInvocationCompleted(completeId, durationMillis);
         }
     },
     GRADLE_INVOCATION_PARAMETERS((byte) 3, GradleInvocationParameters.class) {
         @Override
-        public void doWriteTo(Connection connection, Message message) throws IOException {
+        public void doWriteTo(DataOutput output, Message message) throws IOException {
             GradleInvocationParameters gradleInvocationParameters = (GradleInvocationParameters) message;
-            connection.writeStrings(gradleInvocationParameters.getGradleArgs());
-            connection.writeStrings(gradleInvocationParameters.getJvmArgs());
+            writeStrings(output, gradleInvocationParameters.getGradleArgs());
+            writeStrings(output, gradleInvocationParameters.getJvmArgs());
         }
 
         @Override
-        public Message doReadFrom(Connection connection, int bodyTimeoutMillis) throws IOException {
-            List<String> gradleArgs = connection.readStrings(bodyTimeoutMillis);
-            List<String> jvmArgs = connection.readStrings(bodyTimeoutMillis);
+        public Message doReadFrom(DataInput input) throws IOException {
+            List<String> gradleArgs = readStrings(input);
+            List<String> jvmArgs = readStrings(input);
             return new GradleInvocationParameters(gradleArgs, jvmArgs);
         }
     },
     IDE_AGENT_CONNECTION_PARAMETERS((byte) 4, IdeAgentConnectionParameters.class) {
         @Override
-        public void doWriteTo(Connection connection, Message message) throws IOException {
+        public void doWriteTo(DataOutput output, Message message) throws IOException {
             IdeAgentConnectionParameters ideAgentConnectionParameters = (IdeAgentConnectionParameters) message;
-            connection.writeString(ideAgentConnectionParameters.getGradleInstallation().getPath());
+            output.writeUTF(ideAgentConnectionParameters.getGradleInstallation().getPath());
         }
         @Override
-        public Message doReadFrom(Connection connection, int bodyTimeoutMillis) throws IOException {
-            String gradleHome = connection.readString(bodyTimeoutMillis);
+        public Message doReadFrom(DataInput input) throws IOException {
+            String gradleHome = input.readUTF();
             return new IdeAgentConnectionParameters(new File(gradleHome));
         }
     },
     IDE_REQUEST((byte) 5, IdeRequest.class) {
         @Override
-        public void doWriteTo(Connection connection, Message message) throws IOException {
+        public void doWriteTo(DataOutput output, Message message) throws IOException {
             IdeRequest request = (IdeRequest) message;
-            connection.writeInt(request.getId());
-            connection.writeString(request.getType().toString());
+            output.writeInt(request.getId());
+            output.writeUTF(request.getType().toString());
         }
 
         @Override
-        public Message doReadFrom(Connection connection, int bodyTimeoutMillis) throws IOException {
-            int syncId = connection.readInt(bodyTimeoutMillis);
-            IdeRequestType requestType = IdeRequestType.valueOf(connection.readString(bodyTimeoutMillis));
+        public Message doReadFrom(DataInput input) throws IOException {
+            int syncId = input.readInt();
+            IdeRequestType requestType = IdeRequestType.valueOf(input.readUTF());
             return new IdeRequest(syncId, requestType);
         }
     },
     IDE_SYNC_REQUEST_COMPLETED((byte) 6, IdeSyncRequestCompleted.class) {
         @Override
-        public void doWriteTo(Connection connection, Message message) throws IOException {
+        public void doWriteTo(DataOutput output, Message message) throws IOException {
             IdeSyncRequestCompleted request = (IdeSyncRequestCompleted) message;
-            connection.writeInt(request.getId());
-            connection.writeLong(request.getDurationMillis());
-            connection.writeString(request.getResult().toString());
-            connection.writeString(request.getErrorMessage());
+            output.writeInt(request.getId());
+            output.writeLong(request.getDurationMillis());
+            output.writeUTF(request.getResult().toString());
+            output.writeUTF(request.getErrorMessage());
         }
 
         @Override
-        public Message doReadFrom(Connection connection, int bodyTimeoutMillis) throws IOException {
-            int syncRequestCompletedId = connection.readInt(bodyTimeoutMillis);
-            long syncRequestCompletedDurationMillis = connection.readLong(bodyTimeoutMillis);
-            IdeSyncRequestResult result = IdeSyncRequestResult.valueOf(connection.readString(bodyTimeoutMillis));
-            String failureReason = connection.readString(bodyTimeoutMillis);
+        public Message doReadFrom(DataInput input) throws IOException {
+            int syncRequestCompletedId = input.readInt();
+            long syncRequestCompletedDurationMillis = input.readLong();
+            IdeSyncRequestResult result = IdeSyncRequestResult.valueOf(input.readUTF());
+            String failureReason = input.readUTF();
             return new IdeSyncRequestCompleted(syncRequestCompletedId, syncRequestCompletedDurationMillis, result, failureReason);
         }
     },
     IDE_CACHE_CLEANUP_COMPLETED((byte) 7, IdeCacheCleanupCompleted.class) {
         @Override
-        public void doWriteTo(Connection connection, Message message) throws IOException {
+        public void doWriteTo(DataOutput output, Message message) throws IOException {
             IdeCacheCleanupCompleted request = (IdeCacheCleanupCompleted) message;
-            connection.writeInt(request.getId());
+            output.writeInt(request.getId());
         }
 
         @Override
-        public Message doReadFrom(Connection connection, int bodyTimeoutMillis) throws IOException {
-            int cacheCompletedId = connection.readInt(bodyTimeoutMillis);
+        public Message doReadFrom(DataInput input) throws IOException {
+            int cacheCompletedId = input.readInt();
             return new IdeCacheCleanupCompleted(cacheCompletedId);
         }
+    },
+    BUILD_MEASUREMENTS((byte) 8, BuildMeasurements.class) {
+        @Override
+        public void doWriteTo(DataOutput output, Message message) throws IOException {
+            BuildMeasurements buildMeasurements = (BuildMeasurements) message;
+            output.writeUTF(buildMeasurements.getBuildId());
+            output.writeInt(buildMeasurements.getMeasurements().size());
+            for (BuildMeasurements.Measurement measurement : buildMeasurements.getMeasurements()) {
+                output.writeUTF(measurement.getName());
+                output.writeLong(measurement.getValue());
+                output.writeInt(measurement.getCount());
+            }
+        }
+
+        @Override
+        public Message doReadFrom(DataInput input) throws IOException {
+            String buildId = input.readUTF();
+            int count = input.readInt();
+            List<BuildMeasurements.Measurement> measurements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String name = input.readUTF();
+                long value = input.readLong();
+                int measurementCount = input.readInt();
+                measurements.add(new BuildMeasurements.Measurement(name, value, measurementCount));
+            }
+            return new BuildMeasurements(buildId, measurements);
+        }
     }
     ;
 
@@ -143,22 +181,56 @@ public Message doReadFrom(Connection connection, int bodyTimeoutMillis) throws I
         this.type = type;
     }
 
-    protected abstract Message doReadFrom(Connection connection, int bodyTimeoutMillis) throws IOException;
-    protected abstract void doWriteTo(Connection connection, Message message) throws IOException;
+    /**
+     * The largest frame that is accepted, to fail on a corrupt length rather than trying to allocate it.
+     */
+    public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    protected abstract Message doReadFrom(DataInput input) throws IOException;
+    protected abstract void doWriteTo(DataOutput output, Message message) throws IOException;
 
     /**
-     * Reads a message from the given connection.
+     * Encodes the given message as a frame, ready to be written to a channel.
      */
-    public Message readFrom(Connection connection, int timeoutMillis) throws IOException {
-        return doReadFrom(connection, timeoutMillis);
+    public static ByteBuffer toFrame(Message message) throws IOException {
+        MessageSerializer serializer = getMessageSerializer(message.getClass());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        // Placeholder for the length
+        output.writeInt(0);
+        output.writeByte(serializer.messageId);
+        serializer.doWriteTo(output, message);
+        output.flush();
+        ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+        frame.putInt(0, frame.remaining() - Integer.BYTES);
+        return frame;
     }
 
     /**
-     * Writes a message to the given connection.
+     * Decodes the message in the given frame contents, which start after the length of the frame.
      */
-    public void writeTo(Connection connection, Message message) throws IOException {
-        connection.writeByte(messageId);
-        doWriteTo(connection, message);
+    public static Message fromFrame(ByteBuffer frame) throws IOException {
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(bytes);
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+        MessageSerializer serializer = getMessageSerializer(input.readByte());
+        return serializer.doReadFrom(input);
+    }
+
+    private static List<String> readStrings(DataInput input) throws IOException {
+        int count = input.readInt();
+        List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add(input.readUTF());
+        }
+        return strings;
+    }
+
+    private static void writeStrings(DataOutput output, List<String> strings) throws IOException {
+        output.writeInt(strings.size());
+        for (String s : strings) {
+            output.writeUTF(s);
+        }
     }
 
     public static MessageSerializer getMessageSerializer(Class<? extends Message> messageClass) {
@@ -1,5 +1,6 @@
 package org.gradle.profiler.client.protocol
 
+import org.gradle.profiler.client.protocol.messages.BuildMeasurements
 import org.gradle.profiler.client.protocol.messages.IdeAgentConnectionParameters
 import org.gradle.profiler.client.protocol.messages.GradleInvocationCompleted
 import org.gradle.profiler.client.protocol.messages.GradleInvocationParameters
@@ -7,6 +8,9 @@ import org.gradle.profiler.client.protocol.messages.GradleInvocationStarted
 import spock.lang.Specification
 
 import java.time.Duration
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
 
 class ProtocolTest extends Specification {
     def "can send events between client and server"() {
@@ -40,4 +44,140 @@ class ProtocolTest extends Specification {
         client?.close()
         server?.close()
     }
+
+    def "can receive build measurements from a connection per build"() {
+        when:
+        def server = new Server("some build")
+        def timeout = Duration.ofSeconds(20)
+        def client1 = new Client(server.port)
+        client1.send(new BuildMeasurements("build-1", [new BuildMeasurements.Measurement("gc-time", 12, 1)]))
+        def connection1 = server.waitForIncoming(timeout)
+        def m1 = connection1.receiveBuildMeasurements(timeout)
+        server.close(connection1)
+
+        def client2 = new Client(server.port)
+        client2.send(new BuildMeasurements("build-2", [new BuildMeasurements.Measurement("a", 1, 2), new BuildMeasurements.Measurement("b", 3, 4)]))
+        def connection2 = server.maybeWaitForIncoming(timeout).get()
+        def m2 = connection2.receiveBuildMeasurements(timeout)
+        def noConnection = server.maybeWaitForIncoming(Duration.ZERO)
+
+        then:
+        m1.buildId == "build-1"
+        m1.measurements*.name == ["gc-time"]
+        m1.measurements*.value == [12]
+        m1.measurements*.count == [1]
+        m2.buildId == "build-2"
+        m2.measurements*.name == ["a", "b"]
+        m2.measurements*.value == [1, 3]
+        m2.measurements*.count == [2, 4]
+        !noConnection.present
+
+        cleanup:
+        client1?.close()
+        client2?.close()
+        server?.close()
+    }
+
+    def "delivers messages to listeners as they arrive"() {
+        when:
+        def server = new Server("some client")
+        def timeout = Duration.ofSeconds(20)
+        def client = new Client(server.port)
+        def serverConnection = server.waitForIncoming(timeout)
+
+        client.send(new GradleInvocationStarted(1))
+        // Wait for the message to arrive before the listener is added
+        serverConnection.receiveGradleInvocationStarted(timeout)
+        client.send(new GradleInvocationStarted(2))
+        def started = new CopyOnWriteArrayList<Integer>()
+        def completed = new CopyOnWriteArrayList<Integer>()
+        def allCompleted = new CountDownLatch(2)
+        def beforeSend = System.nanoTime()
+        def startedRegistration = serverConnection.onMessage(GradleInvocationStarted) { message, receivedAtNanos ->
+            started << message.id
+            serverConnection.send(new GradleInvocationParameters(["arg-${message.id}".toString()], []))
+        }
+        def completedRegistration = serverConnection.onMessage(GradleInvocationCompleted) { message, receivedAtNanos ->
+            assert receivedAtNanos >= beforeSend
+            completed << message.id
+            allCompleted.countDown()
+        }
+        client.send(new GradleInvocationStarted(3))
+        def p1 = client.receiveSyncParameters(timeout)
+        def p2 = client.receiveSyncParameters(timeout)
+        client.send(new GradleInvocationCompleted(3, 10))
+        client.send(new GradleInvocationCompleted(2, 20))
+        allCompleted.await(20, TimeUnit.SECONDS)
+        startedRegistration.close()
+        completedRegistration.close()
+        client.send(new GradleInvocationStarted(4))
+        def afterListenerRemoved = serverConnection.receiveGradleInvocationStarted(timeout)
+
+        then:
+        started == [2, 3]
+        completed == [3, 2]
+        [p1, p2]*.gradleArgs == [["arg-2"], ["arg-3"]]
+        afterListenerRemoved.id == 4
+
+        cleanup:
+        client?.close()
+        server?.close()
+    }
+
+    def "tracks concurrent invocations from multiple threads"() {
+        given:
+        def server = new Server("some client")
+        def timeout = Duration.ofSeconds(20)
+        def client = new Client(server.port)
+        def serverConnection = server.waitForIncoming(timeout)
+        def completed = new CopyOnWriteArrayList<Integer>()
+        def allCompleted = new CountDownLatch(20)
+        serverConnection.onMessage(GradleInvocationStarted) { message, receivedAtNanos ->
+            serverConnection.send(new GradleInvocationParameters([], []))
+        }
+        serverConnection.onMessage(GradleInvocationCompleted) { message, receivedAtNanos ->
+            completed << message.id
+            allCompleted.countDown()
+        }
+
+        when:
+        def threads = (1..20).collect { id ->
+            Thread.start {
+                client.send(new GradleInvocationStarted(id))
+                client.receiveSyncParameters(timeout)
+                client.send(new GradleInvocationCompleted(id, id))
+            }
+        }
+        threads*.join()
+        allCompleted.await(20, TimeUnit.SECONDS)
+
+        then:
+        completed.sort() == (1..20).toList()
+
+        cleanup:
+        client?.close()
+        server?.close()
+    }
+
+    def "fails to receive when the client has closed the connection"() {
+        given:
+        def server = new Server("some client")
+        def timeout = Duration.ofSeconds(20)
+        def client = new Client(server.port)
+        def serverConnection = server.waitForIncoming(timeout)
+
+        when:
+        client.send(new GradleInvocationStarted(1))
+        client.close()
+        def received = serverConnection.receiveGradleInvocationStarted(timeout)
+        serverConnection.receiveGradleInvocationCompleted(timeout)
+
+        then:
+        received.id == 1
+        def e = thrown(IllegalStateException)
+        e.message == "Connection to some client has closed."
+
+        cleanup:
+        server?.close()
+    }
 }
@@ -0,0 +1,88 @@
+package org.gradle.profiler.client.protocol.serialization
+
+import org.gradle.profiler.client.protocol.messages.BuildMeasurements
+import org.gradle.profiler.client.protocol.messages.GradleInvocationCompleted
+import org.gradle.profiler.client.protocol.messages.GradleInvocationStarted
+import org.gradle.profiler.client.protocol.messages.Message
+import spock.lang.Specification
+
+import java.nio.ByteBuffer
+import java.nio.channels.ReadableByteChannel
+
+class MessageFrameReaderTest extends Specification {
+
+    def "reads frames that arrive in chunks of #chunkSize bytes"() {
+        given:
+        def messages = [
+            new GradleInvocationStarted(1),
+            new BuildMeasurements("build", (1..1000).collect { new BuildMeasurements.Measurement("measurement-$it", it, 1) }),
+            new GradleInvocationCompleted(1, 123),
+        ]
+        def channel = new ChunkedChannel(messages.collect { MessageSerializer.toFrame(it) }, chunkSize)
+        def reader = new MessageFrameReader()
+        def received = []
+
+        when:
+        while (reader.readFrom(channel) { Message message, long receivedAtNanos -> received << message }) {
+        }
+
+        then:
+        received*.class == [GradleInvocationStarted, BuildMeasurements, GradleInvocationCompleted]
+        received[0].id == 1
+        received[1].measurements.size() == 1000
+        received[1].measurements.last().name == "measurement-1000"
+        received[2].durationMillis == 123
+
+        where:
+        chunkSize << [1, 3, 100, 100_000]
+    }
+
+    def "fails on a frame with an invalid length"() {
+        given:
+        def frame = ByteBuffer.allocate(8)
+        frame.putInt(-1)
+        frame.flip()
+        def channel = new ChunkedChannel([frame], 8)
+
+        when:
+        new MessageFrameReader().readFrom(channel) { message, receivedAtNanos -> }
+
+        then:
+        def e = thrown(IOException)
+        e.message == "Received a message frame with invalid length -1."
+    }
+
+    private static class ChunkedChannel implements ReadableByteChannel {
+        private final ByteBuffer bytes
+        private final int chunkSize
+
+        ChunkedChannel(List<ByteBuffer> frames, int chunkSize) {
+            bytes = ByteBuffer.allocate(frames.sum { it.remaining() } as int)
+            frames.each { bytes.put(it) }
+            bytes.flip()
+            this.chunkSize = chunkSize
+        }
+
+        @Override
+        int read(ByteBuffer dst) {
+            if (!bytes.hasRemaining()) {
+                return -1
+            }
+            int count = Math.min(chunkSize, Math.min(dst.remaining(), bytes.remaining()))
+            def chunk = bytes.duplicate()
+            chunk.limit(bytes.position() + count)
+            dst.put(chunk)
+            bytes.position(bytes.position() + count)
+            return count
+        }
+
+        @Override
+        boolean isOpen() {
+            return true
+        }
+
+        @Override
+        void close() {
+        }
+    }
+}
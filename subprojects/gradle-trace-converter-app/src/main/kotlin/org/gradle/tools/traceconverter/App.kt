@@ -3,6 +3,7 @@ package org.gradle.tools.traceconverter
 import java.io.File
 import kotlin.system.exitProcess
 import org.gradle.profiler.perfetto.BuildOperationToPerfettoConverter
+import org.gradle.profiler.perfetto.CriticalPath
 
 
 fun main(args: Array<String>) {
@@ -12,16 +13,30 @@ fun main(args: Array<String>) {
     }
 }
 
+private const val CRITICAL_PATH_COMMAND = "critical-path"
+
 internal fun run(args: Array<String>): Int {
-    if (args.isEmpty()) {
+    val criticalPathOnly = args.firstOrNull() == CRITICAL_PATH_COMMAND
+    val fileArgs = if (criticalPathOnly) args.drop(1) else args.toList()
+    if (fileArgs.isEmpty()) {
         System.err.println("Usage: gtc <build-operations-trace-log>")
+        System.err.println("       gtc $CRITICAL_PATH_COMMAND <build-operations-trace-log>")
         return 1
     }
-    val buildOperationsLog = File(args[0])
+    val buildOperationsLog = File(fileArgs[0])
     if (!buildOperationsLog.isFile) {
         System.err.println("File not found: ${buildOperationsLog.absolutePath}")
         return 1
     }
+    if (criticalPathOnly) {
+        val criticalPath = CriticalPath.analyze(buildOperationsLog)
+        if (criticalPath == null) {
+            System.err.println("No build operations found in ${buildOperationsLog.absolutePath}")
+            return 1
+        }
+        criticalPath.writeReport(System.out)
+        return 0
+    }
     val outputFile = outputFile(buildOperationsLog)
 
     val result = BuildOperationToPerfettoConverter.convert(buildOperationsLog, outputFile)
@@ -29,6 +44,9 @@ internal fun run(args: Array<String>): Int {
     if (result.buildScanUrl != null) {
         println("Build scan URL: ${result.buildScanUrl}")
     }
+    result.criticalPath?.let {
+        println("Critical path: ${it.duration} ms, run 'gtc $CRITICAL_PATH_COMMAND' for details")
+    }
     return 0
 }
 
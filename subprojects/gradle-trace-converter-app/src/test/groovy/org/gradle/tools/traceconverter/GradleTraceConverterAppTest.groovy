@@ -72,6 +72,30 @@ class GradleTraceConverterAppTest extends Specification {
         outputFile.exists()
         outputFile.length() > 0
         outputContains(outputFile.absolutePath)
+        outputContains("Critical path: ")
+    }
+
+    def "reports critical path of sample trace log"() {
+        given:
+        def sampleTrace = new File(getClass().getResource("/sample-trace-log.txt").toURI())
+
+        when:
+        def exitCode = run("critical-path", sampleTrace.absolutePath)
+
+        then:
+        exitCode == 0
+        outputContains("Time on the critical path by operation type:")
+        outputContains("Operations with the most time on the critical path:")
+        !new File(sampleTrace.parentFile, "sample-trace.perfetto.proto").exists()
+    }
+
+    def "fails when critical path command has no file"() {
+        when:
+        def exitCode = run("critical-path")
+
+        then:
+        exitCode == 1
+        errorOutputContains("gtc critical-path <build-operations-trace-log>")
     }
 
 }
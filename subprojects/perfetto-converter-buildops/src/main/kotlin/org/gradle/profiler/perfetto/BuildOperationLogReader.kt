@@ -0,0 +1,143 @@
+package org.gradle.profiler.perfetto
+
+import com.google.gson.Strictness
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
+import java.io.EOFException
+import java.io.Reader
+
+typealias BuildOperationId = Long
+
+/**
+ * A single record of the build operation trace log.
+ *
+ * Instances are mutable and reused by [BuildOperationLogReader] for every record,
+ * so consumers must copy whatever they need to keep before reading the next record.
+ */
+internal class BuildOperationEvent {
+
+    enum class Kind { START, FINISH, PROGRESS }
+
+    var kind: Kind = Kind.PROGRESS
+    var id: BuildOperationId = 0
+    var parentId: BuildOperationId = NO_PARENT
+    var displayName: String? = null
+
+    /**
+     * The `detailsClassName` of a start or progress record, or the `resultClassName` of a finish record.
+     */
+    var className: String? = null
+
+    /**
+     * The `startTime`, `endTime` or `time` of the record, depending on its [kind].
+     */
+    var time: Long = 0
+    var failure: String? = null
+
+    val hasParent: Boolean
+        get() = parentId != NO_PARENT
+
+    fun reset() {
+        kind = Kind.PROGRESS
+        id = 0
+        parentId = NO_PARENT
+        displayName = null
+        className = null
+        time = 0
+        failure = null
+    }
+
+    companion object {
+        const val NO_PARENT: BuildOperationId = -1
+    }
+}
+
+/**
+ * Pull parser for the build operation trace log, which contains one JSON object per line.
+ *
+ * Records are read one at a time into a reusable [BuildOperationEvent] without building an object tree,
+ * so memory use does not depend on the size of the log.
+ * The `details` and `result` values are handed to the [PayloadReader], or skipped if there is none.
+ */
+internal class BuildOperationLogReader(
+    reader: Reader,
+    private val payloadReader: PayloadReader? = null
+) : AutoCloseable {
+
+    fun interface PayloadReader {
+        /**
+         * Consumes the `details` or `result` value of the record that is currently being read.
+         *
+         * The payload can appear before the fields that identify the kind of the record.
+         */
+        fun read(json: JsonReader)
+    }
+
+    private val json = JsonReader(reader).apply {
+        // The log is a sequence of top-level objects
+        strictness = Strictness.LENIENT
+    }
+
+    /**
+     * Reads the next record into [event], returning `false` when the end of the log is reached.
+     */
+    fun next(event: BuildOperationEvent): Boolean {
+        try {
+            if (json.peek() == JsonToken.END_DOCUMENT) {
+                return false
+            }
+        } catch (e: EOFException) {
+            // Empty log
+            return false
+        }
+
+        event.reset()
+        var kind = BuildOperationEvent.Kind.PROGRESS
+        json.beginObject()
+        while (json.hasNext()) {
+            when (json.nextName()) {
+                "id" -> event.id = json.nextLong()
+                "parentId" -> event.parentId = nextLongOrNull() ?: BuildOperationEvent.NO_PARENT
+                "displayName" -> event.displayName = nextStringOrNull()
+                "detailsClassName", "resultClassName" -> event.className = nextStringOrNull()
+                "failure" -> event.failure = nextStringOrNull()
+                "startTime" -> {
+                    kind = BuildOperationEvent.Kind.START
+                    event.time = json.nextLong()
+                }
+
+                "endTime" -> {
+                    kind = BuildOperationEvent.Kind.FINISH
+                    event.time = json.nextLong()
+                }
+
+                "time" -> event.time = json.nextLong()
+                "details", "result" -> if (payloadReader != null) payloadReader.read(json) else json.skipValue()
+                else -> json.skipValue()
+            }
+        }
+        json.endObject()
+        event.kind = kind
+        return true
+    }
+
+    private fun nextStringOrNull(): String? {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull()
+            return null
+        }
+        return json.nextString()
+    }
+
+    private fun nextLongOrNull(): Long? {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull()
+            return null
+        }
+        return json.nextLong()
+    }
+
+    override fun close() {
+        json.close()
+    }
+}
@@ -1,9 +1,7 @@
 package org.gradle.profiler.perfetto
 
-import com.google.gson.Gson
 import java.io.File
 import java.nio.file.Files
-import java.util.stream.Stream
 
 /**
  * Converts Gradle's build operation trace log into [Perfetto](https://perfetto.dev) trace
@@ -12,32 +10,38 @@ object BuildOperationToPerfettoConverter {
 
     data class Result(
         val packetCount: Int,
-        val buildScanUrl: String? = null
+        val buildScanUrl: String? = null,
+        val criticalPath: CriticalPath? = null
     )
 
+    /**
+     * Converts the log in a single streaming pass.
+     * The [critical path][CriticalPath] of the build is computed in the same pass and written to its own track at the end of the trace.
+     *
+     * Memory use is bounded by the number of build operations running at the same time, not by the size of the log.
+     */
     @JvmStatic
     fun convert(buildOperationsLog: File, perfettoOutput: File): Result {
-        val summary = ChromeTraceWriter(perfettoOutput).use { converter ->
-            streamOperations(buildOperationsLog).use { operations ->
-                BuildOperationVisitor.visitLogs(operations, converter)
+        val criticalPathAnalyzer = CriticalPathAnalyzer()
+        var criticalPath: CriticalPath? = null
+        val summary = ChromeTraceWriter(perfettoOutput).use { writer ->
+            try {
+                BuildOperationLogReader(Files.newBufferedReader(buildOperationsLog.toPath()), writer).use { reader ->
+                    val event = BuildOperationEvent()
+                    while (reader.next(event)) {
+                        writer.write(event)
+                        criticalPathAnalyzer.visit(event)
+                    }
+                }
+            } catch (e: Exception) {
+                throw RuntimeException("Failed to read build operation trace file: ${buildOperationsLog.absolutePath}", e)
             }
 
-            converter.getSummary()
+            criticalPath = criticalPathAnalyzer.result()
+            criticalPath?.let { writer.writeCriticalPath(it) }
+            writer.getSummary()
         }
 
-        return Result(summary.packetCount)
+        return Result(summary.packetCount, summary.buildScanUrl, criticalPath)
     }
-
-    private fun streamOperations(buildOperationsLog: File): Stream<BuildOperationRecord> {
-        try {
-            val gson = Gson().newBuilder()
-                .registerTypeAdapterFactory(BuildOperationRecordAdapterFactory())
-                .create()
-            return Files.lines(buildOperationsLog.toPath())
-                .map { line -> gson.fromJson(line, BuildOperationRecord::class.java) }
-        } catch (e: Exception) {
-            throw RuntimeException("Failed to read build operation trace file: ${buildOperationsLog.absolutePath}", e)
-        }
-    }
-
 }
@@ -1,18 +1,17 @@
 package org.gradle.profiler.perfetto
 
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
 import com.google.protobuf.CodedOutputStream
 import java.io.File
 import java.io.OutputStream
 import java.nio.file.Files
-import java.util.concurrent.atomic.AtomicLong
 import perfetto.protos.BuiltinClock
-import perfetto.protos.ClockSnapshot
 import perfetto.protos.ClockSnapshot.Clock
 import perfetto.protos.DebugAnnotation
-import perfetto.protos.ProcessDescriptor
-import perfetto.protos.ThreadDescriptor
+import perfetto.protos.DebugAnnotationOrBuilder
+import perfetto.protos.InternedData
 import perfetto.protos.TracePacket
-import perfetto.protos.TrackDescriptor
 import perfetto.protos.TrackEvent
 
 /**
@@ -36,21 +35,50 @@ typealias CtThreadId = Int
  */
 typealias CtTrackUuid = Long
 
-internal class ChromeTraceWriter(val outputFile: File) : BuildOperationVisitor, AutoCloseable {
+/**
+ * Writes build operation records to a Perfetto trace as they are read from the log.
+ *
+ * Only the operations that are currently running are kept in memory.
+ * Display names, categories and annotation names are written once as interned data and referenced by id afterward.
+ * The intern tables are reset when they grow too large, so that their size does not depend on the size of the log either.
+ */
+internal class ChromeTraceWriter(val outputFile: File) : BuildOperationLogReader.PayloadReader, AutoCloseable {
 
     data class Summary(
         val packetCount: Int,
         val buildScanUrl: String?
     )
 
+    private class RunningOperation(
+        val id: BuildOperationId,
+        val parentId: BuildOperationId,
+        val threadIndex: Int,
+        val trackUuid: CtTrackUuid,
+        val previousThreadOperation: BuildOperationId
+    )
+
     private var packetCount = 0
-    private val uuidCounter = AtomicLong(1)
-    private val knownPidTid = mutableMapOf<CtProcessId, MutableMap<CtThreadId, CtTrackUuid>>()
-    private val startTime = AtomicLong(0)
+    private var uuidCounter = 1L
+    private var startTime = 0L
+    private var started = false
     private val fileOutputStream: OutputStream = Files.newOutputStream(outputFile.toPath())
-    private val codedStream = CodedOutputStream.newInstance(fileOutputStream)
+    private val codedStream = CodedOutputStream.newInstance(fileOutputStream, BUFFER_SIZE)
 
-    private val pidTidToBuildOp = mutableMapOf<CtProcessId, MutableMap<CtThreadId, BuildOperationId?>>()
+    private val packet = TracePacket.newBuilder()
+    private val payload = DebugAnnotation.newBuilder()
+    private var hasPayload = false
+
+    private val runningOperations = HashMap<BuildOperationId, RunningOperation>()
+
+    // Indexed by thread id - 1, since thread id 0 is reserved
+    private var threadTrackUuids = LongArray(16)
+    private var threadOperations = LongArray(16)
+    private var threadCount = 0
+
+    private val eventNames = HashMap<String, Long>()
+    private val eventCategories = HashMap<String, Long>()
+    private val debugAnnotationNames = HashMap<String, Long>()
+    private var nextInternedId = 1L
 
     private var expectBuildScanLinkProgressEvent = false
     private var buildScanUrl: String? = null
@@ -64,205 +92,324 @@ internal class ChromeTraceWriter(val outputFile: File) : BuildOperationVisitor,
         fileOutputStream.close()
     }
 
-    private fun writeTracePacket(packet: TracePacket) {
-        codedStream.writeMessage(1, packet)
+    override fun read(json: JsonReader) {
+        payload.clear()
+        readAnnotationValue(json, payload)
+        hasPayload = true
+    }
+
+    fun write(event: BuildOperationEvent) {
+        try {
+            when (event.kind) {
+                BuildOperationEvent.Kind.START -> writeStart(event)
+                BuildOperationEvent.Kind.FINISH -> writeFinish(event)
+                BuildOperationEvent.Kind.PROGRESS -> visitProgress(event)
+            }
+        } finally {
+            hasPayload = false
+        }
+    }
+
+    private fun writeTracePacket() {
+        codedStream.writeMessage(1, packet.build())
+        packet.clear()
         packetCount++
     }
 
-    override fun visit(start: BuildOperationStart): BuildOperationFinishVisitor {
-        if (packetCount == 0) {
-            onFirstRecord(start)
+    private fun writeStart(start: BuildOperationEvent) {
+        if (!started) {
+            started = true
+            startTime = start.time
+            writeProcessDescriptor()
+        }
+        if (nextInternedId > MAX_INTERNED_STRINGS) {
+            eventNames.clear()
+            eventCategories.clear()
+            debugAnnotationNames.clear()
+            nextInternedId = 1
+        }
+        if (nextInternedId == 1L) {
+            writeClockSnapshot()
         }
 
-        val ctProcessId = 0
-        if (!knownPidTid.containsKey(ctProcessId)) {
-            writeTracePacket(
-                TracePacket.newBuilder()
-                    .setTrustedPacketSequenceId(1)
-                    .setTrackDescriptor(
-                        TrackDescriptor.newBuilder()
-                            .setUuid(0) // irrelevant, but needed
-                            .setProcess(
-                                ProcessDescriptor.newBuilder()
-                                    .setPid(ctProcessId)
-                                    .setProcessName("Gradle Build Operation Trace")
-                            )
-                    )
-                    .build()
-            )
-            knownPidTid[ctProcessId] = mutableMapOf()
-            pidTidToBuildOp[ctProcessId] = mutableMapOf()
+        val threadIndex = determineThreadIndex(start.parentId)
+        if (threadIndex == threadCount) {
+            addThread()
         }
+        val uuid = threadTrackUuids[threadIndex]
 
-        val uuid: Long
-        val knownTid = knownPidTid[ctProcessId]!!
-        val tidToBuildOp = pidTidToBuildOp[ctProcessId]!!
-        val ctThreadId = determineThreadId(start.parentId, tidToBuildOp)
-        if (!(knownTid.containsKey(ctThreadId))) {
-            uuid = uuidCounter.getAndIncrement()
-            writeTracePacket(
-                TracePacket.newBuilder()
-                    .setTrustedPacketSequenceId(1)
-                    .setTrackDescriptor(
-                        TrackDescriptor.newBuilder()
-                            .setUuid(uuid)
-                            .setThread(
-                                ThreadDescriptor.newBuilder()
-                                    .setPid(ctProcessId)
-                                    .setTid(ctThreadId.toLong())
-                                    .setThreadName("abstract thread")
-                            )
-                    )
-                    .build()
-            )
-            knownTid[ctThreadId] = uuid
-        } else {
-            uuid = knownTid[ctThreadId]!!
+        packet
+            .setTimestampClockId(CLOCK_ID)
+            .setTimestamp(start.time - startTime)
+            .setTrustedPacketSequenceId(SEQUENCE_ID)
+            .setSequenceFlags(TracePacket.SequenceFlags.SEQ_NEEDS_INCREMENTAL_STATE_VALUE)
+        val trackEvent = packet.trackEventBuilder
+            .setTrackUuid(uuid)
+            .setNameIid(intern(eventNames, start.displayName ?: "") { iid, name ->
+                internedData().addEventNamesBuilder().setIid(iid).setName(name)
+            })
+            .addCategoryIids(intern(eventCategories, start.className ?: "") { iid, name ->
+                internedData().addEventCategoriesBuilder().setIid(iid).setName(name)
+            })
+            .setType(TrackEvent.Type.TYPE_SLICE_BEGIN)
+        if (hasPayload) {
+            trackEvent.addDebugAnnotations(payload.setNameIid(annotationName("details")))
         }
+        writeTracePacket()
 
-        writeTracePacket(
-            TracePacket.newBuilder()
-                .setTimestampClockId(64)
-                .setTimestamp(start.startTime - startTime.get())
-                .setTrustedPacketSequenceId(1)
-                .setTrackEvent(
-                    TrackEvent.newBuilder()
-                        .setTrackUuid(uuid)
-                        .setName(start.displayName)
-                        .addCategories(start.detailsClassName ?: "")
-                        .addDebugAnnotations(toDebugAnnotations(start.details, "details"))
-                        .setType(TrackEvent.Type.TYPE_SLICE_BEGIN)
-                )
-                .build()
-        )
-
-        val oldParent = tidToBuildOp[ctThreadId]
-        tidToBuildOp[ctThreadId] = start.id
-
-        return BuildOperationFinishVisitor { _, finish ->
-            tidToBuildOp[ctThreadId] = oldParent
-            writeTracePacket(
-                TracePacket.newBuilder()
-                    .setTimestampClockId(64)
-                    .setTimestamp(finish.endTime - startTime.get())
-                    .setTrustedPacketSequenceId(1)
-                    .setTrackEvent(
-                        TrackEvent.newBuilder()
-                            .setTrackUuid(uuid)
-                            .addDebugAnnotations(
-                                toDebugAnnotations(
-                                    mapOf(
-                                        "id" to start.id,
-                                        "parentId" to start.parentId
-                                    ), "operation"
-                                )
-                            )
-                            .addDebugAnnotations(toDebugAnnotations(finish.result, "result"))
-                            .setType(TrackEvent.Type.TYPE_SLICE_END)
-                    )
-                    .build()
-            )
+        runningOperations[start.id] = RunningOperation(start.id, start.parentId, threadIndex, uuid, threadOperations[threadIndex])
+        threadOperations[threadIndex] = start.id
+    }
+
+    private fun writeFinish(finish: BuildOperationEvent) {
+        val operation = runningOperations.remove(finish.id) ?: return
+        threadOperations[operation.threadIndex] = operation.previousThreadOperation
+
+        packet
+            .setTimestampClockId(CLOCK_ID)
+            .setTimestamp(finish.time - startTime)
+            .setTrustedPacketSequenceId(SEQUENCE_ID)
+            .setSequenceFlags(TracePacket.SequenceFlags.SEQ_NEEDS_INCREMENTAL_STATE_VALUE)
+        val trackEvent = packet.trackEventBuilder
+            .setTrackUuid(operation.trackUuid)
+            .setType(TrackEvent.Type.TYPE_SLICE_END)
+        val operationAnnotation = trackEvent.addDebugAnnotationsBuilder()
+            .setNameIid(annotationName("operation"))
+        operationAnnotation.addDictEntriesBuilder().setName("id").setIntValue(operation.id)
+        if (operation.parentId != BuildOperationEvent.NO_PARENT) {
+            operationAnnotation.addDictEntriesBuilder().setName("parentId").setIntValue(operation.parentId)
         }
+        if (hasPayload) {
+            trackEvent.addDebugAnnotations(payload.setNameIid(annotationName("result")))
+        }
+        writeTracePacket()
     }
 
-    override fun visit(progress: BuildOperationProgress) {
+    private fun visitProgress(progress: BuildOperationEvent) {
         // A heuristic to extract the build scan link from the progress events
         // that represent console output at the end of the build
-        if (progress.detailsClassName == "org.gradle.internal.logging.events.StyledTextOutputEvent") {
-            val details =
-                progress.details?.takeIf { it["category"] == "com.gradle.develocity.agent.gradle.DevelocityPlugin" }
-                    ?: return
-
-            @Suppress("UNCHECKED_CAST")
-            val spans: Map<String, String> = details["spans"]?.let { it as? List<Map<String, String>> }?.get(0)
-                ?: return
-
-            val text = spans["text"] ?: return
-            if (text.startsWith("Publishing build scan...") || text.startsWith("Publishing Build Scan...") || text.startsWith(
-                    "Publishing Build Scan to Develocity..."
-                )
-            ) {
-                expectBuildScanLinkProgressEvent = true
-            } else if (expectBuildScanLinkProgressEvent) {
-                expectBuildScanLinkProgressEvent = false
-                if (text.startsWith("http")) {
-                    onBuildScanUrl(text)
-                }
+        if (!hasPayload || progress.className != "org.gradle.internal.logging.events.StyledTextOutputEvent") {
+            return
+        }
+        if (stringEntry(payload, "category") != "com.gradle.develocity.agent.gradle.DevelocityPlugin") {
+            return
+        }
+        val spans = payload.dictEntriesList.find { it.name == "spans" }
+            ?.takeIf { it.arrayValuesCount > 0 }
+            ?: return
+        val text = stringEntry(spans.getArrayValues(0), "text") ?: return
+        if (text.startsWith("Publishing build scan...") || text.startsWith("Publishing Build Scan...") || text.startsWith(
+                "Publishing Build Scan to Develocity..."
+            )
+        ) {
+            expectBuildScanLinkProgressEvent = true
+        } else if (expectBuildScanLinkProgressEvent) {
+            expectBuildScanLinkProgressEvent = false
+            if (text.startsWith("http")) {
+                onBuildScanUrl(text)
             }
         }
     }
 
+    private fun stringEntry(annotation: DebugAnnotationOrBuilder, name: String): String? {
+        return annotation.dictEntriesList
+            .find { it.name == name && it.hasStringValue() }
+            ?.stringValue
+    }
+
     private fun onBuildScanUrl(buildScanUrl: String) {
         this.buildScanUrl = buildScanUrl
 
-        val extraTrackId = uuidCounter.getAndIncrement()
-        writeTracePacket(
-            TracePacket.newBuilder()
-                .setTimestampClockId(64)
-                .setTimestamp(0)
-                .setTrustedPacketSequenceId(1)
-                .setTrackEvent(
-                    TrackEvent.newBuilder()
-                        .setTrackUuid(extraTrackId)
-                        .setName("Build scan: $buildScanUrl")
-                        .setType(TrackEvent.Type.TYPE_INSTANT)
-                )
-                .build()
-        )
+        val extraTrackId = uuidCounter++
+        packet
+            .setTimestampClockId(CLOCK_ID)
+            .setTimestamp(0)
+            .setTrustedPacketSequenceId(SEQUENCE_ID)
+            .trackEventBuilder
+            .setTrackUuid(extraTrackId)
+            .setName("Build scan: $buildScanUrl")
+            .setType(TrackEvent.Type.TYPE_INSTANT)
+        writeTracePacket()
     }
 
-    private fun determineThreadId(
-        parentId: BuildOperationId?,
-        tidToBuildOp: Map<CtThreadId, BuildOperationId?>
-    ): Int {
-        val compatibleThread = tidToBuildOp.entries
-            .find { it.value == parentId }
-            ?.key
-        if (compatibleThread != null) {
-            return compatibleThread
+    /**
+     * Writes the critical path of the build to its own track, with one slice for each segment of the path.
+     */
+    fun writeCriticalPath(criticalPath: CriticalPath) {
+        val trackUuid = uuidCounter++
+        packet
+            .setTrustedPacketSequenceId(SEQUENCE_ID)
+            .trackDescriptorBuilder
+            .setUuid(trackUuid)
+            .setName("Critical path")
+        writeTracePacket()
+
+        for (segment in criticalPath.segments) {
+            packet
+                .setTimestampClockId(CLOCK_ID)
+                .setTimestamp(segment.startTime - startTime)
+                .setTrustedPacketSequenceId(SEQUENCE_ID)
+                .trackEventBuilder
+                .setTrackUuid(trackUuid)
+                .setName(segment.displayName)
+                .setType(TrackEvent.Type.TYPE_SLICE_BEGIN)
+                .addDebugAnnotationsBuilder()
+                .setName("operationId")
+                .setIntValue(segment.operationId)
+            writeTracePacket()
+            packet
+                .setTimestampClockId(CLOCK_ID)
+                .setTimestamp(segment.endTime - startTime)
+                .setTrustedPacketSequenceId(SEQUENCE_ID)
+                .trackEventBuilder
+                .setTrackUuid(trackUuid)
+                .setType(TrackEvent.Type.TYPE_SLICE_END)
+            writeTracePacket()
         }
-        val emptyThread = tidToBuildOp.entries
-            .find { it.value == null }
-            ?.key
-        // We start counting at 1, since thread id 0 is reserved
-        return emptyThread ?: (tidToBuildOp.size + 1)
     }
 
-    private fun onFirstRecord(record: BuildOperationStart) {
-        startTime.set(record.startTime)
-
-        writeTracePacket(
-            TracePacket.newBuilder()
-                .setTrustedPacketSequenceId(1)
-                .setClockSnapshot(
-                    ClockSnapshot.newBuilder()
-                        // set our custom clock
-                        // - let the 0 of our clock be the startTime on the global boot-time clock
-                        // - use 'ms' unit since that's anyway the precision we get by the build operation infrastructure
-                        .addClocks(
-                            Clock.newBuilder()
-                                .setTimestamp(0)
-                                .setUnitMultiplierNs(1000 * 1000) // unit is 'ms'
-                                .setClockId(64) // first user-defined available clock ID
-                        )
-                        .addClocks(
-                            Clock.newBuilder()
-                                .setTimestamp(startTime.get())
-                                .setClockId(BuiltinClock.BUILTIN_CLOCK_BOOTTIME_VALUE)
-                        )
-                )
-                .build()
-        )
+    private fun determineThreadIndex(parentId: BuildOperationId): Int {
+        for (i in 0 until threadCount) {
+            if (threadOperations[i] == parentId) {
+                return i
+            }
+        }
+        for (i in 0 until threadCount) {
+            if (threadOperations[i] == BuildOperationEvent.NO_PARENT) {
+                return i
+            }
+        }
+        return threadCount
     }
 
-    private fun toDebugAnnotations(args: Map<String, Any?>?, name: String): DebugAnnotation {
-        return DebugAnnotation.newBuilder()
-            .setName(name)
-            .addAllDictEntries(args?.entries?.map { e ->
-                @Suppress("UNCHECKED_CAST")
-                return@map if (e.value is Map<*, *>) toDebugAnnotations(e.value as Map<String, Any>, e.key)
-                else DebugAnnotation.newBuilder().setName(e.key).setStringValue(e.value.toString()).build()
-            }.orEmpty())
-            .build()
+    private fun addThread() {
+        if (threadCount == threadTrackUuids.size) {
+            threadTrackUuids = threadTrackUuids.copyOf(threadCount * 2)
+            threadOperations = threadOperations.copyOf(threadCount * 2)
+        }
+        val uuid = uuidCounter++
+        threadTrackUuids[threadCount] = uuid
+        threadOperations[threadCount] = BuildOperationEvent.NO_PARENT
+        threadCount++
+
+        packet
+            .setTrustedPacketSequenceId(SEQUENCE_ID)
+            .trackDescriptorBuilder
+            .setUuid(uuid)
+            .threadBuilder
+            .setPid(PROCESS_ID)
+            // We start counting at 1, since thread id 0 is reserved
+            .setTid(threadCount.toLong())
+            .setThreadName("abstract thread")
+        writeTracePacket()
+    }
+
+    private fun writeProcessDescriptor() {
+        packet
+            .setTrustedPacketSequenceId(SEQUENCE_ID)
+            .trackDescriptorBuilder
+            .setUuid(0) // irrelevant, but needed
+            .processBuilder
+            .setPid(PROCESS_ID)
+            .setProcessName("Gradle Build Operation Trace")
+        writeTracePacket()
+    }
+
+    /**
+     * Starts a new generation of interned data on the packet sequence.
+     */
+    private fun writeClockSnapshot() {
+        packet
+            .setTrustedPacketSequenceId(SEQUENCE_ID)
+            .setSequenceFlags(TracePacket.SequenceFlags.SEQ_INCREMENTAL_STATE_CLEARED_VALUE)
+            .clockSnapshotBuilder
+            // set our custom clock
+            // - let the 0 of our clock be the startTime on the global boot-time clock
+            // - use 'ms' unit since that's anyway the precision we get by the build operation infrastructure
+            .addClocks(
+                Clock.newBuilder()
+                    .setTimestamp(0)
+                    .setUnitMultiplierNs(1000 * 1000) // unit is 'ms'
+                    .setClockId(CLOCK_ID)
+            )
+            .addClocks(
+                Clock.newBuilder()
+                    .setTimestamp(startTime)
+                    .setClockId(BuiltinClock.BUILTIN_CLOCK_BOOTTIME_VALUE)
+            )
+        writeTracePacket()
+    }
+
+    private fun internedData(): InternedData.Builder = packet.internedDataBuilder
+
+    private fun annotationName(name: String): Long {
+        return intern(debugAnnotationNames, name) { iid, value ->
+            internedData().addDebugAnnotationNamesBuilder().setIid(iid).setName(value)
+        }
+    }
+
+    /**
+     * Returns the interned id of [value], emitting it to the current packet if it has not been written before.
+     */
+    private inline fun intern(table: MutableMap<String, Long>, value: String, emit: (Long, String) -> Unit): Long {
+        val existing = table[value]
+        if (existing != null) {
+            return existing
+        }
+        val iid = nextInternedId++
+        table[value] = iid
+        emit(iid, value)
+        return iid
+    }
+
+    private fun readAnnotationValue(json: JsonReader, target: DebugAnnotation.Builder) {
+        when (json.peek()) {
+            JsonToken.BEGIN_OBJECT -> {
+                json.beginObject()
+                while (json.hasNext()) {
+                    val entry = target.addDictEntriesBuilder().setName(json.nextName())
+                    readAnnotationValue(json, entry)
+                }
+                json.endObject()
+            }
+
+            JsonToken.BEGIN_ARRAY -> {
+                json.beginArray()
+                while (json.hasNext()) {
+                    readAnnotationValue(json, target.addArrayValuesBuilder())
+                }
+                json.endArray()
+            }
+
+            JsonToken.BOOLEAN -> target.setBoolValue(json.nextBoolean())
+            JsonToken.NUMBER -> {
+                val number = json.nextString()
+                val longValue = number.toLongOrNull()
+                if (longValue != null) {
+                    target.setIntValue(longValue)
+                } else {
+                    target.setDoubleValue(number.toDouble())
+                }
+            }
+
+            JsonToken.NULL -> {
+                json.nextNull()
+                target.setStringValue("null")
+            }
+
+            else -> target.setStringValue(json.nextString())
+        }
+    }
+
+    private companion object {
+        const val BUFFER_SIZE = 64 * 1024
+        const val SEQUENCE_ID = 1
+        const val PROCESS_ID: CtProcessId = 0
+
+        // First user-defined available clock ID
+        const val CLOCK_ID = 64
+
+        // Bounds the memory used by the intern tables, which otherwise grow with the number of distinct display names
+        const val MAX_INTERNED_STRINGS = 100_000L
     }
 }
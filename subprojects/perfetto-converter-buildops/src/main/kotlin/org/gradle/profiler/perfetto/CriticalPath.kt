@@ -0,0 +1,129 @@
+package org.gradle.profiler.perfetto
+
+import java.io.File
+import java.io.PrintStream
+import java.nio.file.Files
+import java.util.Locale
+
+/**
+ * The chain of build operations that bounded the wall-clock time of a build.
+ *
+ * Operations are only related by nesting in the log, so dependencies between operations that run under the same parent are inferred from time:
+ * walking back from the end of the parent, the chain continues with the child that finished last before the current operation started.
+ * The time of the parent that is not covered by the chain is attributed to the parent itself.
+ * Walking down the chain into the children of each operation, the [segments] cover the whole time from the first start to the last finish.
+ */
+class CriticalPath(
+    val startTime: Long,
+    val endTime: Long,
+    /**
+     * The deepest operation on the critical path for each part of the time, in order.
+     */
+    val segments: List<CriticalPathSegment>,
+    /**
+     * The operations off the critical path with the least slack, from the least slack.
+     */
+    val nearCriticalOperations: List<NearCriticalOperation>
+) {
+    val duration: Long
+        get() = endTime - startTime
+
+    /**
+     * Writes a summary of the critical path: the time spent on it by operation type and by operation, and the near-critical operations.
+     */
+    @JvmOverloads
+    fun writeReport(out: PrintStream, limit: Int = DEFAULT_REPORT_LIMIT) {
+        out.println("Critical path: $duration ms over ${segments.map { it.operationId }.distinct().size} operations")
+
+        out.println()
+        out.println("Time on the critical path by operation type:")
+        segments.groupBy { operationType(it.detailsClassName) }
+            .mapValues { (_, segments) -> segments.sumOf { it.duration } }
+            .entries
+            .sortedByDescending { it.value }
+            .take(limit)
+            .forEach { (type, time) -> out.println(String.format(Locale.US, "%10d ms %6.1f%%  %s", time, percentage(time), type)) }
+
+        out.println()
+        out.println("Operations with the most time on the critical path:")
+        segments.groupBy { it.operationId }
+            .values
+            .map { segments -> segments.first().displayName to segments.sumOf { it.duration } }
+            .sortedByDescending { it.second }
+            .take(limit)
+            .forEach { (name, time) -> out.println(String.format(Locale.US, "%10d ms %6.1f%%  %s", time, percentage(time), name)) }
+
+        if (nearCriticalOperations.isNotEmpty()) {
+            out.println()
+            out.println("Near-critical operations, which would delay the build if they took longer than their slack:")
+            nearCriticalOperations.take(limit).forEach {
+                out.println(String.format(Locale.US, "%10d ms slack %10d ms duration  %s", it.slack, it.duration, it.displayName))
+            }
+        }
+    }
+
+    private fun percentage(time: Long): Double = if (duration == 0L) 0.0 else time * 100.0 / duration
+
+    companion object {
+        const val DEFAULT_REPORT_LIMIT = 20
+
+        /**
+         * Analyzes the given build operation trace log in a single streaming pass.
+         *
+         * @return the critical path, or `null` when the log contains no build operation
+         */
+        @JvmStatic
+        fun analyze(buildOperationsLog: File): CriticalPath? {
+            val analyzer = CriticalPathAnalyzer()
+            BuildOperationLogReader(Files.newBufferedReader(buildOperationsLog.toPath())).use { reader ->
+                val event = BuildOperationEvent()
+                while (reader.next(event)) {
+                    analyzer.visit(event)
+                }
+            }
+            return analyzer.result()
+        }
+
+        /**
+         * A readable name for the type of operation, derived from the class of its details.
+         */
+        @JvmStatic
+        fun operationType(detailsClassName: String?): String {
+            if (detailsClassName == null) {
+                return "(no details)"
+            }
+            return detailsClassName
+                .substringAfterLast('.')
+                .replace(Regex("(\\$\\d+)+$"), "")
+        }
+    }
+}
+
+/**
+ * An operation on the critical path, for the part of its time that is not covered by its children on the critical path.
+ */
+class CriticalPathSegment(
+    val operationId: BuildOperationId,
+    val displayName: String,
+    val detailsClassName: String?,
+    val startTime: Long,
+    val endTime: Long
+) {
+    val duration: Long
+        get() = endTime - startTime
+
+    override fun toString(): String = "$displayName [$startTime, $endTime]"
+}
+
+/**
+ * An operation off the critical path, which could have finished [slack] milliseconds later without delaying the build.
+ * The operation is assumed to gate the next operation on the critical path of its parent that started after it finished.
+ */
+class NearCriticalOperation(
+    val operationId: BuildOperationId,
+    val displayName: String,
+    val duration: Long,
+    val slack: Long
+) {
+    override fun toString(): String = "$displayName (slack $slack ms)"
+}
@@ -0,0 +1,142 @@
+package org.gradle.profiler.perfetto
+
+/**
+ * Computes the [CriticalPath] of the build operations of a log, as the records are read.
+ *
+ * When an operation finishes, its critical path is computed from its finished children, which are then dropped.
+ * So memory use is bounded by the children of the operations that are running at the same time, not by the size of the log.
+ * Only the critical path and a bounded number of near-critical operations are kept for each finished operation until its parent finishes.
+ */
+internal class CriticalPathAnalyzer(
+    private val maxNearCriticalOperations: Int = CriticalPath.DEFAULT_REPORT_LIMIT
+) {
+    private class Operation(
+        val id: BuildOperationId,
+        val parentId: BuildOperationId,
+        val displayName: String,
+        val detailsClassName: String?,
+        val startTime: Long
+    ) {
+        var endTime = startTime
+        var children = ArrayList<Operation>()
+        var segments: List<CriticalPathSegment> = emptyList()
+        var onCriticalPathOfParent = false
+
+        /**
+         * Slack relative to this operation.
+         */
+        var nearCritical: List<NearCriticalOperation> = emptyList()
+
+        fun segment(startTime: Long, endTime: Long) = CriticalPathSegment(id, displayName, detailsClassName, startTime, endTime)
+    }
+
+    private val runningOperations = HashMap<BuildOperationId, Operation>()
+    private val finishedTopLevelOperations = ArrayList<Operation>()
+    private var lastTime = Long.MIN_VALUE
+
+    fun visit(event: BuildOperationEvent) {
+        when (event.kind) {
+            BuildOperationEvent.Kind.START -> {
+                runningOperations[event.id] = Operation(event.id, event.parentId, event.displayName ?: "", event.className, event.time)
+                lastTime = maxOf(lastTime, event.time)
+            }
+
+            BuildOperationEvent.Kind.FINISH -> {
+                val operation = runningOperations.remove(event.id) ?: return
+                operation.endTime = maxOf(operation.startTime, event.time)
+                lastTime = maxOf(lastTime, event.time)
+                finish(operation)
+            }
+
+            BuildOperationEvent.Kind.PROGRESS -> {}
+        }
+    }
+
+    /**
+     * Returns the critical path of all operations visited so far, or `null` if there were none.
+     * Operations that did not finish, for example in a truncated log, are considered to finish with the last record.
+     */
+    fun result(): CriticalPath? {
+        // Children start after their parents, so they are finished first
+        runningOperations.values.sortedByDescending { it.startTime }.forEach {
+            runningOperations.remove(it.id)
+            it.endTime = maxOf(it.startTime, lastTime)
+            finish(it)
+        }
+        if (finishedTopLevelOperations.isEmpty()) {
+            return null
+        }
+        // The time between top-level operations is attributed to a synthetic operation that stands for the whole log
+        val build = Operation(
+            BuildOperationEvent.NO_PARENT,
+            BuildOperationEvent.NO_PARENT,
+            "(no operation)",
+            null,
+            finishedTopLevelOperations.minOf { it.startTime }
+        )
+        build.endTime = finishedTopLevelOperations.maxOf { it.endTime }
+        build.children = finishedTopLevelOperations
+        analyze(build)
+        return CriticalPath(build.startTime, build.endTime, build.segments, build.nearCritical)
+    }
+
+    private fun finish(operation: Operation) {
+        analyze(operation)
+        val parent = if (operation.parentId == BuildOperationEvent.NO_PARENT) null else runningOperations[operation.parentId]
+        (parent?.children ?: finishedTopLevelOperations).add(operation)
+    }
+
+    private fun analyze(operation: Operation) {
+        val children = operation.children
+        operation.children = ArrayList(0)
+        if (children.isEmpty()) {
+            operation.segments = listOf(operation.segment(operation.startTime, operation.endTime))
+            return
+        }
+
+        // Walk back from the end of the operation, continuing with the child that finished last before the current time
+        children.sortBy { it.endTime }
+        val chain = ArrayList<Operation>()
+        var time = operation.endTime
+        var index = children.size - 1
+        while (index >= 0) {
+            val child = children[index--]
+            if (child.endTime <= time && child.endTime > operation.startTime) {
+                chain.add(child)
+                child.onCriticalPathOfParent = true
+                time = child.startTime
+            }
+        }
+        chain.reverse()
+
+        val segments = ArrayList<CriticalPathSegment>()
+        var cursor = operation.startTime
+        for (child in chain) {
+            val childStart = maxOf(child.startTime, cursor)
+            if (childStart > cursor) {
+                segments.add(operation.segment(cursor, childStart))
+            }
+            child.segments.filterTo(segments) { it.endTime > childStart }
+            cursor = child.endTime
+        }
+        if (operation.endTime > cursor) {
+            segments.add(operation.segment(cursor, operation.endTime))
+        }
+        operation.segments = segments
+
+        val nearCritical = ArrayList<NearCriticalOperation>()
+        var chainIndex = 0
+        for (child in children) {
+            // The children are sorted by end time, so the next operation on the chain only moves forward
+            while (chainIndex < chain.size && chain[chainIndex].startTime < child.endTime) {
+                chainIndex++
+            }
+            val slack = if (child.onCriticalPathOfParent) 0 else (if (chainIndex < chain.size) chain[chainIndex].startTime else operation.endTime) - child.endTime
+            if (slack > 0 && child.endTime > child.startTime) {
+                nearCritical.add(NearCriticalOperation(child.id, child.displayName, child.endTime - child.startTime, slack))
+            }
+            child.nearCritical.mapTo(nearCritical) { NearCriticalOperation(it.operationId, it.displayName, it.duration, it.slack + slack) }
+        }
+        operation.nearCritical = nearCritical.sortedBy { it.slack }.take(maxNearCriticalOperations)
+    }
+}
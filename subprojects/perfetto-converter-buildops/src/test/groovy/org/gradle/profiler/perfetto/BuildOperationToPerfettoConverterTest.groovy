@@ -0,0 +1,115 @@
+package org.gradle.profiler.perfetto
+
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import perfetto.protos.Trace
+import perfetto.protos.TracePacket
+import perfetto.protos.TrackEvent
+import spock.lang.Specification
+
+class BuildOperationToPerfettoConverterTest extends Specification {
+
+    @Rule
+    TemporaryFolder tmpDir = new TemporaryFolder()
+
+    def log = """\
+{"displayName":"Run build","details":{},"detailsClassName":"RunBuild","id":1,"startTime":100}
+{"displayName":"Load build","details":{"buildPath":":","includedBy":null},"detailsClassName":"LoadBuild","id":2,"parentId":1,"startTime":101}
+{"details":{"enabled":true},"detailsClassName":"Progress","id":2,"time":102}
+{"id":2,"result":{"count":3,"nested":{"ratio":0.5}},"resultClassName":"LoadBuildResult","endTime":110}
+{"displayName":"Load build","details":{"buildPath":":included"},"detailsClassName":"LoadBuild","id":3,"parentId":1,"startTime":111}
+{"id":3,"endTime":115}
+{"id":1,"endTime":120}
+"""
+
+    def "reads records of the build operation log"() {
+        given:
+        def reader = new BuildOperationLogReader(new StringReader(log), null)
+        def event = new BuildOperationEvent()
+        def records = []
+
+        when:
+        while (reader.next(event)) {
+            records << [event.kind, event.id, event.parentId, event.displayName, event.className, event.time]
+        }
+
+        then:
+        records == [
+            [BuildOperationEvent.Kind.START, 1L, BuildOperationEvent.NO_PARENT, "Run build", "RunBuild", 100L],
+            [BuildOperationEvent.Kind.START, 2L, 1L, "Load build", "LoadBuild", 101L],
+            [BuildOperationEvent.Kind.PROGRESS, 2L, BuildOperationEvent.NO_PARENT, null, "Progress", 102L],
+            [BuildOperationEvent.Kind.FINISH, 2L, BuildOperationEvent.NO_PARENT, null, "LoadBuildResult", 110L],
+            [BuildOperationEvent.Kind.START, 3L, 1L, "Load build", "LoadBuild", 111L],
+            [BuildOperationEvent.Kind.FINISH, 3L, BuildOperationEvent.NO_PARENT, null, null, 115L],
+            [BuildOperationEvent.Kind.FINISH, 1L, BuildOperationEvent.NO_PARENT, null, null, 120L],
+        ]
+    }
+
+    def "empty log produces empty trace"() {
+        given:
+        def logFile = tmpDir.newFile("empty-log.txt")
+        def output = new File(tmpDir.root, "empty.perfetto.proto")
+
+        when:
+        def result = BuildOperationToPerfettoConverter.convert(logFile, output)
+
+        then:
+        result.packetCount == 0
+        output.length() == 0
+    }
+
+    def "interns names that are used repeatedly"() {
+        given:
+        def logFile = tmpDir.newFile("trace-log.txt")
+        logFile.text = log
+        def output = new File(tmpDir.root, "trace.perfetto.proto")
+
+        when:
+        def result = BuildOperationToPerfettoConverter.convert(logFile, output)
+        def packets = output.withInputStream { Trace.parseFrom(it) }.packetList
+
+        then:
+        result.packetCount == packets.size()
+        def interned = packets.findAll { it.hasInternedData() }*.internedData
+        interned*.eventNamesList.flatten()*.name == ["Run build", "Load build"]
+        interned*.eventCategoriesList.flatten()*.name == ["RunBuild", "LoadBuild"]
+        interned*.debugAnnotationNamesList.flatten()*.name == ["details", "operation", "result"]
+
+        def events = packets.findAll { it.hasTrackEvent() && it.trackEvent.trackUuid != criticalPathTrackUuid(packets) }*.trackEvent
+        events*.type == [
+            TrackEvent.Type.TYPE_SLICE_BEGIN,
+            TrackEvent.Type.TYPE_SLICE_BEGIN,
+            TrackEvent.Type.TYPE_SLICE_END,
+            TrackEvent.Type.TYPE_SLICE_BEGIN,
+            TrackEvent.Type.TYPE_SLICE_END,
+            TrackEvent.Type.TYPE_SLICE_END,
+        ]
+        events[1].nameIid == events[3].nameIid
+        events[2].debugAnnotationsList[1].dictEntriesList.collect { [it.name, it.intValue] } == [["count", 3L], ["nested", 0L]]
+        events[2].debugAnnotationsList[1].dictEntriesList[1].dictEntriesList[0].doubleValue == 0.5d
+    }
+
+    def "writes critical path to its own track"() {
+        given:
+        def logFile = tmpDir.newFile("trace-log.txt")
+        logFile.text = log
+        def output = new File(tmpDir.root, "trace.perfetto.proto")
+
+        when:
+        def result = BuildOperationToPerfettoConverter.convert(logFile, output)
+        def packets = output.withInputStream { Trace.parseFrom(it) }.packetList
+
+        then:
+        result.criticalPath.duration == 20
+        result.criticalPath.segments*.displayName == ["Run build", "Load build", "Run build", "Load build", "Run build"]
+
+        def events = packets.findAll { it.hasTrackEvent() && it.trackEvent.trackUuid == criticalPathTrackUuid(packets) }
+        events*.trackEvent*.type == [TrackEvent.Type.TYPE_SLICE_BEGIN, TrackEvent.Type.TYPE_SLICE_END] * 5
+        events.findAll { it.trackEvent.type == TrackEvent.Type.TYPE_SLICE_BEGIN }*.trackEvent*.name == ["Run build", "Load build", "Run build", "Load build", "Run build"]
+        events*.timestamp == [0L, 1L, 1L, 10L, 10L, 11L, 11L, 15L, 15L, 20L]
+    }
+
+    private static long criticalPathTrackUuid(List<TracePacket> packets) {
+        return packets.find { it.hasTrackDescriptor() && it.trackDescriptor.name == "Critical path" }.trackDescriptor.uuid
+    }
+}
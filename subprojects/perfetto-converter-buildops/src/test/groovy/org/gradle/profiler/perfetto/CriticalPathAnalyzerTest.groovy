@@ -0,0 +1,150 @@
+package org.gradle.profiler.perfetto
+
+import spock.lang.Specification
+
+class CriticalPathAnalyzerTest extends Specification {
+
+    def "follows the child that finished last before the next one on the path started"() {
+        when:
+        def path = analyze("""\
+{"displayName":"root","detailsClassName":"Root","id":1,"startTime":0}
+{"displayName":"a","detailsClassName":"Work","id":2,"parentId":1,"startTime":0}
+{"displayName":"b","detailsClassName":"Work","id":3,"parentId":1,"startTime":10}
+{"displayName":"d","detailsClassName":"Work","id":4,"parentId":1,"startTime":20}
+{"id":2,"endTime":30}
+{"id":4,"endTime":50}
+{"id":3,"endTime":60}
+{"displayName":"c","detailsClassName":"Work","id":5,"parentId":1,"startTime":60}
+{"id":5,"endTime":100}
+{"id":1,"endTime":100}
+""")
+
+        then:
+        path.startTime == 0
+        path.endTime == 100
+        segments(path) == [["root", 0L, 10L], ["b", 10L, 60L], ["c", 60L, 100L]]
+        path.nearCriticalOperations.collect { [it.displayName, it.slack] } == [["d", 10L], ["a", 30L]]
+    }
+
+    def "descends into the children of operations on the path"() {
+        when:
+        def path = analyze("""\
+{"displayName":"root","id":1,"startTime":0}
+{"displayName":"configure","id":2,"parentId":1,"startTime":5}
+{"displayName":"plugin","id":3,"parentId":2,"startTime":10}
+{"id":3,"endTime":20}
+{"id":2,"endTime":25}
+{"id":1,"endTime":30}
+""")
+
+        then:
+        segments(path) == [["root", 0L, 5L], ["configure", 5L, 10L], ["plugin", 10L, 20L], ["configure", 20L, 25L], ["root", 25L, 30L]]
+        path.segments.sum { it.duration } == path.duration
+    }
+
+    def "adds the slack of parents to the slack of their children"() {
+        when:
+        def path = analyze("""\
+{"displayName":"root","id":1,"startTime":0}
+{"displayName":"slow","id":2,"parentId":1,"startTime":0}
+{"displayName":"fast","id":3,"parentId":1,"startTime":0}
+{"displayName":"fast child 1","id":4,"parentId":3,"startTime":0}
+{"displayName":"fast child 2","id":5,"parentId":3,"startTime":0}
+{"id":5,"endTime":30}
+{"id":4,"endTime":40}
+{"id":3,"endTime":40}
+{"id":2,"endTime":100}
+{"id":1,"endTime":100}
+""")
+
+        then:
+        segments(path) == [["slow", 0L, 100L]]
+        path.nearCriticalOperations.collect { [it.displayName, it.slack] } == [["fast", 60L], ["fast child 2", 70L]]
+    }
+
+    def "attributes time between top-level operations to no operation"() {
+        when:
+        def path = analyze("""\
+{"displayName":"first","id":1,"startTime":0}
+{"id":1,"endTime":10}
+{"displayName":"second","id":2,"startTime":15}
+{"id":2,"endTime":20}
+""")
+
+        then:
+        segments(path) == [["first", 0L, 10L], ["(no operation)", 10L, 15L], ["second", 15L, 20L]]
+    }
+
+    def "finishes operations that are still running at the end of a truncated log"() {
+        when:
+        def path = analyze("""\
+{"displayName":"root","id":1,"startTime":0}
+{"displayName":"child","id":2,"parentId":1,"startTime":5}
+{"displayName":"grandchild","id":3,"parentId":2,"startTime":6}
+{"id":3,"endTime":8}
+""")
+
+        then:
+        path.endTime == 8
+        segments(path) == [["root", 0L, 5L], ["child", 5L, 6L], ["grandchild", 6L, 8L]]
+    }
+
+    def "returns no critical path for a log without operations"() {
+        expect:
+        analyze("") == null
+    }
+
+    def "keeps a limited number of near-critical operations"() {
+        given:
+        def log = new StringBuilder('{"displayName":"root","id":1,"startTime":0}\n')
+        (2..50).each { id ->
+            log << """{"displayName":"op $id","id":$id,"parentId":1,"startTime":0}\n"""
+            log << """{"id":$id,"endTime":$id}\n"""
+        }
+        log << '{"id":1,"endTime":100}\n'
+
+        when:
+        def path = analyze(log.toString(), 5)
+
+        then:
+        path.nearCriticalOperations*.displayName == ["op 49", "op 48", "op 47", "op 46", "op 45"]
+    }
+
+    def "reports time on the critical path"() {
+        given:
+        def path = analyze("""\
+{"displayName":"Run build","detailsClassName":"org.gradle.RunBuild\$1","id":1,"startTime":0}
+{"displayName":"Execute task :compile","detailsClassName":"org.gradle.ExecuteTask\$Details","id":2,"parentId":1,"startTime":10}
+{"displayName":"Execute task :lint","detailsClassName":"org.gradle.ExecuteTask\$Details","id":3,"parentId":1,"startTime":10}
+{"id":3,"endTime":40}
+{"id":2,"endTime":90}
+{"id":1,"endTime":100}
+""")
+        def output = new ByteArrayOutputStream()
+
+        when:
+        path.writeReport(new PrintStream(output))
+
+        then:
+        def report = output.toString()
+        report.contains("Critical path: 100 ms over 2 operations")
+        report.contains("        80 ms   80.0%  ExecuteTask\$Details")
+        report.contains("        20 ms   20.0%  RunBuild")
+        report.contains("        80 ms   80.0%  Execute task :compile")
+        report.contains("        60 ms slack         30 ms duration  Execute task :lint")
+    }
+
+    private static CriticalPath analyze(String log, int maxNearCriticalOperations = CriticalPath.DEFAULT_REPORT_LIMIT) {
+        def analyzer = new CriticalPathAnalyzer(maxNearCriticalOperations)
+        def reader = new BuildOperationLogReader(new StringReader(log), null)
+        def event = new BuildOperationEvent()
+        while (reader.next(event)) {
+            analyzer.visit(event)
+        }
+        return analyzer.result()
+    }
+
+    private static List<List<Object>> segments(CriticalPath path) {
+        return path.segments.collect { [it.displayName, it.startTime, it.endTime] }
+    }
+}